@@ -294,6 +294,8 @@ public class TfPluginBundle {
     @NonNls
     public static final String KEY_CREATE_PR_CHANGES_PANE_TITLE = "CreatePullRequestDialog.ChangesPane.Title";
     @NonNls
+    public static final String KEY_CREATE_PR_CHANGES_PANE_LOADING = "CreatePullRequestDialog.ChangesPane.Loading";
+    @NonNls
     public static final String KEY_CREATE_PR_COMMITS_PANE_TITLE = "CreatePullRequestDialog.CommitsPane.Title";
     @NonNls
     public static final String KEY_CREATE_PR_DEFAULT_TITLE = "CreatePullRequestDialog.Default.Title";
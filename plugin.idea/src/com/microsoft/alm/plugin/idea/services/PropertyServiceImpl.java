@@ -39,6 +39,12 @@ public class PropertyServiceImpl implements PropertyService {
         map.put(propertyName, value);
     }
 
+    @Override
+    public void removeProperty(final String propertyName) {
+        ensureRestored();
+        map.remove(propertyName);
+    }
+
     public Map<String, String> getProperties() {
         if (map == null) {
             return null;
@@ -0,0 +1,104 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.settings;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Authentication info of a restored server context that is read from the password store the first time
+ * any of its values are needed, instead of when the context is restored.
+ * If the secrets can't be read all values are null and the contexts using this info are removed from the manager.
+ * Lookups skip contexts without credentials, so the next lookup for their url prompts the user instead.
+ * Reading the secrets can block, so callers on the UI thread should get the info on a background thread.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class LazyAuthenticationInfo extends AuthenticationInfo {
+    private static final Logger logger = LoggerFactory.getLogger(LazyAuthenticationInfo.class);
+
+    private final String key;
+    private AuthenticationInfo authenticationInfo;
+    private boolean loaded = false;
+
+    @SuppressWarnings("deprecation")
+    public LazyAuthenticationInfo(final String key) {
+        super();
+        ArgumentHelper.checkNotEmptyString(key);
+        this.key = key;
+    }
+
+    @Override
+    public String getServerUri() {
+        final AuthenticationInfo info = load();
+        return info != null ? info.getServerUri() : null;
+    }
+
+    @Override
+    public String getUserName() {
+        final AuthenticationInfo info = load();
+        return info != null ? info.getUserName() : null;
+    }
+
+    @Override
+    public String getPassword() {
+        final AuthenticationInfo info = load();
+        return info != null ? info.getPassword() : null;
+    }
+
+    @Override
+    public String getUserNameForDisplay() {
+        final AuthenticationInfo info = load();
+        return info != null ? info.getUserNameForDisplay() : null;
+    }
+
+    private AuthenticationInfo load() {
+        final AuthenticationInfo info;
+        synchronized (this) {
+            if (loaded) {
+                return authenticationInfo;
+            }
+
+            final long start = System.currentTimeMillis();
+            try {
+                authenticationInfo = TeamServicesSecrets.load(key);
+            } catch (Throwable t) {
+                logger.warn("load: failed to read the secrets for " + key, t);
+                TeamServicesSecrets.forget(key);
+            }
+            loaded = true;
+            info = authenticationInfo;
+            logger.info("load: secrets for {} read in {} ms", key, System.currentTimeMillis() - start);
+        }
+
+        if (info == null) {
+            // outside of the lock, removing takes the manager's lock
+            evict();
+        }
+        return info;
+    }
+
+    /**
+     * Removes the contexts using this info from the manager, so that they aren't used without credentials
+     */
+    private void evict() {
+        final List<String> uris = new ArrayList<String>();
+        for (final ServerContext context : ServerContextManager.getInstance().getAllServerContexts()) {
+            if (context.getAuthenticationInfo() == this && context.getUri() != null) {
+                uris.add(context.getUri().toString());
+            }
+        }
+        if (!uris.isEmpty()) {
+            logger.info("evict: removing {} server contexts without secrets for {}", uris.size(), key);
+            ServerContextManager.getInstance().removeAll(uris);
+        }
+    }
+}
@@ -9,10 +9,10 @@ import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.openapi.components.StoragePathMacros;
-import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
 import com.microsoft.alm.plugin.context.ServerContext;
 import com.microsoft.alm.plugin.context.ServerContextManager;
 import com.microsoft.alm.plugin.idea.services.PropertyServiceImpl;
+import com.microsoft.alm.plugin.operations.OperationExecutor;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +22,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Stores a SettingsState object to file and handles writing and reading the objects
@@ -33,9 +35,16 @@ import java.util.Map;
 )
 public class TeamServicesSettingsService implements PersistentStateComponent<SettingsState> {
     private static final Logger logger = LoggerFactory.getLogger(TeamServicesSettingsService.class);
+
+    // restoring is split into tasks of this many contexts, but never more than MAX_RESTORE_TASKS
+    private static final int RESTORE_CHUNK_SIZE = 25;
+    private static final int MAX_RESTORE_TASKS = 4;
+    private static final long RESTORE_TIMEOUT_SECONDS = 60L;
+
     private SettingsState state = null;
     private boolean serverContextsRestored = false;
     private boolean propertiesRestored = false;
+    private volatile long lastRestoreMilliseconds = 0;
 
     // This default instance is only returned in the case of tests or we are somehow running outside of IntelliJ
     private static TeamServicesSettingsService DEFAULT_INSTANCE = new TeamServicesSettingsService();
@@ -68,38 +77,94 @@ public class TeamServicesSettingsService implements PersistentStateComponent<Set
     }
 
     public List<ServerContext> restoreServerContexts() {
+        final long start = System.currentTimeMillis();
+        final ServerContextState[] contextStates = state != null ? state.serverContexts : null;
         final List<ServerContext> serverContexts = new ArrayList<ServerContext>();
-        if (state != null && state.serverContexts != null) {
-            for (final ServerContextState contextState : state.serverContexts) {
-                String key = null;
-                try {
-                    key = ServerContext.getKey(contextState.uri);
-                    final AuthenticationInfo authenticationInfo = TeamServicesSecrets.load(key);
-                    if (authenticationInfo != null) {
-                        serverContexts.add(contextState.createBuilder()
-                                .authentication(authenticationInfo)
-                                .build());
-                    }
-
-                } catch (final Throwable restoreThrowable) {
-                    logger.warn("Failed to restore server context", restoreThrowable);
-                    // attempt to clean up left over data
-                    if (key != null) {
-                        try {
-                            TeamServicesSecrets.forget(key);
-                        } catch (final Throwable cleanupThrowable) {
-                            logger.warn("Failed to cleanup invalid server context");
+        if (contextStates != null && contextStates.length > 0) {
+            // Only the metadata is parsed here, the secrets are read from the password store when first used.
+            // Large lists are split into chunks that are parsed in parallel.
+            final int chunkCount = Math.min(MAX_RESTORE_TASKS, (contextStates.length + RESTORE_CHUNK_SIZE - 1) / RESTORE_CHUNK_SIZE);
+            final int chunkSize = (contextStates.length + chunkCount - 1) / chunkCount;
+            final List<List<ServerContext>> chunks = new ArrayList<List<ServerContext>>(chunkCount);
+            final List<Future> tasks = new ArrayList<Future>(chunkCount);
+            for (int chunkStart = 0; chunkStart < contextStates.length; chunkStart += chunkSize) {
+                final List<ServerContext> chunk = new ArrayList<ServerContext>(chunkSize);
+                final int from = chunkStart;
+                final int to = Math.min(chunkStart + chunkSize, contextStates.length);
+                chunks.add(chunk);
+
+                final Runnable restoreChunk = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = from; i < to; i++) {
+                            final ServerContext context = restoreServerContext(contextStates[i]);
+                            if (context != null) {
+                                chunk.add(context);
+                            }
                         }
                     }
+                };
+                if (chunkCount == 1) {
+                    restoreChunk.run();
+                } else {
+                    tasks.add(OperationExecutor.getInstance().submitOperationTask(restoreChunk));
+                }
+            }
+
+            if (!tasks.isEmpty()) {
+                final OperationExecutor.WaitResults waitResults = OperationExecutor.getInstance().waitAll(tasks,
+                        RESTORE_TIMEOUT_SECONDS, TimeUnit.SECONDS, OperationExecutor.WaitMode.COLLECT_ALL);
+                if (waitResults.hasErrors()) {
+                    logger.warn("restoreServerContexts: not all server contexts were restored", waitResults.getFirstError());
+                    waitResults.cancelUnfinished();
+                }
+            }
+
+            for (int i = 0; i < chunks.size(); i++) {
+                // skip chunks that never finished, they may still be changing
+                if (tasks.isEmpty() || (tasks.get(i).isDone() && !tasks.get(i).isCancelled())) {
+                    serverContexts.addAll(chunks.get(i));
                 }
             }
         }
 
+        lastRestoreMilliseconds = System.currentTimeMillis() - start;
+        logger.info("restoreServerContexts: restored {} of {} server contexts in {} ms", serverContexts.size(),
+                contextStates != null ? contextStates.length : 0, lastRestoreMilliseconds);
+
         // Remember that this method was called, so that when we persist, we read the new values
         serverContextsRestored = true;
         return serverContexts;
     }
 
+    /**
+     * Returns how long the last call to restoreServerContexts took
+     */
+    public long getLastRestoreMilliseconds() {
+        return lastRestoreMilliseconds;
+    }
+
+    private ServerContext restoreServerContext(final ServerContextState contextState) {
+        String key = null;
+        try {
+            key = ServerContext.getKey(contextState.uri);
+            return contextState.createBuilder()
+                    .authentication(new LazyAuthenticationInfo(key))
+                    .build();
+        } catch (final Throwable restoreThrowable) {
+            logger.warn("Failed to restore server context", restoreThrowable);
+            // attempt to clean up left over data
+            if (key != null) {
+                try {
+                    TeamServicesSecrets.forget(key);
+                } catch (final Throwable cleanupThrowable) {
+                    logger.warn("Failed to cleanup invalid server context");
+                }
+            }
+        }
+        return null;
+    }
+
     public Map<String, String> restoreProperties() {
         Map<String, String> map = new HashMap<String, String>();
         if (state != null && state.properties != null) {
@@ -4,9 +4,14 @@
 package com.microsoft.alm.plugin.idea.setup;
 
 import com.intellij.idea.Main;
+import com.intellij.openapi.application.ApplicationActivationListener;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationNamesInfo;
 import com.intellij.openapi.components.ApplicationComponent;
+import com.intellij.openapi.wm.IdeFrame;
 import com.intellij.util.containers.HashMap;
+import com.microsoft.alm.plugin.context.HttpTransportManager;
+import com.microsoft.alm.plugin.events.ServerEventManager;
 import com.microsoft.alm.plugin.events.ServerPollingManager;
 import com.microsoft.alm.plugin.idea.services.CredentialsPromptImpl;
 import com.microsoft.alm.plugin.idea.services.DeviceFlowResponsePromptImpl;
@@ -15,7 +20,9 @@ import com.microsoft.alm.plugin.idea.services.PropertyServiceImpl;
 import com.microsoft.alm.plugin.idea.services.ServerContextStoreImpl;
 import com.microsoft.alm.plugin.idea.services.TelemetryContextInitializer;
 import com.microsoft.alm.plugin.idea.statusBar.StatusBarManager;
+import com.microsoft.alm.plugin.operations.ServerContextCatalogCache;
 import com.microsoft.alm.plugin.services.PluginServiceProvider;
+import com.microsoft.alm.plugin.services.WriteBehindServerContextStore;
 import com.sun.jna.Platform;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
@@ -46,13 +53,16 @@ public class ApplicationStartup implements ApplicationComponent {
     private static final String MAC_EXE_DIR = "MacOS";
     private static final String CSV_COMMA = ",";
 
+    // saves to the password store happen in the background and must be flushed when the application exits
+    private final WriteBehindServerContextStore serverContextStore = new WriteBehindServerContextStore(new ServerContextStoreImpl());
+
     public ApplicationStartup() {
     }
 
     public void initComponent() {
         // Setup the services that the core plugin components need
         PluginServiceProvider.getInstance().initialize(
-                new ServerContextStoreImpl(),
+                serverContextStore,
                 new CredentialsPromptImpl(),
                 new DeviceFlowResponsePromptImpl(),
                 new TelemetryContextInitializer(),
@@ -64,17 +74,42 @@ public class ApplicationStartup implements ApplicationComponent {
         final String ideLocation = getIdeLocation();
         doOsSetup(vstsDirectory, ideLocation);
 
+        // Remember the repositories and projects found on the server between sessions
+        ServerContextCatalogCache.getInstance().setDirectory(vstsDirectory);
+
         // Setup status bar
         StatusBarManager.setupStatusBar();
 
         // Hook up to VCS and Project events
         ProjectRepoEventManager.getInstance().startListening();
 
-        // Start polling for server events
+        // Start polling for server events for the repositories of the open projects, less often while the IDE doesn't have focus
+        ApplicationManager.getApplication().getMessageBus().connect().subscribe(ApplicationActivationListener.TOPIC,
+                new ApplicationActivationListener() {
+                    @Override
+                    public void applicationActivated(final IdeFrame ideFrame) {
+                        ServerPollingManager.getInstance().setApplicationFocused(true);
+                    }
+
+                    @Override
+                    public void applicationDeactivated(final IdeFrame ideFrame) {
+                        ServerPollingManager.getInstance().setApplicationFocused(false);
+                    }
+                });
+        ServerPollingManager.getInstance().setWatchedContextProvider(new OpenProjectsContextProvider());
         ServerPollingManager.getInstance().startPolling();
     }
 
     public void disposeComponent() {
+        ServerPollingManager.getInstance().stopPolling();
+        ProjectRepoEventManager.getInstance().stopListening();
+        ServerEventManager.getInstance().shutdown();
+
+        // Write any server context changes that are still pending
+        serverContextStore.shutdown();
+
+        // Close the shared connection pools
+        HttpTransportManager.getInstance().shutdown();
     }
 
     @NotNull
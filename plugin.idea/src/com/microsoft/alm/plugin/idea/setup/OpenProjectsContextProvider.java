@@ -0,0 +1,55 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.setup;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.events.ServerPollingManager;
+import com.microsoft.alm.plugin.idea.utils.TfGitHelper;
+import git4idea.GitUtil;
+import git4idea.repo.GitRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gives the polling manager the saved server contexts of the Team Services git repositories of the open projects,
+ * so that servers are only polled for the repositories the user has open.
+ */
+public class OpenProjectsContextProvider implements ServerPollingManager.WatchedContextProvider {
+    private static final Logger logger = LoggerFactory.getLogger(OpenProjectsContextProvider.class);
+
+    @Override
+    public Collection<ServerContext> getWatchedContexts() {
+        // several projects can share a repository, it is only polled once
+        final Map<String, ServerContext> contexts = new LinkedHashMap<String, ServerContext>();
+        try {
+            for (final Project project : ProjectManager.getInstance().getOpenProjects()) {
+                if (project.isDisposed()) {
+                    continue;
+                }
+
+                for (final GitRepository repository : GitUtil.getRepositoryManager(project).getRepositories()) {
+                    if (!TfGitHelper.isTfGitRepository(repository)) {
+                        continue;
+                    }
+
+                    final ServerContext context = TfGitHelper.getSavedServerContext(repository);
+                    if (context != null && !contexts.containsKey(context.getKey())) {
+                        contexts.put(context.getKey(), context);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            // a project closing while we look at it shouldn't stop polling for the others
+            logger.warn("getWatchedContexts: failed to get the repositories of the open projects", t);
+        }
+        return new ArrayList<ServerContext>(contexts.values());
+    }
+}
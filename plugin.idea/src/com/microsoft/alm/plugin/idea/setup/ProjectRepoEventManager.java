@@ -7,25 +7,43 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.project.ProjectManagerListener;
 import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.events.EventDebouncer;
+import com.microsoft.alm.plugin.events.ServerEvent;
 import com.microsoft.alm.plugin.events.ServerEventManager;
+import com.microsoft.alm.plugin.idea.ui.pullrequest.BranchCompareCache;
 import com.microsoft.alm.plugin.idea.utils.EventContextHelper;
+import git4idea.GitBranch;
+import git4idea.GitRemoteBranch;
+import git4idea.repo.GitRemote;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryChangeListener;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The purpose of this class is to listen for IDEA events like project changed or repository changed and
- * notify the ServerEventManager to fire all changed events.
+ * notify the ServerEventManager to fire the changed events.
+ * <p/>
+ * Git reports many repository changes during a rebase, fetch or checkout. Those are collected per repository until
+ * they quiet down and then only the events that match what changed in the repository are fired.
  */
 public class ProjectRepoEventManager {
     private static final Logger logger = LoggerFactory.getLogger(ProjectRepoEventManager.class);
 
-
     private ProjectEventListener projectEventListener;
+    private final EventDebouncer<GitRepository> repositoryDebouncer;
+    // what each repository looked like the last time we fired events for it
+    private final Map<GitRepository, RepositorySnapshot> snapshots = new ConcurrentHashMap<GitRepository, RepositorySnapshot>();
 
     private static class Holder {
         private static final ProjectRepoEventManager INSTANCE = new ProjectRepoEventManager();
@@ -36,6 +54,12 @@ public class ProjectRepoEventManager {
     }
 
     protected ProjectRepoEventManager() {
+        repositoryDebouncer = new EventDebouncer<GitRepository>(new EventDebouncer.Listener<GitRepository>() {
+            @Override
+            public void changesSettled(final GitRepository repository, final int changeCount) {
+                repositoryChangesSettled(repository, changeCount);
+            }
+        });
         logger.info("ProjectRepoEventManager created");
     }
 
@@ -46,7 +70,107 @@ public class ProjectRepoEventManager {
         }
     }
 
-    private void triggerServerEvents(final String sender, final Project project, final GitRepository repository) {
+    /**
+     * Stops listening to the projects, drops the repository changes that haven't settled and stops the debouncer thread
+     */
+    public void stopListening() {
+        if (projectEventListener != null) {
+            ProjectManager.getInstance().removeProjectManagerListener(projectEventListener);
+            projectEventListener = null;
+        }
+        repositoryDebouncer.shutdown();
+        snapshots.clear();
+    }
+
+    /**
+     * Sets how long a repository has to go without changes before the server events are fired
+     */
+    public void setRepositoryQuietPeriod(final long quietPeriod) {
+        repositoryDebouncer.setQuietPeriod(quietPeriod);
+    }
+
+    public long getRepositoryQuietPeriod() {
+        return repositoryDebouncer.getQuietPeriod();
+    }
+
+    /**
+     * Returns the number of repository changes reported by git
+     */
+    public long getRepositoryChangeCount() {
+        return repositoryDebouncer.getChangeCount();
+    }
+
+    /**
+     * Returns the number of repository changes that were merged into another one instead of firing events
+     */
+    public long getCoalescedRepositoryChangeCount() {
+        return repositoryDebouncer.getCoalescedCount();
+    }
+
+    private void repositoryChanged(final GitRepository repository) {
+        repositoryDebouncer.changed(repository);
+    }
+
+    private void repositoryChangesSettled(final GitRepository repository, final int changeCount) {
+        // the branches compared for a pull request have probably moved
+        BranchCompareCache.getInstance().invalidate(getRootPath(repository));
+
+        final Project project = repository.getProject();
+        if (project.isDisposed()) {
+            snapshots.remove(repository);
+            return;
+        }
+
+        final RepositorySnapshot snapshot = new RepositorySnapshot(repository);
+        final RepositorySnapshot previous = snapshots.put(repository, snapshot);
+        logger.info("repository changed {} time(s), {} changes coalesced so far", changeCount, getCoalescedRepositoryChangeCount());
+
+        if (previous == null || !previous.remotes.equals(snapshot.remotes)) {
+            // we don't know what the repository looked like before or it now points to other servers
+            triggerServerEvents(EventContextHelper.SENDER_REPO_CHANGED, project, repository, null);
+            return;
+        }
+
+        final List<ServerEvent> events = new ArrayList<ServerEvent>(2);
+        if (!equal(previous.currentBranch, snapshot.currentBranch)) {
+            // a checkout, the builds shown are for the current branch
+            events.add(ServerEvent.BUILDS_CHANGED);
+        }
+        if (!previous.remoteBranches.equals(snapshot.remoteBranches)) {
+            // a fetch or push that added, deleted or moved remote branches
+            events.add(ServerEvent.PULL_REQUESTS_CHANGED);
+        }
+        if (events.isEmpty()) {
+            // only local changes like a commit, polling picks up whatever changed on the server
+            logger.debug("repositoryChangesSettled: nothing to fire for the repository");
+        }
+
+        for (final ServerEvent event : events) {
+            triggerServerEvents(EventContextHelper.SENDER_REPO_CHANGED, project, repository, event);
+        }
+    }
+
+    private void projectClosing(final Project project) {
+        // changes still pending for the project are dropped when they settle since the project is disposed by then
+        final Iterator<GitRepository> iterator = snapshots.keySet().iterator();
+        while (iterator.hasNext()) {
+            final GitRepository repository = iterator.next();
+            if (repository.getProject() == project) {
+                BranchCompareCache.getInstance().invalidate(getRootPath(repository));
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String getRootPath(final GitRepository repository) {
+        return repository.getRoot() != null ? repository.getRoot().getPath() : null;
+    }
+
+    /**
+     * Fires the event or all of them when event is null. Without a repository they are lifecycle events of the project,
+     * which the listeners get before this returns.
+     */
+    private void triggerServerEvents(final String sender, final Project project, final GitRepository repository, final ServerEvent event) {
         ArgumentHelper.checkNotEmptyString(sender);
         ArgumentHelper.checkNotNull(project, "project");
 
@@ -54,16 +178,48 @@ public class ProjectRepoEventManager {
         EventContextHelper.setProject(context, project);
         if (repository != null) {
             EventContextHelper.setRepository(context, repository);
+            EventContextHelper.setServerUrl(context, repository);
         }
 
-        // Fire all events
-        ServerEventManager.getInstance().triggerAllEvents(context);
+        if (event != null) {
+            ServerEventManager.getInstance().triggerEvent(event, context);
+        } else if (repository == null) {
+            // the project opening or closing, the listeners have to see it before we go on
+            ServerEventManager.getInstance().triggerLifecycleEvents(context);
+        } else {
+            ServerEventManager.getInstance().triggerAllEvents(context);
+        }
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * The parts of a repository that decide which server events are interesting
+     */
+    private static class RepositorySnapshot {
+        private final String currentBranch;
+        // the hash of each remote branch, so a fetch or push that moves a branch is seen too
+        private final Map<String, String> remoteBranches = new TreeMap<String, String>();
+        private final Set<String> remotes = new TreeSet<String>();
+
+        private RepositorySnapshot(final GitRepository repository) {
+            final GitBranch branch = repository.getInfo().getCurrentBranch();
+            currentBranch = branch != null ? branch.getName() : null;
+            for (final GitRemoteBranch remoteBranch : repository.getInfo().getRemoteBranches()) {
+                remoteBranches.put(remoteBranch.getName(), String.valueOf(remoteBranch.getHash()));
+            }
+            for (final GitRemote remote : repository.getRemotes()) {
+                remotes.add(remote.getName() + "=" + remote.getUrls());
+            }
+        }
     }
 
     private static class ProjectEventListener implements ProjectManagerListener {
         @Override
         public void projectOpened(final Project project) {
-            ProjectRepoEventManager.getInstance().triggerServerEvents(EventContextHelper.SENDER_PROJECT_OPENED, project, null);
+            ProjectRepoEventManager.getInstance().triggerServerEvents(EventContextHelper.SENDER_PROJECT_OPENED, project, null, null);
             subscribeToRepoChangeEvents(project);
         }
 
@@ -79,15 +235,16 @@ public class ProjectRepoEventManager {
 
         @Override
         public void projectClosing(final Project project) {
-            ProjectRepoEventManager.getInstance().triggerServerEvents(EventContextHelper.SENDER_PROJECT_CLOSING, project, null);
+            ProjectRepoEventManager.getInstance().projectClosing(project);
+            ProjectRepoEventManager.getInstance().triggerServerEvents(EventContextHelper.SENDER_PROJECT_CLOSING, project, null, null);
         }
 
         private void subscribeToRepoChangeEvents(@NotNull final Project project) {
             project.getMessageBus().connect().subscribe(GitRepository.GIT_REPO_CHANGE, new GitRepositoryChangeListener() {
                 @Override
                 public void repositoryChanged(@NotNull final GitRepository repository) {
-                    logger.info("repository changed");
-                    ProjectRepoEventManager.getInstance().triggerServerEvents(EventContextHelper.SENDER_REPO_CHANGED, project, repository);
+                    logger.debug("repository changed");
+                    ProjectRepoEventManager.getInstance().repositoryChanged(repository);
                 }
             });
         }
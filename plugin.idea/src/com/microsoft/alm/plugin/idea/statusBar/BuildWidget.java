@@ -3,11 +3,15 @@
 
 package com.microsoft.alm.plugin.idea.statusBar;
 
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.StatusBar;
 import com.intellij.openapi.wm.StatusBarWidget;
 import com.intellij.util.Consumer;
 import com.microsoft.alm.client.utils.StringUtil;
 import com.microsoft.alm.plugin.idea.resources.Icons;
+import com.microsoft.alm.plugin.idea.utils.IdeaHelper;
+import com.microsoft.alm.plugin.operations.BuildStatusLookupOperation;
+import com.microsoft.alm.plugin.services.BuildStatusService;
 import com.microsoft.alm.plugin.telemetry.TfsTelemetryConstants;
 import com.microsoft.alm.plugin.telemetry.TfsTelemetryHelper;
 import org.jetbrains.annotations.NotNull;
@@ -18,10 +22,15 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.MouseEvent;
 
-public class BuildWidget implements StatusBarWidget, StatusBarWidget.IconPresentation, Consumer<MouseEvent> {
+public class BuildWidget implements StatusBarWidget, StatusBarWidget.IconPresentation, Consumer<MouseEvent>, BuildStatusService.Subscriber {
+    private final Project project;
     private BuildStatusModel model;
     private StatusBar statusBar;
 
+    public BuildWidget(@NotNull final Project project) {
+        this.project = project;
+    }
+
     public static String getID() {
         return BuildWidget.class.getName();
     }
@@ -30,6 +39,27 @@ public class BuildWidget implements StatusBarWidget, StatusBarWidget.IconPresent
         this.model = model;
     }
 
+    // BuildStatusService.Subscriber //
+    @Override
+    public void buildStatusChanged(final BuildStatusLookupOperation.BuildStatusResults results) {
+        if (project.isDisposed()) {
+            return;
+        }
+        update(BuildStatusModel.create(project, results));
+
+        // Tell the UI to update and restart the timer
+        // (This should be done on the UI thread)
+        IdeaHelper.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                final StatusBar bar = statusBar;
+                if (bar != null) {
+                    bar.updateWidget(getID());
+                }
+            }
+        });
+    }
+
     // StatusBarWidget //
     @NotNull
     @Override
@@ -51,7 +81,8 @@ public class BuildWidget implements StatusBarWidget, StatusBarWidget.IconPresent
 
     @Override
     public void dispose() {
-        // Release any referenced classes
+        // Stop listening for build status changes and release any referenced classes
+        BuildStatusService.getInstance().unsubscribe(this);
         this.statusBar = null;
     }
 
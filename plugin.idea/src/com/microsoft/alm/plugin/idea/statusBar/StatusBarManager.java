@@ -4,7 +4,6 @@
 package com.microsoft.alm.plugin.idea.statusBar;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.wm.StatusBar;
 import com.intellij.openapi.wm.WindowManager;
 import com.microsoft.alm.client.utils.StringUtil;
@@ -14,8 +13,7 @@ import com.microsoft.alm.plugin.events.ServerEventManager;
 import com.microsoft.alm.plugin.idea.utils.EventContextHelper;
 import com.microsoft.alm.plugin.idea.utils.IdeaHelper;
 import com.microsoft.alm.plugin.idea.utils.TfGitHelper;
-import com.microsoft.alm.plugin.operations.BuildStatusLookupOperation;
-import com.microsoft.alm.plugin.operations.Operation;
+import com.microsoft.alm.plugin.services.BuildStatusService;
 import git4idea.branch.GitBranchUtil;
 import git4idea.repo.GitRepository;
 
@@ -43,9 +41,9 @@ public class StatusBarManager {
                                     // On project closing we remove our widgets from the status bar
                                     removeWidgets(EventContextHelper.getProject(contextMap));
                                 } else {
-                                    // If there isn't any context, then we were called by the polling timer
-                                    // Just update all the status bars for all the projects
-                                    updateStatusBar();
+                                    // Otherwise we were called by the polling manager, which tells us the repository that changed
+                                    // Update the status bars of all the projects with that repository
+                                    updateStatusBar(contextMap);
                                 }
 
                             }
@@ -58,10 +56,13 @@ public class StatusBarManager {
         }
     }
 
-    private static void updateStatusBar() {
-        final Project[] openProjects = ProjectManager.getInstance().getOpenProjects();
-        for (final Project p : openProjects) {
-            updateStatusBar(p, false);
+    private static void updateStatusBar(final Map<String, Object> contextMap) {
+        // The widgets of all the projects share one build status per repo and branch, so refresh each of those once
+        final BuildStatusService buildStatusService = BuildStatusService.getInstance();
+        for (final String repoUrl : buildStatusService.getRemoteUrls()) {
+            if (!EventContextHelper.isOtherRepository(contextMap, repoUrl)) {
+                buildStatusService.refresh(repoUrl, false);
+            }
         }
     }
 
@@ -76,7 +77,7 @@ public class StatusBarManager {
         // Update the build widget
         BuildWidget buildWidget = (BuildWidget) statusBar.getWidget(BuildWidget.getID());
         if (buildWidget == null) {
-            buildWidget = new BuildWidget();
+            buildWidget = new BuildWidget(project);
             statusBar.addWidget(buildWidget, project);
         }
         // Attempt to get the current repo and branch (if none, then the status stays as it was)
@@ -85,51 +86,26 @@ public class StatusBarManager {
             final String repoUrl = TfGitHelper.getTfGitRemoteUrl(repository);
             if (!StringUtil.isNullOrEmpty(repoUrl)) {
                 // It's a tf git url so continue
-                final BuildWidget widget = buildWidget;
                 // TODO: Fix this HACK. There doesn't seem to be a clear way to get the full name of the current branch
                 final String branch = "refs/heads/" + GitBranchUtil.getDisplayableBranchText(repository);
 
-                // Create the operation and start the background work to get the latest build information
-                final BuildStatusLookupOperation op = new BuildStatusLookupOperation(repoUrl, branch, allowPrompt);
-                op.addListener(new Operation.Listener() {
-                    @Override
-                    public void notifyLookupStarted() { /* do nothing */ }
-
-                    @Override
-                    public void notifyLookupCompleted() { /* do nothing */ }
-
-                    @Override
-                    public void notifyLookupResults(final Operation.Results results) {
-                        updateBuildWidget(project, statusBar, widget, (BuildStatusLookupOperation.BuildStatusResults) results);
-                    }
-                });
-                op.doWorkAsync(null);
+                // Show the build status shared by every project on this repo and branch and start the background
+                // work to get the latest build information (unless another project already started it)
+                BuildStatusService.getInstance().subscribe(buildWidget, repoUrl, branch);
+                BuildStatusService.getInstance().refresh(repoUrl, branch, allowPrompt);
             }
         } else {
             // The repository hasn't been opened yet, we should get an event when it is opened
         }
     }
 
-    private static void updateBuildWidget(final Project project, final StatusBar statusBar, final BuildWidget widget, final BuildStatusLookupOperation.BuildStatusResults results) {
-        final BuildStatusLookupOperation.BuildStatusResults r = results;
-        final BuildStatusModel model = BuildStatusModel.create(project, results);
-        widget.update(model);
-
-        // Tell the UI to update and restart the timer
-        // (This should be done on the UI thread)
-        IdeaHelper.runOnUIThread(new Runnable() {
-            @Override
-            public void run() {
-                statusBar.updateWidget(BuildWidget.getID());
-            }
-        });
-    }
-
     private static void removeWidgets(final Project project) {
         final StatusBar statusBar = WindowManager.getInstance().getStatusBar(project);
         if (statusBar != null) {
             // Remove build widget
-            if (statusBar.getWidget(BuildWidget.getID()) != null) {
+            final BuildWidget buildWidget = (BuildWidget) statusBar.getWidget(BuildWidget.getID());
+            if (buildWidget != null) {
+                BuildStatusService.getInstance().unsubscribe(buildWidget);
                 statusBar.removeWidget(BuildWidget.getID());
             }
         }
@@ -27,6 +27,7 @@ import javax.swing.event.ListSelectionListener;
 import java.io.File;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class is provided as a base for the VSO and TFS models. It provides the majority of the
@@ -293,6 +294,20 @@ public abstract class CheckoutPageModelImpl extends LoginPageModelImpl implement
         repositoryTableModel.addServerContexts(serverContexts);
     }
 
+    /**
+     * This method is provided to allow the listener to update the list of contexts.
+     */
+    public void removeContexts(final List<ServerContext> serverContexts) {
+        repositoryTableModel.removeServerContexts(serverContexts);
+    }
+
+    /**
+     * This method is provided to allow the listener to update the list of contexts.
+     */
+    public void replaceContexts(final Map<ServerContext, ServerContext> serverContexts) {
+        repositoryTableModel.replaceServerContexts(serverContexts);
+    }
+
     /**
      * This method is provided to allow the derived classes an easy way to add to the list of repositories.
      */
@@ -0,0 +1,86 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.common;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * Matches the filter typed by the user against the rows of a table or tree. Each row is turned into a lowercase
+ * search key once, when the row is added, so matching a row is a single indexOf instead of converting every column
+ * on every keystroke.
+ * <p/>
+ * Typing more characters only narrows the filter: a row that matches the new filter also matches the old one, so
+ * the models only need to rescan the rows that matched before when isNarrowing is true.
+ * <p/>
+ * NOT THREAD-SAFE
+ */
+public class SearchFilter {
+    // separates the values of the columns so a match can't span two columns
+    private static final char VALUE_SEPARATOR = '\n';
+
+    private String filter = StringUtils.EMPTY;
+    private boolean narrowing = false;
+
+    /**
+     * Creates the search key of a row out of the values shown in its columns, null values are skipped
+     */
+    public static String createSearchKey(final String... values) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String value : values) {
+            if (StringUtils.isNotEmpty(value)) {
+                if (sb.length() > 0) {
+                    sb.append(VALUE_SEPARATOR);
+                }
+                sb.append(value);
+            }
+        }
+        return normalize(sb.toString());
+    }
+
+    private static String normalize(final String value) {
+        return value == null ? StringUtils.EMPTY : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Sets the filter and returns true if it changed
+     */
+    public boolean setFilter(final String filter) {
+        final String newFilter = normalize(filter);
+        if (newFilter.equals(this.filter)) {
+            return false;
+        }
+
+        // the rows that match "abc" are a subset of the rows that match "ab"
+        narrowing = !this.filter.isEmpty() && newFilter.contains(this.filter);
+        this.filter = newFilter;
+        return true;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public boolean hasFilter() {
+        return !filter.isEmpty();
+    }
+
+    /**
+     * Returns true if the last change to the filter only added to it, so only the rows that matched before can match
+     */
+    public boolean isNarrowing() {
+        return narrowing;
+    }
+
+    /**
+     * Returns true if there is no filter or the search key contains it. A row without a search key doesn't match a filter.
+     */
+    public boolean matches(final String searchKey) {
+        if (filter.isEmpty()) {
+            return true;
+        }
+        return searchKey != null && searchKey.contains(filter);
+    }
+}
@@ -82,7 +82,13 @@ public class ServerContextLookupListener implements Operation.Listener {
         } else {
             IdeaHelper.runOnUIThread(new Runnable() {
                 public void run() {
+                    if (!lookupResults.getRemovedServerContexts().isEmpty()) {
+                        pageModel.removeContexts(lookupResults.getRemovedServerContexts());
+                    }
                     pageModel.appendContexts(lookupResults.getServerContexts());
+                    if (!lookupResults.getReplacedServerContexts().isEmpty()) {
+                        pageModel.replaceContexts(lookupResults.getReplacedServerContexts());
+                    }
 
                     if (lookupResults.hasError()) {
                         if (lookupResults.getError() instanceof TeamServicesException) {
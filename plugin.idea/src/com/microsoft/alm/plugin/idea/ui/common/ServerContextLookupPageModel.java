@@ -6,6 +6,7 @@ package com.microsoft.alm.plugin.idea.ui.common;
 import com.microsoft.alm.plugin.context.ServerContext;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ServerContextLookupPageModel {
     void setLoading(final boolean loading);
@@ -18,5 +19,9 @@ public interface ServerContextLookupPageModel {
 
     void appendContexts(final List<ServerContext> serverContexts);
 
+    void removeContexts(final List<ServerContext> serverContexts);
+
+    void replaceContexts(final Map<ServerContext, ServerContext> serverContexts);
+
     void clearContexts();
 }
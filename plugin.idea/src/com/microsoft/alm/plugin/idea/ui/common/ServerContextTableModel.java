@@ -9,10 +9,6 @@ import com.microsoft.alm.plugin.idea.resources.TfPluginBundle;
 import com.microsoft.alm.core.webapi.model.TeamProjectCollectionReference;
 import com.microsoft.alm.core.webapi.model.TeamProjectReference;
 import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
-import jersey.repackaged.com.google.common.base.Predicate;
-import jersey.repackaged.com.google.common.collect.Collections2;
-import jersey.repackaged.com.google.common.collect.Lists;
-import org.apache.commons.lang.StringUtils;
 
 import javax.swing.DefaultListSelectionModel;
 import javax.swing.ListSelectionModel;
@@ -20,7 +16,9 @@ import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ServerContextTableModel extends AbstractTableModel {
     public enum Column {REPOSITORY, PROJECT, COLLECTION, ACCOUNT}
@@ -43,10 +41,24 @@ public class ServerContextTableModel extends AbstractTableModel {
     private ListSelectionModel selectionModel = new DefaultListSelectionModel();
     private List<ServerContext> rows = new ArrayList<ServerContext>(1000);
     private List<ServerContext> filteredRows = null;
-    private String filter;
+    private final SearchFilter searchFilter = new SearchFilter();
+    // the lowercase text of the columns of each row, created once when the row is first filtered
+    private final Map<ServerContext, String> searchKeys = new HashMap<ServerContext, String>();
     private final Column[] columns;
     private TableModelSelectionConverter converter;
 
+    /**
+     * Sorts the rows by the first column
+     */
+    private final Comparator<ServerContext> rowComparator = new Comparator<ServerContext>() {
+        @Override
+        public int compare(final ServerContext c1, final ServerContext c2) {
+            final String name1 = getValueFor(c1, 0);
+            final String name2 = getValueFor(c2, 0);
+            return String.CASE_INSENSITIVE_ORDER.compare(name1, name2);
+        }
+    };
+
     public ServerContextTableModel(Column[] columns) {
         assert columns != null;
         this.columns = columns.clone();
@@ -76,30 +88,83 @@ public class ServerContextTableModel extends AbstractTableModel {
         // Remember selection
         final ServerContext selectedContext = getSelectedContext();
 
-        // Add the new rows to the existing list
-        rows.addAll(contexts);
-        // Sort the rows by the first column
-        Collections.sort(rows, new Comparator<ServerContext>() {
-            @Override
-            public int compare(ServerContext c1, ServerContext c2) {
-                final String name1 = getValueFor(c1, 0);
-                final String name2 = getValueFor(c2, 0);
-                return String.CASE_INSENSITIVE_ORDER.compare(name1, name2);
+        // Lookup results arrive in many small batches, so the new rows are merged into the sorted list
+        // one at a time and only the inserted rows are announced instead of re-sorting the whole table
+        final List<ServerContext> newRows = new ArrayList<ServerContext>(contexts);
+        Collections.sort(newRows, rowComparator);
+        for (final ServerContext context : newRows) {
+            final int index = insertSorted(rows, context);
+            if (filteredRows == null) {
+                super.fireTableRowsInserted(index, index);
+            } else if (rowContains(context)) {
+                final int filteredIndex = insertSorted(filteredRows, context);
+                super.fireTableRowsInserted(filteredIndex, filteredIndex);
             }
-        });
+        }
 
-        if (hasFilter()) {
-            // re-apply the filter, this will fire its own event
-            applyFilter();
-        } else {
-            // Fire an event letting callers know
-            super.fireTableDataChanged();
+        // Attempt to restore the selection
+        select(selectedContext);
+    }
+
+    /**
+     * Inserts the context after any rows that sort equal to it, which keeps arrival order for equal names
+     */
+    private int insertSorted(final List<ServerContext> list, final ServerContext context) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (rowComparator.compare(list.get(mid), context) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        list.add(low, context);
+        return low;
+    }
+
+    public void removeServerContexts(final List<ServerContext> contexts) {
+        // Remember selection
+        final ServerContext selectedContext = getSelectedContext();
+
+        for (final ServerContext context : contexts) {
+            if (filteredRows != null) {
+                final int filteredIndex = filteredRows.indexOf(context);
+                if (filteredIndex >= 0) {
+                    filteredRows.remove(filteredIndex);
+                    super.fireTableRowsDeleted(filteredIndex, filteredIndex);
+                }
+                rows.remove(context);
+                searchKeys.remove(context);
+            } else {
+                final int index = rows.indexOf(context);
+                if (index >= 0) {
+                    rows.remove(index);
+                    searchKeys.remove(context);
+                    super.fireTableRowsDeleted(index, index);
+                }
+            }
         }
 
         // Attempt to restore the selection
         select(selectedContext);
     }
 
+    /**
+     * Swaps each row that is a key of the map for its value, keeping the selection on the swapped row
+     */
+    public void replaceServerContexts(final Map<ServerContext, ServerContext> replacements) {
+        final ServerContext selectedContext = getSelectedContext();
+        final ServerContext replacedSelection = replacements.containsKey(selectedContext) ? replacements.get(selectedContext) : selectedContext;
+
+        removeServerContexts(new ArrayList<ServerContext>(replacements.keySet()));
+        addServerContexts(new ArrayList<ServerContext>(replacements.values()));
+
+        select(replacedSelection);
+    }
+
     public void setSelectionConverter(TableModelSelectionConverter converter) {
         this.converter = converter;
     }
@@ -146,6 +211,7 @@ public class ServerContextTableModel extends AbstractTableModel {
     public void clearRows() {
         filteredRows = null;
         rows.clear();
+        searchKeys.clear();
         super.fireTableDataChanged();
     }
 
@@ -221,11 +287,13 @@ public class ServerContextTableModel extends AbstractTableModel {
     }
 
     public boolean hasFilter() {
-        return StringUtils.isNotEmpty(this.filter);
+        return searchFilter.hasFilter();
     }
 
     public void setFilter(final String filter) {
-        this.filter = filter;
+        if (!searchFilter.setFilter(filter)) {
+            return;
+        }
 
         // Remember selection
         final ServerContext selectedContext = getSelectedContext();
@@ -241,25 +309,30 @@ public class ServerContextTableModel extends AbstractTableModel {
         if (!hasFilter()) {
             filteredRows = null;
         } else {
-            filteredRows = Lists.newArrayList(Collections2.filter(rows, new Predicate<ServerContext>() {
-                @Override
-                public boolean apply(ServerContext repositoryRow) {
-                    return rowContains(repositoryRow);
+            // when characters were only added to the filter just the rows that matched before need to be checked
+            final List<ServerContext> candidates = searchFilter.isNarrowing() && filteredRows != null ? filteredRows : rows;
+            final List<ServerContext> matches = new ArrayList<ServerContext>(candidates.size());
+            for (final ServerContext context : candidates) {
+                if (rowContains(context)) {
+                    matches.add(context);
                 }
-            }));
+            }
+            filteredRows = matches;
         }
         super.fireTableDataChanged();
     }
 
-    private boolean rowContains(ServerContext repositoryRow) {
-        // search for the string in a case insensitive way
-        // check each column for a match, if any column contains the string the result is true
-        for (int c = 0; c < columns.length; c++) {
-            if (StringUtils.containsIgnoreCase(getValueFor(repositoryRow, c), filter)) {
-                return true;
+    private boolean rowContains(final ServerContext repositoryRow) {
+        // the search key holds the lowercase values of all the columns
+        String searchKey = searchKeys.get(repositoryRow);
+        if (searchKey == null) {
+            final String[] values = new String[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                values[c] = getValueFor(repositoryRow, c);
             }
+            searchKey = SearchFilter.createSearchKey(values);
+            searchKeys.put(repositoryRow, searchKey);
         }
-
-        return false;
+        return searchFilter.matches(searchKey);
     }
 }
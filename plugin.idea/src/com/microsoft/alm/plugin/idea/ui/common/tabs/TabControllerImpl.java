@@ -69,6 +69,11 @@ public abstract class TabControllerImpl<T extends TabModel> implements TabContro
             return;
         }
 
+        if (EventContextHelper.isOtherRepository(contextMap, model.getRepositoryRemoteUrl())) {
+            // Something changed on the server, but not for our repository
+            return;
+        }
+
         // Push back onto the UI thread and refresh the model
         IdeaHelper.runOnUIThread(new Runnable() {
             @Override
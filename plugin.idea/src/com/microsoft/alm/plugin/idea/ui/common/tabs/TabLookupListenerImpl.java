@@ -41,13 +41,20 @@ public abstract class TabLookupListenerImpl implements Operation.Listener {
     protected void loadData(final Operation activeOperation, final Operation.Inputs inputs) {
         assert activeOperation != null;
         if (model.getTabStatus() != VcsTabStatus.LOADING_IN_PROGRESS) {
-            this.model.clearData();
+            prepareForLoad();
             this.activeOperation = activeOperation;
             this.activeOperation.addListener(this);
             this.activeOperation.doWorkAsync(inputs);
         }
     }
 
+    /**
+     * Called before a lookup starts, clears the data shown by default
+     */
+    protected void prepareForLoad() {
+        model.clearData();
+    }
+
     @Override
     public void notifyLookupStarted() {
         IdeaHelper.runOnUIThread(new Runnable() {
@@ -23,6 +23,11 @@ public interface TabModel<T extends FilteredModel> {
 
     void openGitRepoLink();
 
+    /**
+     * Returns the remote url of the project's Team Services repository or null if there isn't one
+     */
+    String getRepositoryRemoteUrl();
+
     T getModelForView();
 
     void loadData();
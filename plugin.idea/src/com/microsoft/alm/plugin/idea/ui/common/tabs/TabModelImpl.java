@@ -79,6 +79,11 @@ public abstract class TabModelImpl<T extends FilteredModel> extends AbstractMode
         }
     }
 
+    public String getRepositoryRemoteUrl() {
+        final GitRepository repository = TfGitHelper.getTfGitRepository(project);
+        return repository != null ? TfGitHelper.getTfGitRemoteUrl(repository) : null;
+    }
+
     public void loadData() {
         if (isTfGitRepository()) {
             dataProvider.loadData(TfGitHelper.getTfGitRemoteUrl(gitRepository), getOperationInputs());
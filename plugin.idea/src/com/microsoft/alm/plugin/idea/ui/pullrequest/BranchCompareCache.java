@@ -0,0 +1,171 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.pullrequest;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.vcs.VcsException;
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.exceptions.TeamServicesException;
+import com.microsoft.alm.plugin.operations.SingleFlight;
+import git4idea.util.GitCommitCompareInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last branch comparisons made for the create pull request dialog. A comparison is keyed by the
+ * repository root and the commit hashes of both branches, so a cached one is right for as long as neither branch
+ * moves and switching back to a target branch that was already compared doesn't diff the branches again.
+ * <p/>
+ * The entries of a repository are dropped when it changes since the branches they were made for have probably moved.
+ * <p/>
+ * A comparison that joins one already loading by another dialog loads it again if that dialog cancels its load.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class BranchCompareCache {
+    private static final Logger logger = LoggerFactory.getLogger(BranchCompareCache.class);
+
+    // the diff of a big branch can hold thousands of changes, so only keep a few
+    static final int MAX_ENTRIES = 20;
+
+    public interface Loader {
+        GitCommitCompareInfo load() throws VcsException;
+    }
+
+    private final Map<String, GitCommitCompareInfo> entries = new LinkedHashMap<String, GitCommitCompareInfo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, GitCommitCompareInfo> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private static class Holder {
+        private static final BranchCompareCache INSTANCE = new BranchCompareCache();
+    }
+
+    public static BranchCompareCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected BranchCompareCache() {
+    }
+
+    /**
+     * Returns the comparison of the commits, loading it if it isn't cached. The same comparison is only loaded once
+     * at a time. Comparisons of a missing commit aren't cached. Throws ProcessCanceledException if the caller's own
+     * progress indicator is canceled.
+     */
+    public GitCommitCompareInfo get(final String rootPath, final String sourceHash, final String targetHash,
+                                    final Loader loader) throws VcsException {
+        ArgumentHelper.checkNotNull(loader, "loader");
+        if (rootPath == null || sourceHash == null || targetHash == null) {
+            return loader.load();
+        }
+
+        final String key = getKey(rootPath, sourceHash, targetHash);
+        synchronized (entries) {
+            final GitCommitCompareInfo compareInfo = entries.get(key);
+            if (compareInfo != null) {
+                hitCount.incrementAndGet();
+                return compareInfo;
+            }
+        }
+        missCount.incrementAndGet();
+
+        GitCommitCompareInfo compareInfo;
+        while (true) {
+            final boolean[] loadedHere = new boolean[]{false};
+            try {
+                compareInfo = SingleFlight.getInstance().execute(SingleFlight.key("getBranchCompareInfo", key),
+                        new Callable<GitCommitCompareInfo>() {
+                            @Override
+                            public GitCommitCompareInfo call() throws VcsException {
+                                loadedHere[0] = true;
+                                return loader.load();
+                            }
+                        });
+                break;
+            } catch (ProcessCanceledException e) {
+                // the load we joined runs under the progress indicator of the comparison that started it,
+                // so it is canceled along with that comparison even though ours is still wanted
+                if (loadedHere[0]) {
+                    throw e;
+                }
+                logger.info("get: the comparison we joined was canceled, loading it again");
+            } catch (TeamServicesException e) {
+                if (e.getCause() instanceof VcsException) {
+                    throw (VcsException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        if (compareInfo != null) {
+            synchronized (entries) {
+                entries.put(key, compareInfo);
+            }
+        }
+        return compareInfo;
+    }
+
+    /**
+     * Drops the comparisons made in the repository
+     */
+    public void invalidate(final String rootPath) {
+        if (rootPath == null) {
+            return;
+        }
+
+        final String prefix = rootPath + "|";
+        int count = 0;
+        synchronized (entries) {
+            final Iterator<String> iterator = entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().startsWith(prefix)) {
+                    iterator.remove();
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            logger.info("invalidate: dropped {} branch comparisons", count);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static String getKey(final String rootPath, final String sourceHash, final String targetHash) {
+        return rootPath + "|" + sourceHash + "|" + targetHash;
+    }
+}
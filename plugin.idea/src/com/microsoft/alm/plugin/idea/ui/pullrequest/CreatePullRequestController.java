@@ -61,8 +61,13 @@ public class CreatePullRequestController implements Observer, ActionListener {
         // before we show the dialog, let's do a sanity check.  This is the last chance to
         // exit out the dialog, but the sanity check method should handle displaying all errors to users
         // as the dialog isn't shown yet
-        if (this.sanityCheckOnModel()) {
-            this.createDialog.showAndGet();
+        try {
+            if (this.sanityCheckOnModel()) {
+                this.createDialog.showAndGet();
+            }
+        } finally {
+            // stop calculating the diff for a dialog that is gone
+            this.createModel.dispose();
         }
     }
 
@@ -63,6 +63,7 @@ public class CreatePullRequestForm implements BasicForm {
     private JSplitPane splitPane;
 
     private boolean initialized = false;
+    private boolean diffPending = false;
 
     @Override
     public JPanel getContentPanel() {
@@ -172,6 +173,7 @@ public class CreatePullRequestForm implements BasicForm {
     public void setLoading(boolean loading) {
         if (loading) {
             this.quickDiffPane.removeAll();
+            this.diffPending = false;
             this.spinnerPanel.setVisible(true);
             this.spinner.start(true);
         } else {
@@ -188,22 +190,37 @@ public class CreatePullRequestForm implements BasicForm {
                                               @NotNull final GitRepository gitRepository,
                                               @NotNull final String sourceBranchBeingCompared,
                                               @NotNull final String targetBranchBeingCompared,
-                                              @NotNull final GitCommitCompareInfo myCompareInfo) {
+                                              @NotNull final GitCommitCompareInfo myCompareInfo,
+                                              final boolean diffLoaded) {
         final GitRemoteBranch gitRemoteBranch = this.getSelectedRemoteBranch();
         final String currBranch = this.sourceBranch.getText();
 
         if (gitRemoteBranch != null && StringUtils.equals(gitRemoteBranch.getName(), targetBranchBeingCompared)
                 && StringUtils.isNotEmpty(currBranch) && StringUtils.equals(currBranch, sourceBranchBeingCompared)) {
 
+            // the commits of this comparison are already shown, only the changes were missing
+            if (diffPending && diffLoaded && quickDiffPane.getTabCount() == 2) {
+                diffPending = false;
+                this.quickDiffPane.setComponentAt(0, createDiffPaneBrowser(project, myCompareInfo));
+                return;
+            }
+
             this.quickDiffPane.removeAll();
 
-            JComponent myDiffPanel = createDiffPaneBrowser(project, myCompareInfo);
+            JComponent myDiffPanel = diffLoaded ? createDiffPaneBrowser(project, myCompareInfo)
+                    : new JLabel(TfPluginBundle.message(TfPluginBundle.KEY_CREATE_PR_CHANGES_PANE_LOADING), JLabel.CENTER);
             this.quickDiffPane.addTab(TfPluginBundle.message(TfPluginBundle.KEY_CREATE_PR_CHANGES_PANE_TITLE),
                     AllIcons.Actions.Diff, myDiffPanel);
 
             JComponent myCommitsPanel = createCommitsListPane(project, gitRepository, myCompareInfo);
             this.quickDiffPane.addTab(TfPluginBundle.message(TfPluginBundle.KEY_CREATE_PR_COMMITS_PANE_TITLE),
                     AllIcons.Actions.Commit, myCommitsPanel);
+
+            diffPending = !diffLoaded;
+            if (diffPending) {
+                // show what we have while the changes are calculated
+                this.quickDiffPane.setSelectedIndex(1);
+            }
         }
     }
 
@@ -4,15 +4,10 @@
 package com.microsoft.alm.plugin.idea.ui.pullrequest;
 
 import com.google.common.base.Predicate;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Collections2;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.ide.BrowserUtil;
 import com.intellij.notification.Notification;
@@ -22,6 +17,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.progress.PerformInBackgroundOption;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
@@ -63,8 +59,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
 
 import static com.microsoft.alm.plugin.idea.ui.pullrequest.PullRequestHelper.PRCreateStatus;
 
@@ -103,11 +98,8 @@ public class CreatePullRequestModel extends AbstractModel {
     /* UI properties */
     private boolean loading = false;
     private GitChangesContainer localBranchChanges;
-
-    private final LoadingCache<Pair<String, String>, GitCommitCompareInfo> diffCache;
-
-    /* Executor service for running diff calculating Futures */
-    private final ListeningExecutorService executorService;
+    // the comparison the default title and description were made for
+    private String defaultsComparison;
 
     private ApplicationProvider applicationProvider;
 
@@ -126,28 +118,6 @@ public class CreatePullRequestModel extends AbstractModel {
         this.pullRequestHelper = new PullRequestHelper();
 
         this.diffCompareInfoProvider = new DiffCompareInfoProvider();
-        this.diffCache = CacheBuilder.newBuilder().maximumSize(20)
-                .build(
-                        new CacheLoader<Pair<String, String>, GitCommitCompareInfo>() {
-                            @Override
-                            public GitCommitCompareInfo load(Pair<String, String> key) throws Exception {
-                                // if we missed the cache, then show the loading spinner, otherwise
-                                // just switch to the diff we have to avoid flickering the screen
-                                applicationProvider.invokeAndWaitWithAnyModality(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        // set the view to show loading
-                                        setLoading(true);
-                                    }
-                                });
-
-                                return getDiffCompareInfoProvider()
-                                        .getBranchCompareInfo(project, gitRepository, key.getFirst(), key.getSecond());
-                            }
-                        }
-                );
-
-        this.executorService = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
     }
 
     public Project getProject() {
@@ -298,6 +268,14 @@ public class CreatePullRequestModel extends AbstractModel {
      * @return gitChangesContainer on what has changed on source branch
      */
     GitChangesContainer getMyChangesCompareInfo() throws VcsException {
+        return getMyChangesCompareInfo(false);
+    }
+
+    /**
+     * When showCommitsFirst is true, the commits are shown as soon as they are known and the changes follow once
+     * the diff is calculated, which can take a while on branches with thousands of changed files
+     */
+    private GitChangesContainer getMyChangesCompareInfo(final boolean showCommitsFirst) throws VcsException {
 
         final GitBranch currBranch = this.getSourceBranch();
 
@@ -313,17 +291,116 @@ public class CreatePullRequestModel extends AbstractModel {
         final String remoteBranchHash = GeneralGitHelper.getLastCommitHash(project, gitRepository, selectedRemoteBranch);
         final String currBranchHash = GeneralGitHelper.getLastCommitHash(project, gitRepository, currBranch);
 
-        try {
-            GitCommitCompareInfo changes
-                    = this.diffCache.get(new Pair<String, String>(currBranchHash, remoteBranchHash));
+        // switching back to a branch that was already compared reuses the comparison
+        final GitCommitCompareInfo changes = BranchCompareCache.getInstance().get(getRootPath(), currBranchHash, remoteBranchHash,
+                new BranchCompareCache.Loader() {
+                    @Override
+                    public GitCommitCompareInfo load() throws VcsException {
+                        // if we missed the cache, then show the loading spinner, otherwise
+                        // just switch to the diff we have to avoid flickering the screen
+                        applicationProvider.invokeAndWaitWithAnyModality(new Runnable() {
+                            @Override
+                            public void run() {
+                                // set the view to show loading
+                                setLoading(true);
+                            }
+                        });
+
+                        final DiffCompareInfoProvider.CompareListener listener = !showCommitsFirst ? null
+                                : new DiffCompareInfoProvider.CompareListener() {
+                            @Override
+                            public void onMessagesLoaded(final int commitCount,
+                                                         final List<GitPlumbing.CommitMessage> newestCommits) {
+                                applicationProvider.invokeAndWaitWithAnyModality(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        if (isUpToDate(currBranch.getName(), selectedRemoteBranch.getName())) {
+                                            setDefaultTitleAndDescription(currBranchHash, remoteBranchHash,
+                                                    commitCount, newestCommits);
+                                        }
+                                    }
+                                });
+                            }
+
+                            @Override
+                            public void onCommitsLoaded(final GitCommitCompareInfo commitsOnly) {
+                                final GitChangesContainer commitsContainer = GitChangesContainer.createChangesContainer(
+                                        currBranch.getName(), selectedRemoteBranch.getName(),
+                                        currBranchHash, remoteBranchHash, commitsOnly, gitRepository);
+                                commitsContainer.setDiffLoaded(false);
+                                applicationProvider.invokeAndWaitWithAnyModality(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        showChanges(commitsContainer);
+                                    }
+                                });
+                            }
+                        };
+
+                        return getDiffCompareInfoProvider()
+                                .getBranchCompareInfo(project, gitRepository, currBranchHash, remoteBranchHash, listener);
+                    }
+                });
 
-            return GitChangesContainer.createChangesContainer(currBranch.getName(), selectedRemoteBranch.getName(),
-                    currBranchHash, remoteBranchHash, changes, this.gitRepository);
-        } catch (ExecutionException e) {
-            throw new VcsException(e.getCause());
+        return GitChangesContainer.createChangesContainer(currBranch.getName(), selectedRemoteBranch.getName(),
+                currBranchHash, remoteBranchHash, changes, this.gitRepository);
+    }
+
+    /**
+     * Updates the view with the calculated changes, but only if they are still up to date -- the user
+     * may have selected another branch while we were busy calculating them. The default title and description
+     * only need the commits, so they are filled in as soon as the commits are known.
+     */
+    private void showChanges(final GitChangesContainer changesContainer) {
+        if (changesContainer == null || !isChangesUpToDate(changesContainer)) {
+            return;
+        }
+
+        setLoading(false);
+
+        final GitCommitCompareInfo compareInfo = changesContainer.getGitCommitCompareInfo();
+        if (compareInfo != null) {
+            final List<GitCommit> commits = compareInfo.getBranchToHeadCommits(changesContainer.getGitRepository());
+            if (commits != null) {
+                setDefaultTitleAndDescription(changesContainer.getSourceBranchHash(),
+                        changesContainer.getTargetBranchHash(), commits.size(),
+                        pullRequestHelper.getNewestMessages(commits));
+            }
+        }
+
+        setLocalBranchChanges(changesContainer);
+    }
+
+    /**
+     * Fills in the default title and description once per comparison, so what the user typed after they were
+     * filled in isn't overwritten when the rest of the same comparison comes in
+     */
+    private void setDefaultTitleAndDescription(final String sourceHash, final String targetHash, final int commitCount,
+                                               final List<GitPlumbing.CommitMessage> newestCommits) {
+        final String comparison = sourceHash + ".." + targetHash;
+        if (sourceHash != null && targetHash != null && comparison.equals(defaultsComparison)) {
+            return;
+        }
+
+        final GitLocalBranch sourceBranch = getSourceBranch();
+        final GitRemoteBranch targetBranch = getTargetBranch();
+
+        if (sourceBranch != null && targetBranch != null && sourceBranch.getName() != null
+                && targetBranch.getNameForRemoteOperations() != null) {
+            final String defaultTitle = pullRequestHelper.createDefaultTitle(commitCount, newestCommits,
+                    sourceBranch.getName(), targetBranch.getNameForRemoteOperations());
+            setTitle(defaultTitle);
+
+            final String defaultDescription = pullRequestHelper.createDefaultDescription(commitCount, newestCommits);
+            setDescription(defaultDescription);
+            defaultsComparison = comparison;
         }
     }
 
+    private String getRootPath() {
+        return gitRepository.getRoot() != null ? gitRepository.getRoot().getPath() : null;
+    }
+
     /**
      * This method spawns a background thread to calculate the diff
      * <p/>
@@ -331,11 +408,12 @@ public class CreatePullRequestModel extends AbstractModel {
      */
     public void loadDiff() {
         if (this.getSourceBranch() != null && this.getTargetBranch() != null) {
-            ListenableFuture<GitChangesContainer> diffFuture = this.executorService.submit(new Callable<GitChangesContainer>() {
+            // starting a new comparison cancels the one for the previously selected target branch
+            ListenableFuture<GitChangesContainer> diffFuture = DiffExecutor.getInstance().submit(this, new Callable<GitChangesContainer>() {
                 @Override
                 public GitChangesContainer call() throws Exception {
                     // calculate the diffs
-                    return getMyChangesCompareInfo();
+                    return getMyChangesCompareInfo(true);
                 }
             });
 
@@ -344,40 +422,17 @@ public class CreatePullRequestModel extends AbstractModel {
                     applicationProvider.invokeAndWaitWithAnyModality(new Runnable() {
                         @Override
                         public void run() {
-                            // try to update the view to show diff, but only if the calculated diff
-                            // is still upto date -- make sure user didn't select another branch
-                            // while we were busy calculating the diffs
-                            if (changesContainer != null && isChangesUpToDate(changesContainer)) {
-                                setLoading(false);
-
-                                final GitCommitCompareInfo compareInfo = changesContainer.getGitCommitCompareInfo();
-                                if (compareInfo != null) {
-                                    List<GitCommit> commits
-                                            = compareInfo.getBranchToHeadCommits(changesContainer.getGitRepository());
-
-                                    final GitLocalBranch sourceBranch = getSourceBranch();
-                                    final GitRemoteBranch targetBranch = getTargetBranch();
-
-                                    if (commits != null && sourceBranch.getName() != null
-                                            && targetBranch.getNameForRemoteOperations() != null) {
-                                        final String defaultTitle = pullRequestHelper.createDefaultTitle(commits,
-                                                sourceBranch.getName(),
-                                                targetBranch.getNameForRemoteOperations());
-                                        setTitle(defaultTitle);
-
-                                        final String defaultDescription
-                                                = pullRequestHelper.createDefaultDescription(commits);
-                                        setDescription(defaultDescription);
-                                    }
-                                }
-
-                                setLocalBranchChanges(changesContainer);
-                            }
+                            showChanges(changesContainer);
                         }
                     });
                 }
 
                 public void onFailure(final Throwable thrown) {
+                    if (thrown instanceof CancellationException || thrown instanceof ProcessCanceledException) {
+                        // a newer comparison replaced this one or the dialog was closed
+                        logger.info("loadDiff: comparison canceled");
+                        return;
+                    }
                     logger.warn("onFailure in loadDiff", thrown);
 
                     applicationProvider.invokeAndWaitWithAnyModality(new Runnable() {
@@ -404,6 +459,13 @@ public class CreatePullRequestModel extends AbstractModel {
         }
     }
 
+    /**
+     * Cancels the diff still being calculated, called when the dialog is closed
+     */
+    public void dispose() {
+        DiffExecutor.getInstance().cancel(this);
+    }
+
     /**
      * Create pull request on a background thread
      * <p/>
@@ -585,19 +647,23 @@ public class CreatePullRequestModel extends AbstractModel {
 
     /* if user has changed the dropdown while we calculate the diff, this diff is out of date */
     private boolean isChangesUpToDate(final GitChangesContainer changesContainer) {
+        return isUpToDate(changesContainer.getSourceBranchName(), changesContainer.getTargetBranchName());
+    }
+
+    private boolean isUpToDate(final String sourceBranchName, final String targetBranchName) {
 
         // target branches must match
         final GitRemoteBranch targetBranch = this.getTargetBranch();
-        if (changesContainer.getTargetBranchName() != null && targetBranch != null) {
-            if (!changesContainer.getTargetBranchName().equals(targetBranch.getName())) {
+        if (targetBranchName != null && targetBranch != null) {
+            if (!targetBranchName.equals(targetBranch.getName())) {
                 return false;
             }
         }
 
         // source branches must match
         final GitLocalBranch sourceBranch = this.getSourceBranch();
-        if (changesContainer.getSourceBranchName() != null && sourceBranch != null) {
-            if (!changesContainer.getSourceBranchName().equals(sourceBranch.getName())) {
+        if (sourceBranchName != null && sourceBranch != null) {
+            if (!sourceBranchName.equals(sourceBranch.getName())) {
                 return false;
             }
         }
@@ -3,6 +3,7 @@
 
 package com.microsoft.alm.plugin.idea.ui.pullrequest;
 
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vcs.VcsException;
@@ -14,6 +15,8 @@ import git4idea.changes.GitChangeUtils;
 import git4idea.history.GitHistoryUtils;
 import git4idea.repo.GitRepository;
 import git4idea.util.GitCommitCompareInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -23,46 +26,162 @@ import java.util.List;
  * Compare information provider
  * <p/>
  * Calculate commits and diff information from git4idea utilities
+ * <p/>
+ * Before asking git4idea for the commits and the diff, which parse every commit and change into objects,
+ * git plumbing is used to read the few messages the default title and description need, and to find out if there
+ * is anything to load at all. Empty branches and diffs are skipped. If plumbing fails the git4idea path is used as before.
  */
 public class DiffCompareInfoProvider {
+    private static final Logger logger = LoggerFactory.getLogger(DiffCompareInfoProvider.class);
+
+    public static final String PROP_USE_GIT_PLUMBING = "com.microsoft.alm.plugin.idea.pullrequest.useGitPlumbing";
 
     private GitUtilWrapper utilWrapper;
+    private boolean useGitPlumbing;
 
     public DiffCompareInfoProvider() {
         this.utilWrapper = new GitUtilWrapper();
+        this.useGitPlumbing = Boolean.parseBoolean(System.getProperty(PROP_USE_GIT_PLUMBING, "true"));
+    }
+
+    /**
+     * Gets told about the stages of a comparison as they finish
+     */
+    public interface CompareListener {
+        /**
+         * Called once the number of commits on the source branch and the messages of the newest ones are known,
+         * which is enough for the default title and description. Only called when git plumbing is used.
+         */
+        void onMessagesLoaded(int commitCount, List<GitPlumbing.CommitMessage> newestCommits);
+
+        /**
+         * Called once the commits are known but before the diff is calculated, which is the slow part
+         * on big branches. The compare info has the commits and an empty diff.
+         */
+        void onCommitsLoaded(GitCommitCompareInfo commitsOnly);
     }
 
     public GitCommitCompareInfo getBranchCompareInfo(final Project project, final GitRepository gitRepository,
                                                      final String source, final String target)
             throws VcsException {
+        return getBranchCompareInfo(project, gitRepository, source, target, null);
+    }
+
+    public GitCommitCompareInfo getBranchCompareInfo(final Project project, final GitRepository gitRepository,
+                                                     final String source, final String target,
+                                                     final CompareListener listener)
+            throws VcsException {
+        long start = System.currentTimeMillis();
         final GitRevisionNumber commonParentRevision = getUtilWrapper().getMergeBase(project,
                 gitRepository.getRoot(), target, source);
+        final long mergeBaseTime = System.currentTimeMillis() - start;
 
         final String commonParentHash = (commonParentRevision != null) ? commonParentRevision.getRev() : null;
 
         if (commonParentHash == null) {
+            logger.info("getBranchCompareInfo: no merge base found in {} ms", mergeBaseTime);
             return getEmptyDiff(gitRepository);
         }
 
-        return getCompareInfo(project, gitRepository, source, commonParentHash);
-    }
-
-    private GitCommitCompareInfo getCompareInfo(final Project project, final GitRepository gitRepository,
-                                                final String source, final String target)
-            throws VcsException {
         final VirtualFile root = gitRepository.getRoot();
-        final List<GitCommit> commits1 = getUtilWrapper().history(project, root, ".." + target);
-        final List<GitCommit> commits2 = getUtilWrapper().history(project, root, target + "..");
+        final String branchRange = commonParentHash + "..";
+        checkCanceled();
+        start = System.currentTimeMillis();
+        final int branchCommitCount = countCommits(project, root, branchRange);
+        if (listener != null && branchCommitCount > 0) {
+            final List<GitPlumbing.CommitMessage> newestCommits = getCommitMessages(project, root, branchRange);
+            if (newestCommits != null && !newestCommits.isEmpty()) {
+                listener.onMessagesLoaded(branchCommitCount, newestCommits);
+            }
+        }
+        final long summaryTime = System.currentTimeMillis() - start;
+
+        checkCanceled();
+        start = System.currentTimeMillis();
+        final List<GitCommit> commits1 = getUtilWrapper().history(project, root, ".." + commonParentHash);
+        checkCanceled();
+        final List<GitCommit> commits2 = getHistory(project, root, branchRange, branchCommitCount);
+        final long historyTime = System.currentTimeMillis() - start;
+
+        checkCanceled();
+        if (listener != null) {
+            final GitCommitCompareInfo commitsOnly = new GitCommitCompareInfo(GitCommitCompareInfo.InfoType.BRANCH_TO_HEAD);
+            commitsOnly.put(gitRepository, Collections.<Change>emptyList());
+            commitsOnly.put(gitRepository, new Pair<List<GitCommit>, List<GitCommit>>(commits1, commits2));
+            listener.onCommitsLoaded(commitsOnly);
+        }
 
-        final Collection<Change> diff = getUtilWrapper().getDiff(project, root, target, source);
-        final GitCommitCompareInfo info = new GitCommitCompareInfo(GitCommitCompareInfo.InfoType.BRANCH_TO_HEAD);
+        checkCanceled();
+        start = System.currentTimeMillis();
+        final Collection<Change> diff = getDiff(project, root, commonParentHash, source);
+        final long diffTime = System.currentTimeMillis() - start;
 
+        logger.info("getBranchCompareInfo: merge base {} ms, summary {} ms, history {} ms ({} commits), diff {} ms ({} changes)",
+                mergeBaseTime, summaryTime, historyTime, commits2.size(), diffTime, diff.size());
+
+        final GitCommitCompareInfo info = new GitCommitCompareInfo(GitCommitCompareInfo.InfoType.BRANCH_TO_HEAD);
         info.put(gitRepository, diff);
         info.put(gitRepository, new Pair<List<GitCommit>, List<GitCommit>>(commits1, commits2));
 
         return info;
     }
 
+    /**
+     * Returns the number of commits in the range, or -1 if it isn't known
+     */
+    private int countCommits(final Project project, final VirtualFile root, final String range) {
+        if (useGitPlumbing) {
+            try {
+                return getUtilWrapper().countCommits(project, root, range);
+            } catch (VcsException e) {
+                logger.warn("countCommits: counting commits failed, loading them instead", e);
+            }
+        }
+        return -1;
+    }
+
+    private List<GitPlumbing.CommitMessage> getCommitMessages(final Project project, final VirtualFile root,
+                                                              final String range) {
+        try {
+            return getUtilWrapper().getCommitMessages(project, root, range, PullRequestHelper.DESCRIPTION_COMMITS_LIMIT);
+        } catch (VcsException e) {
+            logger.warn("getCommitMessages: reading the commit messages failed", e);
+            return null;
+        }
+    }
+
+    private List<GitCommit> getHistory(final Project project, final VirtualFile root, final String range,
+                                       final int commitCount) throws VcsException {
+        if (commitCount == 0) {
+            return Collections.emptyList();
+        }
+        return getUtilWrapper().history(project, root, range);
+    }
+
+    private Collection<Change> getDiff(final Project project, final VirtualFile root,
+                                       final String target, final String source) throws VcsException {
+        if (useGitPlumbing) {
+            try {
+                // comparing the trees is cheap, git4idea's diff is the most expensive git command of the comparison
+                if (getUtilWrapper().isSameTree(project, root, target, source)) {
+                    return Collections.emptyList();
+                }
+            } catch (VcsException e) {
+                logger.warn("getDiff: comparing the trees failed, loading the diff instead", e);
+            }
+        }
+        return getUtilWrapper().getDiff(project, root, target, source);
+    }
+
+    /**
+     * Stops the comparison between git commands once it has been canceled
+     */
+    private void checkCanceled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ProcessCanceledException();
+        }
+    }
+
     /**
      * Return zero-length list of commits and diffs
      * <p/>
@@ -100,6 +219,22 @@ public class DiffCompareInfoProvider {
                 throws VcsException {
             return GitChangeUtils.getDiff(project, root, target, source, null);
         }
+
+        public int countCommits(final Project project, final VirtualFile root, final String range)
+                throws VcsException {
+            return new GitPlumbing(project, root).countCommits(range);
+        }
+
+        public List<GitPlumbing.CommitMessage> getCommitMessages(final Project project, final VirtualFile root,
+                                                                 final String range, final int maxCount)
+                throws VcsException {
+            return new GitPlumbing(project, root).getCommitMessages(range, maxCount);
+        }
+
+        public boolean isSameTree(final Project project, final VirtualFile root, final String from, final String to)
+                throws VcsException {
+            return new GitPlumbing(project, root).isSameTree(from, to);
+        }
     }
 
     public GitUtilWrapper getUtilWrapper() {
@@ -109,4 +244,12 @@ public class DiffCompareInfoProvider {
     public void setUtilWrapper(GitUtilWrapper utilWrapper) {
         this.utilWrapper = utilWrapper;
     }
+
+    public boolean isUseGitPlumbing() {
+        return useGitPlumbing;
+    }
+
+    public void setUseGitPlumbing(final boolean useGitPlumbing) {
+        this.useGitPlumbing = useGitPlumbing;
+    }
 }
@@ -0,0 +1,176 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.pullrequest;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the branch comparisons of the create pull request dialogs on a small shared pool.
+ * <p/>
+ * Each owner (a dialog's model) only has one comparison running at a time: submitting a new one cancels the
+ * previous one, since the user picked another target branch and its result would be thrown away anyway.
+ * A comparison runs under its own progress indicator, so canceling it also cancels the git commands it is running,
+ * and the comparison stops before starting its next git command. The owner cancels its last comparison when the
+ * dialog goes away.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class DiffExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(DiffExecutor.class);
+
+    // comparing branches is mostly waiting on git, a couple of threads is plenty even with several dialogs open
+    static final int MAX_THREADS = 2;
+    private static final int THREAD_TIMEOUT_SECONDS = 5;
+
+    private final ListeningExecutorService executorService;
+    private final Map<Object, Comparison> running = new HashMap<Object, Comparison>();
+
+    private static class Holder {
+        private static final DiffExecutor INSTANCE = new DiffExecutor(MAX_THREADS);
+    }
+
+    public static DiffExecutor getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected DiffExecutor(final int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads");
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, THREAD_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "PullRequestDiff-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // idle threads go away so closed dialogs don't leave anything behind
+        executor.allowCoreThreadTimeOut(true);
+        this.executorService = MoreExecutors.listeningDecorator(executor);
+    }
+
+    /**
+     * Starts the comparison, canceling the one the owner started before if it is still running
+     */
+    public <T> ListenableFuture<T> submit(final Object owner, final Callable<T> callable) {
+        ArgumentHelper.checkNotNull(owner, "owner");
+        ArgumentHelper.checkNotNull(callable, "callable");
+
+        // the comparison is registered before it is submitted, so one that finishes right away can't leave it behind
+        final Comparison comparison = new Comparison();
+        final Comparison previous;
+        synchronized (running) {
+            previous = running.put(owner, comparison);
+        }
+        if (previous != null) {
+            logger.info("submit: canceling the previous comparison");
+            previous.cancel();
+        }
+
+        final ListenableFuture<T> future = executorService.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                try {
+                    return comparison.run(callable);
+                } finally {
+                    synchronized (running) {
+                        if (running.get(owner) == comparison) {
+                            running.remove(owner);
+                        }
+                    }
+                }
+            }
+        });
+        comparison.setFuture(future);
+        return future;
+    }
+
+    /**
+     * Cancels the comparison the owner has running, if any
+     */
+    public void cancel(final Object owner) {
+        final Comparison comparison;
+        synchronized (running) {
+            comparison = running.remove(owner);
+        }
+        if (comparison != null) {
+            logger.info("cancel: canceling the running comparison");
+            comparison.cancel();
+        }
+    }
+
+    /**
+     * Returns the number of owners with a comparison queued or running
+     */
+    public int getRunningCount() {
+        synchronized (running) {
+            return running.size();
+        }
+    }
+
+    private static class Comparison {
+        private final ProgressIndicator indicator = new EmptyProgressIndicator();
+        private volatile ListenableFuture<?> future;
+
+        public <T> T run(final Callable<T> callable) throws Exception {
+            final Object[] result = new Object[1];
+            final Exception[] error = new Exception[1];
+            ProgressManager.getInstance().runProcess(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result[0] = callable.call();
+                    } catch (Exception e) {
+                        error[0] = e;
+                    }
+                }
+            }, indicator);
+
+            if (error[0] != null) {
+                throw error[0];
+            }
+            @SuppressWarnings("unchecked")
+            final T value = (T) result[0];
+            return value;
+        }
+
+        public void setFuture(final ListenableFuture<?> future) {
+            this.future = future;
+            // the comparison may have been canceled before it was submitted
+            if (indicator.isCanceled()) {
+                future.cancel(true);
+            }
+        }
+
+        public void cancel() {
+            indicator.cancel();
+            final ListenableFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
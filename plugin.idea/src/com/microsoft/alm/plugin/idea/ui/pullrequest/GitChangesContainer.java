@@ -18,6 +18,8 @@ public class GitChangesContainer {
     private String targetBranchHash;
     private GitCommitCompareInfo gitCommitCompareInfo;
     private GitRepository gitRepository;
+    // false while only the commits are known and the diff is still being calculated
+    private boolean diffLoaded = true;
 
     public static GitChangesContainer createChangesContainer(final String sourceBranchName, final String targetBranchName,
                                                              final String sourceBranchHash, final String targetBranchHash,
@@ -74,6 +76,14 @@ public class GitChangesContainer {
         this.gitCommitCompareInfo = gitCommitCompareInfo;
     }
 
+    public boolean isDiffLoaded() {
+        return diffLoaded;
+    }
+
+    public void setDiffLoaded(final boolean diffLoaded) {
+        this.diffLoaded = diffLoaded;
+    }
+
     public GitRepository getGitRepository() {
         return gitRepository;
     }
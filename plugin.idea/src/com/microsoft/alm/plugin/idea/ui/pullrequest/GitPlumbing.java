@@ -0,0 +1,218 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.pullrequest;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import git4idea.commands.GitCommand;
+import git4idea.commands.GitSimpleHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the git plumbing commands a branch comparison can answer without git4idea's history and change parsing,
+ * which builds full commit and change objects for every entry. Only the fields that are shown are asked for and
+ * the output is scanned in place instead of being split into lines and matched against patterns.
+ */
+public class GitPlumbing {
+    private static final char NUL = '\0';
+
+    private final Project project;
+    private final VirtualFile root;
+
+    /**
+     * A changed file as reported by git diff --name-status
+     */
+    public static class FileStatus {
+        private final char status;
+        private final String path;
+        private final String oldPath;
+
+        public FileStatus(final char status, final String path, final String oldPath) {
+            this.status = status;
+            this.path = path;
+            this.oldPath = oldPath;
+        }
+
+        /**
+         * Returns the kind of change: A, C, D, M, R, T, U or X
+         */
+        public char getStatus() {
+            return status;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the path before the file was renamed or copied, null otherwise
+         */
+        public String getOldPath() {
+            return oldPath;
+        }
+    }
+
+    /**
+     * The messages of a commit as reported by git log
+     */
+    public static class CommitMessage {
+        private final String subject;
+        private final String fullMessage;
+
+        public CommitMessage(final String subject, final String fullMessage) {
+            this.subject = subject;
+            this.fullMessage = fullMessage;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getFullMessage() {
+            return fullMessage;
+        }
+    }
+
+    GitPlumbing(final Project project, final VirtualFile root) {
+        this.project = project;
+        this.root = root;
+    }
+
+    /**
+     * Returns the number of commits in the range without loading them
+     */
+    public int countCommits(final String range) throws VcsException {
+        return parseCount(run(GitCommand.REV_LIST, "--count", range));
+    }
+
+    /**
+     * Returns true if both commits have the same tree, which means there is no diff between them.
+     * This only resolves two object names, so it is much cheaper than listing the changes.
+     */
+    public boolean isSameTree(final String from, final String to) throws VcsException {
+        final String output = run(GitCommand.REV_PARSE, from + "^{tree}", to + "^{tree}");
+        final String[] trees = output != null ? output.trim().split("\\s+") : new String[0];
+        if (trees.length != 2) {
+            throw new VcsException("Unexpected tree hashes: " + output);
+        }
+        return trees[0].equals(trees[1]);
+    }
+
+    /**
+     * Returns the files that changed between the commits without building a change for each of them
+     */
+    public List<FileStatus> getChangeSummary(final String from, final String to) throws VcsException {
+        return parseNameStatus(run(GitCommand.DIFF, "--name-status", "-z", "-M", from, to));
+    }
+
+    /**
+     * Returns the messages of the newest commits in the range, without their changes
+     */
+    public List<CommitMessage> getCommitMessages(final String range, final int maxCount) throws VcsException {
+        return parseCommitMessages(run(GitCommand.LOG, "--max-count=" + maxCount, "--encoding=UTF-8",
+                "--format=%s%x00%B%x00", range));
+    }
+
+    protected String run(final GitCommand command, final String... parameters) throws VcsException {
+        final GitSimpleHandler handler = new GitSimpleHandler(project, root, command);
+        handler.setSilent(true);
+        handler.addParameters(parameters);
+        return handler.run();
+    }
+
+    static int parseCount(final String output) throws VcsException {
+        final String count = output != null ? output.trim() : null;
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            throw new VcsException("Unexpected commit count: " + count);
+        }
+    }
+
+    /**
+     * Parses the output of git log --format=%s%x00%B%x00, the subject and full message of each commit
+     * separated by NUL with a line break after each commit
+     */
+    static List<CommitMessage> parseCommitMessages(final String output) throws VcsException {
+        if (output == null || output.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<CommitMessage> messages = new ArrayList<CommitMessage>();
+        final int length = output.length();
+        int start = 0;
+        while (start < length) {
+            if (output.charAt(start) == '\n') {
+                start++;
+                continue;
+            }
+
+            int end = indexOfNul(output, start);
+            final String subject = output.substring(start, end);
+            start = end + 1;
+            end = indexOfNul(output, start);
+            // the full message ends with a line break
+            int messageEnd = end;
+            while (messageEnd > start && output.charAt(messageEnd - 1) == '\n') {
+                messageEnd--;
+            }
+            messages.add(new CommitMessage(subject, output.substring(start, messageEnd)));
+            start = end + 1;
+        }
+        return messages;
+    }
+
+    /**
+     * Parses the output of git diff --name-status -z, which is a NUL separated list of status, path pairs.
+     * Renames and copies have a similarity score after the status letter and the old path before the new one.
+     */
+    static List<FileStatus> parseNameStatus(final String output) throws VcsException {
+        if (output == null || output.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<FileStatus> files = new ArrayList<FileStatus>();
+        final int length = output.length();
+        int start = 0;
+        while (start < length) {
+            // skip the line breaks some git versions leave between entries
+            final char status = output.charAt(start);
+            if (status == '\n') {
+                start++;
+                continue;
+            }
+
+            int end = indexOfNul(output, start);
+            start = end + 1;
+            end = indexOfNul(output, start);
+            final String path = output.substring(start, end);
+            start = end + 1;
+
+            if (status == 'R' || status == 'C') {
+                end = indexOfNul(output, start);
+                files.add(new FileStatus(status, output.substring(start, end), path));
+                start = end + 1;
+            } else {
+                files.add(new FileStatus(status, path, null));
+            }
+        }
+        return files;
+    }
+
+    private static int indexOfNul(final String output, final int start) throws VcsException {
+        final int index = output.indexOf(NUL, start);
+        if (index < 0) {
+            if (start < output.length()) {
+                // the last field may not be terminated
+                return output.length();
+            }
+            throw new VcsException("Unexpected end of git output");
+        }
+        return index;
+    }
+}
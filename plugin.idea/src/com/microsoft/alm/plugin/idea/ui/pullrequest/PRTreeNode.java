@@ -11,8 +11,8 @@ import javax.swing.tree.DefaultMutableTreeNode;
  * Tree Node to represent a GitPullRequest, or one of the parent nodes
  */
 public class PRTreeNode extends DefaultMutableTreeNode {
-    private final String name;
-    private final GitPullRequest gitPullRequest;
+    private String name;
+    private GitPullRequest gitPullRequest;
 
     public PRTreeNode(final GitPullRequest gitPullRequest) {
         super(gitPullRequest, false);
@@ -33,4 +33,14 @@ public class PRTreeNode extends DefaultMutableTreeNode {
     public GitPullRequest getGitPullRequest() {
         return gitPullRequest;
     }
+
+    /**
+     * Shows a newer copy of the pull request in this node so the node can stay in the tree across refreshes
+     */
+    public void setGitPullRequest(final GitPullRequest gitPullRequest) {
+        assert this.gitPullRequest != null && gitPullRequest != null;
+        setUserObject(gitPullRequest);
+        this.gitPullRequest = gitPullRequest;
+        this.name = gitPullRequest.getTitle();
+    }
 }
@@ -18,6 +18,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -40,6 +41,9 @@ public class PullRequestHelper {
     private static final String WEB_ACCESS_PR_FORMAT = "%s/pullrequest/%d#view=discussion";
     private static final String TF_REF_FORMATTER = "refs/heads/%s";
 
+    // the default title and description only look at this many commits
+    public static final int DESCRIPTION_COMMITS_LIMIT = 10;
+
     /**
      * Create a default title for pull request
      * <p/>
@@ -52,15 +56,24 @@ public class PullRequestHelper {
      */
     public String createDefaultTitle(final List<GitCommit> commits, final String sourceBranchName,
                                      final String targetBranchName) {
+        return createDefaultTitle(commits != null ? commits.size() : 0, getNewestMessages(commits),
+                sourceBranchName, targetBranchName);
+    }
+
+    /**
+     * Create a default title out of the number of commits and the messages of the newest ones, which is all
+     * that is needed to make it
+     */
+    public String createDefaultTitle(final int commitCount, final List<GitPlumbing.CommitMessage> newestCommits,
+                                     final String sourceBranchName, final String targetBranchName) {
 
-        if (commits == null || commits.isEmpty()) {
+        if (commitCount == 0 || newestCommits == null || newestCommits.isEmpty()) {
             return StringUtils.EMPTY;
         }
 
-        if (commits.size() == 1) {
+        if (commitCount == 1) {
             // if we only have one commit, use it's title as the title of pull request
-            final GitCommit commit = commits.get(0);
-            final String commitMessage = commit.getSubject();
+            final String commitMessage = newestCommits.get(0).getSubject();
 
             //WebAcess use 80 (because it's common code for many things, and 80 is such a magic number),
             //but IMHO 80 is too short for title, set it to 120
@@ -87,31 +100,36 @@ public class PullRequestHelper {
      * @return default Description
      */
     public String createDefaultDescription(final List<GitCommit> commits) {
-        if (commits == null || commits.isEmpty()) {
+        return createDefaultDescription(commits != null ? commits.size() : 0, getNewestMessages(commits));
+    }
+
+    /**
+     * Create a default description out of the number of commits and the messages of the newest ones
+     */
+    public String createDefaultDescription(final int commitCount, final List<GitPlumbing.CommitMessage> newestCommits) {
+        if (commitCount == 0 || newestCommits == null || newestCommits.isEmpty()) {
             return StringUtils.EMPTY;
         }
 
-        if (commits.size() == 1) {
-            final GitCommit commit = commits.get(0);
-            if (commit.getFullMessage().length() > CreatePullRequestModel.MAX_SIZE_DESCRIPTION) {
-                return commit.getFullMessage().substring(0, CreatePullRequestModel.MAX_SIZE_DESCRIPTION - 5) + "...";
+        if (commitCount == 1) {
+            final String fullMessage = newestCommits.get(0).getFullMessage();
+            if (fullMessage.length() > CreatePullRequestModel.MAX_SIZE_DESCRIPTION) {
+                return fullMessage.substring(0, CreatePullRequestModel.MAX_SIZE_DESCRIPTION - 5) + "...";
             }
 
-            return commit.getFullMessage();
+            return fullMessage;
         }
 
         final StringBuilder descBuilder = new StringBuilder();
         final String lineSeparator = System.getProperty("line.separator");
 
         // WebAccess limit, at most we look at the last 10 commits
-        final int descCommitsLimit = 10;
-        for (int i = 0; i < descCommitsLimit && i < commits.size(); ++i) {
-            final GitCommit commit = commits.get(i);
-            descBuilder.append("-").append(commit.getSubject()).append(lineSeparator);
+        for (int i = 0; i < DESCRIPTION_COMMITS_LIMIT && i < newestCommits.size(); ++i) {
+            descBuilder.append("-").append(newestCommits.get(i).getSubject()).append(lineSeparator);
         }
 
         // there is a chance there are more than 10 commits
-        if (commits.size() > descCommitsLimit) {
+        if (commitCount > DESCRIPTION_COMMITS_LIMIT) {
             descBuilder.append("...");
         }
 
@@ -121,6 +139,22 @@ public class PullRequestHelper {
                 ? descBuilder.toString() : descBuilder.substring(0, CreatePullRequestModel.MAX_SIZE_DESCRIPTION - 10);
     }
 
+    /**
+     * Returns the messages of the newest commits, which are all the default title and description look at
+     */
+    public List<GitPlumbing.CommitMessage> getNewestMessages(final List<GitCommit> commits) {
+        if (commits == null) {
+            return null;
+        }
+
+        final List<GitPlumbing.CommitMessage> messages = new ArrayList<GitPlumbing.CommitMessage>();
+        for (int i = 0; i < DESCRIPTION_COMMITS_LIMIT && i < commits.size(); ++i) {
+            final GitCommit commit = commits.get(i);
+            messages.add(new GitPlumbing.CommitMessage(commit.getSubject(), commit.getFullMessage()));
+        }
+        return messages;
+    }
+
     /**
      * A html document points to the webaccess PR link
      *
@@ -4,6 +4,7 @@
 package com.microsoft.alm.plugin.idea.ui.pullrequest;
 
 import com.microsoft.alm.plugin.idea.ui.common.tabs.TabLookupListenerImpl;
+import com.microsoft.alm.plugin.idea.utils.IdeaHelper;
 import com.microsoft.alm.plugin.operations.Operation;
 import com.microsoft.alm.plugin.operations.PullRequestLookupOperation;
 import org.jetbrains.annotations.NotNull;
@@ -12,9 +13,13 @@ import org.jetbrains.annotations.NotNull;
  * Listener for pull request lookup operations
  */
 public class PullRequestsTabLookupListener extends TabLookupListenerImpl {
+    private final VcsPullRequestsModel model;
+    // what the tree already has, so lookups only send what changed
+    private final PullRequestLookupOperation.Baseline baseline = new PullRequestLookupOperation.Baseline();
 
     public PullRequestsTabLookupListener(@NotNull final VcsPullRequestsModel model) {
         super(model);
+        this.model = model;
     }
 
     /**
@@ -24,7 +29,39 @@ public class PullRequestsTabLookupListener extends TabLookupListenerImpl {
      */
     public void loadData(final String gitRemoteUrl, Operation.Inputs inputs) {
         this.gitRemoteUrl = gitRemoteUrl;
-        final PullRequestLookupOperation activeOperation = new PullRequestLookupOperation(gitRemoteUrl);
+        final PullRequestLookupOperation activeOperation = new PullRequestLookupOperation(gitRemoteUrl, baseline);
         loadData(activeOperation, inputs);
     }
-}
\ No newline at end of file
+
+    /**
+     * Keep the pull requests in the tree while they are refreshed, the results replace them
+     */
+    @Override
+    protected void prepareForLoad() {
+        model.beginRefresh();
+    }
+
+    public void clearBaseline() {
+        baseline.clear();
+    }
+
+    @Override
+    public void notifyLookupResults(final Operation.Results results) {
+        if (results.hasError() || results.isCancelled()) {
+            // the tree may not have everything the baseline has
+            baseline.clear();
+        }
+        super.notifyLookupResults(results);
+    }
+
+    @Override
+    public void notifyLookupCompleted() {
+        super.notifyLookupCompleted();
+        IdeaHelper.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                model.endRefresh();
+            }
+        });
+    }
+}
@@ -5,6 +5,7 @@ package com.microsoft.alm.plugin.idea.ui.pullrequest;
 
 import com.microsoft.alm.plugin.idea.resources.TfPluginBundle;
 import com.microsoft.alm.plugin.idea.ui.common.FilteredModel;
+import com.microsoft.alm.plugin.idea.ui.common.SearchFilter;
 import com.microsoft.alm.plugin.idea.utils.DateHelper;
 import com.microsoft.alm.plugin.operations.PullRequestLookupOperation;
 import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequest;
@@ -15,16 +16,49 @@ import javax.swing.tree.DefaultTreeSelectionModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Holds the pull requests of the PR tab under a node per scope. Refreshing or filtering the tree doesn't rebuild it:
+ * the children of a scope are matched to the new pull requests by id, existing nodes are kept and only the
+ * inserted, removed and changed nodes are announced so the selection and scroll position survive a poll.
+ */
 public class PullRequestsTreeModel extends DefaultTreeModel implements FilteredModel {
     private final PRTreeNode root;
     private final PRTreeNode requestedByMeRoot;
     private final PRTreeNode assignedToMeRoot;
     private TreeSelectionModel selectionModel;
-    private final List<GitPullRequest> allRequestedByMePullRequests;
-    private final List<GitPullRequest> allAssignedToMePullRequests;
-    private String filter;
+    // the pull requests of each scope by id, in the order the server returned them
+    private final Map<Integer, GitPullRequest> allRequestedByMePullRequests;
+    private final Map<Integer, GitPullRequest> allAssignedToMePullRequests;
+    // scopes whose pull requests are replaced by the next results of a refresh
+    private boolean requestedByMeRefreshing = false;
+    private boolean assignedToMeRefreshing = false;
+    private final SearchFilter searchFilter = new SearchFilter();
+    // the lowercase text shown in the node of each pull request, created the first time it is filtered
+    private final Map<GitPullRequest, String> searchKeys = new IdentityHashMap<GitPullRequest, String>();
+    // the lowercase creation date shown in the node of each pull request, which changes as time goes by
+    private final Map<GitPullRequest, DateSearchKey> dateSearchKeys = new IdentityHashMap<GitPullRequest, DateSearchKey>();
+
+    /**
+     * The search key of a creation date and the time bucket it was created for
+     */
+    private static class DateSearchKey {
+        private final long creationTime;
+        private final long bucket;
+        private final String searchKey;
+
+        private DateSearchKey(final long creationTime, final long bucket, final String searchKey) {
+            this.creationTime = creationTime;
+            this.bucket = bucket;
+            this.searchKey = searchKey;
+        }
+    }
 
     public PullRequestsTreeModel() {
         super(null);
@@ -36,8 +70,8 @@ public class PullRequestsTreeModel extends DefaultTreeModel implements FilteredM
         this.assignedToMeRoot = new PRTreeNode(TfPluginBundle.message(TfPluginBundle.KEY_VCS_PR_ASSIGNED_TO_ME));
         root.insert(assignedToMeRoot, 1);
 
-        allRequestedByMePullRequests = new ArrayList<GitPullRequest>();
-        allAssignedToMePullRequests = new ArrayList<GitPullRequest>();
+        allRequestedByMePullRequests = new LinkedHashMap<Integer, GitPullRequest>();
+        allAssignedToMePullRequests = new LinkedHashMap<Integer, GitPullRequest>();
 
         selectionModel = new DefaultTreeSelectionModel();
         selectionModel.setSelectionMode(DefaultTreeSelectionModel.SINGLE_TREE_SELECTION);
@@ -51,36 +85,110 @@ public class PullRequestsTreeModel extends DefaultTreeModel implements FilteredM
         return assignedToMeRoot;
     }
 
+    /**
+     * Adds the pull requests to the scope, a pull request that is already there is replaced by the new one.
+     * The first results of a scope after beginRefresh replace all the pull requests of the scope instead.
+     */
     public void appendPullRequests(final List<GitPullRequest> pullRequests, final PullRequestLookupOperation.PullRequestScope scope) {
-        final PRTreeNode rootNode;
+        final boolean requestedByMe = scope == PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME;
+        final Map<Integer, GitPullRequest> allPullRequests = requestedByMe ? allRequestedByMePullRequests : allAssignedToMePullRequests;
 
-        if (scope == PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME) {
-            rootNode = requestedByMeRoot;
-            allRequestedByMePullRequests.addAll(pullRequests);
-        } else {
-            rootNode = assignedToMeRoot;
-            allAssignedToMePullRequests.addAll(pullRequests);
+        if (requestedByMe ? requestedByMeRefreshing : assignedToMeRefreshing) {
+            forgetSearchKeys(allPullRequests.values());
+            allPullRequests.clear();
+            if (requestedByMe) {
+                requestedByMeRefreshing = false;
+            } else {
+                assignedToMeRefreshing = false;
+            }
         }
 
-        // filter if there is a filter else add all PRs to root
-        if (hasFilter()) {
-            applyFilter();
+        for (final GitPullRequest pullRequest : pullRequests) {
+            final GitPullRequest previous = allPullRequests.put(pullRequest.getPullRequestId(), pullRequest);
+            if (previous != null && previous != pullRequest) {
+                searchKeys.remove(previous);
+                dateSearchKeys.remove(previous);
+            }
+        }
+
+        updateChildren(requestedByMe ? requestedByMeRoot : assignedToMeRoot, getVisiblePullRequests(allPullRequests.values()));
+    }
+
+    /**
+     * Applies the changes to a scope since the previous lookup: the added and updated pull requests replace the ones
+     * with the same id, and the scope is left with the pull requests of the given ids in that order.
+     */
+    public void updatePullRequests(final List<GitPullRequest> changedPullRequests, final List<Integer> pullRequestIds,
+                                   final PullRequestLookupOperation.PullRequestScope scope) {
+        final boolean requestedByMe = scope == PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME;
+        final Map<Integer, GitPullRequest> allPullRequests = requestedByMe ? allRequestedByMePullRequests : allAssignedToMePullRequests;
+        if (requestedByMe) {
+            requestedByMeRefreshing = false;
         } else {
-            for (final GitPullRequest pullRequest : pullRequests) {
-                rootNode.add(new PRTreeNode(pullRequest));
+            assignedToMeRefreshing = false;
+        }
+
+        final Map<Integer, GitPullRequest> changed = new HashMap<Integer, GitPullRequest>(changedPullRequests.size());
+        for (final GitPullRequest pullRequest : changedPullRequests) {
+            changed.put(pullRequest.getPullRequestId(), pullRequest);
+        }
+
+        final Map<Integer, GitPullRequest> previous = new HashMap<Integer, GitPullRequest>(allPullRequests);
+        allPullRequests.clear();
+        for (final Integer id : pullRequestIds) {
+            final GitPullRequest pullRequest = changed.containsKey(id) ? changed.get(id) : previous.remove(id);
+            if (pullRequest != null) {
+                allPullRequests.put(id, pullRequest);
             }
-            reload(rootNode);
+        }
+        // whatever is left was removed or replaced
+        forgetSearchKeys(previous.values());
+
+        updateChildren(requestedByMe ? requestedByMeRoot : assignedToMeRoot, getVisiblePullRequests(allPullRequests.values()));
+    }
+
+    /**
+     * Keeps the current pull requests on display until the results of the refresh replace them
+     */
+    public void beginRefresh() {
+        requestedByMeRefreshing = true;
+        assignedToMeRefreshing = true;
+    }
+
+    /**
+     * Removes the pull requests of the scopes that didn't get any results during the refresh
+     */
+    public void endRefresh() {
+        if (requestedByMeRefreshing) {
+            clearScope(requestedByMeRoot, allRequestedByMePullRequests);
+            requestedByMeRefreshing = false;
+        }
+        if (assignedToMeRefreshing) {
+            clearScope(assignedToMeRoot, allAssignedToMePullRequests);
+            assignedToMeRefreshing = false;
         }
     }
 
     public void clearPullRequests() {
-        requestedByMeRoot.removeAllChildren();
-        allRequestedByMePullRequests.clear();
-        reload(requestedByMeRoot);
+        clearScope(requestedByMeRoot, allRequestedByMePullRequests);
+        clearScope(assignedToMeRoot, allAssignedToMePullRequests);
+        requestedByMeRefreshing = false;
+        assignedToMeRefreshing = false;
+        searchKeys.clear();
+        dateSearchKeys.clear();
+    }
 
-        assignedToMeRoot.removeAllChildren();
-        allAssignedToMePullRequests.clear();
-        reload(assignedToMeRoot);
+    private void clearScope(final PRTreeNode rootNode, final Map<Integer, GitPullRequest> allPullRequests) {
+        forgetSearchKeys(allPullRequests.values());
+        allPullRequests.clear();
+        updateChildren(rootNode, new ArrayList<GitPullRequest>());
+    }
+
+    private void forgetSearchKeys(final Iterable<GitPullRequest> pullRequests) {
+        for (final GitPullRequest pullRequest : pullRequests) {
+            searchKeys.remove(pullRequest);
+            dateSearchKeys.remove(pullRequest);
+        }
     }
 
     public TreeSelectionModel getSelectionModel() {
@@ -94,57 +202,163 @@ public class PullRequestsTreeModel extends DefaultTreeModel implements FilteredM
     }
 
     public void setFilter(final String filter) {
-        this.filter = filter;
-        applyFilter();
+        if (!searchFilter.setFilter(filter)) {
+            return;
+        }
+
+        if (searchFilter.isNarrowing()) {
+            // characters were only added to the filter, so only the pull requests shown now can still match
+            updateChildren(requestedByMeRoot, getVisiblePullRequests(getChildPullRequests(requestedByMeRoot)));
+            updateChildren(assignedToMeRoot, getVisiblePullRequests(getChildPullRequests(assignedToMeRoot)));
+        } else {
+            applyFilter();
+        }
     }
 
     private void applyFilter() {
+        updateChildren(requestedByMeRoot, getVisiblePullRequests(allRequestedByMePullRequests.values()));
+        updateChildren(assignedToMeRoot, getVisiblePullRequests(allAssignedToMePullRequests.values()));
+    }
+
+    private List<GitPullRequest> getVisiblePullRequests(final Iterable<GitPullRequest> pullRequests) {
         final boolean hasFilter = hasFilter();
+        final long now = System.currentTimeMillis();
+        final List<GitPullRequest> visible = new ArrayList<GitPullRequest>();
+        for (final GitPullRequest pr : pullRequests) {
+            if (!hasFilter || nodeContainsFilter(pr, now)) {
+                visible.add(pr);
+            }
+        }
+        return visible;
+    }
 
-        // remove all nodes so no duplicates show up
-        assignedToMeRoot.removeAllChildren();
-        requestedByMeRoot.removeAllChildren();
+    private List<GitPullRequest> getChildPullRequests(final PRTreeNode rootNode) {
+        final List<GitPullRequest> pullRequests = new ArrayList<GitPullRequest>(rootNode.getChildCount());
+        for (int i = 0; i < rootNode.getChildCount(); i++) {
+            pullRequests.add(((PRTreeNode) rootNode.getChildAt(i)).getGitPullRequest());
+        }
+        return pullRequests;
+    }
 
-        // filter on requests by me
-        for (GitPullRequest pr : allRequestedByMePullRequests) {
-            if (!hasFilter || nodeContainsFilter(pr)) {
-                requestedByMeRoot.add(new PRTreeNode(pr));
+    /**
+     * Makes the children of the root node show the pull requests in the given order. The nodes are matched to the
+     * pull requests by id and reused, and only the nodes that were removed, inserted or changed are announced.
+     */
+    private void updateChildren(final PRTreeNode rootNode, final List<GitPullRequest> pullRequests) {
+        final Map<Integer, GitPullRequest> wanted = new HashMap<Integer, GitPullRequest>(pullRequests.size());
+        for (final GitPullRequest pr : pullRequests) {
+            wanted.put(pr.getPullRequestId(), pr);
+        }
+
+        // remove the nodes of the pull requests that are gone, going backwards keeps the indexes valid
+        final Map<Integer, PRTreeNode> existing = new HashMap<Integer, PRTreeNode>(rootNode.getChildCount());
+        final List<Integer> removedIndexes = new ArrayList<Integer>();
+        final List<PRTreeNode> removedNodes = new ArrayList<PRTreeNode>();
+        for (int i = rootNode.getChildCount() - 1; i >= 0; i--) {
+            final PRTreeNode node = (PRTreeNode) rootNode.getChildAt(i);
+            final int id = node.getGitPullRequest().getPullRequestId();
+            if (!wanted.containsKey(id) || existing.containsKey(id)) {
+                rootNode.remove(i);
+                removedIndexes.add(0, i);
+                removedNodes.add(0, node);
+            } else {
+                existing.put(id, node);
             }
         }
+        if (!removedIndexes.isEmpty()) {
+            nodesWereRemoved(rootNode, toArray(removedIndexes), removedNodes.toArray());
+        }
 
-        // filter on requests assigned to me
-        for (GitPullRequest pr : allAssignedToMePullRequests) {
-            if (!hasFilter || nodeContainsFilter(pr)) {
-                assignedToMeRoot.add(new PRTreeNode(pr));
+        // put the nodes in order, inserting the new ones
+        final List<Integer> changedIndexes = new ArrayList<Integer>();
+        int index = 0;
+        for (final GitPullRequest pr : pullRequests) {
+            if (wanted.get(pr.getPullRequestId()) != pr) {
+                // a duplicate id, the last one wins
+                continue;
             }
+
+            PRTreeNode node = existing.remove(pr.getPullRequestId());
+            if (node == null) {
+                node = new PRTreeNode(pr);
+                rootNode.insert(node, index);
+                nodesWereInserted(rootNode, new int[]{index});
+            } else {
+                final int currentIndex = rootNode.getIndex(node);
+                if (currentIndex != index) {
+                    // the order changed on the server
+                    rootNode.remove(currentIndex);
+                    nodesWereRemoved(rootNode, new int[]{currentIndex}, new Object[]{node});
+                    rootNode.insert(node, index);
+                    nodesWereInserted(rootNode, new int[]{index});
+                }
+                if (node.getGitPullRequest() != pr) {
+                    node.setGitPullRequest(pr);
+                    changedIndexes.add(index);
+                }
+            }
+            index++;
         }
+        if (!changedIndexes.isEmpty()) {
+            nodesChanged(rootNode, toArray(changedIndexes));
+        }
+    }
 
-        // refresh tree
-        reload(requestedByMeRoot);
-        reload(assignedToMeRoot);
+    private static int[] toArray(final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
     }
 
     public boolean hasFilter() {
-        return StringUtils.isNotEmpty(this.filter);
+        return searchFilter.hasFilter();
     }
 
-    private boolean nodeContainsFilter(final GitPullRequest pr) {
+    private boolean nodeContainsFilter(final GitPullRequest pr, final long now) {
         if (pr == null) {
             return false;
         }
 
-        // filter on the data shown in the node view
-        if (StringUtils.containsIgnoreCase(pr.getTitle(), filter) ||
-                StringUtils.containsIgnoreCase(pr.getCreatedBy().getDisplayName(), filter) ||
-                StringUtils.containsIgnoreCase(String.valueOf(pr.getPullRequestId()), filter) ||
-                StringUtils.containsIgnoreCase(pr.getSourceRefName().replace(PRTreeCellRenderer.GIT_REFS_HEADS, ""), filter) ||
-                StringUtils.containsIgnoreCase(pr.getTargetRefName().replace(PRTreeCellRenderer.GIT_REFS_HEADS, ""), filter) ||
-                StringUtils.containsIgnoreCase(pr.getMergeStatus().toString(), filter) ||
-                StringUtils.containsIgnoreCase(DateHelper.getFriendlyDateTimeString(pr.getCreationDate()), filter)
-                ) {
-            return true;
-        } else {
-            return false;
+        String searchKey = searchKeys.get(pr);
+        if (searchKey == null) {
+            searchKey = createSearchKey(pr);
+            searchKeys.put(pr, searchKey);
         }
+        return searchFilter.matches(searchKey) || searchFilter.matches(getDateSearchKey(pr, now));
+    }
+
+    /**
+     * The node shows how long ago the pull request was created, so its search key is kept apart and only created
+     * again when the text shown for the date changes
+     */
+    private String getDateSearchKey(final GitPullRequest pr, final long now) {
+        final Date creationDate = pr.getCreationDate();
+        if (creationDate == null) {
+            return StringUtils.EMPTY;
+        }
+
+        final long bucket = DateHelper.getFriendlyDateTimeBucket(creationDate, now);
+        DateSearchKey dateSearchKey = dateSearchKeys.get(pr);
+        if (dateSearchKey == null || dateSearchKey.bucket != bucket || dateSearchKey.creationTime != creationDate.getTime()) {
+            dateSearchKey = new DateSearchKey(creationDate.getTime(), bucket,
+                    SearchFilter.createSearchKey(DateHelper.getFriendlyDateTimeString(creationDate, now)));
+            dateSearchKeys.put(pr, dateSearchKey);
+        }
+        return dateSearchKey.searchKey;
+    }
+
+    /**
+     * Creates the search key out of the data shown in the node view, except for the creation date
+     */
+    private static String createSearchKey(final GitPullRequest pr) {
+        return SearchFilter.createSearchKey(
+                pr.getTitle(),
+                pr.getCreatedBy().getDisplayName(),
+                String.valueOf(pr.getPullRequestId()),
+                pr.getSourceRefName().replace(PRTreeCellRenderer.GIT_REFS_HEADS, ""),
+                pr.getTargetRefName().replace(PRTreeCellRenderer.GIT_REFS_HEADS, ""),
+                pr.getMergeStatus().toString());
     }
 }
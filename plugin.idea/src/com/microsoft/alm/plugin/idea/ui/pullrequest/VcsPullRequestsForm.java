@@ -66,7 +66,12 @@ public class VcsPullRequestsForm extends TabFormImpl<PullRequestsTreeModel> {
 
             @Override
             public void treeNodesInserted(TreeModelEvent treeModelEvent) {
-                // do nothing
+                // expand a scope when its first pull requests show up, after that leave it the way the user left it
+                final Object parent = treeModelEvent.getTreePath().getLastPathComponent();
+                if (pullRequestsTreeModel != null && treeModelEvent.getChildIndices() != null &&
+                        pullRequestsTreeModel.getChildCount(parent) == treeModelEvent.getChildIndices().length) {
+                    pullRequestsTree.expandPath(treeModelEvent.getTreePath());
+                }
             }
 
             @Override
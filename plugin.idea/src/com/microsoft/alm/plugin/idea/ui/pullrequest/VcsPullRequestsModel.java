@@ -161,11 +161,33 @@ public class VcsPullRequestsModel extends TabModelImpl<PullRequestsTreeModel> {
 
     public void appendData(final Operation.Results results) {
         final PullRequestLookupOperation.PullRequestLookupResults lookupResults = (PullRequestLookupOperation.PullRequestLookupResults) results;
-        viewForModel.appendPullRequests(lookupResults.getPullRequests(), lookupResults.getScope());
+        if (lookupResults.isDelta()) {
+            viewForModel.updatePullRequests(lookupResults.getPullRequests(), lookupResults.getPullRequestIds(), lookupResults.getScope());
+        } else {
+            viewForModel.appendPullRequests(lookupResults.getPullRequests(), lookupResults.getScope());
+        }
+        // the tree has these results now, so the next lookup can send only what changed since them
+        lookupResults.commitBaseline();
     }
 
     public void clearData() {
         viewForModel.clearPullRequests();
+        // the next lookup has to send everything again
+        ((PullRequestsTabLookupListener) dataProvider).clearBaseline();
+    }
+
+    /**
+     * Called when a refresh starts, the pull requests shown are replaced when the results come in
+     */
+    public void beginRefresh() {
+        viewForModel.beginRefresh();
+    }
+
+    /**
+     * Called when a refresh is done, clears the scopes that didn't get any results
+     */
+    public void endRefresh() {
+        viewForModel.endRefresh();
     }
 
     public void createNewItem() {
@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.vcsimport;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.services.PropertyService;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Remembers which steps of an import into a repository completed, and the remote repository the import created,
+ * so that retrying the import resumes at the step that failed. The checkpoint is kept with the plugin properties,
+ * one per project, and only applies to an import into the same repository of the same team project.
+ * A new import into another repository replaces it, a successful import clears it.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class ImportCheckpoint {
+    static final String PROP_CHECKPOINT_PREFIX = "importCheckpoint.";
+
+    private static final String FIELD_SEPARATOR = "|";
+    private static final String STEP_SEPARATOR = ",";
+
+    private final PropertyService propertyService;
+    private final String propertyName;
+    private final String target;
+    private final Set<String> completedSteps = new LinkedHashSet<String>();
+    private String remoteRepositoryId;
+
+    /**
+     * @param projectPath the base path of the project being imported
+     * @param target      identifies the repository the project is imported into
+     */
+    public ImportCheckpoint(final PropertyService propertyService, final String projectPath, final String target) {
+        ArgumentHelper.checkNotNull(propertyService, "propertyService");
+        ArgumentHelper.checkNotEmptyString(projectPath);
+        ArgumentHelper.checkNotEmptyString(target);
+        this.propertyService = propertyService;
+        this.propertyName = PROP_CHECKPOINT_PREFIX + projectPath;
+        this.target = target;
+        restore();
+    }
+
+    public synchronized boolean isCompleted(final String step) {
+        return completedSteps.contains(step);
+    }
+
+    public synchronized void markCompleted(final String step) {
+        if (completedSteps.add(step)) {
+            save();
+        }
+    }
+
+    /**
+     * Returns the id of the remote repository an earlier attempt created, or null
+     */
+    public synchronized String getRemoteRepositoryId() {
+        return remoteRepositoryId;
+    }
+
+    public synchronized void setRemoteRepositoryId(final String remoteRepositoryId) {
+        this.remoteRepositoryId = remoteRepositoryId;
+        save();
+    }
+
+    /**
+     * Forgets the steps and the remote repository, for when the import is done
+     */
+    public synchronized void clear() {
+        completedSteps.clear();
+        remoteRepositoryId = null;
+        propertyService.removeProperty(propertyName);
+    }
+
+    private void restore() {
+        // the target goes last since it is the only field that could contain the separator
+        final String value = StringUtils.defaultString(propertyService.getProperty(propertyName));
+        final String[] fields = StringUtils.splitPreserveAllTokens(value, FIELD_SEPARATOR, 3);
+        if (fields.length == 3 && StringUtils.equals(fields[2], target)) {
+            remoteRepositoryId = StringUtils.isNotEmpty(fields[0]) ? fields[0] : null;
+            completedSteps.addAll(Arrays.asList(StringUtils.split(fields[1], STEP_SEPARATOR)));
+        }
+    }
+
+    private void save() {
+        propertyService.setProperty(propertyName, StringUtils.defaultString(remoteRepositoryId) + FIELD_SEPARATOR +
+                StringUtils.join(completedSteps, STEP_SEPARATOR) + FIELD_SEPARATOR + target);
+    }
+}
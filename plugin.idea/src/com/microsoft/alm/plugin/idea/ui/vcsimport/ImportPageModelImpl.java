@@ -8,6 +8,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.progress.PerformInBackgroundOption;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Condition;
@@ -38,6 +39,7 @@ import com.microsoft.alm.plugin.idea.ui.common.ServerContextLookupListener;
 import com.microsoft.alm.plugin.idea.ui.common.ServerContextLookupPageModel;
 import com.microsoft.alm.plugin.idea.ui.common.ServerContextTableModel;
 import com.microsoft.alm.plugin.idea.utils.IdeaHelper;
+import com.microsoft.alm.plugin.services.PluginServiceProvider;
 import com.microsoft.alm.plugin.telemetry.TfsTelemetryHelper;
 import com.microsoft.alm.core.webapi.CoreHttpClient;
 import com.microsoft.alm.core.webapi.model.TeamProject;
@@ -66,6 +68,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * This class is provided as a base for the VSO and TFS import page models. It provides the majority of the
@@ -89,6 +93,30 @@ public abstract class ImportPageModelImpl extends LoginPageModelImpl implements
     private final static String PROJECT_CAPABILITY_VC_TYPE = "sourceControlType";
     private final static String PROJECT_CAPABILITY_VC_GIT = "Git";
 
+    private final static String STEP_CHECK_GIT_SUPPORT = "checkGitSupport";
+    private final static String STEP_FIND_LOCAL_REPO = "findLocalRepo";
+    private final static String STEP_INIT_LOCAL_REPO = "initLocalRepo";
+    private final static String STEP_FIRST_COMMIT = "firstCommit";
+    private final static String STEP_CREATE_REMOTE_REPO = "createRemoteRepo";
+    private final static String STEP_SETUP_REMOTE = "setupRemote";
+    private final static String STEP_PUSH = "push";
+    private final static String TELEMETRY_STEP_PREFIX = ACTION_NAME + ".";
+    private final static String TELEMETRY_RESUMED_STEPS = "resumedSteps";
+
+    /**
+     * What the import steps hand on to the steps that depend on them
+     */
+    private static class ImportState {
+        private volatile ServerContext context;
+        private volatile GitRepository localRepository;
+        private volatile VirtualFile rootVirtualFile;
+        private volatile com.microsoft.alm.sourcecontrol.webapi.model.GitRepository remoteRepository;
+
+        public ImportState(final ServerContext context) {
+            this.context = context;
+        }
+    }
+
     public ImportPageModelImpl(final ImportModel importModel, final ServerContextTableModel.Column[] columns) {
         super(importModel);
         parentDialogModel = importModel;
@@ -214,68 +242,36 @@ public abstract class ImportPageModelImpl extends LoginPageModelImpl implements
         new Task.Backgroundable(project, TfPluginBundle.message(TfPluginBundle.KEY_IMPORT_IMPORTING_PROJECT), true, PerformInBackgroundOption.DEAF) {
             @Override
             public void run(@NotNull final ProgressIndicator indicator) {
-                // Local context can change if the creation of the repo succeeds
-                ServerContext localContext = context;
+                // The context in the state changes if the creation of the repo succeeds
+                final ImportState state = new ImportState(context);
+                final ImportPipeline pipeline = new ImportPipeline(getStepExecutor(indicator));
                 String remoteUrlForDisplay = "";
 
                 try {
-                    if (!projectSupportsGitRepos(project, context, indicator)) {
-                        logger.error("doImport: the team project {} on collection {} , " +
-                                        "server {} does not support Git repositories or is not a hybrid project",
-                                localContext.getTeamProjectReference().getName(),
-                                localContext.getTeamProjectCollectionReference().getName(), localContext.getUri());
-                        return;
-                    }
-
-                    final GitRepository repo = getRepositoryForProject(project);
-                    final VirtualFile rootVirtualFile = repo != null ? repo.getRoot() : project.getBaseDir();
-
-                    final GitRepository localRepository = repo != null ? repo :
-                            setupGitRepositoryForProject(project, rootVirtualFile, localContext, indicator);
-                    if (localRepository == null) {
-                        logger.error("doImport: current project {} is not in a Git repository", project.getName());
-                        return;
-                    }
-
-                    if (!doFirstCommitIfRequired(project, localRepository, rootVirtualFile, localContext, indicator)) {
-                        logger.error("doImport: failed to do first commit on the local repository at: {}", localRepository.getRoot().getUrl());
-                        return;
-                    }
-
-                    final com.microsoft.alm.sourcecontrol.webapi.model.GitRepository remoteRepository =
-                            createRemoteGitRepo(project, context, localContext, indicator);
-                    if (remoteRepository != null) {
-                        //remote repo creation succeeded, save active context with the repository information
-                        localContext = new ServerContextBuilder(localContext).uri(remoteRepository.getRemoteUrl()).repository(remoteRepository).build();
-                        ServerContextManager.getInstance().add(localContext);
+                    final ImportCheckpoint checkpoint = new ImportCheckpoint(PluginServiceProvider.getInstance().getPropertyService(),
+                            project.getBasePath(), getCheckpointTarget(context, repositoryName));
+                    addImportSteps(pipeline, project, context, repositoryName, state, checkpoint, indicator);
+                    if (pipeline.run(checkpoint)) {
+                        //all steps completed successfully, a new import starts from the beginning
+                        checkpoint.clear();
+                        remoteUrlForDisplay = state.remoteRepository.getRemoteUrl();
+                    } else if (pipeline.getError() != null) {
+                        notifyUnexpectedError(project, pipeline.getError(), state.context);
                     } else {
-                        logger.error("doImport: failed to create remote repository with name: {} on server: {}, collection: {}",
-                                repositoryName, localContext.getUri(), localContext.getTeamProjectCollectionReference().getName());
-                        return;
+                        logger.error("doImport: import of project {} stopped at step {}, a retry resumes from there",
+                                project.getName(), pipeline.getFailedStep());
                     }
 
-                    if (!setupRemoteOnLocalRepo(project, localRepository, remoteRepository, localContext, indicator)) {
-                        logger.error("doImport: failed to setup remote origin on local repository at: {} to point to remote repository: {}",
-                                localRepository.getRoot().getUrl(), remoteRepository.getRemoteUrl());
-                        return;
-                    }
-
-                    if (!pushChangesToRemoteRepo(project, localRepository, remoteRepository, localContext, indicator)) {
-                        logger.error("doImport: failed to push changes to remote repository: {}", remoteRepository.getRemoteUrl());
-                        return;
-                    }
-
-                    //all steps completed successfully
-                    remoteUrlForDisplay = remoteRepository.getRemoteUrl();
-
                 } catch (Throwable unexpectedError) {
                     remoteUrlForDisplay = "";
-                    logger.error("doImport: Unexpected error during import");
-                    logger.warn("doImport", unexpectedError);
-                    notifyImportError(project, TfPluginBundle.message(TfPluginBundle.KEY_IMPORT_ERRORS_UNEXPECTED, unexpectedError.getLocalizedMessage()),
-                            TfPluginBundle.message(TfPluginBundle.KEY_IMPORT_FAILED), localContext);
+                    notifyUnexpectedError(project, unexpectedError, state.context);
 
                 } finally {
+                    // Add Telemetry for the time each step took whether the import succeeded or not
+                    for (final Map.Entry<String, Long> timing : pipeline.getTimings().entrySet()) {
+                        TfsTelemetryHelper.getInstance().sendMetric(TELEMETRY_STEP_PREFIX + timing.getKey(), timing.getValue());
+                    }
+
                     if (StringUtils.isNotEmpty(remoteUrlForDisplay)) {
                         // Notify the user that we are done and provide a link to the repo
                         VcsNotifier.getInstance(project).notifyImportantInfo(TfPluginBundle.message(TfPluginBundle.KEY_IMPORT_SUCCEEDED),
@@ -283,12 +279,15 @@ public abstract class ImportPageModelImpl extends LoginPageModelImpl implements
                                 NotificationListener.URL_OPENING_LISTENER);
 
                         // Add Telemetry for a successful import
-                        TfsTelemetryHelper.getInstance().sendEvent(ACTION_NAME,
-                                new TfsTelemetryHelper.PropertyMapBuilder()
-                                        .currentOrActiveContext(localContext)
-                                        .actionName(ACTION_NAME)
-                                        .success(true)
-                                        .build());
+                        final TfsTelemetryHelper.PropertyMapBuilder builder = new TfsTelemetryHelper.PropertyMapBuilder()
+                                .currentOrActiveContext(state.context)
+                                .actionName(ACTION_NAME)
+                                .success(true)
+                                .pair(TELEMETRY_RESUMED_STEPS, StringUtils.join(pipeline.getResumedSteps(), ","));
+                        for (final Map.Entry<String, Long> timing : pipeline.getTimings().entrySet()) {
+                            builder.pair(TELEMETRY_STEP_PREFIX + timing.getKey(), timing.getValue().toString());
+                        }
+                        TfsTelemetryHelper.getInstance().sendEvent(ACTION_NAME, builder.build());
                     }
                 }
             }
@@ -297,6 +296,169 @@ public abstract class ImportPageModelImpl extends LoginPageModelImpl implements
 
     }
 
+    /**
+     * Adds the import steps to the pipeline. Only the steps that don't change anything run at the same time:
+     * the git support check on the server and the search for an existing local repository. Everything after them
+     * runs in order, so a failed or canceled check leaves no local repository behind and the remote repository
+     * is only created once there is a commit to push to it.
+     */
+    private void addImportSteps(final ImportPipeline pipeline, final Project project, final ServerContext context,
+                                final String repositoryName, final ImportState state, final ImportCheckpoint checkpoint,
+                                final ProgressIndicator indicator) {
+        pipeline.addStep(new ImportPipeline.Step(STEP_CHECK_GIT_SUPPORT) {
+            @Override
+            public boolean run() {
+                if (!projectSupportsGitRepos(project, context, indicator)) {
+                    logger.error("doImport: the team project {} on collection {} , " +
+                                    "server {} does not support Git repositories or is not a hybrid project",
+                            context.getTeamProjectReference().getName(),
+                            context.getTeamProjectCollectionReference().getName(), context.getUri());
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean resume() {
+                // the user already agreed to import into this team project
+                return true;
+            }
+        });
+
+        pipeline.addStep(new ImportPipeline.Step(STEP_FIND_LOCAL_REPO) {
+            @Override
+            public boolean run() {
+                // an earlier attempt that got past initLocalRepo left a repository that is found here
+                final GitRepository repo = getRepositoryForProject(project);
+                state.rootVirtualFile = repo != null ? repo.getRoot() : project.getBaseDir();
+                state.localRepository = repo;
+                return true;
+            }
+        });
+
+        pipeline.addStep(new ImportPipeline.Step(STEP_INIT_LOCAL_REPO, STEP_FIND_LOCAL_REPO, STEP_CHECK_GIT_SUPPORT) {
+            @Override
+            public boolean run() {
+                if (state.localRepository == null) {
+                    state.localRepository = setupGitRepositoryForProject(project, state.rootVirtualFile, context, indicator);
+                }
+                if (state.localRepository == null) {
+                    logger.error("doImport: current project {} is not in a Git repository", project.getName());
+                    return false;
+                }
+                return true;
+            }
+        });
+
+        pipeline.addStep(new ImportPipeline.Step(STEP_FIRST_COMMIT, STEP_INIT_LOCAL_REPO) {
+            @Override
+            public boolean run() {
+                if (!doFirstCommitIfRequired(project, state.localRepository, state.rootVirtualFile, context, indicator)) {
+                    logger.error("doImport: failed to do first commit on the local repository at: {}", state.localRepository.getRoot().getUrl());
+                    return false;
+                }
+                return true;
+            }
+        });
+
+        pipeline.addStep(new ImportPipeline.Step(STEP_CREATE_REMOTE_REPO, STEP_FIRST_COMMIT) {
+            @Override
+            public boolean run() {
+                final com.microsoft.alm.sourcecontrol.webapi.model.GitRepository remoteRepository =
+                        createRemoteGitRepo(project, context, context, indicator);
+                if (remoteRepository == null) {
+                    logger.error("doImport: failed to create remote repository with name: {} on server: {}, collection: {}",
+                            repositoryName, context.getUri(), context.getTeamProjectCollectionReference().getName());
+                    return false;
+                }
+                checkpoint.setRemoteRepositoryId(remoteRepository.getId().toString());
+                setRemoteRepository(state, remoteRepository);
+                return true;
+            }
+
+            @Override
+            public boolean resume() {
+                // creating it again would fail since the name is taken, so get the one created before
+                final com.microsoft.alm.sourcecontrol.webapi.model.GitRepository remoteRepository =
+                        getCreatedRemoteGitRepo(context, checkpoint.getRemoteRepositoryId());
+                if (remoteRepository == null) {
+                    return false;
+                }
+                setRemoteRepository(state, remoteRepository);
+                return true;
+            }
+        });
+
+        pipeline.addStep(new ImportPipeline.Step(STEP_SETUP_REMOTE, STEP_CREATE_REMOTE_REPO) {
+            @Override
+            public boolean run() {
+                if (!setupRemoteOnLocalRepo(project, state.localRepository, state.remoteRepository, state.context, indicator)) {
+                    logger.error("doImport: failed to setup remote origin on local repository at: {} to point to remote repository: {}",
+                            state.localRepository.getRoot().getUrl(), state.remoteRepository.getRemoteUrl());
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean resume() {
+                // origin already points to the remote repository, don't ask to replace it
+                return true;
+            }
+        });
+
+        pipeline.addStep(new ImportPipeline.Step(STEP_PUSH, STEP_SETUP_REMOTE) {
+            @Override
+            public boolean run() {
+                if (!pushChangesToRemoteRepo(project, state.localRepository, state.remoteRepository, state.context, indicator)) {
+                    logger.error("doImport: failed to push changes to remote repository: {}", state.remoteRepository.getRemoteUrl());
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Identifies the repository the project is imported into, so a checkpoint is only used for the same import
+     */
+    private String getCheckpointTarget(final ServerContext context, final String repositoryName) {
+        return context.getCollectionURI() + "/" + context.getTeamProjectReference().getId() + "/" + repositoryName;
+    }
+
+    /**
+     * Runs the steps on pooled threads under the import's progress indicator, so canceling the import
+     * cancels the git commands of all the running steps
+     */
+    private Executor getStepExecutor(final ProgressIndicator indicator) {
+        return new Executor() {
+            @Override
+            public void execute(@NotNull final Runnable command) {
+                ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        ProgressManager.getInstance().runProcess(command, indicator);
+                    }
+                });
+            }
+        };
+    }
+
+    private void setRemoteRepository(final ImportState state,
+                                     final com.microsoft.alm.sourcecontrol.webapi.model.GitRepository remoteRepository) {
+        //remote repo creation succeeded, save active context with the repository information
+        state.remoteRepository = remoteRepository;
+        state.context = new ServerContextBuilder(state.context).uri(remoteRepository.getRemoteUrl()).repository(remoteRepository).build();
+        ServerContextManager.getInstance().add(state.context);
+    }
+
+    private void notifyUnexpectedError(final Project project, final Throwable unexpectedError, final ServerContext context) {
+        logger.error("doImport: Unexpected error during import");
+        logger.warn("doImport", unexpectedError);
+        notifyImportError(project, TfPluginBundle.message(TfPluginBundle.KEY_IMPORT_ERRORS_UNEXPECTED, unexpectedError.getLocalizedMessage()),
+                TfPluginBundle.message(TfPluginBundle.KEY_IMPORT_FAILED), context);
+    }
+
     private GitRepository getRepositoryForProject(final Project project) {
         //find if the project belongs to a local git repository
         final GitRepositoryManager repositoryManager = GitUtil.getRepositoryManager(project);
@@ -534,6 +696,29 @@ public abstract class ImportPageModelImpl extends LoginPageModelImpl implements
         return remoteRepository;
     }
 
+    /**
+     * Returns the remote repository an earlier attempt at the import created, or null if it is gone
+     */
+    private com.microsoft.alm.sourcecontrol.webapi.model.GitRepository getCreatedRemoteGitRepo(final ServerContext context,
+                                                                                              final String remoteRepositoryId) {
+        if (StringUtils.isEmpty(remoteRepositoryId)) {
+            return null;
+        }
+
+        try {
+            final com.microsoft.alm.sourcecontrol.webapi.model.GitRepository remoteRepository = context.getGitHttpClient()
+                    .getRepository(context.getTeamProjectReference().getId().toString(), remoteRepositoryId);
+            if (remoteRepository != null && remoteRepository.getId() != null &&
+                    StringUtils.equalsIgnoreCase(remoteRepository.getId().toString(), remoteRepositoryId)) {
+                return remoteRepository;
+            }
+        } catch (Throwable t) {
+            logger.warn("getCreatedRemoteGitRepo: failed to get the remote repository created before", t);
+        }
+        logger.info("getCreatedRemoteGitRepo: remote repository {} created before is gone, creating it again", remoteRepositoryId);
+        return null;
+    }
+
     private boolean setupRemoteOnLocalRepo(final Project project, final GitRepository localRepository,
                                            final com.microsoft.alm.sourcecontrol.webapi.model.GitRepository remoteRepository,
                                            final ServerContext localContext, final ProgressIndicator indicator) {
@@ -647,6 +832,16 @@ public abstract class ImportPageModelImpl extends LoginPageModelImpl implements
         teamProjectTableModel.addServerContexts(serverContexts);
     }
 
+    @Override
+    public void removeContexts(final List<ServerContext> serverContexts) {
+        teamProjectTableModel.removeServerContexts(serverContexts);
+    }
+
+    @Override
+    public void replaceContexts(final Map<ServerContext, ServerContext> serverContexts) {
+        teamProjectTableModel.replaceServerContexts(serverContexts);
+    }
+
     /**
      * This method is provided to allow the derived classes an easy way to add to the list of repositories.
      */
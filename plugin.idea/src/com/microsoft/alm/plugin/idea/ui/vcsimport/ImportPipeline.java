@@ -0,0 +1,230 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.vcsimport;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs the steps of an import as soon as the steps they depend on have succeeded, so steps that don't depend on
+ * each other run at the same time on the executor.
+ * <p/>
+ * Each step that succeeds is recorded in the checkpoint. When the import is retried, the steps the checkpoint has
+ * are resumed instead of run again, so the import picks up at the step that failed.
+ * Once a step fails no new steps are started, the ones already running are left to finish.
+ * <p/>
+ * A pipeline runs once. NOT THREAD-SAFE, run it from one thread.
+ */
+public class ImportPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(ImportPipeline.class);
+
+    private final Executor executor;
+    private final Map<String, Step> steps = new LinkedHashMap<String, Step>();
+    private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+    private final List<String> resumedSteps = new ArrayList<String>();
+    private String failedStep;
+    private Throwable error;
+
+    /**
+     * A step of the import. Steps are added after the steps they depend on.
+     */
+    public abstract static class Step {
+        private final String name;
+        private final List<String> dependencies;
+
+        protected Step(final String name, final String... dependencies) {
+            ArgumentHelper.checkNotEmptyString(name);
+            this.name = name;
+            this.dependencies = Collections.unmodifiableList(Arrays.asList(dependencies));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * Does the work of the step, returns false if the step failed and the import has to stop
+         */
+        public abstract boolean run() throws Exception;
+
+        /**
+         * Called instead of run when an earlier attempt completed the step, to get back what the steps after it
+         * need. Returns false if the step has to run again, which is the default for steps that can tell
+         * on their own that their work is done.
+         */
+        public boolean resume() throws Exception {
+            return false;
+        }
+    }
+
+    private static class Result {
+        private final Step step;
+        private final boolean resumed;
+        private final boolean success;
+        private final long milliseconds;
+        private final Throwable error;
+
+        public Result(final Step step, final boolean resumed, final boolean success, final long milliseconds,
+                      final Throwable error) {
+            this.step = step;
+            this.resumed = resumed;
+            this.success = success;
+            this.milliseconds = milliseconds;
+            this.error = error;
+        }
+    }
+
+    public ImportPipeline(final Executor executor) {
+        ArgumentHelper.checkNotNull(executor, "executor");
+        this.executor = executor;
+    }
+
+    public void addStep(final Step step) {
+        ArgumentHelper.checkNotNull(step, "step");
+        if (steps.containsKey(step.getName())) {
+            throw new IllegalArgumentException("duplicate step: " + step.getName());
+        }
+        for (final String dependency : step.getDependencies()) {
+            // requiring the dependencies first also rules out cycles
+            if (!steps.containsKey(dependency)) {
+                throw new IllegalArgumentException("step " + step.getName() + " depends on unknown step: " + dependency);
+            }
+        }
+        steps.put(step.getName(), step);
+    }
+
+    /**
+     * Runs the steps and waits for them, returns true if all of them succeeded
+     */
+    public boolean run(final ImportCheckpoint checkpoint) {
+        ArgumentHelper.checkNotNull(checkpoint, "checkpoint");
+
+        final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+        final List<Step> pending = new ArrayList<Step>(steps.values());
+        final Set<String> succeeded = new HashSet<String>();
+        int running = 0;
+
+        while (true) {
+            if (failedStep == null) {
+                final Iterator<Step> iterator = pending.iterator();
+                while (iterator.hasNext()) {
+                    final Step step = iterator.next();
+                    if (succeeded.containsAll(step.getDependencies())) {
+                        iterator.remove();
+                        start(step, checkpoint.isCompleted(step.getName()), results);
+                        running++;
+                    }
+                }
+            }
+
+            if (running == 0) {
+                break;
+            }
+
+            final Result result;
+            try {
+                result = results.take();
+            } catch (InterruptedException e) {
+                logger.warn("run: interrupted while waiting for the import steps");
+                Thread.currentThread().interrupt();
+                if (failedStep == null) {
+                    failedStep = "";
+                    error = e;
+                }
+                break;
+            }
+            running--;
+
+            final String name = result.step.getName();
+            if (result.resumed) {
+                resumedSteps.add(name);
+            } else {
+                timings.put(name, result.milliseconds);
+            }
+
+            if (result.success) {
+                succeeded.add(name);
+                checkpoint.markCompleted(name);
+            } else if (failedStep == null) {
+                failedStep = name;
+                error = result.error;
+            }
+        }
+
+        return failedStep == null && pending.isEmpty();
+    }
+
+    private void start(final Step step, final boolean completed, final BlockingQueue<Result> results) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                results.add(runStep(step, completed));
+            }
+        });
+    }
+
+    private Result runStep(final Step step, final boolean completed) {
+        final long start = System.currentTimeMillis();
+        try {
+            if (completed && step.resume()) {
+                logger.info("runStep: resumed step {}", step.getName());
+                return new Result(step, true, true, 0, null);
+            }
+
+            final boolean success = step.run();
+            final long milliseconds = System.currentTimeMillis() - start;
+            logger.info("runStep: step {} {} in {} ms", step.getName(), success ? "succeeded" : "failed", milliseconds);
+            return new Result(step, false, success, milliseconds, null);
+        } catch (Throwable t) {
+            logger.warn("runStep: step " + step.getName() + " failed", t);
+            return new Result(step, false, false, System.currentTimeMillis() - start, t);
+        }
+    }
+
+    /**
+     * Returns how long each step that ran took in milliseconds, in the order they finished
+     */
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * Returns the steps that were resumed from the checkpoint instead of run
+     */
+    public List<String> getResumedSteps() {
+        return Collections.unmodifiableList(resumedSteps);
+    }
+
+    /**
+     * Returns the first step that failed, or null
+     */
+    public String getFailedStep() {
+        return failedStep;
+    }
+
+    /**
+     * Returns what the failed step threw, or null if it failed without throwing
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
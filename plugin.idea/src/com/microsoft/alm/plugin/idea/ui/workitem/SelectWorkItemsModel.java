@@ -130,7 +130,11 @@ public class SelectWorkItemsModel extends AbstractModel {
                                 setChangedAndNotify(PROP_SERVER_NAME);
                             }
 
-                            tableModel.addWorkItems(wiResults.getWorkItems());
+                            if (wiResults.getPageLoader() != null) {
+                                tableModel.addWorkItemPage(wiResults.getPageLoader(), wiResults.getStartIndex(), wiResults.getWorkItems());
+                            } else {
+                                tableModel.addWorkItems(wiResults.getWorkItems());
+                            }
                         }
                     });
                 }
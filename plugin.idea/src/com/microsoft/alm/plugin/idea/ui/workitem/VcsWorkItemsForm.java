@@ -164,9 +164,13 @@ public class VcsWorkItemsForm extends TabFormImpl<WorkItemsTableModel> {
     }
 
     protected List<JBMenuItem> getMenuItems(final ActionListener listener) {
+        final JBMenuItem createBranchItem = createMenuItem(TfPluginBundle.KEY_VCS_WIT_CREATE_BRANCH, null, CMD_CREATE_BRANCH, listener);
+        // a branch needs a work item, and rows that are still loading don't have one yet
+        createBranchItem.setEnabled(workItemsTable.getModel() instanceof WorkItemsTableModel &&
+                !((WorkItemsTableModel) workItemsTable.getModel()).getSelectedWorkItems().isEmpty());
         return Arrays.asList(
                 createMenuItem(TfPluginBundle.KEY_VCS_OPEN_IN_BROWSER, null, CMD_OPEN_SELECTED_ITEM_IN_BROWSER, listener),
-                createMenuItem(TfPluginBundle.KEY_VCS_WIT_CREATE_BRANCH, null, CMD_CREATE_BRANCH, listener));
+                createBranchItem);
     }
 
     public Operation.Inputs getOperationInputs() {
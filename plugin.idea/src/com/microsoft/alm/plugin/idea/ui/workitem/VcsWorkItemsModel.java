@@ -21,6 +21,7 @@ import com.microsoft.alm.plugin.idea.utils.EventContextHelper;
 import com.microsoft.alm.plugin.idea.utils.TfGitHelper;
 import com.microsoft.alm.plugin.operations.Operation;
 import com.microsoft.alm.plugin.operations.OperationExecutor;
+import com.microsoft.alm.plugin.operations.ServerWatermarkProvider;
 import com.microsoft.alm.plugin.operations.WorkItemLookupOperation;
 import com.microsoft.alm.plugin.telemetry.TfsTelemetryHelper;
 import com.microsoft.alm.workitemtracking.webapi.models.Link;
@@ -61,6 +62,16 @@ public class VcsWorkItemsModel extends TabModelImpl<WorkItemsTableModel> {
         dataProvider = new WorkItemsTabLookupListener(this);
     }
 
+    @Override
+    public void loadData() {
+        // polling looks for changes to the work items of the query that is shown
+        if (isTfGitRepository() && operationInputs instanceof WorkItemLookupOperation.WitInputs) {
+            ServerWatermarkProvider.getInstance().setWorkItemQuery(TfGitHelper.getTfGitRemoteUrl(gitRepository),
+                    ((WorkItemLookupOperation.WitInputs) operationInputs).getQuery());
+        }
+        super.loadData();
+    }
+
     public void openGitRepoLink() {
         // create a new work item and open WIT takes you to the same place at the moment
         createNewItem();
@@ -90,8 +101,15 @@ public class VcsWorkItemsModel extends TabModelImpl<WorkItemsTableModel> {
             return;
         }
 
+        // rows that are still loading aren't returned, so the selection can be empty
+        final List<WorkItem> selectedWorkItems = viewForModel.getSelectedWorkItems();
+        if (selectedWorkItems.isEmpty()) {
+            logger.debug("createBranch: no loaded work item is selected");
+            return;
+        }
+
         final ServerContext context = TfGitHelper.getSavedServerContext(gitRepository);
-        final WorkItem workItem = viewForModel.getSelectedWorkItems().get(0); // TODO: associate multiple work items with a branch
+        final WorkItem workItem = selectedWorkItems.get(0); // TODO: associate multiple work items with a branch
 
         // call the Create Branch dialog and get the branch name from the user
         final CreateBranchController controller = new CreateBranchController(project,
@@ -186,7 +204,11 @@ public class VcsWorkItemsModel extends TabModelImpl<WorkItemsTableModel> {
 
     public void appendData(final Operation.Results results) {
         final WorkItemLookupOperation.WitResults witResults = (WorkItemLookupOperation.WitResults) results;
-        viewForModel.addWorkItems(witResults.getWorkItems());
+        if (witResults.getPageLoader() != null) {
+            viewForModel.addWorkItemPage(witResults.getPageLoader(), witResults.getStartIndex(), witResults.getWorkItems());
+        } else {
+            viewForModel.addWorkItems(witResults.getWorkItems());
+        }
     }
 
     public void clearData() {
@@ -0,0 +1,231 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.workitem;
+
+import com.microsoft.alm.plugin.idea.ui.common.SearchFilter;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the work items shown in WorkItemsTableModel as just the values of its columns, one array per column.
+ * Only the columns the table shows are kept. The values are taken out of the WorkItem once when it is added,
+ * so painting and filtering the table don't touch the field maps or format the ids again. The work item types,
+ * states and assignees are shared between rows since there are only a handful of them.
+ * <p/>
+ * A row can also be added with just its id while its work item is still being loaded.
+ * <p/>
+ * The lowercase search key of the filter is created from the columns when a row is loaded.
+ * <p/>
+ * NOT THREAD-SAFE
+ */
+class WorkItemRows {
+    private int size = 0;
+    private int[] ids;
+    // the ids as shown, so painting doesn't format them every time
+    private String[] idValues;
+    // the values of each column by ordinal, null for the columns that aren't shown
+    private final String[][] values = new String[WorkItemsTableModel.Column.values().length][];
+    private String[] searchKeys;
+    private final WorkItemsTableModel.Column[] columns;
+    private final BitSet loaded = new BitSet();
+    private final Map<String, String> sharedValues = new HashMap<String, String>();
+
+    WorkItemRows(final int initialCapacity) {
+        this(initialCapacity, WorkItemsTableModel.ALL_COLUMNS);
+    }
+
+    /**
+     * @param columns the columns that are shown, the other values of the work items are not kept
+     */
+    WorkItemRows(final int initialCapacity, final WorkItemsTableModel.Column[] columns) {
+        this.columns = columns.clone();
+        final int capacity = Math.max(initialCapacity, 1);
+        ids = new int[capacity];
+        idValues = new String[capacity];
+        searchKeys = new String[capacity];
+        for (final WorkItemsTableModel.Column column : this.columns) {
+            if (column != WorkItemsTableModel.Column.ID) {
+                values[column.ordinal()] = new String[capacity];
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        // keep the arrays but let go of the strings
+        Arrays.fill(idValues, 0, size, null);
+        for (final String[] columnValues : values) {
+            if (columnValues != null) {
+                Arrays.fill(columnValues, 0, size, null);
+            }
+        }
+        Arrays.fill(searchKeys, 0, size, null);
+        loaded.clear();
+        sharedValues.clear();
+        size = 0;
+    }
+
+    void add(final WorkItem item) {
+        ensureCapacity(size + 1);
+        set(size++, item);
+    }
+
+    /**
+     * Adds a row for a work item that hasn't been loaded yet
+     */
+    void addUnloaded(final int id) {
+        ensureCapacity(size + 1);
+        setId(size++, id);
+    }
+
+    void set(final int index, final WorkItem item) {
+        checkIndex(index);
+        setId(index, item.getId() != null ? item.getId() : 0);
+        for (final WorkItemsTableModel.Column column : columns) {
+            final String[] columnValues = values[column.ordinal()];
+            if (columnValues != null) {
+                columnValues[index] = getValueOf(item, column);
+            }
+        }
+        loaded.set(index);
+
+        final String[] rowValues = new String[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            rowValues[c] = getValue(index, columns[c]);
+        }
+        searchKeys[index] = SearchFilter.createSearchKey(rowValues);
+    }
+
+    private void setId(final int index, final int id) {
+        if (ids[index] != id || idValues[index] == null) {
+            ids[index] = id;
+            idValues[index] = Integer.toString(id);
+        }
+    }
+
+    private String getValueOf(final WorkItem item, final WorkItemsTableModel.Column column) {
+        switch (column) {
+            case TYPE:
+                return share(WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_WORK_ITEM_TYPE));
+            case STATE:
+                return share(WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_STATE));
+            case TITLE:
+                return WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_TITLE);
+            case ASSIGNED_TO:
+                return share(WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_ASSIGNED_TO));
+            case BRANCH:
+                return WorkItemHelper.getBranchName(item);
+            default:
+                return StringUtils.EMPTY;
+        }
+    }
+
+    boolean isLoaded(final int index) {
+        return loaded.get(index);
+    }
+
+    boolean hasUnloadedRows() {
+        return loaded.nextClearBit(0) < size;
+    }
+
+    int getId(final int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    /**
+     * Returns the value shown in the column, the id is the only value of rows that aren't loaded.
+     * Columns that aren't shown have no value.
+     */
+    String getValue(final int index, final WorkItemsTableModel.Column column) {
+        checkIndex(index);
+        if (column == WorkItemsTableModel.Column.ID) {
+            return idValues[index];
+        }
+
+        final String[] columnValues = values[column.ordinal()];
+        if (columnValues == null || !loaded.get(index)) {
+            return StringUtils.EMPTY;
+        }
+        return columnValues[index];
+    }
+
+    /**
+     * Returns the search key of the row or null if the row isn't loaded
+     */
+    String getSearchKey(final int index) {
+        checkIndex(index);
+        return searchKeys[index];
+    }
+
+    /**
+     * Creates a WorkItem with the id and the fields shown in the table for the actions that need one.
+     * Returns null if the row isn't loaded.
+     */
+    WorkItem getWorkItem(final int index) {
+        checkIndex(index);
+        if (!loaded.get(index)) {
+            return null;
+        }
+
+        final WorkItem item = new WorkItem();
+        item.setId(ids[index]);
+        final HashMap<String, Object> fields = new HashMap<String, Object>(8);
+        fields.put(WorkItemHelper.FIELD_ID, ids[index]);
+        putField(fields, WorkItemHelper.FIELD_WORK_ITEM_TYPE, index, WorkItemsTableModel.Column.TYPE);
+        putField(fields, WorkItemHelper.FIELD_STATE, index, WorkItemsTableModel.Column.STATE);
+        putField(fields, WorkItemHelper.FIELD_TITLE, index, WorkItemsTableModel.Column.TITLE);
+        putField(fields, WorkItemHelper.FIELD_ASSIGNED_TO, index, WorkItemsTableModel.Column.ASSIGNED_TO);
+        item.setFields(fields);
+        return item;
+    }
+
+    private void putField(final Map<String, Object> fields, final String fieldName, final int index,
+                          final WorkItemsTableModel.Column column) {
+        final String[] columnValues = values[column.ordinal()];
+        if (columnValues != null) {
+            fields.put(fieldName, columnValues[index]);
+        }
+    }
+
+    private String share(final String value) {
+        final String shared = sharedValues.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        sharedValues.put(value, value);
+        return value;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > ids.length) {
+            grow(Math.max(capacity, ids.length * 2));
+        }
+    }
+
+    private void grow(final int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        idValues = Arrays.copyOf(idValues, capacity);
+        searchKeys = Arrays.copyOf(searchKeys, capacity);
+        for (int c = 0; c < values.length; c++) {
+            if (values[c] != null) {
+                values[c] = Arrays.copyOf(values[c], capacity);
+            }
+        }
+    }
+}
@@ -5,12 +5,13 @@ package com.microsoft.alm.plugin.idea.ui.workitem;
 
 
 import com.microsoft.alm.plugin.idea.ui.common.FilteredModel;
+import com.microsoft.alm.plugin.idea.ui.common.SearchFilter;
 import com.microsoft.alm.plugin.idea.ui.common.TableModelSelectionConverter;
+import com.microsoft.alm.plugin.idea.utils.IdeaHelper;
+import com.microsoft.alm.plugin.operations.WorkItemPageLoader;
 import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
-import jersey.repackaged.com.google.common.base.Predicate;
-import jersey.repackaged.com.google.common.collect.Collections2;
-import jersey.repackaged.com.google.common.collect.Lists;
-import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.DefaultListSelectionModel;
 import javax.swing.ListSelectionModel;
@@ -20,9 +21,13 @@ import java.util.List;
 
 /**
  * This table model manages a list of workitems. It has a built-in selectionModel as well.
+ * Large query results are added a page at a time. The table has a row for every work item in the result right away
+ * and the pages that haven't been loaded yet are requested from the page loader when their rows are painted.
  * TODO refactor this and the other TableModel classes into a generic class (most of the code is the same)
  */
 public class WorkItemsTableModel extends AbstractTableModel implements FilteredModel {
+    private static final Logger logger = LoggerFactory.getLogger(WorkItemsTableModel.class);
+
     public enum Column {ID, TYPE, TITLE, ASSIGNED_TO, STATE, BRANCH}
 
     public static final Column[] ALL_COLUMNS = new Column[]{Column.ID, Column.TYPE, Column.TITLE, Column.STATE, Column.ASSIGNED_TO, Column.BRANCH};
@@ -40,15 +45,19 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
     };
 
     private ListSelectionModel selectionModel = new DefaultListSelectionModel();
-    private List<WorkItem> rows = new ArrayList<WorkItem>(100);
-    private List<WorkItem> filteredRows = null;
-    private String filter;
+    private final WorkItemRows rows;
+    private WorkItemPageLoader pageLoader;
+    // the indexes into rows of the rows that match the filter
+    private int[] filteredRows = null;
+    private int filteredRowCount = 0;
+    private final SearchFilter searchFilter = new SearchFilter();
     private final Column[] columns;
     private TableModelSelectionConverter converter;
 
     public WorkItemsTableModel(final Column[] columns) {
         assert columns != null;
         this.columns = columns.clone();
+        this.rows = new WorkItemRows(100, columns);
         selectionModel.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
     }
 
@@ -56,19 +65,19 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
         return selectionModel;
     }
 
+    /**
+     * Returns a WorkItem with the fields shown in the table or null if the row is still loading
+     */
     public WorkItem getWorkItem(final int rowIndex) {
-        final List<WorkItem> localRows;
-        if (filteredRows != null) {
-            localRows = filteredRows;
-        } else {
-            localRows = rows;
-        }
+        final int index = getRowsIndex(rowIndex);
+        return index >= 0 ? rows.getWorkItem(index) : null;
+    }
 
-        if (rowIndex >= 0 && rowIndex < localRows.size()) {
-            return localRows.get(rowIndex);
+    private int getRowsIndex(final int rowIndex) {
+        if (filteredRows != null) {
+            return rowIndex >= 0 && rowIndex < filteredRowCount ? filteredRows[rowIndex] : -1;
         }
-
-        return null;
+        return rowIndex >= 0 && rowIndex < rows.size() ? rowIndex : -1;
     }
 
     public void addWorkItems(final List<WorkItem> workItems) {
@@ -77,7 +86,9 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
 
         // Add the new rows to the existing list
         // Note: We don't need to sort them because the server does that
-        rows.addAll(workItems);
+        for (final WorkItem item : workItems) {
+            rows.add(item);
+        }
 
         if (hasFilter()) {
             // re-apply the filter, this will fire its own event
@@ -91,6 +102,47 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
         //select(selectedWorkItems);
     }
 
+    /**
+     * Adds one page of a query result. The first page of a new query result replaces the rows.
+     *
+     * @param loader     the loader of the other pages of the query result
+     * @param startIndex the index of the first work item in the query result
+     */
+    public void addWorkItemPage(final WorkItemPageLoader loader, final int startIndex, final List<WorkItem> workItems) {
+        assert loader != null;
+        final boolean newResult = loader != pageLoader;
+        if (newResult) {
+            if (pageLoader != null) {
+                pageLoader.cancel();
+            }
+            pageLoader = loader;
+            rows.clear();
+            for (int i = 0; i < loader.getCount(); i++) {
+                rows.addUnloaded(loader.getId(i));
+            }
+        }
+
+        for (int i = 0; i < workItems.size() && startIndex + i < rows.size(); i++) {
+            rows.set(startIndex + i, workItems.get(i));
+        }
+
+        if (hasFilter()) {
+            // re-apply the filter, this will fire its own event
+            applyFilter();
+        } else if (newResult) {
+            super.fireTableDataChanged();
+        } else if (workItems.size() > 0) {
+            super.fireTableRowsUpdated(startIndex, Math.min(startIndex + workItems.size(), rows.size()) - 1);
+        }
+    }
+
+    /**
+     * Returns true if some rows are waiting for their page to be loaded
+     */
+    public boolean hasUnloadedRows() {
+        return rows.hasUnloadedRows();
+    }
+
     public void setSelectionConverter(final TableModelSelectionConverter converter) {
         this.converter = converter;
     }
@@ -107,7 +159,11 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
         final List<WorkItem> items = new ArrayList<WorkItem>(this.getRowCount());
         for (int i = 0; i < this.getRowCount(); i++) {
             if (getSelectionModel().isSelectedIndex(i)) {
-                items.add(getWorkItem(i));
+                final WorkItem item = getWorkItem(i);
+                // rows that are still loading can't be acted on
+                if (item != null) {
+                    items.add(item);
+                }
             }
         }
         return items;
@@ -147,7 +203,12 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
     */
 
     public void clearRows() {
+        if (pageLoader != null) {
+            pageLoader.cancel();
+            pageLoader = null;
+        }
         filteredRows = null;
+        filteredRowCount = 0;
         rows.clear();
         super.fireTableDataChanged();
     }
@@ -155,46 +216,73 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
     @Override
     public int getRowCount() {
         if (filteredRows != null) {
-            return filteredRows.size();
+            return filteredRowCount;
         }
         return rows.size();
     }
 
     @Override
     public Object getValueAt(final int rowIndex, final int columnIndex) {
-        final WorkItem item = getWorkItem(rowIndex);
-        return getValueFor(item, columnIndex);
-    }
-
-    private String getValueFor(final WorkItem item, final int columnIndex) {
-        if (item == null) {
+        // The following might throw index out of bounds, but that is the appropriate error
+        final Column column = columns[columnIndex];
+        final int index = getRowsIndex(rowIndex);
+        if (index < 0) {
             return "";
         }
 
-        // The following might throw index out of bounds, but that is the appropriate error
-        final Column column = columns[columnIndex];
+        if (pageLoader != null && !rows.isLoaded(index)) {
+            // The row is being painted, so load its page
+            requestPageFor(index);
+        }
+        return rows.getValue(index, column);
+    }
 
-        switch (column) {
-            case ID:
-                return WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_ID);
+    private void requestPageFor(final int rowIndex) {
+        final int pageIndex = WorkItemPageLoader.getPageIndex(rowIndex);
+        requestPage(pageIndex);
 
-            case TYPE:
-                return WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_WORK_ITEM_TYPE);
-
-            case STATE:
-                return WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_STATE);
+        // Get the next page ready too if the row is close to the end of its page
+        final int nextPageStart = WorkItemPageLoader.getPageStart(pageIndex + 1);
+        if (nextPageStart - rowIndex <= WorkItemPageLoader.PAGE_SIZE / 4 && nextPageStart < rows.size()) {
+            requestPage(pageIndex + 1);
+        }
+    }
 
-            case TITLE:
-                return WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_TITLE);
+    private void requestPage(final int pageIndex) {
+        if (pageLoader.isPageRequested(pageIndex)) {
+            return;
+        }
 
-            case ASSIGNED_TO:
-                return WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_ASSIGNED_TO);
+        pageLoader.requestPage(pageIndex, new WorkItemPageLoader.Listener() {
+            @Override
+            public void pageLoaded(final WorkItemPageLoader loader, final int startIndex, final List<WorkItem> workItems) {
+                IdeaHelper.runOnUIThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Ignore pages of a query result that was replaced in the meantime
+                        if (loader == pageLoader) {
+                            addWorkItemPage(loader, startIndex, workItems);
+                        }
+                    }
+                });
+            }
 
-            case BRANCH:
-                return WorkItemHelper.getBranchName(item);
+            @Override
+            public void pageFailed(final WorkItemPageLoader loader, final int startIndex, final Throwable t) {
+                // The page is requested again the next time one of its rows is painted
+                logger.warn("pageFailed: failed to load the work items starting at " + startIndex, t);
+            }
+        });
+    }
 
-            default:
-                return "";
+    private void requestAllPages() {
+        if (pageLoader == null) {
+            return;
+        }
+        for (int page = pageLoader.getPageCount() - 1; page >= 0; page--) {
+            if (!rows.isLoaded(WorkItemPageLoader.getPageStart(page))) {
+                requestPage(page);
+            }
         }
     }
 
@@ -232,44 +320,58 @@ public class WorkItemsTableModel extends AbstractTableModel implements FilteredM
     }
 
     public boolean hasFilter() {
-        return StringUtils.isNotEmpty(this.filter);
+        return searchFilter.hasFilter();
     }
 
     public void setFilter(final String filter) {
-        this.filter = filter;
+        if (!searchFilter.setFilter(filter)) {
+            return;
+        }
 
         // TODO Remember selection
         //final ServerContext selectedContext = getSelectedContext();
 
-        applyFilter();
+        // when characters were only added to the filter just the rows that matched before need to be checked
+        applyFilter(searchFilter.isNarrowing());
 
         // TODO Attempt to restore the selection
         //select(selectedContext);
     }
 
     private void applyFilter() {
+        applyFilter(false);
+    }
+
+    private void applyFilter(final boolean narrowing) {
         if (!hasFilter()) {
             filteredRows = null;
+            filteredRowCount = 0;
+        } else if (narrowing && filteredRows != null) {
+            int count = 0;
+            for (int i = 0; i < filteredRowCount; i++) {
+                if (rowContains(filteredRows[i])) {
+                    filteredRows[count++] = filteredRows[i];
+                }
+            }
+            filteredRowCount = count;
         } else {
-            filteredRows = Lists.newArrayList(Collections2.filter(rows, new Predicate<WorkItem>() {
-                @Override
-                public boolean apply(WorkItem item) {
-                    return rowContains(item);
+            // Only loaded rows can match, so get the rest of them loaded
+            requestAllPages();
+            final int[] matches = new int[rows.size()];
+            int count = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                if (rowContains(i)) {
+                    matches[count++] = i;
                 }
-            }));
+            }
+            filteredRows = matches;
+            filteredRowCount = count;
         }
         super.fireTableDataChanged();
     }
 
-    private boolean rowContains(final WorkItem item) {
-        // search for the string in a case insensitive way
-        // check each column for a match, if any column contains the string the result is true
-        for (int c = 0; c < columns.length; c++) {
-            if (StringUtils.containsIgnoreCase(getValueFor(item, c), filter)) {
-                return true;
-            }
-        }
-
-        return false;
+    private boolean rowContains(final int index) {
+        // the search key holds the lowercase values of all the columns, rows that aren't loaded don't have one
+        return searchFilter.matches(rows.getSearchKey(index));
     }
 }
@@ -17,13 +17,19 @@ public class DateHelper {
     private final static Logger logger = LoggerFactory.getLogger(DateHelper.class);
 
     public static String getFriendlyDateTimeString(final Date date) {
+        return getFriendlyDateTimeString(date, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the friendly string of the date as it reads at the given time
+     */
+    public static String getFriendlyDateTimeString(final Date date, final long now) {
         if (date == null) {
             return "";
         }
 
         try {
-            final Date now = new Date();
-            final long diff = now.getTime() - date.getTime(); //in milliseconds
+            final long diff = now - date.getTime(); //in milliseconds
             if (diff < 0) {
                 return date.toString(); //input date is not in the past
             }
@@ -59,4 +65,37 @@ public class DateHelper {
             return date.toString();
         }
     }
+
+    /**
+     * Returns a number that only changes when the friendly string of the date does, so callers can keep the string
+     * until the time moves into another bucket
+     */
+    public static long getFriendlyDateTimeBucket(final Date date, final long now) {
+        if (date == null) {
+            return 0;
+        }
+
+        final long diff = now - date.getTime();
+        if (diff < 0) {
+            return -1;
+        }
+
+        final long diffMinutes = diff / (1000 * 60);
+        if (diffMinutes < 60) {
+            return diffMinutes;
+        }
+
+        final long diffHours = diff / (1000 * 60 * 60);
+        if (diffHours <= 24) {
+            return 100 + diffHours;
+        }
+
+        final long diffDays = diff / (1000 * 60 * 60 * 24);
+        if (diffDays < 7) {
+            return 200 + diffDays;
+        }
+
+        // the date itself is shown from then on
+        return Long.MAX_VALUE;
+    }
 }
@@ -5,9 +5,12 @@ package com.microsoft.alm.plugin.idea.utils;
 
 import com.intellij.openapi.project.Project;
 import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.context.ServerContext;
 import com.microsoft.alm.plugin.events.ServerEvent;
 import com.microsoft.alm.plugin.events.ServerEventManager;
+import com.microsoft.alm.plugin.events.ServerPollingManager;
 import git4idea.repo.GitRepository;
+import org.apache.commons.lang.StringUtils;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -17,7 +20,7 @@ import java.util.Map;
  * the ProjectRepoEventManager in response to IntelliJ changes like project opening/closing or repository changes.
  */
 public class EventContextHelper {
-    public static final String SENDER_POLLING_MANAGER = "pollingManager";
+    public static final String SENDER_POLLING_MANAGER = ServerPollingManager.SENDER_POLLING_MANAGER;
     public static final String SENDER_PROJECT_OPENED = "projectOpened";
     public static final String SENDER_PROJECT_CLOSING = "projectClosing";
     public static final String SENDER_REPO_CHANGED = "repoChanged";
@@ -27,6 +30,8 @@ public class EventContextHelper {
     public static final String CONTEXT_SENDER = "sender";
     public static final String CONTEXT_PROJECT = "project";
     public static final String CONTEXT_REPOSITORY = "repository";
+    public static final String CONTEXT_SERVER_CONTEXT_KEY = ServerPollingManager.CONTEXT_SERVER_CONTEXT_KEY;
+    public static final String CONTEXT_SERVER_URL = ServerPollingManager.CONTEXT_SERVER_URL;
 
     public static Map<String,Object> createContext(final String sender) {
         final Map<String,Object> eventContext = new HashMap<String, Object>();
@@ -49,6 +54,16 @@ public class EventContextHelper {
         eventContext.put(EventContextHelper.CONTEXT_REPOSITORY, repository);
     }
 
+    /**
+     * Sets the url of the server the user changed, so that it is polled sooner. Does nothing for non-TF repositories.
+     */
+    public static void setServerUrl(final Map<String,Object> eventContext, final GitRepository repository) {
+        ArgumentHelper.checkNotNull(eventContext, "eventContext");
+        if (repository != null && TfGitHelper.isTfGitRepository(repository)) {
+            eventContext.put(EventContextHelper.CONTEXT_SERVER_URL, TfGitHelper.getTfGitRemoteUrl(repository));
+        }
+    }
+
     public static String getSender(final Map<String,Object> eventContext) {
         ArgumentHelper.checkNotNull(eventContext, "eventContext");
         return (String)eventContext.get(EventContextHelper.CONTEXT_SENDER);
@@ -64,6 +79,23 @@ public class EventContextHelper {
         return (GitRepository)eventContext.get(EventContextHelper.CONTEXT_REPOSITORY);
     }
 
+    public static String getServerContextKey(final Map<String,Object> eventContext) {
+        ArgumentHelper.checkNotNull(eventContext, "eventContext");
+        return (String)eventContext.get(EventContextHelper.CONTEXT_SERVER_CONTEXT_KEY);
+    }
+
+    /**
+     * Returns true if the event was raised for a single repository and it isn't the one with the given remote url.
+     * Events that were not raised for a specific repository apply to all of them.
+     */
+    public static boolean isOtherRepository(final Map<String,Object> eventContext, final String remoteUrl) {
+        final String serverContextKey = getServerContextKey(eventContext);
+        if (StringUtils.isEmpty(serverContextKey)) {
+            return false;
+        }
+        return StringUtils.isEmpty(remoteUrl) || !StringUtils.equals(serverContextKey, ServerContext.getKey(remoteUrl));
+    }
+
     public static boolean isProjectOpened(final Map<String,Object> eventContext) {
         final String sender = getSender(eventContext);
         return SENDER_PROJECT_OPENED.equals(sender) && getProject(eventContext) != null;
@@ -82,12 +114,14 @@ public class EventContextHelper {
     public static void triggerPullRequestChanged(final String sender, final Project project) {
         final Map<String,Object> context = EventContextHelper.createContext(sender);
         EventContextHelper.setProject(context, project);
+        EventContextHelper.setServerUrl(context, TfGitHelper.getTfGitRepository(project));
         ServerEventManager.getInstance().triggerEvent(ServerEvent.PULL_REQUESTS_CHANGED, context);
     }
 
     public static void triggerWorkItemChanged(final String sender, final Project project) {
         final Map<String,Object> context = EventContextHelper.createContext(sender);
         EventContextHelper.setProject(context, project);
+        EventContextHelper.setServerUrl(context, TfGitHelper.getTfGitRepository(project));
         ServerEventManager.getInstance().triggerEvent(ServerEvent.WORK_ITEMS_CHANGED, context);
     }
 }
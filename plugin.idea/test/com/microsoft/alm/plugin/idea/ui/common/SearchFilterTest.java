@@ -0,0 +1,56 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.common;
+
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SearchFilterTest extends IdeaAbstractTest {
+
+    @Test
+    public void testCreateSearchKey() {
+        Assert.assertEquals("my repo\nproject", SearchFilter.createSearchKey("My Repo", null, "", "PROJECT"));
+        Assert.assertEquals("", SearchFilter.createSearchKey());
+    }
+
+    @Test
+    public void testMatches() {
+        final SearchFilter filter = new SearchFilter();
+        Assert.assertFalse(filter.hasFilter());
+        Assert.assertTrue(filter.matches("anything"));
+        Assert.assertTrue(filter.matches(null));
+
+        Assert.assertTrue(filter.setFilter("REPO"));
+        Assert.assertTrue(filter.hasFilter());
+        Assert.assertEquals("repo", filter.getFilter());
+        Assert.assertTrue(filter.matches(SearchFilter.createSearchKey("My Repo", "Project")));
+        Assert.assertFalse(filter.matches(SearchFilter.createSearchKey("Project")));
+        Assert.assertFalse(filter.matches(null));
+
+        // a match can't span two columns
+        filter.setFilter("repoproject");
+        Assert.assertFalse(filter.matches(SearchFilter.createSearchKey("My Repo", "Project")));
+    }
+
+    @Test
+    public void testNarrowing() {
+        final SearchFilter filter = new SearchFilter();
+        Assert.assertTrue(filter.setFilter("a"));
+        Assert.assertFalse(filter.isNarrowing());
+        Assert.assertTrue(filter.setFilter("ab"));
+        Assert.assertTrue(filter.isNarrowing());
+        Assert.assertTrue(filter.setFilter("xab"));
+        Assert.assertTrue(filter.isNarrowing());
+
+        // only the case changed so the matches are the same
+        Assert.assertFalse(filter.setFilter("XAB"));
+
+        Assert.assertTrue(filter.setFilter("xa"));
+        Assert.assertFalse(filter.isNarrowing());
+        Assert.assertTrue(filter.setFilter(null));
+        Assert.assertFalse(filter.isNarrowing());
+        Assert.assertFalse(filter.hasFilter());
+    }
+}
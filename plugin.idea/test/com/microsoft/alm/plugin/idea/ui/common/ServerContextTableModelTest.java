@@ -0,0 +1,138 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.common;
+
+import com.microsoft.alm.core.webapi.model.TeamProjectCollectionReference;
+import com.microsoft.alm.core.webapi.model.TeamProjectReference;
+import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextBuilder;
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import com.microsoft.alm.plugin.operations.Operation;
+import com.microsoft.alm.plugin.operations.ServerContextCatalogCache;
+import com.microsoft.alm.plugin.operations.ServerContextLookupOperation;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ServerContextTableModelTest extends IdeaAbstractTest {
+    private static final int COLLECTION_COUNT = 6;
+    private static final int REPOSITORIES_PER_COLLECTION = 120;
+
+    /**
+     * Looks up the collections of one account in parallel without a server, each collection has the same number of
+     * repositories. The first few collections wait for each other so the test knows they ran at the same time.
+     */
+    private static class ParallelLookupOperation extends ServerContextLookupOperation {
+        static final int BATCH_SIZE = RESULT_BATCH_SIZE;
+        static final int PARALLEL_LOOKUPS = MAX_PARALLEL_COLLECTION_LOOKUPS;
+
+        final CountDownLatch running = new CountDownLatch(PARALLEL_LOOKUPS);
+
+        ParallelLookupOperation(final ServerContext context) {
+            super(Collections.singletonList(context), ContextScope.REPOSITORY);
+        }
+
+        void lookup(final ServerContext context, final List<TeamProjectCollectionReference> collections) {
+            doLookup(context, collections);
+        }
+
+        @Override
+        protected ServerContextCatalogCache getCatalogCache() {
+            // a cache without a directory is disabled
+            return new ServerContextCatalogCache() {
+            };
+        }
+
+        @Override
+        protected void doCollectionLookup(final ServerContext context, final TeamProjectCollectionReference collection) {
+            running.countDown();
+            try {
+                running.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            final TeamProjectReference project = new TeamProjectReference();
+            project.setName("project");
+            final List<GitRepository> repositories = new ArrayList<GitRepository>(REPOSITORIES_PER_COLLECTION);
+            for (int i = REPOSITORIES_PER_COLLECTION - 1; i >= 0; i--) {
+                final GitRepository repository = new GitRepository();
+                repository.setName(String.format("%s-repo%03d", collection.getName(), i));
+                repository.setProjectReference(project);
+                repository.setRemoteUrl("http://server/" + collection.getName() + "/_git/" + repository.getName());
+                repositories.add(repository);
+            }
+            addRepositoryResults(repositories, context, collection);
+        }
+    }
+
+    @Test
+    public void testParallelLookupInsertsBatchesSorted() {
+        final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS)
+                .authentication(new AuthenticationInfo("", "", "", "")).uri(URI.create("http://server")).build();
+        final List<TeamProjectCollectionReference> collections = new ArrayList<TeamProjectCollectionReference>();
+        for (int i = 0; i < COLLECTION_COUNT; i++) {
+            final TeamProjectCollectionReference collection = new TeamProjectCollectionReference();
+            collection.setName("collection" + i);
+            collections.add(collection);
+        }
+
+        final ServerContextTableModel model = new ServerContextTableModel(ServerContextTableModel.TFS_REPO_COLUMNS);
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        final ParallelLookupOperation operation = new ParallelLookupOperation(context);
+        operation.addListener(new Operation.Listener() {
+            public void notifyLookupStarted() {
+            }
+
+            public void notifyLookupCompleted() {
+            }
+
+            @Override
+            public void notifyLookupResults(final Operation.Results lookupResults) {
+                final List<ServerContext> contexts = ((ServerContextLookupOperation.ServerContextLookupResults) lookupResults).getServerContexts();
+                // the lookup listener hands the batches to the UI thread one at a time, the lock does the same here
+                synchronized (model) {
+                    batchSizes.add(contexts.size());
+                    model.addServerContexts(contexts);
+                }
+            }
+        });
+
+        operation.lookup(context, collections);
+
+        // the first collections were looked up at the same time
+        Assert.assertEquals(0, operation.running.getCount());
+
+        // every collection arrived in batches, none of them larger than the batch size
+        final int total = COLLECTION_COUNT * REPOSITORIES_PER_COLLECTION;
+        final int batchesPerCollection = (REPOSITORIES_PER_COLLECTION + ParallelLookupOperation.BATCH_SIZE - 1) / ParallelLookupOperation.BATCH_SIZE;
+        Assert.assertEquals(COLLECTION_COUNT * batchesPerCollection, batchSizes.size());
+        int received = 0;
+        for (final int batchSize : batchSizes) {
+            Assert.assertTrue(batchSize <= ParallelLookupOperation.BATCH_SIZE);
+            received += batchSize;
+        }
+        Assert.assertEquals(total, received);
+
+        // the batches were merged into one sorted table no matter which collection finished first
+        Assert.assertEquals(total, model.getRowCount());
+        for (int row = 1; row < model.getRowCount(); row++) {
+            final String previous = (String) model.getValueAt(row - 1, 0);
+            final String current = (String) model.getValueAt(row, 0);
+            Assert.assertTrue(previous + " sorts after " + current, String.CASE_INSENSITIVE_ORDER.compare(previous, current) <= 0);
+        }
+        Assert.assertEquals("collection0-repo000", model.getValueAt(0, 0));
+        Assert.assertEquals(String.format("collection%d-repo%03d", COLLECTION_COUNT - 1, REPOSITORIES_PER_COLLECTION - 1),
+                model.getValueAt(total - 1, 0));
+    }
+}
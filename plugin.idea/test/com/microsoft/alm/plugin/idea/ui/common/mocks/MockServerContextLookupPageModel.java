@@ -9,6 +9,7 @@ import com.microsoft.alm.plugin.idea.ui.common.ServerContextLookupPageModel;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class MockServerContextLookupPageModel implements ServerContextLookupPageModel {
     public boolean loading;
@@ -40,6 +41,20 @@ public class MockServerContextLookupPageModel implements ServerContextLookupPage
         contexts.addAll(serverContexts);
     }
 
+    @Override
+    public void removeContexts(List<ServerContext> serverContexts) {
+        contexts.removeAll(serverContexts);
+    }
+
+    @Override
+    public void replaceContexts(Map<ServerContext, ServerContext> serverContexts) {
+        for (int i = 0; i < contexts.size(); i++) {
+            if (serverContexts.containsKey(contexts.get(i))) {
+                contexts.set(i, serverContexts.get(contexts.get(i)));
+            }
+        }
+    }
+
     @Override
     public void clearContexts() {
         contexts.clear();
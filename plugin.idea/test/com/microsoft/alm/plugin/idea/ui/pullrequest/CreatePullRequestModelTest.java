@@ -5,6 +5,7 @@ package com.microsoft.alm.plugin.idea.ui.pullrequest;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
 import com.microsoft.alm.plugin.idea.ui.common.ModelValidationInfo;
 import com.microsoft.alm.plugin.idea.utils.GeneralGitHelper;
@@ -67,6 +68,11 @@ public class CreatePullRequestModelTest extends IdeaAbstractTest {
         when(gitRepositoryMock.getInfo()).thenReturn(gitRepoInfoMock);
         when(gitRepositoryMock.getRemotes()).thenReturn(Collections.singletonList(tfsRemote));
         when(gitRepoInfoMock.getCurrentBranch()).thenReturn(currentBranch);
+
+        final VirtualFile rootMock = Mockito.mock(VirtualFile.class);
+        when(rootMock.getPath()).thenReturn("/repo");
+        when(gitRepositoryMock.getRoot()).thenReturn(rootMock);
+        BranchCompareCache.getInstance().clear();
     }
 
     /* Testing behavior about setting default target branch */
@@ -173,7 +179,7 @@ public class CreatePullRequestModelTest extends IdeaAbstractTest {
 
         GitCommitCompareInfo compareInfo = new GitCommitCompareInfo();
         when(diffProviderMock.getBranchCompareInfo(projectMock, gitRepositoryMock,
-                currentBranchCommitHash, remoteBranchCommitHash))
+                currentBranchCommitHash, remoteBranchCommitHash, null))
                 .thenReturn(compareInfo);
 
         GitChangesContainer branchChangesContainer = underTest.getMyChangesCompareInfo();
@@ -181,7 +187,7 @@ public class CreatePullRequestModelTest extends IdeaAbstractTest {
 
         // verify diff loader is called once
         verify(diffProviderMock, times(1)).getBranchCompareInfo(projectMock, gitRepositoryMock,
-                currentBranchCommitHash, remoteBranchCommitHash);
+                currentBranchCommitHash, remoteBranchCommitHash, null);
 
         underTest.getMyChangesCompareInfo();
         underTest.getMyChangesCompareInfo();
@@ -189,8 +195,42 @@ public class CreatePullRequestModelTest extends IdeaAbstractTest {
 
         // diff loader should still only being called once since we hit cache
         verify(diffProviderMock, times(1)).getBranchCompareInfo(projectMock, gitRepositoryMock,
-                currentBranchCommitHash, remoteBranchCommitHash);
+                currentBranchCommitHash, remoteBranchCommitHash, null);
+
+    }
+
+    @Test
+    public void cacheIsSharedUntilRepositoryChanges() throws Exception {
+        final String currentBranchCommitHash = "935b168d0601bd05d57489fae04d5c6ec439cfea";
+        final String remoteBranchCommitHash = "9afa081effdaeafdff089b2aa3543415f6cdb1fb";
+        GitRemoteBranch master = PRGitObjectMockHelper.createRemoteBranch("origin/master", tfsRemote);
+        when(gitRepoInfoMock.getRemoteBranches()).thenReturn(Arrays.asList(master));
+
+        PowerMockito.mockStatic(GeneralGitHelper.class);
+        when(GeneralGitHelper.getLastCommitHash(projectMock, gitRepositoryMock, currentBranch)).thenReturn(currentBranchCommitHash);
+        when(GeneralGitHelper.getLastCommitHash(projectMock, gitRepositoryMock, master)).thenReturn(remoteBranchCommitHash);
+        when(diffProviderMock.getBranchCompareInfo(projectMock, gitRepositoryMock,
+                currentBranchCommitHash, remoteBranchCommitHash, null))
+                .thenReturn(new GitCommitCompareInfo());
+
+        underTest = new CreatePullRequestModel(projectMock, gitRepositoryMock);
+        underTest.setDiffCompareInfoProvider(diffProviderMock);
+        underTest.setApplicationProvider(applicationProviderMock);
+        underTest.getMyChangesCompareInfo();
+
+        // opening the dialog again reuses the comparison
+        underTest = new CreatePullRequestModel(projectMock, gitRepositoryMock);
+        underTest.setDiffCompareInfoProvider(diffProviderMock);
+        underTest.setApplicationProvider(applicationProviderMock);
+        underTest.getMyChangesCompareInfo();
+        verify(diffProviderMock, times(1)).getBranchCompareInfo(projectMock, gitRepositoryMock,
+                currentBranchCommitHash, remoteBranchCommitHash, null);
 
+        // until the repository changes
+        BranchCompareCache.getInstance().invalidate("/repo");
+        underTest.getMyChangesCompareInfo();
+        verify(diffProviderMock, times(2)).getBranchCompareInfo(projectMock, gitRepositoryMock,
+                currentBranchCommitHash, remoteBranchCommitHash, null);
     }
 
     @Test
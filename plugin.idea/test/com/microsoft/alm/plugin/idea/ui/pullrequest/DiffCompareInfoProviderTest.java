@@ -3,6 +3,7 @@
 
 package com.microsoft.alm.plugin.idea.ui.pullrequest;
 
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.Change;
@@ -16,6 +17,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -24,9 +26,12 @@ import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DiffCompareInfoProviderTest extends IdeaAbstractTest {
@@ -48,8 +53,14 @@ public class DiffCompareInfoProviderTest extends IdeaAbstractTest {
         fileMock = Mockito.mock(VirtualFile.class);
         when(gitRepositoryMock.getRoot()).thenReturn(fileMock);
 
+        // by default there is something to load in every range
+        when(gitUtilWrapperMock.countCommits(any(Project.class), any(VirtualFile.class), anyString())).thenReturn(1);
+        when(gitUtilWrapperMock.isSameTree(any(Project.class), any(VirtualFile.class), anyString(), anyString()))
+                .thenReturn(false);
+
         underTest = new DiffCompareInfoProvider();
         underTest.setUtilWrapper(gitUtilWrapperMock);
+        underTest.setUseGitPlumbing(true);
     }
 
     @Test
@@ -109,5 +120,105 @@ public class DiffCompareInfoProviderTest extends IdeaAbstractTest {
         assertEquals(diff, new LinkedList<Change>(diffs).get(0));
     }
 
+    @Test
+    public void testStagesAreReportedInOrder() throws VcsException {
+        when(gitUtilWrapperMock.getMergeBase(any(Project.class), any(VirtualFile.class), eq("test2"), eq("test1")))
+                .thenReturn(new GitRevisionNumber("myparent"));
+
+        final GitCommit commitMock = PRGitObjectMockHelper.getCommit(projectMock, fileMock);
+        when(gitUtilWrapperMock.history(any(Project.class), any(VirtualFile.class), eq("myparent..")))
+                .thenReturn(Collections.singletonList(commitMock));
+        when(gitUtilWrapperMock.history(any(Project.class), any(VirtualFile.class), eq("..myparent")))
+                .thenReturn(Collections.<GitCommit>emptyList());
+
+        final Change diff = Mockito.mock(Change.class);
+        when(gitUtilWrapperMock.getDiff(any(Project.class), any(VirtualFile.class), eq("myparent"), eq("test1")))
+                .thenReturn(Collections.singletonList(diff));
+
+        when(gitUtilWrapperMock.getCommitMessages(any(Project.class), any(VirtualFile.class), eq("myparent.."), eq(10)))
+                .thenReturn(Collections.singletonList(new GitPlumbing.CommitMessage("subject", "subject\n\nbody")));
+
+        final List<Object> reported = new ArrayList<Object>();
+        final GitCommitCompareInfo compareInfo = underTest.getBranchCompareInfo(projectMock, gitRepositoryMock,
+                "test1", "test2", new DiffCompareInfoProvider.CompareListener() {
+                    @Override
+                    public void onMessagesLoaded(final int commitCount, final List<GitPlumbing.CommitMessage> newestCommits) {
+                        // the commits haven't been loaded yet
+                        verify(gitUtilWrapperMock, never()).history(any(Project.class), any(VirtualFile.class), anyString());
+                        assertEquals(1, commitCount);
+                        reported.add(newestCommits.get(0).getFullMessage());
+                    }
+
+                    @Override
+                    public void onCommitsLoaded(final GitCommitCompareInfo commitsOnly) {
+                        // the diff hasn't been calculated yet
+                        verify(gitUtilWrapperMock, never()).getDiff(any(Project.class), any(VirtualFile.class), anyString(), anyString());
+                        reported.add(commitsOnly);
+                    }
+                });
+
+        assertEquals(2, reported.size());
+        assertEquals("subject\n\nbody", reported.get(0));
+        final GitCommitCompareInfo commitsOnly = (GitCommitCompareInfo) reported.get(1);
+        assertEquals(Collections.singletonList(commitMock), commitsOnly.getBranchToHeadCommits(gitRepositoryMock));
+        assertTrue(commitsOnly.getTotalDiff().isEmpty());
+        assertEquals(1, compareInfo.getTotalDiff().size());
+    }
+
+    @Test
+    public void testEmptyDiffIsNotLoaded() throws VcsException {
+        when(gitUtilWrapperMock.getMergeBase(any(Project.class), any(VirtualFile.class), eq("test2"), eq("test1")))
+                .thenReturn(new GitRevisionNumber("myparent"));
+        when(gitUtilWrapperMock.isSameTree(any(Project.class), any(VirtualFile.class), eq("myparent"), eq("test1")))
+                .thenReturn(true);
+
+        final GitCommit commitMock = PRGitObjectMockHelper.getCommit(projectMock, fileMock);
+        when(gitUtilWrapperMock.history(any(Project.class), any(VirtualFile.class), eq("myparent..")))
+                .thenReturn(Collections.singletonList(commitMock));
 
+        final GitCommitCompareInfo compareInfo
+                = underTest.getBranchCompareInfo(projectMock, gitRepositoryMock, "test1", "test2");
+
+        assertEquals(Collections.singletonList(commitMock), compareInfo.getBranchToHeadCommits(gitRepositoryMock));
+        assertTrue(compareInfo.getHeadToBranchCommits(gitRepositoryMock).isEmpty());
+        assertTrue(compareInfo.getTotalDiff().isEmpty());
+        // only the branch's own commits are counted, for the default title and description
+        verify(gitUtilWrapperMock, never()).countCommits(any(Project.class), any(VirtualFile.class), eq("..myparent"));
+        verify(gitUtilWrapperMock, never()).getDiff(any(Project.class), any(VirtualFile.class), anyString(), anyString());
+    }
+
+    @Test
+    public void testFailedPlumbingFallsBackToLoading() throws VcsException {
+        when(gitUtilWrapperMock.getMergeBase(any(Project.class), any(VirtualFile.class), eq("test2"), eq("test1")))
+                .thenReturn(new GitRevisionNumber("myparent"));
+        when(gitUtilWrapperMock.countCommits(any(Project.class), any(VirtualFile.class), anyString()))
+                .thenThrow(new VcsException("no rev-list"));
+        when(gitUtilWrapperMock.isSameTree(any(Project.class), any(VirtualFile.class), anyString(), anyString()))
+                .thenThrow(new VcsException("no rev-parse"));
+
+        underTest.getBranchCompareInfo(projectMock, gitRepositoryMock, "test1", "test2");
+
+        verify(gitUtilWrapperMock).history(any(Project.class), any(VirtualFile.class), eq("..myparent"));
+        verify(gitUtilWrapperMock).history(any(Project.class), any(VirtualFile.class), eq("myparent.."));
+        verify(gitUtilWrapperMock).getDiff(any(Project.class), any(VirtualFile.class), eq("myparent"), eq("test1"));
+    }
+
+    @Test
+    public void testCanceledCompareStopsAfterMergeBase() throws VcsException {
+        when(gitUtilWrapperMock.getMergeBase(any(Project.class), any(VirtualFile.class), eq("test2"), eq("test1")))
+                .thenReturn(new GitRevisionNumber("myparent"));
+
+        Thread.currentThread().interrupt();
+        try {
+            underTest.getBranchCompareInfo(projectMock, gitRepositoryMock, "test1", "test2");
+            fail("expected the compare to be canceled");
+        } catch (ProcessCanceledException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        verify(gitUtilWrapperMock, never()).history(any(Project.class), any(VirtualFile.class), anyString());
+        verify(gitUtilWrapperMock, never()).getDiff(any(Project.class), any(VirtualFile.class), anyString(), anyString());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,205 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.pullrequest;
+
+import com.google.common.io.Files;
+import com.intellij.openapi.vcs.VcsException;
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import git4idea.commands.GitCommand;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the git work behind the default title and description of a pull request on a generated repository
+ * with 10000 commits on the source branch: the plumbing summary against the history and diff git4idea loads.
+ * Only the git side of the git4idea path is timed, building its commit and change objects comes on top of it.
+ * <p/>
+ * It needs git on the path and takes a while, so it only runs with -Dcom.microsoft.alm.plugin.benchmarks=true
+ */
+public class GitPlumbingBenchmarkTest extends IdeaAbstractTest {
+    public static final String PROP_RUN_BENCHMARKS = "com.microsoft.alm.plugin.benchmarks";
+
+    private static final int COMMIT_COUNT = 10000;
+    private static final int FILE_COUNT = 2000;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+    private static final String RANGE = "master..topic";
+
+    // roughly the format GitHistoryUtils.history asks for
+    private static final String HISTORY_FORMAT = "%x01%H%x00%P%x00%ct%x00%an%x00%ae%x00%cn%x00%ce%x00%at%x00%s%x00%B%x00";
+
+    private File repo;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean(PROP_RUN_BENCHMARKS));
+        repo = Files.createTempDir();
+        runGit(repo, null, "init", "-q");
+        runGit(repo, createFastImportStream(), "fast-import", "--quiet");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (repo != null) {
+            FileUtils.deleteDirectory(repo);
+        }
+    }
+
+    @Test
+    public void testSummaryIsCheaperThanHistory() throws Exception {
+        final GitPlumbing plumbing = new GitPlumbing(null, null) {
+            @Override
+            protected String run(final GitCommand command, final String... parameters) throws VcsException {
+                final List<String> arguments = new ArrayList<String>();
+                arguments.add(command.name());
+                arguments.addAll(Arrays.asList(parameters));
+                return runGit(repo, null, arguments.toArray(new String[arguments.size()]));
+            }
+        };
+
+        final long summaryNanos = time(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                final int count = plumbing.countCommits(RANGE);
+                final List<GitPlumbing.CommitMessage> messages = plumbing.getCommitMessages(RANGE,
+                        PullRequestHelper.DESCRIPTION_COMMITS_LIMIT);
+                Assert.assertEquals(COMMIT_COUNT, count);
+                Assert.assertEquals(PullRequestHelper.DESCRIPTION_COMMITS_LIMIT, messages.size());
+                return count;
+            }
+        });
+
+        final long changeSummaryNanos = time(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                final int files = plumbing.getChangeSummary("master", "topic").size();
+                Assert.assertEquals(FILE_COUNT, files);
+                return files;
+            }
+        });
+
+        final long historyNanos = time(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                final String output = runGit(repo, null, "log", "--name-status", "-M", "--full-history", "--sparse",
+                        "--encoding=UTF-8", "--pretty=format:" + HISTORY_FORMAT, RANGE);
+                // the least git4idea does with it is split it into records and lines
+                int lines = 0;
+                for (final String record : output.split("\u0001")) {
+                    lines += record.split("\n").length;
+                }
+                return lines;
+            }
+        });
+
+        final long diffNanos = time(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return runGit(repo, null, "diff", "--name-status", "-M", "master", "topic").split("\n").length;
+            }
+        });
+
+        System.out.println(String.format("commit summary: %d ms, git log for history: %d ms",
+                summaryNanos / 1000000, historyNanos / 1000000));
+        System.out.println(String.format("change summary: %d ms, git diff for changes: %d ms",
+                changeSummaryNanos / 1000000, diffNanos / 1000000));
+
+        Assert.assertTrue(summaryNanos < historyNanos);
+    }
+
+    /**
+     * Returns the average time of the task after warming up
+     */
+    private long time(final Callable<Integer> task) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            task.call();
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.call();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    /**
+     * Creates a master branch with one commit adding all the files, and a topic branch on top of it where every
+     * commit changes one of them
+     */
+    private String createFastImportStream() {
+        final StringBuilder sb = new StringBuilder();
+        long time = 1400000000L;
+
+        sb.append("commit refs/heads/master\nmark :1\n");
+        appendCommitter(sb, time++);
+        appendData(sb, "Add files\n");
+        for (int i = 0; i < FILE_COUNT; i++) {
+            sb.append("M 644 inline src/file").append(i).append(".txt\n");
+            appendData(sb, "file " + i + "\n");
+        }
+
+        for (int i = 1; i <= COMMIT_COUNT; i++) {
+            sb.append("commit refs/heads/topic\n");
+            appendCommitter(sb, time++);
+            appendData(sb, "Change " + i + "\n\nChanges file " + (i % FILE_COUNT) + " for the " + i + " time\n");
+            if (i == 1) {
+                sb.append("from :1\n");
+            }
+            sb.append("M 644 inline src/file").append(i % FILE_COUNT).append(".txt\n");
+            appendData(sb, "file " + (i % FILE_COUNT) + " version " + i + "\n");
+        }
+        return sb.toString();
+    }
+
+    private void appendCommitter(final StringBuilder sb, final long time) {
+        sb.append("committer Benchmark <benchmark@example.com> ").append(time).append(" +0000\n");
+    }
+
+    private void appendData(final StringBuilder sb, final String data) {
+        // all the data is ASCII so the length in chars is the length in bytes
+        sb.append("data ").append(data.length()).append('\n').append(data).append('\n');
+    }
+
+    private static String runGit(final File directory, final String input, final String... arguments)
+            throws VcsException {
+        final List<String> command = new ArrayList<String>();
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        try {
+            final Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+            final OutputStream stdin = process.getOutputStream();
+            if (input != null) {
+                final Writer writer = new OutputStreamWriter(stdin, "UTF-8");
+                writer.write(input);
+                writer.flush();
+            }
+            stdin.close();
+
+            final String output = IOUtils.toString(process.getInputStream(), "UTF-8");
+            if (process.waitFor() != 0) {
+                throw new VcsException("git " + arguments[0] + " failed: " + output);
+            }
+            return output;
+        } catch (IOException e) {
+            throw new VcsException(e);
+        } catch (InterruptedException e) {
+            throw new VcsException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.pullrequest;
+
+import com.intellij.openapi.vcs.VcsException;
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import git4idea.commands.GitCommand;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class GitPlumbingTest extends IdeaAbstractTest {
+
+    @Test
+    public void testParseNameStatus() throws VcsException {
+        final List<GitPlumbing.FileStatus> files = GitPlumbing.parseNameStatus(
+                "M\0src/Main.java\0R087\0old name.txt\0new name.txt\0A\0docs/readme.md\0D\0gone.txt\0");
+
+        Assert.assertEquals(4, files.size());
+        Assert.assertEquals('M', files.get(0).getStatus());
+        Assert.assertEquals("src/Main.java", files.get(0).getPath());
+        Assert.assertNull(files.get(0).getOldPath());
+        Assert.assertEquals('R', files.get(1).getStatus());
+        Assert.assertEquals("new name.txt", files.get(1).getPath());
+        Assert.assertEquals("old name.txt", files.get(1).getOldPath());
+        Assert.assertEquals("docs/readme.md", files.get(2).getPath());
+        Assert.assertEquals('D', files.get(3).getStatus());
+    }
+
+    @Test
+    public void testParseNameStatusEdges() throws VcsException {
+        Assert.assertTrue(GitPlumbing.parseNameStatus("").isEmpty());
+        Assert.assertTrue(GitPlumbing.parseNameStatus(null).isEmpty());
+
+        // the last path isn't always terminated and line breaks between entries are skipped
+        final List<GitPlumbing.FileStatus> files = GitPlumbing.parseNameStatus("M\0a.txt\0\nM\0b.txt");
+        Assert.assertEquals(2, files.size());
+        Assert.assertEquals("a.txt", files.get(0).getPath());
+        Assert.assertEquals("b.txt", files.get(1).getPath());
+    }
+
+    @Test(expected = VcsException.class)
+    public void testParseNameStatusTruncated() throws VcsException {
+        GitPlumbing.parseNameStatus("R100\0old.txt\0");
+    }
+
+    @Test
+    public void testParseCount() throws VcsException {
+        Assert.assertEquals(10000, GitPlumbing.parseCount("10000\n"));
+        Assert.assertEquals(0, GitPlumbing.parseCount("0"));
+    }
+
+    @Test(expected = VcsException.class)
+    public void testParseCountFailure() throws VcsException {
+        GitPlumbing.parseCount("fatal: bad revision");
+    }
+
+    @Test
+    public void testCommands() throws VcsException {
+        final StringBuilder commands = new StringBuilder();
+        final GitPlumbing underTest = new GitPlumbing(null, null) {
+            @Override
+            protected String run(final GitCommand command, final String... parameters) {
+                commands.append(Arrays.toString(parameters));
+                if (command == GitCommand.REV_PARSE) {
+                    return "1111\n" + (parameters[1].startsWith("abc") ? "1111" : "2222") + "\n";
+                }
+                return command == GitCommand.REV_LIST ? "3\n" : "M\0a.txt\0";
+            }
+        };
+
+        Assert.assertEquals(3, underTest.countCommits("abc.."));
+        Assert.assertEquals(1, underTest.getChangeSummary("abc", "def").size());
+        Assert.assertFalse(underTest.isSameTree("abc", "def"));
+        Assert.assertTrue(underTest.isSameTree("abc", "abc"));
+        Assert.assertEquals("[--count, abc..][--name-status, -z, -M, abc, def][abc^{tree}, def^{tree}][abc^{tree}, abc^{tree}]",
+                commands.toString());
+    }
+
+    @Test(expected = VcsException.class)
+    public void testIsSameTreeFailure() throws VcsException {
+        final GitPlumbing underTest = new GitPlumbing(null, null) {
+            @Override
+            protected String run(final GitCommand command, final String... parameters) {
+                return "fatal: bad revision";
+            }
+        };
+        underTest.isSameTree("abc", "def");
+    }
+}
@@ -0,0 +1,160 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.pullrequest;
+
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import com.microsoft.alm.plugin.operations.PullRequestLookupOperation;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequest;
+import com.microsoft.alm.sourcecontrol.webapi.model.PullRequestAsyncStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PullRequestsTreeModelTest extends IdeaAbstractTest {
+    private PullRequestsTreeModel underTest;
+    private int insertedCount;
+    private int removedCount;
+    private int changedCount;
+    private int structureChangedCount;
+
+    @Before
+    public void setUp() {
+        underTest = new PullRequestsTreeModel();
+        underTest.addTreeModelListener(new TreeModelListener() {
+            @Override
+            public void treeNodesChanged(TreeModelEvent e) {
+                changedCount += e.getChildIndices().length;
+            }
+
+            @Override
+            public void treeNodesInserted(TreeModelEvent e) {
+                insertedCount += e.getChildIndices().length;
+            }
+
+            @Override
+            public void treeNodesRemoved(TreeModelEvent e) {
+                removedCount += e.getChildIndices().length;
+            }
+
+            @Override
+            public void treeStructureChanged(TreeModelEvent e) {
+                structureChangedCount++;
+            }
+        });
+    }
+
+    private GitPullRequest createPullRequest(final int id, final String title) {
+        final GitPullRequest pullRequest = mock(GitPullRequest.class, Mockito.RETURNS_DEEP_STUBS);
+        when(pullRequest.getPullRequestId()).thenReturn(id);
+        when(pullRequest.getTitle()).thenReturn(title);
+        when(pullRequest.getCreatedBy().getDisplayName()).thenReturn("user");
+        when(pullRequest.getSourceRefName()).thenReturn("refs/heads/topic" + id);
+        when(pullRequest.getTargetRefName()).thenReturn("refs/heads/master");
+        when(pullRequest.getMergeStatus()).thenReturn(PullRequestAsyncStatus.SUCCEEDED);
+        when(pullRequest.getCreationDate()).thenReturn(new Date());
+        return pullRequest;
+    }
+
+    private int getChildId(final PRTreeNode rootNode, final int index) {
+        return ((PRTreeNode) rootNode.getChildAt(index)).getGitPullRequest().getPullRequestId();
+    }
+
+    @Test
+    public void testRefreshReusesNodes() {
+        underTest.appendPullRequests(Arrays.asList(createPullRequest(1, "one"), createPullRequest(2, "two"), createPullRequest(3, "three")),
+                PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        Assert.assertEquals(3, underTest.getRequestedByMeRoot().getChildCount());
+        Assert.assertEquals(3, insertedCount);
+        final PRTreeNode node2 = (PRTreeNode) underTest.getRequestedByMeRoot().getChildAt(1);
+        final PRTreeNode node3 = (PRTreeNode) underTest.getRequestedByMeRoot().getChildAt(2);
+
+        // the pull requests stay until the results of the refresh come in
+        underTest.beginRefresh();
+        Assert.assertEquals(3, underTest.getRequestedByMeRoot().getChildCount());
+
+        final GitPullRequest newPullRequest2 = createPullRequest(2, "two updated");
+        underTest.appendPullRequests(Arrays.asList(newPullRequest2, createPullRequest(3, "three"), createPullRequest(4, "four")),
+                PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        underTest.endRefresh();
+
+        Assert.assertEquals(3, underTest.getRequestedByMeRoot().getChildCount());
+        Assert.assertEquals(2, getChildId(underTest.getRequestedByMeRoot(), 0));
+        Assert.assertEquals(3, getChildId(underTest.getRequestedByMeRoot(), 1));
+        Assert.assertEquals(4, getChildId(underTest.getRequestedByMeRoot(), 2));
+        Assert.assertSame(node2, underTest.getRequestedByMeRoot().getChildAt(0));
+        Assert.assertSame(node3, underTest.getRequestedByMeRoot().getChildAt(1));
+        Assert.assertSame(newPullRequest2, node2.getGitPullRequest());
+        Assert.assertEquals("two updated", node2.toString());
+
+        Assert.assertEquals(4, insertedCount);
+        Assert.assertEquals(1, removedCount);
+        Assert.assertEquals(2, changedCount);
+        Assert.assertEquals(0, structureChangedCount);
+    }
+
+    @Test
+    public void testEndRefreshClearsScopesWithoutResults() {
+        underTest.appendPullRequests(Arrays.asList(createPullRequest(1, "one")), PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        underTest.appendPullRequests(Arrays.asList(createPullRequest(2, "two")), PullRequestLookupOperation.PullRequestScope.ASSIGNED_TO_ME);
+
+        underTest.beginRefresh();
+        underTest.appendPullRequests(Arrays.asList(createPullRequest(1, "one")), PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        underTest.endRefresh();
+
+        Assert.assertEquals(1, underTest.getRequestedByMeRoot().getChildCount());
+        Assert.assertEquals(0, underTest.getAssignedToMeRoot().getChildCount());
+    }
+
+    @Test
+    public void testFilter() {
+        underTest.appendPullRequests(Arrays.asList(createPullRequest(1, "Fix build"), createPullRequest(2, "Fix tests"), createPullRequest(3, "Docs")),
+                PullRequestLookupOperation.PullRequestScope.ASSIGNED_TO_ME);
+        final PRTreeNode node1 = (PRTreeNode) underTest.getAssignedToMeRoot().getChildAt(0);
+
+        underTest.setFilter("fix");
+        Assert.assertEquals(2, underTest.getAssignedToMeRoot().getChildCount());
+        underTest.setFilter("fix b");
+        Assert.assertEquals(1, underTest.getAssignedToMeRoot().getChildCount());
+        Assert.assertSame(node1, underTest.getAssignedToMeRoot().getChildAt(0));
+
+        // new pull requests are filtered too
+        underTest.appendPullRequests(Arrays.asList(createPullRequest(4, "fix bug")), PullRequestLookupOperation.PullRequestScope.ASSIGNED_TO_ME);
+        Assert.assertEquals(2, underTest.getAssignedToMeRoot().getChildCount());
+
+        underTest.setFilter("");
+        Assert.assertEquals(4, underTest.getAssignedToMeRoot().getChildCount());
+        Assert.assertEquals(1, getChildId(underTest.getAssignedToMeRoot(), 0));
+        Assert.assertEquals(4, getChildId(underTest.getAssignedToMeRoot(), 3));
+        Assert.assertEquals(0, structureChangedCount);
+    }
+
+    @Test
+    public void testFilterOnCreationDate() {
+        final long day = 24L * 60L * 60L * 1000L;
+        final GitPullRequest pullRequest = createPullRequest(1, "one");
+        when(pullRequest.getCreationDate()).thenReturn(new Date(System.currentTimeMillis() - 10 * day));
+        underTest.appendPullRequests(Arrays.asList(pullRequest, createPullRequest(2, "two")),
+                PullRequestLookupOperation.PullRequestScope.ASSIGNED_TO_ME);
+
+        final SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyyy");
+        underTest.setFilter(format.format(pullRequest.getCreationDate()));
+        Assert.assertEquals(1, underTest.getAssignedToMeRoot().getChildCount());
+
+        // the date shown changes as time goes by, the filter matches what is shown now
+        when(pullRequest.getCreationDate()).thenReturn(new Date(System.currentTimeMillis() - 20 * day));
+        underTest.setFilter("");
+        underTest.setFilter(format.format(pullRequest.getCreationDate()));
+        Assert.assertEquals(1, underTest.getAssignedToMeRoot().getChildCount());
+    }
+}
@@ -0,0 +1,65 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.vcsimport;
+
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import com.microsoft.alm.plugin.services.PropertyService;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ImportCheckpointTest extends IdeaAbstractTest {
+    private static final String TARGET = "https://account.visualstudio.com/DefaultCollection/1234/my|repo";
+
+    @Test
+    public void testRestoresSameTarget() {
+        final PropertyService propertyService = new ImportPipelineTest.MapPropertyService();
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(propertyService, "/project", TARGET);
+        Assert.assertFalse(checkpoint.isCompleted("create"));
+        Assert.assertNull(checkpoint.getRemoteRepositoryId());
+
+        checkpoint.markCompleted("check");
+        checkpoint.markCompleted("create");
+        checkpoint.setRemoteRepositoryId("abcd-1234");
+
+        final ImportCheckpoint restored = new ImportCheckpoint(propertyService, "/project", TARGET);
+        Assert.assertTrue(restored.isCompleted("check"));
+        Assert.assertTrue(restored.isCompleted("create"));
+        Assert.assertFalse(restored.isCompleted("push"));
+        Assert.assertEquals("abcd-1234", restored.getRemoteRepositoryId());
+
+        // other projects have their own checkpoint
+        Assert.assertFalse(new ImportCheckpoint(propertyService, "/other", TARGET).isCompleted("check"));
+    }
+
+    @Test
+    public void testOtherTargetStartsOver() {
+        final PropertyService propertyService = new ImportPipelineTest.MapPropertyService();
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(propertyService, "/project", TARGET);
+        checkpoint.markCompleted("check");
+        checkpoint.setRemoteRepositoryId("abcd-1234");
+
+        final ImportCheckpoint other = new ImportCheckpoint(propertyService, "/project", TARGET + "2");
+        Assert.assertFalse(other.isCompleted("check"));
+        Assert.assertNull(other.getRemoteRepositoryId());
+
+        // steps completed before the repository was created are kept without an id
+        final ImportCheckpoint noRepository = new ImportCheckpoint(propertyService, "/project", "target");
+        noRepository.markCompleted("check");
+        Assert.assertTrue(new ImportCheckpoint(propertyService, "/project", "target").isCompleted("check"));
+        Assert.assertNull(new ImportCheckpoint(propertyService, "/project", "target").getRemoteRepositoryId());
+    }
+
+    @Test
+    public void testClear() {
+        final PropertyService propertyService = new ImportPipelineTest.MapPropertyService();
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(propertyService, "/project", TARGET);
+        checkpoint.markCompleted("check");
+        checkpoint.setRemoteRepositoryId("abcd-1234");
+        checkpoint.clear();
+
+        Assert.assertFalse(checkpoint.isCompleted("check"));
+        Assert.assertNull(propertyService.getProperty(ImportCheckpoint.PROP_CHECKPOINT_PREFIX + "/project"));
+        Assert.assertFalse(new ImportCheckpoint(propertyService, "/project", TARGET).isCompleted("check"));
+    }
+}
@@ -0,0 +1,192 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.vcsimport;
+
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import com.microsoft.alm.plugin.services.PropertyService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ImportPipelineTest extends IdeaAbstractTest {
+    private static final Executor CURRENT_THREAD = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private ExecutorService executorService;
+    private ImportCheckpoint checkpoint;
+    private List<String> ran;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newCachedThreadPool();
+        checkpoint = new ImportCheckpoint(new MapPropertyService(), "/project", "collection/project/repo");
+        ran = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testStepsRunAfterTheirDependencies() {
+        final ImportPipeline pipeline = new ImportPipeline(CURRENT_THREAD);
+        pipeline.addStep(new RecordingStep("check"));
+        pipeline.addStep(new RecordingStep("find"));
+        pipeline.addStep(new RecordingStep("init", "find", "check"));
+        pipeline.addStep(new RecordingStep("commit", "init"));
+        pipeline.addStep(new RecordingStep("create", "commit"));
+        pipeline.addStep(new RecordingStep("push", "create"));
+
+        Assert.assertTrue(pipeline.run(checkpoint));
+        Assert.assertEquals(Arrays.asList("check", "find", "init", "commit", "create", "push"), ran);
+        Assert.assertEquals(ran, new ArrayList<String>(pipeline.getTimings().keySet()));
+        Assert.assertTrue(pipeline.getResumedSteps().isEmpty());
+        Assert.assertNull(pipeline.getFailedStep());
+    }
+
+    @Test
+    public void testIndependentStepsOverlap() {
+        // each step waits for the other one to start, so they only finish if they run at the same time
+        final CountDownLatch started = new CountDownLatch(2);
+        final ImportPipeline pipeline = new ImportPipeline(executorService);
+        pipeline.addStep(new RecordingStep("remote") {
+            @Override
+            public boolean run() throws Exception {
+                started.countDown();
+                return started.await(5, TimeUnit.SECONDS) && super.run();
+            }
+        });
+        pipeline.addStep(new RecordingStep("local") {
+            @Override
+            public boolean run() throws Exception {
+                started.countDown();
+                return started.await(5, TimeUnit.SECONDS) && super.run();
+            }
+        });
+        pipeline.addStep(new RecordingStep("push", "remote", "local"));
+
+        Assert.assertTrue(pipeline.run(checkpoint));
+        Assert.assertEquals(3, ran.size());
+        Assert.assertEquals("push", ran.get(2));
+    }
+
+    @Test
+    public void testRetryResumesFromFailedStep() {
+        final ImportPipeline first = new ImportPipeline(CURRENT_THREAD);
+        first.addStep(new ResumableStep("create"));
+        first.addStep(new RecordingStep("init"));
+        first.addStep(new RecordingStep("push", "create", "init") {
+            @Override
+            public boolean run() throws Exception {
+                super.run();
+                return false;
+            }
+        });
+
+        Assert.assertFalse(first.run(checkpoint));
+        Assert.assertEquals("push", first.getFailedStep());
+        Assert.assertNull(first.getError());
+        Assert.assertTrue(checkpoint.isCompleted("create"));
+        Assert.assertFalse(checkpoint.isCompleted("push"));
+
+        ran.clear();
+        final ImportPipeline retry = new ImportPipeline(CURRENT_THREAD);
+        retry.addStep(new ResumableStep("create"));
+        retry.addStep(new RecordingStep("init"));
+        retry.addStep(new RecordingStep("push", "create", "init"));
+
+        Assert.assertTrue(retry.run(checkpoint));
+        // init doesn't resume so it runs again
+        Assert.assertEquals(Arrays.asList("init", "push"), ran);
+        Assert.assertEquals(Collections.singletonList("create"), retry.getResumedSteps());
+        Assert.assertFalse(retry.getTimings().containsKey("create"));
+    }
+
+    @Test
+    public void testFailureStopsDependentSteps() {
+        final IllegalStateException error = new IllegalStateException("server unavailable");
+        final ImportPipeline pipeline = new ImportPipeline(CURRENT_THREAD);
+        pipeline.addStep(new RecordingStep("create") {
+            @Override
+            public boolean run() {
+                throw error;
+            }
+        });
+        pipeline.addStep(new RecordingStep("init"));
+        pipeline.addStep(new RecordingStep("push", "create", "init"));
+
+        Assert.assertFalse(pipeline.run(checkpoint));
+        Assert.assertEquals("create", pipeline.getFailedStep());
+        Assert.assertSame(error, pipeline.getError());
+        Assert.assertFalse(ran.contains("push"));
+        Assert.assertFalse(checkpoint.isCompleted("create"));
+        Assert.assertTrue(pipeline.getTimings().containsKey("create"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDependency() {
+        final ImportPipeline pipeline = new ImportPipeline(CURRENT_THREAD);
+        pipeline.addStep(new RecordingStep("push", "create"));
+    }
+
+    private class RecordingStep extends ImportPipeline.Step {
+        public RecordingStep(final String name, final String... dependencies) {
+            super(name, dependencies);
+        }
+
+        @Override
+        public boolean run() throws Exception {
+            ran.add(getName());
+            return true;
+        }
+    }
+
+    private class ResumableStep extends RecordingStep {
+        public ResumableStep(final String name, final String... dependencies) {
+            super(name, dependencies);
+        }
+
+        @Override
+        public boolean resume() {
+            return true;
+        }
+    }
+
+    static class MapPropertyService implements PropertyService {
+        private final Map<String, String> properties = new HashMap<String, String>();
+
+        @Override
+        public String getProperty(final String propertyName) {
+            return properties.get(propertyName);
+        }
+
+        @Override
+        public void setProperty(final String propertyName, final String value) {
+            properties.put(propertyName, value);
+        }
+
+        @Override
+        public void removeProperty(final String propertyName) {
+            properties.remove(propertyName);
+        }
+    }
+}
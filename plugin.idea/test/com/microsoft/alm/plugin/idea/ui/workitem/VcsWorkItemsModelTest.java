@@ -109,6 +109,17 @@ public class VcsWorkItemsModelTest extends IdeaAbstractTest {
         verify(spyModel, never()).createWorkItemBranchAssociation(any(ServerContext.class), any(String.class), any(Integer.class));
     }
 
+    @Test
+    public void testCreateBranch_RowNotLoaded() throws Exception {
+        setupBranchCreate(true, "branchName", true);
+        when(mockTableModel.getSelectedWorkItems()).thenReturn(new ArrayList<WorkItem>());
+        VcsWorkItemsModel spyModel = Mockito.spy(new VcsWorkItemsModel(mockProject, mockTableModel));
+        spyModel.createBranch();
+
+        verify(mockCreateBranchController, never()).showModalDialog();
+        verify(spyModel, never()).createWorkItemBranchAssociation(any(ServerContext.class), any(String.class), any(Integer.class));
+    }
+
     @Test
     public void testCreateBranch_CreateBranchFailed() throws Exception {
         setupBranchCreate(true, "branchName", false);
@@ -0,0 +1,117 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.workitem;
+
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+public class WorkItemRowsTest extends IdeaAbstractTest {
+
+    private WorkItem createWorkItem(final int id, final String type, final String state, final String title) {
+        final WorkItem item = new WorkItem();
+        item.setId(id);
+        final HashMap<String, Object> fields = new HashMap<String, Object>();
+        fields.put(WorkItemHelper.FIELD_ID, id);
+        fields.put(WorkItemHelper.FIELD_WORK_ITEM_TYPE, type);
+        fields.put(WorkItemHelper.FIELD_STATE, state);
+        fields.put(WorkItemHelper.FIELD_TITLE, title);
+        item.setFields(fields);
+        return item;
+    }
+
+    @Test
+    public void testAddAndGetValues() {
+        final WorkItemRows rows = new WorkItemRows(1);
+        for (int i = 0; i < 10; i++) {
+            rows.add(createWorkItem(i, new String("Bug"), new String("Active"), "title " + i));
+        }
+
+        Assert.assertEquals(10, rows.size());
+        Assert.assertEquals("3", rows.getValue(3, WorkItemsTableModel.Column.ID));
+        Assert.assertEquals("Bug", rows.getValue(3, WorkItemsTableModel.Column.TYPE));
+        Assert.assertEquals("Active", rows.getValue(3, WorkItemsTableModel.Column.STATE));
+        Assert.assertEquals("title 3", rows.getValue(3, WorkItemsTableModel.Column.TITLE));
+        Assert.assertEquals("", rows.getValue(3, WorkItemsTableModel.Column.ASSIGNED_TO));
+        Assert.assertEquals("", rows.getValue(3, WorkItemsTableModel.Column.BRANCH));
+
+        // the types and states of the rows are shared
+        Assert.assertSame(rows.getValue(1, WorkItemsTableModel.Column.TYPE), rows.getValue(2, WorkItemsTableModel.Column.TYPE));
+        Assert.assertSame(rows.getValue(1, WorkItemsTableModel.Column.STATE), rows.getValue(9, WorkItemsTableModel.Column.STATE));
+    }
+
+    @Test
+    public void testUnloadedRows() {
+        final WorkItemRows rows = new WorkItemRows(10);
+        rows.addUnloaded(42);
+        Assert.assertTrue(rows.hasUnloadedRows());
+        Assert.assertFalse(rows.isLoaded(0));
+        Assert.assertEquals("42", rows.getValue(0, WorkItemsTableModel.Column.ID));
+        Assert.assertEquals("", rows.getValue(0, WorkItemsTableModel.Column.TITLE));
+        Assert.assertNull(rows.getWorkItem(0));
+
+        rows.set(0, createWorkItem(42, "Task", "New", "loaded"));
+        Assert.assertFalse(rows.hasUnloadedRows());
+        final WorkItem item = rows.getWorkItem(0);
+        Assert.assertEquals(42, item.getId().intValue());
+        Assert.assertEquals("loaded", WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_TITLE));
+        Assert.assertEquals("42", WorkItemHelper.getFieldValue(item, WorkItemHelper.FIELD_ID));
+
+        rows.clear();
+        Assert.assertEquals(0, rows.size());
+    }
+
+    @Test
+    public void testSearchKey() {
+        final WorkItemRows rows = new WorkItemRows(10, WorkItemsTableModel.DEFAULT_COLUMNS);
+        rows.addUnloaded(7);
+        Assert.assertNull(rows.getSearchKey(0));
+
+        rows.set(0, createWorkItem(7, "Bug", "Active", "Fix The Build"));
+        Assert.assertEquals("7\nbug\nactive\nfix the build", rows.getSearchKey(0));
+
+        rows.clear();
+        rows.addUnloaded(8);
+        Assert.assertNull(rows.getSearchKey(0));
+    }
+
+    @Test
+    public void testOnlyShownColumnsAreKept() {
+        final WorkItemRows rows = new WorkItemRows(1, WorkItemsTableModel.DEFAULT_COLUMNS);
+        final WorkItem item = createWorkItem(5, "Bug", "Active", "title");
+        item.getFields().put(WorkItemHelper.FIELD_ASSIGNED_TO, "someone");
+        rows.add(item);
+
+        Assert.assertEquals("title", rows.getValue(0, WorkItemsTableModel.Column.TITLE));
+        Assert.assertEquals("", rows.getValue(0, WorkItemsTableModel.Column.ASSIGNED_TO));
+
+        // the work item handed to the actions has the fields that are shown
+        final WorkItem shown = rows.getWorkItem(0);
+        Assert.assertEquals("Bug", WorkItemHelper.getFieldValue(shown, WorkItemHelper.FIELD_WORK_ITEM_TYPE));
+        Assert.assertEquals("title", WorkItemHelper.getFieldValue(shown, WorkItemHelper.FIELD_TITLE));
+        Assert.assertFalse(shown.getFields().containsKey(WorkItemHelper.FIELD_ASSIGNED_TO));
+    }
+
+    @Test
+    public void testIdValueIsCreatedOnce() {
+        final WorkItemRows rows = new WorkItemRows(1);
+        rows.addUnloaded(12);
+        final String id = rows.getValue(0, WorkItemsTableModel.Column.ID);
+        Assert.assertSame(id, rows.getValue(0, WorkItemsTableModel.Column.ID));
+
+        // loading the row keeps the id it was added with
+        rows.set(0, createWorkItem(12, "Bug", "Active", "title"));
+        Assert.assertSame(id, rows.getValue(0, WorkItemsTableModel.Column.ID));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBadIndex() {
+        final WorkItemRows rows = new WorkItemRows(10);
+        rows.addUnloaded(1);
+        rows.getValue(1, WorkItemsTableModel.Column.ID);
+    }
+}
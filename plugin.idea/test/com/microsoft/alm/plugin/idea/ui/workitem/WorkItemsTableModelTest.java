@@ -0,0 +1,98 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.ui.workitem;
+
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import com.microsoft.alm.plugin.operations.WorkItemPageLoader;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WorkItemsTableModelTest extends IdeaAbstractTest {
+    private static final int COUNT = 450;
+
+    private WorkItemsTableModel underTest;
+    private WorkItemPageLoader loader;
+
+    @Before
+    public void setUp() {
+        underTest = new WorkItemsTableModel(WorkItemsTableModel.DEFAULT_COLUMNS);
+        loader = Mockito.mock(WorkItemPageLoader.class);
+        when(loader.getCount()).thenReturn(COUNT);
+        when(loader.getPageCount()).thenReturn(3);
+        for (int i = 0; i < COUNT; i++) {
+            when(loader.getId(i)).thenReturn(i + 1);
+        }
+
+        // only the first page is loaded
+        underTest.addWorkItemPage(loader, 0, createWorkItems(0, WorkItemPageLoader.PAGE_SIZE));
+    }
+
+    private static List<WorkItem> createWorkItems(final int startIndex, final int count) {
+        final List<WorkItem> workItems = new ArrayList<WorkItem>(count);
+        for (int i = startIndex; i < startIndex + count; i++) {
+            final WorkItem item = new WorkItem();
+            item.setId(i + 1);
+            workItems.add(item);
+        }
+        return workItems;
+    }
+
+    @Test
+    public void testRowsOfUnloadedPages() {
+        Assert.assertEquals(COUNT, underTest.getRowCount());
+        Assert.assertTrue(underTest.hasUnloadedRows());
+        Assert.assertNotNull(underTest.getWorkItem(0));
+        Assert.assertNull(underTest.getWorkItem(WorkItemPageLoader.PAGE_SIZE));
+    }
+
+    @Test
+    public void testPaintingLoadedRowRequestsNothing() {
+        underTest.getValueAt(10, 0);
+        verify(loader, never()).requestPage(anyInt(), any(WorkItemPageLoader.Listener.class));
+    }
+
+    @Test
+    public void testPaintingUnloadedRowRequestsItsPage() {
+        underTest.getValueAt(WorkItemPageLoader.PAGE_SIZE + 10, 0);
+        verify(loader).requestPage(eq(1), any(WorkItemPageLoader.Listener.class));
+        verify(loader, never()).requestPage(eq(2), any(WorkItemPageLoader.Listener.class));
+    }
+
+    @Test
+    public void testPaintingRowNearEndOfPageRequestsNextPage() {
+        underTest.getValueAt(2 * WorkItemPageLoader.PAGE_SIZE - 10, 0);
+        verify(loader).requestPage(eq(1), any(WorkItemPageLoader.Listener.class));
+        verify(loader).requestPage(eq(2), any(WorkItemPageLoader.Listener.class));
+    }
+
+    @Test
+    public void testRequestedPageIsNotRequestedAgain() {
+        when(loader.isPageRequested(1)).thenReturn(true);
+        underTest.getValueAt(WorkItemPageLoader.PAGE_SIZE + 10, 0);
+        verify(loader, never()).requestPage(anyInt(), any(WorkItemPageLoader.Listener.class));
+    }
+
+    @Test
+    public void testSelectedRowsThatAreLoading() {
+        underTest.getSelectionModel().setSelectionInterval(WorkItemPageLoader.PAGE_SIZE, WorkItemPageLoader.PAGE_SIZE + 1);
+        Assert.assertTrue(underTest.getSelectedWorkItems().isEmpty());
+
+        underTest.addWorkItemPage(loader, WorkItemPageLoader.PAGE_SIZE, createWorkItems(WorkItemPageLoader.PAGE_SIZE, WorkItemPageLoader.PAGE_SIZE));
+        Assert.assertEquals(2, underTest.getSelectedWorkItems().size());
+        Assert.assertEquals(WorkItemPageLoader.PAGE_SIZE + 1, underTest.getSelectedWorkItems().get(0).getId().intValue());
+    }
+}
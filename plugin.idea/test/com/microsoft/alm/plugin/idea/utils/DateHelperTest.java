@@ -0,0 +1,41 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.idea.utils;
+
+import com.microsoft.alm.plugin.idea.IdeaAbstractTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+public class DateHelperTest extends IdeaAbstractTest {
+    private static final long MINUTE = 60L * 1000L;
+
+    @Test
+    public void testFriendlyStringOnlyChangesWithBucket() {
+        final Date date = new Date(1000000000000L);
+        long previousBucket = DateHelper.getFriendlyDateTimeBucket(date, date.getTime());
+        String previousString = DateHelper.getFriendlyDateTimeString(date, date.getTime());
+
+        // walk through the first ten days a minute at a time
+        for (long now = date.getTime() + MINUTE; now < date.getTime() + 10 * 24 * 60 * MINUTE; now += MINUTE) {
+            final long bucket = DateHelper.getFriendlyDateTimeBucket(date, now);
+            final String friendlyString = DateHelper.getFriendlyDateTimeString(date, now);
+            if (bucket == previousBucket) {
+                Assert.assertEquals("at " + (now - date.getTime()) / MINUTE + " minutes", previousString, friendlyString);
+            }
+            previousBucket = bucket;
+            previousString = friendlyString;
+        }
+    }
+
+    @Test
+    public void testBucketOfOldAndMissingDates() {
+        final long now = System.currentTimeMillis();
+        Assert.assertEquals(Long.MAX_VALUE, DateHelper.getFriendlyDateTimeBucket(new Date(now - 30 * 24 * 60 * MINUTE), now));
+        Assert.assertEquals(-1, DateHelper.getFriendlyDateTimeBucket(new Date(now + MINUTE), now));
+        Assert.assertEquals(0, DateHelper.getFriendlyDateTimeBucket(null, now));
+        Assert.assertEquals("", DateHelper.getFriendlyDateTimeString(null, now));
+    }
+}
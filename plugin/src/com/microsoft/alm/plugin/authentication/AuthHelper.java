@@ -7,6 +7,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.microsoft.alm.client.model.VssServiceResponseException;
 import com.microsoft.alm.common.utils.SystemHelper;
 import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.exceptions.TeamServicesException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.NTCredentials;
@@ -83,6 +84,15 @@ public class AuthHelper {
         return null;
     }
 
+    /**
+     * Returns true if the authentication info has the user name and password that credentials are built from.
+     * Saved authentication info whose secrets couldn't be read has neither.
+     */
+    public static boolean hasCredentials(final AuthenticationInfo authenticationInfo) {
+        return authenticationInfo != null && authenticationInfo.getUserName() != null &&
+                authenticationInfo.getPassword() != null;
+    }
+
     /**
      * Returns the NTCredentials or UsernamePasswordCredentials object
      *
@@ -91,6 +101,12 @@ public class AuthHelper {
      * @return
      */
     public static Credentials getCredentials(final ServerContext.Type type, final AuthenticationInfo authenticationInfo) {
+        if (!hasCredentials(authenticationInfo)) {
+            // fail like the server would instead of building credentials without a user
+            throw new TeamServicesException(type == ServerContext.Type.TFS ?
+                    TeamServicesException.KEY_TFS_AUTH_FAILED : TeamServicesException.KEY_VSO_AUTH_FAILED);
+        }
+
         if (type == ServerContext.Type.TFS) {
             return getNTCredentials(authenticationInfo.getUserName(), authenticationInfo.getPassword());
         } else {
@@ -0,0 +1,384 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.context;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.common.utils.UrlHelper;
+import com.microsoft.alm.plugin.authentication.AuthHelper;
+import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.client.ClientConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton that hands out HTTP transports shared by all ServerContext objects talking to the same server
+ * as the same user. Each transport owns a bounded, pooled connection manager so that the many contexts
+ * created for repositories and projects of one account reuse the same keep-alive connections and TLS sessions
+ * instead of opening their own.
+ * <p/>
+ * A user has one transport per server and password. When the user's password or token changes the transport of the
+ * old one is retired: contexts created with the old credentials keep using it, and it is closed once it is idle,
+ * so expired credentials don't keep a pool of connections open.
+ * <p/>
+ * Clients returned by this class are owned by the manager and must not be closed by callers.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class HttpTransportManager {
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransportManager.class);
+
+    static final int MAX_CONNECTIONS_TOTAL = 50;
+    static final int MAX_CONNECTIONS_PER_ROUTE = 10;
+    static final long CONNECTION_TIME_TO_LIVE_SECONDS = 5 * 60;
+    static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 60;
+    static final long IDLE_EVICTION_INTERVAL_SECONDS = 30;
+    // how long a retired transport has to go without being handed out before it is closed
+    static final long RETIRED_TRANSPORT_IDLE_SECONDS = CONNECTION_TIME_TO_LIVE_SECONDS;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Map<TransportKey, Transport> transports = new HashMap<TransportKey, Transport>();
+    private ScheduledExecutorService evictionExecutor;
+
+    private static class Holder {
+        private static final HttpTransportManager INSTANCE = new HttpTransportManager();
+    }
+
+    public static HttpTransportManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected HttpTransportManager() {
+    }
+
+    /**
+     * Returns the shared JAX-RS client for the server and credentials described by the authentication info
+     */
+    public synchronized Client getClient(final ServerContext.Type type, final AuthenticationInfo authenticationInfo) {
+        ArgumentHelper.checkNotNull(type, "type");
+        ArgumentHelper.checkNotNull(authenticationInfo, "authenticationInfo");
+
+        final Transport transport = getTransport(type, authenticationInfo);
+        if (transport.client == null) {
+            final ClientConfig clientConfig = ServerContext.getClientConfig(type, authenticationInfo, transport.key.includeProxySettings);
+            clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, transport.connectionManager);
+            transport.client = ClientBuilder.newClient(clientConfig);
+        }
+        return transport.client;
+    }
+
+    /**
+     * Returns the shared Apache HTTP client (used by the SOAP services) for the server and credentials described
+     * by the authentication info. It uses the same connection pool as the JAX-RS client.
+     */
+    public synchronized HttpClient getHttpClient(final ServerContext.Type type, final AuthenticationInfo authenticationInfo) {
+        ArgumentHelper.checkNotNull(type, "type");
+        ArgumentHelper.checkNotNull(authenticationInfo, "authenticationInfo");
+
+        final Transport transport = getTransport(type, authenticationInfo);
+        if (transport.httpClient == null) {
+            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY, AuthHelper.getCredentials(type, authenticationInfo));
+
+            transport.httpClient = HttpClientBuilder.create()
+                    .setConnectionManager(transport.connectionManager)
+                    .setConnectionManagerShared(true)
+                    .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                    .setDefaultCredentialsProvider(credentialsProvider)
+                    .build();
+        }
+        return transport.httpClient;
+    }
+
+    /**
+     * Returns true if the client passed in was handed out by this manager (and so must not be closed by its user)
+     */
+    public synchronized boolean isShared(final Object client) {
+        if (client == null) {
+            return false;
+        }
+
+        for (final Transport transport : transports.values()) {
+            if (transport.client == client || transport.httpClient == client) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getTransportCount() {
+        return transports.size();
+    }
+
+    /**
+     * Closes expired connections and connections that have been idle for too long in all pools,
+     * and closes the retired transports nobody uses anymore
+     */
+    public synchronized void evictIdleConnections() {
+        for (final Transport transport : transports.values()) {
+            transport.connectionManager.closeExpiredConnections();
+            transport.connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        closeRetiredTransports(System.currentTimeMillis());
+    }
+
+    /**
+     * Closes the retired transports that have no open connections and haven't been handed out for a while
+     */
+    synchronized void closeRetiredTransports(final long now) {
+        final Iterator<Transport> iterator = transports.values().iterator();
+        while (iterator.hasNext()) {
+            final Transport transport = iterator.next();
+            if (transport.retired && transport.isIdle(now)) {
+                logger.info("closeRetiredTransports: closing the connection pool of old credentials for {}", transport.key.authority);
+                iterator.remove();
+                transport.close();
+            }
+        }
+    }
+
+    /**
+     * Closes all transports and stops the idle connection eviction
+     */
+    public synchronized void shutdown() {
+        final List<Transport> toClose = new ArrayList<Transport>(transports.values());
+        transports.clear();
+        for (final Transport transport : toClose) {
+            transport.close();
+        }
+
+        if (evictionExecutor != null) {
+            evictionExecutor.shutdownNow();
+            evictionExecutor = null;
+        }
+    }
+
+    private Transport getTransport(final ServerContext.Type type, final AuthenticationInfo authenticationInfo) {
+        final TransportKey key = new TransportKey(type, authenticationInfo, isProxyEnabled());
+        Transport transport = transports.get(key);
+        if (transport == null) {
+            // other contexts may still be using the user's old credentials, so their transport is only retired
+            for (final Transport existing : transports.values()) {
+                if (!existing.retired && existing.key.isSameUser(key)) {
+                    logger.info("getTransport: the credentials changed, retiring the connection pool for {}", key.authority);
+                    existing.retired = true;
+                }
+            }
+
+            logger.info("getTransport: creating a new connection pool for {}", key.authority);
+            transport = new Transport(key, createConnectionManager(type, authenticationInfo));
+            transports.put(key, transport);
+            startEviction();
+        }
+        transport.lastUsed = System.currentTimeMillis();
+        return transport;
+    }
+
+    private PoolingHttpClientConnectionManager createConnectionManager(final ServerContext.Type type, final AuthenticationInfo authenticationInfo) {
+        final SSLConnectionSocketFactory sslSocketFactory;
+        if (ServerContext.isSSLEnabledOnPrem(type, authenticationInfo.getServerUri())) {
+            sslSocketFactory = new SSLConnectionSocketFactory(ServerContext.getSslConfigurator().createSSLContext());
+        } else {
+            sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+        }
+
+        final Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                socketFactoryRegistry, null, null, null, CONNECTION_TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        return connectionManager;
+    }
+
+    private void startEviction() {
+        if (evictionExecutor != null) {
+            return;
+        }
+
+        evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "HttpTransportManager idle connection eviction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    evictIdleConnections();
+                } catch (Throwable t) {
+                    logger.warn("evictIdleConnections failed", t);
+                }
+            }
+        }, IDLE_EVICTION_INTERVAL_SECONDS, IDLE_EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static boolean isProxyEnabled() {
+        return StringUtils.equals(System.getProperty("proxySet"), "true");
+    }
+
+    private static class Transport {
+        private final TransportKey key;
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private Client client;
+        private CloseableHttpClient httpClient;
+        // set when the user's credentials changed, the transport is closed once it is idle
+        private boolean retired;
+        private long lastUsed;
+
+        private Transport(final TransportKey key, final PoolingHttpClientConnectionManager connectionManager) {
+            this.key = key;
+            this.connectionManager = connectionManager;
+        }
+
+        /**
+         * Idle connections are closed after a minute, so a transport without any has not been used for that long
+         */
+        private boolean isIdle(final long now) {
+            final PoolStats stats = connectionManager.getTotalStats();
+            return stats.getLeased() == 0 && stats.getAvailable() == 0 &&
+                    now - lastUsed >= TimeUnit.SECONDS.toMillis(RETIRED_TRANSPORT_IDLE_SECONDS);
+        }
+
+        private void close() {
+            if (httpClient != null) {
+                try {
+                    httpClient.close();
+                } catch (IOException e) {
+                    // eat it
+                }
+                httpClient = null;
+            }
+
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+
+            connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * Transports are shared by server authority, user and password. Only a hash of the password is kept.
+     */
+    private static class TransportKey {
+        private final ServerContext.Type type;
+        private final String authority;
+        private final String userName;
+        private final String passwordHash;
+        private final boolean includeProxySettings;
+
+        private TransportKey(final ServerContext.Type type, final AuthenticationInfo authenticationInfo, final boolean includeProxySettings) {
+            this.type = type;
+            this.authority = getAuthority(authenticationInfo.getServerUri());
+            this.userName = authenticationInfo.getUserName();
+            this.passwordHash = hash(StringUtils.defaultString(authenticationInfo.getPassword()));
+            this.includeProxySettings = includeProxySettings;
+        }
+
+        /**
+         * Returns true if the other key is for the same user on the same server, whatever the password
+         */
+        private boolean isSameUser(final TransportKey other) {
+            return type == other.type &&
+                    includeProxySettings == other.includeProxySettings &&
+                    StringUtils.equals(authority, other.authority) &&
+                    StringUtils.equals(userName, other.userName);
+        }
+
+        private static String hash(final String password) {
+            try {
+                final byte[] digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes(UTF8));
+                final StringBuilder sb = new StringBuilder(digest.length * 2);
+                for (final byte b : digest) {
+                    sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                    sb.append(Character.forDigit(b & 0xF, 16));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                // every JRE has SHA-256, but fall back to something stable anyway
+                return Integer.toHexString(password.hashCode());
+            }
+        }
+
+        private static String getAuthority(final String serverUri) {
+            if (StringUtils.isEmpty(serverUri)) {
+                return StringUtils.EMPTY;
+            }
+
+            try {
+                final URI uri = UrlHelper.createUri(serverUri);
+                return StringUtils.lowerCase(uri.getScheme() + "://" + uri.getAuthority());
+            } catch (Throwable t) {
+                return serverUri.toLowerCase();
+            }
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TransportKey)) {
+                return false;
+            }
+
+            final TransportKey other = (TransportKey) obj;
+            return isSameUser(other) && StringUtils.equals(passwordHash, other.passwordHash);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = type.hashCode();
+            result = 31 * result + authority.hashCode();
+            result = 31 * result + (userName != null ? userName.hashCode() : 0);
+            result = 31 * result + passwordHash.hashCode();
+            result = 31 * result + (includeProxySettings ? 1 : 0);
+            return result;
+        }
+    }
+}
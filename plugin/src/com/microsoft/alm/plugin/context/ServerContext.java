@@ -22,7 +22,6 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.glassfish.jersey.SslConfigurator;
 import org.glassfish.jersey.apache.connector.ApacheClientProperties;
 import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
@@ -31,9 +30,7 @@ import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.client.spi.ConnectorProvider;
 
-import javax.net.ssl.SSLContext;
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import java.io.IOException;
 import java.net.URI;
 import java.util.UUID;
@@ -52,7 +49,7 @@ public class ServerContext {
     private final URI serverUri;
 
     // lazily initialized
-    private CloseableHttpClient httpClient;
+    private HttpClient httpClient;
     private Client client;
     private SoapServices soapServices;
 
@@ -153,11 +150,12 @@ public class ServerContext {
         return client;
     }
 
+    /**
+     * Returns the client shared by all contexts using the same server and credentials.
+     * The client is owned by the HttpTransportManager and must not be closed by the caller.
+     */
     public static Client getClient(final Type type, final AuthenticationInfo authenticationInfo) {
-        final ClientConfig clientConfig = getClientConfig(type, authenticationInfo,
-                System.getProperty("proxySet") != null && System.getProperty("proxySet").equals("true"));
-        final Client localClient = ClientBuilder.newClient(clientConfig);
-        return localClient;
+        return HttpTransportManager.getInstance().getClient(type, authenticationInfo);
     }
 
     protected static ClientConfig getClientConfig(final Type type, final AuthenticationInfo authenticationInfo, final boolean includeProxySettings) {
@@ -203,11 +201,11 @@ public class ServerContext {
         return clientConfig;
     }
 
-    private static boolean isSSLEnabledOnPrem(final Type type, final String serverUri) {
+    static boolean isSSLEnabledOnPrem(final Type type, final String serverUri) {
         return type == Type.TFS && serverUri.toLowerCase().startsWith("https://");
     }
 
-    private static SslConfigurator getSslConfigurator() {
+    static SslConfigurator getSslConfigurator() {
         /**
          * Set up trust store and key store for the https connection.
          *
@@ -264,19 +262,7 @@ public class ServerContext {
     public synchronized HttpClient getHttpClient() {
         checkDisposed();
         if (httpClient == null && authenticationInfo != null) {
-            final Credentials credentials = AuthHelper.getCredentials(type, authenticationInfo);
-            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY, credentials);
-            final HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-
-            if (isSSLEnabledOnPrem(Type.TFS, authenticationInfo.getServerUri())) {
-                final SslConfigurator sslConfigurator = getSslConfigurator();
-                final SSLContext sslContext = sslConfigurator.createSSLContext();
-
-                httpClientBuilder.setSslcontext(sslContext);
-            }
-
-            httpClient = httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider).build();
+            httpClient = HttpTransportManager.getInstance().getHttpClient(type, authenticationInfo);
         }
         return httpClient;
     }
@@ -365,17 +351,22 @@ public class ServerContext {
     }
 
     public synchronized void dispose() {
+        // Shared clients belong to the HttpTransportManager and stay open for the other contexts using them
         if (httpClient != null) {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                // eat it
+            if (httpClient instanceof CloseableHttpClient && !HttpTransportManager.getInstance().isShared(httpClient)) {
+                try {
+                    ((CloseableHttpClient) httpClient).close();
+                } catch (IOException e) {
+                    // eat it
+                }
             }
             httpClient = null;
         }
 
         if (client != null) {
-            client.close();
+            if (!HttpTransportManager.getInstance().isShared(client)) {
+                client.close();
+            }
             client = null;
         }
 
@@ -35,6 +35,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Singleton class used to manage ServerContext objects.
@@ -42,7 +44,10 @@ import java.util.Map;
 public class ServerContextManager {
     private static final Logger logger = LoggerFactory.getLogger(ServerContextManager.class);
 
-    private Map<String, ServerContext> contextMap = new HashMap<String, ServerContext>();
+    // Readers use the current snapshot without locking; writers replace it while holding the write lock
+    private volatile Snapshot snapshot = new Snapshot(new HashMap<String, ServerContext>());
+    private final Object writeLock = new Object();
+    private final ConcurrentMap<String, Object> authorityLocks = new ConcurrentHashMap<String, Object>();
 
     private static class Holder {
         private static final ServerContextManager INSTANCE = new ServerContextManager(true);
@@ -72,7 +77,7 @@ public class ServerContextManager {
         return Holder.INSTANCE;
     }
 
-    public synchronized ServerContext getLastUsedContext() {
+    public ServerContext getLastUsedContext() {
         final ServerContext context = get(getLastUsedContextKey());
         return context;
     }
@@ -85,64 +90,114 @@ public class ServerContextManager {
         return PluginServiceProvider.getInstance().getPropertyService().getProperty(PropertyService.PROP_LAST_CONTEXT_KEY);
     }
 
-    public synchronized void clearLastUsedContext() {
+    public void clearLastUsedContext() {
         setLastUsedContextKey(null);
     }
 
-    public synchronized boolean lastUsedContextIsEmpty() {
+    public boolean lastUsedContextIsEmpty() {
         final ServerContext lastUsed = getLastUsedContext();
         return lastUsed == null;
     }
 
-    public synchronized boolean lastUsedContextIsTFS() {
+    public boolean lastUsedContextIsTFS() {
         final ServerContext lastUsed = getLastUsedContext();
         return lastUsed != null && lastUsed.getType() == ServerContext.Type.TFS;
     }
 
-    public synchronized void add(final ServerContext context) {
+    public void add(final ServerContext context) {
         add(context, true);
     }
 
-    public synchronized void add(final ServerContext context, boolean updateLastUsedContext) {
+    public void add(final ServerContext context, boolean updateLastUsedContext) {
         if (context != null) {
-            final String key = context.getKey();
-            contextMap.put(key, context);
-            getStore().saveServerContext(context);
+            addAll(Collections.singletonList(context));
             if (updateLastUsedContext) {
-                setLastUsedContextKey(key);
+                setLastUsedContextKey(context.getKey());
             }
         }
     }
 
-    public synchronized ServerContext get(final String uri) {
+    /**
+     * Adds all the contexts at once without changing the last used context
+     */
+    public void addAll(final Collection<ServerContext> contexts) {
+        if (contexts == null || contexts.isEmpty()) {
+            return;
+        }
+
+        synchronized (writeLock) {
+            final Map<String, ServerContext> newContexts = new HashMap<String, ServerContext>(snapshot.contexts);
+            for (final ServerContext context : contexts) {
+                if (context != null) {
+                    newContexts.put(context.getKey(), context);
+                    getStore().saveServerContext(context);
+                }
+            }
+            snapshot = new Snapshot(newContexts);
+        }
+    }
+
+    public ServerContext get(final String uri) {
         if (!StringUtils.isEmpty(uri)) {
-            final ServerContext context = contextMap.get(ServerContext.getKey(uri));
+            final ServerContext context = snapshot.contexts.get(ServerContext.getKey(uri));
             return context;
         }
 
         return null;
     }
 
-    public synchronized void remove(final String serverUri) {
+    public void remove(final String serverUri) {
         if (StringUtils.isEmpty(serverUri)) {
             return;
         }
 
-        final String key = ServerContext.getKey(serverUri);
-        final ServerContext context = get(key);
+        removeAll(Collections.singletonList(serverUri));
+    }
 
-        if (context != null) {
-            getStore().forgetServerContext(key);
-            contextMap.remove(key);
-            if (StringUtils.equalsIgnoreCase(key, getLastUsedContextKey())) {
-                clearLastUsedContext();
+    /**
+     * Removes the contexts for all of the uris at once
+     */
+    public void removeAll(final Collection<String> serverUris) {
+        if (serverUris == null || serverUris.isEmpty()) {
+            return;
+        }
+
+        final String lastUsedContextKey = getLastUsedContextKey();
+        boolean removedLastUsedContext = false;
+        synchronized (writeLock) {
+            final Map<String, ServerContext> newContexts = new HashMap<String, ServerContext>(snapshot.contexts);
+            for (final String serverUri : serverUris) {
+                if (StringUtils.isEmpty(serverUri)) {
+                    continue;
+                }
+
+                final String key = ServerContext.getKey(serverUri);
+                if (newContexts.remove(key) != null) {
+                    getStore().forgetServerContext(key);
+                    if (StringUtils.equalsIgnoreCase(key, lastUsedContextKey)) {
+                        removedLastUsedContext = true;
+                    }
+                }
             }
+            snapshot = new Snapshot(newContexts);
+        }
+
+        if (removedLastUsedContext) {
+            clearLastUsedContext();
         }
     }
 
-    public synchronized Collection<ServerContext> getAllServerContexts() {
-        //copy values from HashMap to a new List make sure the list is immutable
-        return Collections.unmodifiableCollection(new ArrayList<ServerContext>(contextMap.values()));
+    public Collection<ServerContext> getAllServerContexts() {
+        // the snapshot never changes, so there is no need to copy it
+        return snapshot.allContexts;
+    }
+
+    /**
+     * Returns the contexts whose uri has the same authority (host and port) as the given uri
+     */
+    public List<ServerContext> getServerContextsWithSameAuthority(final URI uri) {
+        final List<ServerContext> contexts = snapshot.contextsByAuthority.get(getAuthorityKey(uri));
+        return contexts != null ? contexts : Collections.<ServerContext>emptyList();
     }
 
     private ServerContextStore getStore() {
@@ -152,10 +207,56 @@ public class ServerContextManager {
     /**
      * Called once from constructor restore the state from disk between sessions.
      */
-    private synchronized void restoreFromSavedState() {
+    private void restoreFromSavedState() {
         final List<ServerContext> contexts = getStore().restoreServerContexts();
-        for (final ServerContext sc : contexts) {
-            add(sc, false);
+        addAll(contexts);
+    }
+
+    private static String getAuthorityKey(final URI uri) {
+        return uri != null ? StringUtils.lowerCase(StringUtils.defaultString(uri.getAuthority())) : StringUtils.EMPTY;
+    }
+
+    /**
+     * Updates of the credentials for one server are done one at a time so the user isn't prompted more than once
+     */
+    private Object getAuthorityLock(final URI uri) {
+        final String authorityKey = getAuthorityKey(uri);
+        final Object lock = authorityLocks.get(authorityKey);
+        if (lock != null) {
+            return lock;
+        }
+
+        final Object newLock = new Object();
+        final Object existingLock = authorityLocks.putIfAbsent(authorityKey, newLock);
+        return existingLock != null ? existingLock : newLock;
+    }
+
+    /**
+     * An immutable view of the contexts, indexed by key and by uri authority
+     */
+    private static class Snapshot {
+        private final Map<String, ServerContext> contexts;
+        private final Collection<ServerContext> allContexts;
+        private final Map<String, List<ServerContext>> contextsByAuthority;
+
+        private Snapshot(final Map<String, ServerContext> contexts) {
+            this.contexts = contexts;
+            this.allContexts = Collections.unmodifiableCollection(new ArrayList<ServerContext>(contexts.values()));
+
+            final Map<String, List<ServerContext>> byAuthority = new HashMap<String, List<ServerContext>>();
+            for (final ServerContext context : allContexts) {
+                final String authorityKey = getAuthorityKey(context.getUri());
+                List<ServerContext> list = byAuthority.get(authorityKey);
+                if (list == null) {
+                    list = new ArrayList<ServerContext>(1);
+                    byAuthority.put(authorityKey, list);
+                }
+                list.add(context);
+            }
+            for (final Map.Entry<String, List<ServerContext>> entry : byAuthority.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            this.contextsByAuthority = byAuthority;
         }
     }
 
@@ -328,6 +429,7 @@ public class ServerContextManager {
         if (context == null ||
                 context.getGitRepository() == null ||
                 context.getServerUri() == null ||
+                !AuthHelper.hasCredentials(context.getAuthenticationInfo()) ||
                 !StringUtils.equalsIgnoreCase(context.getUsableGitUrl(), gitRemoteUrl)) {
             context = null;
         }
@@ -358,7 +460,7 @@ public class ServerContextManager {
     public AuthenticationInfo getBestAuthenticationInfo(final String url, final boolean prompt) {
         final ServerContext context = get(url);
         final AuthenticationInfo info;
-        if (context != null) {
+        if (context != null && AuthHelper.hasCredentials(context.getAuthenticationInfo())) {
             // return exact match
             info = context.getAuthenticationInfo();
         } else {
@@ -375,10 +477,11 @@ public class ServerContextManager {
     public AuthenticationInfo getAuthenticationInfo(final String gitRemoteUrl, final boolean prompt) {
         AuthenticationInfo authenticationInfo = null;
 
-        // For now I will just do a linear search for an appropriate context info to copy the auth info from
+        // Copy the auth info from any context on the same server
         final URI remoteUri = UrlHelper.createUri(gitRemoteUrl);
-        for (final ServerContext context : getAllServerContexts()) {
-            if (UrlHelper.haveSameAuthority(remoteUri, context.getUri())) {
+        // skipping saved contexts whose secrets couldn't be read
+        for (final ServerContext context : getServerContextsWithSameAuthority(remoteUri)) {
+            if (AuthHelper.hasCredentials(context.getAuthenticationInfo())) {
                 logger.info("AuthenticatedInfo found for url " + gitRemoteUrl);
                 authenticationInfo = context.getAuthenticationInfo();
                 break;
@@ -429,50 +532,86 @@ public class ServerContextManager {
      */
     public ServerContext updateAuthenticationInfo(final String remoteUrl) {
         logger.info("Updating auth info for url " + remoteUrl);
-        AuthenticationInfo newAuthenticationInfo = null;
-        boolean promptUser = true;
         final URI remoteUri = UrlHelper.createUri(remoteUrl);
-        ServerContext matchingContext = null;
-
-        //Linear search through all contexts to find the ones with same authority as remoteUrl
-        for (final ServerContext context : getAllServerContexts()) {
-            logger.info("auth info updateAuthenticationInfo compare " + context.getUri().getPath());
-            if (UrlHelper.haveSameAuthority(remoteUri, context.getUri())) {
-                //remove the context with old credentials
-                remove(context.getKey());
-
-                logger.info("auth info updateAuthenticationInfo removed");
-                //get new credentials by prompting the user one time only
-                if (promptUser) {
-                    logger.info("auth info updateAuthenticationInfo prompting");
-                    //prompt user
-                    final AuthenticationProvider authenticationProvider = getAuthenticationProvider(remoteUrl);
-                    newAuthenticationInfo = AuthHelper.getAuthenticationInfoSynchronously(authenticationProvider, remoteUrl);
-                    promptUser = false;
+        // the credentials that failed, unless another thread is replacing them right now
+        final AuthenticationInfo failedAuthenticationInfo = getAuthenticationInfo(getServerContextsWithSameAuthority(remoteUri));
+
+        synchronized (getAuthorityLock(remoteUri)) {
+            // Find all the contexts with same authority as remoteUrl
+            final List<ServerContext> matchingContexts = getServerContextsWithSameAuthority(remoteUri);
+            if (matchingContexts.isEmpty()) {
+                logger.info("auth info updateAuthenticationInfo found no contexts to update");
+                return null;
+            }
+
+            // another caller may have prompted for new credentials while we waited for the lock
+            final AuthenticationInfo currentAuthenticationInfo = getAuthenticationInfo(matchingContexts);
+            if (currentAuthenticationInfo != null && currentAuthenticationInfo != failedAuthenticationInfo) {
+                logger.info("auth info updateAuthenticationInfo found credentials updated by another caller, not prompting");
+                final ServerContext matchingContext = findContextWithUri(matchingContexts, remoteUrl);
+                if (matchingContext != null) {
+                    setLastUsedContextKey(matchingContext.getKey());
                 }
+                return matchingContext;
+            }
 
-                if (newAuthenticationInfo != null) {
-                    logger.info("auth info updateAuthenticationInfo not null" );
-                    //build a context with new authentication info and add
-                    final ServerContextBuilder builder = new ServerContextBuilder(context);
-                    builder.authentication(newAuthenticationInfo);
-                    final ServerContext newContext = builder.build();
-                    logger.info(context.getUri().toString() + "       " + remoteUrl);
+            // remove the contexts with old credentials
+            final List<String> keys = new ArrayList<String>(matchingContexts.size());
+            for (final ServerContext context : matchingContexts) {
+                keys.add(context.getKey());
+            }
+            removeAll(keys);
+            logger.info("auth info updateAuthenticationInfo removed {} contexts", keys.size());
+
+            // get new credentials by prompting the user one time only
+            logger.info("auth info updateAuthenticationInfo prompting");
+            final AuthenticationProvider authenticationProvider = getAuthenticationProvider(remoteUrl);
+            final AuthenticationInfo newAuthenticationInfo = AuthHelper.getAuthenticationInfoSynchronously(authenticationProvider, remoteUrl);
+
+            ServerContext matchingContext = null;
+            if (newAuthenticationInfo != null) {
+                logger.info("auth info updateAuthenticationInfo not null");
+                // build contexts with new authentication info and add them
+                final List<ServerContext> newContexts = new ArrayList<ServerContext>(matchingContexts.size());
+                for (final ServerContext context : matchingContexts) {
+                    final ServerContext newContext = new ServerContextBuilder(context).authentication(newAuthenticationInfo).build();
+                    newContexts.add(newContext);
                     if (StringUtils.equalsIgnoreCase(context.getUri().toString(), remoteUrl)) {
-                        logger.info("The updated auth info created a context that matches the remote url" );
-                        add(newContext, true);
+                        logger.info("The updated auth info created a context that matches the remote url");
                         matchingContext = newContext;
-                    } else {
-                        logger.info("The updated auth info created a context that has a different remote url" );
-                        add(newContext, false);
                     }
                 }
+                addAll(newContexts);
+                if (matchingContext != null) {
+                    setLastUsedContextKey(matchingContext.getKey());
+                }
             }
+
+            logger.info("auth info updateAuthenticationInfo returning an updated context: "
+                    + (matchingContext == null ? "false" : "true"));
+            return matchingContext;
         }
+    }
 
-        logger.info("auth info updateAuthenticationInfo returning an updated context: "
-                + (matchingContext == null ? "false" : "true"));
-        return matchingContext;
+    /**
+     * Returns the credentials of the first context that has some, or null
+     */
+    private static AuthenticationInfo getAuthenticationInfo(final List<ServerContext> contexts) {
+        for (final ServerContext context : contexts) {
+            if (AuthHelper.hasCredentials(context.getAuthenticationInfo())) {
+                return context.getAuthenticationInfo();
+            }
+        }
+        return null;
+    }
+
+    private static ServerContext findContextWithUri(final List<ServerContext> contexts, final String url) {
+        for (final ServerContext context : contexts) {
+            if (context.getUri() != null && StringUtils.equalsIgnoreCase(context.getUri().toString(), url)) {
+                return context;
+            }
+        }
+        return null;
     }
 
     /**
@@ -0,0 +1,34 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.context.rest;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.microsoft.alm.build.webapi.model.Build;
+
+import java.util.List;
+
+/**
+ * Wrapper class for JSON response from _apis/build/builds
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BuildList {
+    private int count;
+    private List<Build> value;
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public List<Build> getValue() {
+        return value;
+    }
+
+    public void setValue(List<Build> value) {
+        this.value = value;
+    }
+}
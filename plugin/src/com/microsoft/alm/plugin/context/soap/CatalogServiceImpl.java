@@ -18,6 +18,7 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -151,6 +152,8 @@ public class CatalogServiceImpl implements CatalogService {
                 catalogData = new CatalogData(queryData.filterOnResourceType);
                 readResponse(httpResponse, catalogData);
             } else {
+                // consume the body so the pooled connection can be reused
+                EntityUtils.consumeQuietly(httpResponse.getEntity());
                 throw new HttpResponseException(responseStatusCode, httpResponse.getStatusLine().toString());
             }
             return catalogData;
@@ -0,0 +1,204 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.events;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects bursts of changes per key and reports them once when no new change came in for the quiet period,
+ * or when the burst has gone on for the max delay. This turns the many notifications of something like a rebase
+ * into a single one.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class EventDebouncer<K> {
+    private static final Logger logger = LoggerFactory.getLogger(EventDebouncer.class);
+
+    public static final long DEFAULT_QUIET_PERIOD = 1000;
+    // a burst is never held back longer than this many quiet periods
+    private static final int MAX_DELAY_PERIODS = 10;
+
+    public interface Listener<K> {
+        /**
+         * Called on a background thread once the changes to the key have quieted down
+         *
+         * @param key         the key that changed
+         * @param changeCount the number of changes that were collected into this call
+         */
+        void changesSettled(final K key, final int changeCount);
+    }
+
+    private final Listener<K> listener;
+    private final Map<K, Burst> bursts = new HashMap<K, Burst>();
+    private long quietPeriod;
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong changeCount = new AtomicLong();
+    private final AtomicLong settledCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public EventDebouncer(final Listener<K> listener) {
+        this(listener, DEFAULT_QUIET_PERIOD);
+    }
+
+    public EventDebouncer(final Listener<K> listener, final long quietPeriod) {
+        ArgumentHelper.checkNotNull(listener, "listener");
+        this.listener = listener;
+        setQuietPeriod(quietPeriod);
+    }
+
+    public synchronized long getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    public synchronized void setQuietPeriod(final long quietPeriod) {
+        if (quietPeriod < 0) {
+            throw new IllegalArgumentException("quietPeriod");
+        }
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * Records a change to the key. The listener is called once the changes to the key stop coming in.
+     */
+    public synchronized void changed(final K key) {
+        ArgumentHelper.checkNotNull(key, "key");
+        changeCount.incrementAndGet();
+
+        final long now = System.currentTimeMillis();
+        Burst burst = bursts.get(key);
+        if (burst == null) {
+            burst = new Burst(key, now);
+            bursts.put(key, burst);
+        } else if (burst.future != null) {
+            burst.future.cancel(false);
+        }
+        burst.count++;
+
+        final long deadline = Math.min(now + quietPeriod, burst.start + quietPeriod * MAX_DELAY_PERIODS);
+        burst.future = getExecutor().schedule(burst, Math.max(0, deadline - now), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reports all the pending changes right away on the calling thread
+     */
+    public void flush() {
+        final List<Burst> pending;
+        synchronized (this) {
+            pending = new ArrayList<Burst>(bursts.values());
+            for (final Burst burst : pending) {
+                if (burst.future != null) {
+                    burst.future.cancel(false);
+                }
+            }
+            bursts.clear();
+        }
+
+        for (final Burst burst : pending) {
+            settle(burst);
+        }
+    }
+
+    /**
+     * Drops all the pending changes and stops the background thread
+     */
+    public void shutdown() {
+        final ScheduledExecutorService executorToStop;
+        synchronized (this) {
+            bursts.clear();
+            executorToStop = executor;
+            executor = null;
+        }
+
+        if (executorToStop != null) {
+            executorToStop.shutdownNow();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return bursts.size();
+    }
+
+    /**
+     * Returns the number of changes recorded
+     */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Returns the number of times the listener was called
+     */
+    public long getSettledCount() {
+        return settledCount.get();
+    }
+
+    /**
+     * Returns the number of reported changes that were merged into another one
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "EventDebouncer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private void settle(final Burst burst) {
+        settledCount.incrementAndGet();
+        coalescedCount.addAndGet(burst.count - 1);
+        try {
+            listener.changesSettled(burst.key, burst.count);
+        } catch (Throwable t) {
+            logger.warn("settle: listener failed", t);
+        }
+    }
+
+    private class Burst implements Runnable {
+        private final K key;
+        private final long start;
+        private int count = 0;
+        private ScheduledFuture<?> future;
+
+        private Burst(final K key, final long start) {
+            this.key = key;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            synchronized (EventDebouncer.this) {
+                // a flush or a newer change may have taken care of this burst already
+                if (bursts.get(key) != this) {
+                    return;
+                }
+                bursts.remove(key);
+            }
+            settle(this);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.events;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+
+import java.util.Random;
+
+/**
+ * Decides when a server is polled for changes next. The interval starts out at the base interval and
+ * - drops to ACTIVE_INTERVAL for ACTIVITY_PERIOD after the user did something that changes the server (like a push)
+ * - doubles with every consecutive failed poll and with every poll while the IDE doesn't have focus, up to MAX_INTERVAL
+ * - is randomly spread by up to JITTER in both directions so that many clients don't end up polling at the same moment
+ * <p/>
+ * The first poll is due one interval (with jitter) after the schedule is created, so that opening the IDE doesn't
+ * start with a burst of server calls.
+ * <p/>
+ * NOT THREAD-SAFE
+ */
+public class PollingSchedule {
+    public static final long DEFAULT_INTERVAL = 5 * 60 * 1000;
+    public static final long ACTIVE_INTERVAL = 30 * 1000;
+    public static final long ACTIVITY_PERIOD = 10 * 60 * 1000;
+    public static final long MAX_INTERVAL = 60 * 60 * 1000;
+    public static final double JITTER = 0.1;
+    private static final int MAX_BACKOFF_EXPONENT = 10;
+
+    /**
+     * The source of the current time, so tests can use a virtual clock
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Clock clock;
+    private final Random random;
+    private long baseInterval;
+    private boolean focused = true;
+    private int failureCount = 0;
+    private int unfocusedPollCount = 0;
+    private long lastActivityTime = -1;
+    private long currentInterval;
+    private long nextPollTime;
+
+    public PollingSchedule(final Clock clock, final Random random, final long baseInterval) {
+        ArgumentHelper.checkNotNull(clock, "clock");
+        ArgumentHelper.checkNotNull(random, "random");
+        checkInterval(baseInterval);
+        this.clock = clock;
+        this.random = random;
+        this.baseInterval = baseInterval;
+        reschedule(false);
+    }
+
+    public long getBaseInterval() {
+        return baseInterval;
+    }
+
+    public void setBaseInterval(final long baseInterval) {
+        checkInterval(baseInterval);
+        if (this.baseInterval != baseInterval) {
+            this.baseInterval = baseInterval;
+            reschedule(false);
+        }
+    }
+
+    public boolean isFocused() {
+        return focused;
+    }
+
+    /**
+     * Polls back off while the IDE doesn't have focus and return to normal as soon as it gets it back
+     */
+    public void setFocused(final boolean focused) {
+        if (this.focused != focused) {
+            this.focused = focused;
+            if (focused) {
+                unfocusedPollCount = 0;
+                reschedule(true);
+            }
+        }
+    }
+
+    /**
+     * Call this when the user changed something on the server, the next polls come sooner to pick up the effects
+     */
+    public void activity() {
+        lastActivityTime = clock.currentTimeMillis();
+        unfocusedPollCount = 0;
+        reschedule(true);
+    }
+
+    public void pollSucceeded() {
+        failureCount = 0;
+        pollDone();
+    }
+
+    public void pollFailed() {
+        failureCount++;
+        pollDone();
+    }
+
+    public boolean isDue() {
+        return clock.currentTimeMillis() >= nextPollTime;
+    }
+
+    /**
+     * Returns the interval without jitter that was used to schedule the next poll
+     */
+    public long getCurrentInterval() {
+        return currentInterval;
+    }
+
+    public long getNextPollTime() {
+        return nextPollTime;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    private void pollDone() {
+        if (!focused) {
+            unfocusedPollCount++;
+        }
+        reschedule(false);
+    }
+
+    private long computeInterval() {
+        long interval = baseInterval;
+        if (lastActivityTime >= 0 && clock.currentTimeMillis() - lastActivityTime < ACTIVITY_PERIOD) {
+            interval = Math.min(ACTIVE_INTERVAL, baseInterval);
+        }
+
+        final long maxInterval = Math.max(MAX_INTERVAL, baseInterval);
+        final int exponent = Math.min(MAX_BACKOFF_EXPONENT, failureCount + unfocusedPollCount);
+        for (int i = 0; i < exponent && interval < maxInterval; i++) {
+            interval *= 2;
+        }
+        return Math.min(maxInterval, interval);
+    }
+
+    /**
+     * Computes the next poll time. If onlySooner is true the current poll time is kept unless the new one is earlier.
+     */
+    private void reschedule(final boolean onlySooner) {
+        final long interval = computeInterval();
+        final long jitter = Math.round(interval * JITTER * (2 * random.nextDouble() - 1));
+        final long pollTime = clock.currentTimeMillis() + Math.max(0, interval + jitter);
+        if (!onlySooner || pollTime < nextPollTime) {
+            currentInterval = interval;
+            nextPollTime = pollTime;
+        }
+    }
+
+    private static void checkInterval(final long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval");
+        }
+    }
+}
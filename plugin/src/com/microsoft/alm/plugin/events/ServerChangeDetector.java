@@ -0,0 +1,161 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.events;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.context.ServerContext;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class figures out which server events actually need to be raised for a set of repositories.
+ * For each event and repository it asks the WatermarkProvider for a cheap value that changes whenever the data behind
+ * the event changes (e.g. the id of the latest build) and compares it to the value seen on the previous check.
+ * Repositories that share a server resource (like the builds of a team project) only cause one server call.
+ * <p/>
+ * The first value seen for a resource is just remembered, since the listeners loaded their data when the repository was opened.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class ServerChangeDetector {
+    private static final Logger logger = LoggerFactory.getLogger(ServerChangeDetector.class);
+
+    private static final ServerEvent[] DETECTED_EVENTS = new ServerEvent[]{
+            ServerEvent.BUILDS_CHANGED, ServerEvent.PULL_REQUESTS_CHANGED, ServerEvent.WORK_ITEMS_CHANGED};
+
+    /**
+     * Supplies the watermarks that are compared between checks
+     */
+    public interface WatermarkProvider {
+        /**
+         * Returns a key for the server resource the watermark of this event is read from, or null if the event
+         * can't be checked for the context. Contexts with the same scope share a single watermark.
+         */
+        String getScope(final ServerEvent event, final ServerContext context);
+
+        /**
+         * Returns a value that changes whenever the data behind the event changes. This is called on a background thread.
+         */
+        String getWatermark(final ServerEvent event, final ServerContext context);
+    }
+
+    private final WatermarkProvider provider;
+    // watermarks by event and scope
+    private final Map<String, String> watermarks = new HashMap<String, String>();
+    private int lastFailureCount = 0;
+
+    public ServerChangeDetector(final WatermarkProvider provider) {
+        ArgumentHelper.checkNotNull(provider, "provider");
+        this.provider = provider;
+    }
+
+    /**
+     * Reads the current watermarks for the contexts and returns, for each event that changed, the keys of the
+     * contexts it changed for. Failing to read a watermark is logged and treated as no change.
+     */
+    public synchronized Map<ServerEvent, Set<String>> detectChanges(final Collection<ServerContext> contexts) {
+        final Map<ServerEvent, Set<String>> changes = new EnumMap<ServerEvent, Set<String>>(ServerEvent.class);
+        lastFailureCount = 0;
+        if (contexts == null) {
+            return changes;
+        }
+
+        // the scopes that changed on this check; the contexts that share them are all reported
+        final Map<String, Boolean> checkedScopes = new HashMap<String, Boolean>();
+        for (final ServerContext context : contexts) {
+            for (final ServerEvent event : DETECTED_EVENTS) {
+                final String scopeKey = getScopeKey(event, context);
+                if (scopeKey == null) {
+                    continue;
+                }
+
+                Boolean changed = checkedScopes.get(scopeKey);
+                if (changed == null) {
+                    changed = checkScope(scopeKey, event, context);
+                    checkedScopes.put(scopeKey, changed);
+                }
+
+                if (changed) {
+                    Set<String> contextKeys = changes.get(event);
+                    if (contextKeys == null) {
+                        contextKeys = new LinkedHashSet<String>();
+                        changes.put(event, contextKeys);
+                    }
+                    contextKeys.add(context.getKey());
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Forgets the watermarks of everything but the given contexts, e.g. of repositories that are no longer open
+     */
+    public synchronized void retain(final Collection<ServerContext> contexts) {
+        final Set<String> scopeKeys = new HashSet<String>();
+        if (contexts != null) {
+            for (final ServerContext context : contexts) {
+                for (final ServerEvent event : DETECTED_EVENTS) {
+                    final String scopeKey = getScopeKey(event, context);
+                    if (scopeKey != null) {
+                        scopeKeys.add(scopeKey);
+                    }
+                }
+            }
+        }
+
+        final Iterator<String> iterator = watermarks.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!scopeKeys.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of watermarks that couldn't be read during the last call to detectChanges
+     */
+    public synchronized int getLastFailureCount() {
+        return lastFailureCount;
+    }
+
+    protected synchronized int getWatermarkCount() {
+        return watermarks.size();
+    }
+
+    private String getScopeKey(final ServerEvent event, final ServerContext context) {
+        final String scope = provider.getScope(event, context);
+        return StringUtils.isEmpty(scope) ? null : event.name() + '|' + scope;
+    }
+
+    private boolean checkScope(final String scopeKey, final ServerEvent event, final ServerContext context) {
+        final String watermark;
+        try {
+            watermark = provider.getWatermark(event, context);
+        } catch (Throwable t) {
+            logger.warn("checkScope: failed to get the watermark for " + scopeKey, t);
+            lastFailureCount++;
+            return false;
+        }
+
+        final boolean known = watermarks.containsKey(scopeKey);
+        final String previous = watermarks.put(scopeKey, watermark);
+        if (known && !StringUtils.equals(previous, watermark)) {
+            logger.info("checkScope: {} changed", scopeKey);
+            return true;
+        }
+        return false;
+    }
+}
@@ -8,63 +8,139 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class allows components to trigger events that let listening components know that something has changed
  * on the server. (Or that they should requery the server because something might have changed)
- *
- *  THREAD-SAFE
+ * <p/>
+ * Refresh events (triggerEvent and triggerAllEvents) go into a queue per listener that is delivered in order on a
+ * small background pool, so a slow listener doesn't hold up the others or the thread that triggered the event.
+ * A refresh event that is already waiting in a listener's queue with the same context (e.g. BUILDS_CHANGED for the
+ * same project) is not queued again, and the oldest ones are dropped if a listener falls too far behind.
+ * <p/>
+ * Lifecycle events (triggerLifecycleEvents, like a project opening or closing) are never coalesced or dropped.
+ * They are delivered to every listener on the calling thread before it returns, right after the refresh events
+ * still waiting for that listener.
+ * <p/>
+ * The context map is copied once per event and can't be changed by the listeners.
+ * <p/>
+ * THREAD-SAFE
  */
 public class ServerEventManager {
     private static final Logger logger = LoggerFactory.getLogger(ServerEventManager.class);
-    private final List<ServerEventListener> listeners = new ArrayList<ServerEventListener>(5);
+
+    // when a listener falls this far behind its oldest events are dropped
+    public static final int MAX_QUEUED_EVENTS = 100;
+    // listeners mostly hand the work off to other threads, a few threads keep up with them
+    static final int MAX_DISPATCH_THREADS = 4;
+    private static final int THREAD_TIMEOUT_SECONDS = 30;
+
+    private static final Executor CALLING_THREAD_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private final List<ListenerQueue> listeners = new ArrayList<ListenerQueue>(5);
+    private final Executor dispatchExecutor;
+
+    private final AtomicLong triggeredCount = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
 
     private static class Holder {
-        private static final ServerEventManager INSTANCE = new ServerEventManager();
+        private static final ServerEventManager INSTANCE = new ServerEventManager(createDispatchExecutor());
     }
 
     public static ServerEventManager getInstance() {
         return Holder.INSTANCE;
     }
 
+    /**
+     * The constructor is protected for tests. Events are delivered on the thread that triggers them.
+     */
     protected ServerEventManager() {
+        this(CALLING_THREAD_EXECUTOR);
+    }
+
+    protected ServerEventManager(final Executor dispatchExecutor) {
+        ArgumentHelper.checkNotNull(dispatchExecutor, "dispatchExecutor");
+        this.dispatchExecutor = dispatchExecutor;
         logger.info("ServerEventManager created");
     }
 
     protected int getListenerCount() {
-        return listeners.size();
+        synchronized (this.listeners) {
+            return listeners.size();
+        }
     }
 
     public void triggerAllEvents(final Map<String,Object> contextMap) {
         logger.info("triggering ALL events");
-        triggerEvent(ServerEvent.BUILDS_CHANGED, contextMap);
-        triggerEvent(ServerEvent.PULL_REQUESTS_CHANGED, contextMap);
-        triggerEvent(ServerEvent.WORK_ITEMS_CHANGED, contextMap);
+        // All the events can share the same context since no one can change it
+        final Map<String,Object> localContext = copyContext(contextMap);
+        trigger(ServerEvent.BUILDS_CHANGED, localContext);
+        trigger(ServerEvent.PULL_REQUESTS_CHANGED, localContext);
+        trigger(ServerEvent.WORK_ITEMS_CHANGED, localContext);
     }
 
     public void triggerEvent(final ServerEvent event, final Map<String,Object> contextMap) {
         ArgumentHelper.checkNotNull(event, "event");
-        logger.info("triggering event: " + event.name());
-        final ServerEventListener[] localListeners;
-        synchronized (this.listeners) {
-            // Copy the list of listeners in case someone tries to add or remove a listener while we are looping
-            localListeners = this.listeners.toArray(new ServerEventListener[this.listeners.size()]);
+        trigger(event, copyContext(contextMap));
+    }
+
+    /**
+     * Triggers all the events for a change in what is open, like a project opening or closing, and delivers them
+     * to every listener before returning
+     */
+    public void triggerLifecycleEvents(final Map<String,Object> contextMap) {
+        logger.info("triggering lifecycle events");
+        final Map<String,Object> localContext = copyContext(contextMap);
+        final ListenerQueue[] localListeners = getListenerQueues();
+        final long now = System.currentTimeMillis();
+        for (final ServerEvent event : new ServerEvent[]{
+                ServerEvent.BUILDS_CHANGED, ServerEvent.PULL_REQUESTS_CHANGED, ServerEvent.WORK_ITEMS_CHANGED}) {
+            triggeredCount.incrementAndGet();
+            for (int i = localListeners.length - 1; i >= 0; i--) {
+                localListeners[i].deliverNow(new PendingEvent(event, localContext, now));
+            }
         }
-        for (int i = localListeners.length - 1; i >= 0; i--) {
-            // Copy the map so no one can change it on us
-            final Map<String,Object> localContext = contextMap != null ? new HashMap<String, Object>(contextMap) : new HashMap<String, Object>();
-            localListeners[i].serverChanged(event, localContext);
+    }
+
+    /**
+     * Stops the background threads, refresh events triggered afterwards are no longer delivered
+     */
+    public void shutdown() {
+        logger.info("shutdown called");
+        if (dispatchExecutor instanceof ExecutorService) {
+            ((ExecutorService) dispatchExecutor).shutdown();
         }
     }
 
     public void addListener(final ServerEventListener listener) {
         logger.info("listener added");
         synchronized (this.listeners) {
-            if (!listeners.contains(listener)) {
-                listeners.add(listener);
+            if (findQueue(listener) < 0) {
+                listeners.add(new ListenerQueue(listener));
             }
         }
     }
@@ -72,12 +148,257 @@ public class ServerEventManager {
     public void removeListener(final ServerEventListener listener) {
         logger.info("remove listener called");
         synchronized (this.listeners) {
-            for (int i = listeners.size() - 1; i >= 0; i--) {
-                if (listeners.get(i) == listener) {
-                    listeners.remove(i);
-                    break;
+            final int index = findQueue(listener);
+            if (index >= 0) {
+                listeners.remove(index).close();
+            }
+        }
+    }
+
+    public long getTriggeredCount() {
+        return triggeredCount.get();
+    }
+
+    /**
+     * Returns the number of events delivered to listeners
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * Returns the number of events that weren't queued because the same event was already waiting for the listener
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of events that were dropped because a listener fell too far behind
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of events waiting to be delivered to all the listeners
+     */
+    public int getPendingCount() {
+        int count = 0;
+        synchronized (this.listeners) {
+            for (final ListenerQueue queue : listeners) {
+                count += queue.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the average time in milliseconds between triggering an event and delivering it to a listener
+     */
+    public long getAverageDispatchLatency() {
+        final long count = dispatchedCount.get();
+        return count > 0 ? totalLatency.get() / count : 0;
+    }
+
+    public long getMaxDispatchLatency() {
+        return maxLatency.get();
+    }
+
+    private void trigger(final ServerEvent event, final Map<String,Object> localContext) {
+        logger.info("triggering event: " + event.name());
+        triggeredCount.incrementAndGet();
+        final ListenerQueue[] localListeners = getListenerQueues();
+        final long now = System.currentTimeMillis();
+        for (int i = localListeners.length - 1; i >= 0; i--) {
+            localListeners[i].enqueue(event, localContext, now);
+        }
+    }
+
+    private ListenerQueue[] getListenerQueues() {
+        synchronized (this.listeners) {
+            // Copy the list of listeners in case someone tries to add or remove a listener while we are looping
+            return this.listeners.toArray(new ListenerQueue[this.listeners.size()]);
+        }
+    }
+
+    private int findQueue(final ServerEventListener listener) {
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            if (listeners.get(i).listener == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void recordLatency(final long latency) {
+        totalLatency.addAndGet(latency);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+    }
+
+    private static Map<String,Object> copyContext(final Map<String,Object> contextMap) {
+        // Copy the map so no one can change it on us
+        return Collections.unmodifiableMap(contextMap != null ? new HashMap<String, Object>(contextMap) : new HashMap<String, Object>());
+    }
+
+    private static ExecutorService createDispatchExecutor() {
+        // each listener has at most one task waiting, so the work queue can't grow past the number of listeners
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_DISPATCH_THREADS, MAX_DISPATCH_THREADS,
+                THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "ServerEventManager dispatch " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class PendingEvent {
+        private final ServerEvent event;
+        private final Map<String,Object> context;
+        private final long triggerTime;
+
+        private PendingEvent(final ServerEvent event, final Map<String,Object> context, final long triggerTime) {
+            this.event = event;
+            this.context = context;
+            this.triggerTime = triggerTime;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof PendingEvent)) {
+                return false;
+            }
+            final PendingEvent other = (PendingEvent) o;
+            return event == other.event && context.equals(other.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return event.hashCode() * 31 + context.hashCode();
+        }
+    }
+
+    /**
+     * The events waiting for one listener. They are delivered one at a time by a task on the dispatch executor
+     * that runs while there are events in the queue. Events delivered right away on the calling thread take the
+     * same delivery lock, so the listener never gets two events at once or out of order.
+     */
+    private class ListenerQueue implements Runnable {
+        private final ServerEventListener listener;
+        // held while an event is taken off the queue and delivered, always before the lock on the queue itself
+        private final Object deliveryLock = new Object();
+        // the pending events are also their own keys so that an identical event can be found quickly
+        private final LinkedHashMap<PendingEvent, PendingEvent> pending = new LinkedHashMap<PendingEvent, PendingEvent>();
+        private boolean scheduled = false;
+        private boolean closed = false;
+
+        private ListenerQueue(final ServerEventListener listener) {
+            this.listener = listener;
+        }
+
+        private void enqueue(final ServerEvent event, final Map<String,Object> context, final long triggerTime) {
+            final PendingEvent pendingEvent = new PendingEvent(event, context, triggerTime);
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (pending.containsKey(pendingEvent)) {
+                    // the listener will handle this event anyway
+                    coalescedCount.incrementAndGet();
+                    return;
+                }
+                if (pending.size() >= MAX_QUEUED_EVENTS) {
+                    final Iterator<PendingEvent> oldest = pending.keySet().iterator();
+                    logger.warn("enqueue: listener is too far behind, dropping {}", oldest.next().event);
+                    oldest.remove();
+                    droppedCount.incrementAndGet();
+                }
+                pending.put(pendingEvent, pendingEvent);
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+
+            try {
+                dispatchExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // we have been shut down
+                logger.info("enqueue: failed to dispatch events", e);
+                synchronized (this) {
+                    scheduled = false;
+                    pending.clear();
+                }
+            }
+        }
+
+        /**
+         * Delivers the event on the calling thread, after the events that are still waiting. If the dispatch task
+         * is delivering an event to the listener, this waits for it to finish first.
+         */
+        private void deliverNow(final PendingEvent event) {
+            synchronized (deliveryLock) {
+                final List<PendingEvent> events;
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    events = new ArrayList<PendingEvent>(pending.keySet());
+                    pending.clear();
+                }
+
+                events.add(event);
+                for (final PendingEvent next : events) {
+                    deliver(next);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (deliveryLock) {
+                    final PendingEvent next;
+                    synchronized (this) {
+                        if (closed || pending.isEmpty()) {
+                            scheduled = false;
+                            return;
+                        }
+                        final Iterator<PendingEvent> iterator = pending.keySet().iterator();
+                        next = iterator.next();
+                        iterator.remove();
+                    }
+                    deliver(next);
                 }
             }
         }
+
+        private void deliver(final PendingEvent next) {
+            recordLatency(System.currentTimeMillis() - next.triggerTime);
+            dispatchedCount.incrementAndGet();
+            try {
+                listener.serverChanged(next.event, next.context);
+            } catch (Throwable t) {
+                logger.warn("deliver: listener failed to handle " + next.event, t);
+            }
+        }
+
+        private synchronized int size() {
+            return pending.size();
+        }
+
+        private synchronized void close() {
+            closed = true;
+            pending.clear();
+        }
     }
 }
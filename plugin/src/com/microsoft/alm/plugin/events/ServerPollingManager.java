@@ -4,22 +4,80 @@
 package com.microsoft.alm.plugin.events;
 
 import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.common.utils.UrlHelper;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.operations.ServerWatermarkProvider;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.Timer;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Polls the server for changes to the watched repositories and raises the matching server events. The repositories
+ * come from the WatchedContextProvider (the ones open in the IDE), nothing is polled until one is set.
+ * Only the events whose data actually changed are raised, once for each repository they changed for. The context map
+ * of those events contains the key of the repository's server context under CONTEXT_SERVER_CONTEXT_KEY.
+ * <p/>
+ * Each server is polled on its own PollingSchedule, which speeds up after the user changes something on it (a server
+ * event not raised by this class with the url of the server under CONTEXT_SERVER_URL) and backs off after errors and
+ * while the IDE doesn't have focus.
+ * Polling happens on a background thread.
+ * <p/>
+ * THREAD-SAFE
+ */
 public class ServerPollingManager {
     private static final Logger logger = LoggerFactory.getLogger(ServerPollingManager.class);
-    private static final int DEFAULT_POLLING_INTERVAL = 5 * 60 * 1000; // TODO eventually get from settings
+    private static final int DEFAULT_POLLING_INTERVAL = (int) PollingSchedule.DEFAULT_INTERVAL; // TODO eventually get from settings
+    // how often we look for newly opened repositories
+    private static final long MAX_TICK_DELAY = PollingSchedule.ACTIVE_INTERVAL;
+
+    public static final String SENDER_POLLING_MANAGER = "pollingManager";
+    public static final String CONTEXT_SENDER = "sender";
+    public static final String CONTEXT_SERVER_CONTEXT_KEY = "serverContextKey";
+    public static final String CONTEXT_SERVER_URL = "serverUrl";
 
     private final ServerEventManager eventManager;
-    private final Timer timer;
-    private boolean polling = false;
+    private final ServerChangeDetector changeDetector;
+    private final PollingSchedule.Clock clock;
+    private final Random random = new Random();
+
+    // schedules and configured intervals by server
+    private final Map<String, PollingSchedule> schedules = new HashMap<String, PollingSchedule>();
+    private final Map<String, Long> serverIntervals = new HashMap<String, Long>();
+    private long defaultInterval = DEFAULT_POLLING_INTERVAL;
+    private boolean focused = true;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> nextTick;
+    private long nextTickTime = -1;
+    private volatile boolean polling = false;
+    private volatile WatchedContextProvider watchedContextProvider;
+
+    /**
+     * Tells us which repositories to check for changes
+     */
+    public interface WatchedContextProvider {
+        /**
+         * Returns the server contexts of the repositories to check for changes
+         */
+        Collection<ServerContext> getWatchedContexts();
+    }
 
     private static class Holder {
         private static final ServerPollingManager INSTANCE = new ServerPollingManager(ServerEventManager.getInstance());
@@ -30,13 +88,35 @@ public class ServerPollingManager {
     }
 
     protected ServerPollingManager(final ServerEventManager eventManager) {
+        this(eventManager, new ServerChangeDetector(ServerWatermarkProvider.getInstance()), PollingSchedule.SYSTEM_CLOCK);
+    }
+
+    protected ServerPollingManager(final ServerEventManager eventManager, final ServerChangeDetector changeDetector) {
+        this(eventManager, changeDetector, PollingSchedule.SYSTEM_CLOCK);
+    }
+
+    protected ServerPollingManager(final ServerEventManager eventManager, final ServerChangeDetector changeDetector,
+                                   final PollingSchedule.Clock clock) {
         logger.info("ServerPollingManager created");
         ArgumentHelper.checkNotNull(eventManager, "eventManager");
+        ArgumentHelper.checkNotNull(changeDetector, "changeDetector");
+        ArgumentHelper.checkNotNull(clock, "clock");
         this.eventManager = eventManager;
-        timer = new Timer(Integer.MAX_VALUE, new ActionListener() {
+        this.changeDetector = changeDetector;
+        this.clock = clock;
+
+        // Events raised by anyone else for a server mean the user changed something there, so it is likely to change soon
+        eventManager.addListener(new ServerEventListener() {
             @Override
-            public void actionPerformed(ActionEvent e) {
-                timerFired();
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                if (contextMap == null || SENDER_POLLING_MANAGER.equals(contextMap.get(CONTEXT_SENDER))) {
+                    return;
+                }
+
+                final Object serverUrl = contextMap.get(CONTEXT_SERVER_URL);
+                if (serverUrl instanceof String && StringUtils.isNotEmpty((String) serverUrl)) {
+                    notifyUserActivity((String) serverUrl);
+                }
             }
         });
     }
@@ -47,33 +127,244 @@ public class ServerPollingManager {
 
     public void startPolling(final int intervalInMilliSeconds) {
         logger.info("Polling started");
-        polling = true;
-        if (!timer.isRunning()) {
-            timer.setInitialDelay(intervalInMilliSeconds);
-            timer.start();
+        synchronized (this) {
+            defaultInterval = intervalInMilliSeconds;
+            for (final Map.Entry<String, PollingSchedule> entry : schedules.entrySet()) {
+                entry.getValue().setBaseInterval(getBaseInterval(entry.getKey()));
+            }
+
+            polling = true;
+            if (executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "ServerPollingManager");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            scheduleTick(clock.currentTimeMillis());
         }
     }
 
     public void stopPolling() {
         logger.info("Polling stopped");
-        polling = false;
-        if (timer.isRunning()) {
-            timer.stop();
+        final ScheduledExecutorService executorToStop;
+        synchronized (this) {
+            polling = false;
+            executorToStop = executor;
+            executor = null;
+            nextTick = null;
+            nextTickTime = -1;
+        }
+
+        if (executorToStop != null) {
+            executorToStop.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets the base polling interval of the server of the given url, or uses the default interval again if it is null
+     */
+    public void setPollingInterval(final String serverUrl, final Long intervalInMilliSeconds) {
+        ArgumentHelper.checkNotEmptyString(serverUrl);
+        final String serverKey = getServerKey(UrlHelper.createUri(serverUrl));
+        synchronized (this) {
+            if (intervalInMilliSeconds != null) {
+                serverIntervals.put(serverKey, intervalInMilliSeconds);
+            } else {
+                serverIntervals.remove(serverKey);
+            }
+
+            final PollingSchedule schedule = schedules.get(serverKey);
+            if (schedule != null) {
+                schedule.setBaseInterval(getBaseInterval(serverKey));
+                scheduleTick(schedule.getNextPollTime());
+            }
+        }
+    }
+
+    /**
+     * Tells us whether the IDE has focus. Polls back off while it doesn't.
+     */
+    public synchronized void setApplicationFocused(final boolean focused) {
+        this.focused = focused;
+        for (final PollingSchedule schedule : schedules.values()) {
+            schedule.setFocused(focused);
+            scheduleTick(schedule.getNextPollTime());
+        }
+    }
+
+    /**
+     * Call this when the user changed something on the server of the url (or any server if it is null),
+     * so that the effects of the change are picked up sooner.
+     */
+    public synchronized void notifyUserActivity(final String serverUrl) {
+        final String serverKey = StringUtils.isEmpty(serverUrl) ? null : getServerKey(UrlHelper.createUri(serverUrl));
+        for (final Map.Entry<String, PollingSchedule> entry : schedules.entrySet()) {
+            if (serverKey == null || serverKey.equals(entry.getKey())) {
+                entry.getValue().activity();
+                scheduleTick(entry.getValue().getNextPollTime());
+            }
+        }
+    }
+
+    /**
+     * Returns the current polling interval (without jitter) of the server of the url or -1 if it isn't polled
+     */
+    public synchronized long getPollingInterval(final String serverUrl) {
+        final PollingSchedule schedule = getSchedule(serverUrl);
+        return schedule != null ? schedule.getCurrentInterval() : -1;
+    }
+
+    /**
+     * Returns the time the server of the url is polled next or -1 if it isn't polled
+     */
+    public synchronized long getNextPollTime(final String serverUrl) {
+        final PollingSchedule schedule = getSchedule(serverUrl);
+        return schedule != null ? schedule.getNextPollTime() : -1;
+    }
+
+    /**
+     * Returns the time polling runs next (to look for new repositories or to poll a server) or -1 if polling is stopped
+     */
+    public synchronized long getNextPollTime() {
+        return nextTickTime;
+    }
+
+    public void setWatchedContextProvider(final WatchedContextProvider watchedContextProvider) {
+        this.watchedContextProvider = watchedContextProvider;
+    }
+
+    /**
+     * Returns the contexts of the repositories to check for changes
+     */
+    protected Collection<ServerContext> getWatchedContexts() {
+        final WatchedContextProvider provider = watchedContextProvider;
+        return provider != null ? provider.getWatchedContexts() : Collections.<ServerContext>emptyList();
+    }
+
+    /**
+     * Polls the servers that are due and raises an event for each repository that changed
+     */
+    protected void poll() {
+        final Collection<ServerContext> contexts = getWatchedContexts();
+        final Map<String, List<ServerContext>> contextsByServer = new LinkedHashMap<String, List<ServerContext>>();
+        for (final ServerContext context : contexts) {
+            final String serverKey = getServerKey(context.getServerUri() != null ? context.getServerUri() : context.getUri());
+            List<ServerContext> serverContexts = contextsByServer.get(serverKey);
+            if (serverContexts == null) {
+                serverContexts = new ArrayList<ServerContext>();
+                contextsByServer.put(serverKey, serverContexts);
+            }
+            serverContexts.add(context);
+        }
+
+        synchronized (this) {
+            // servers we haven't seen before get a schedule, those that are gone are dropped
+            for (final String serverKey : contextsByServer.keySet()) {
+                if (!schedules.containsKey(serverKey)) {
+                    final PollingSchedule schedule = new PollingSchedule(clock, random, getBaseInterval(serverKey));
+                    schedule.setFocused(focused);
+                    schedules.put(serverKey, schedule);
+                }
+            }
+            final Iterator<String> iterator = schedules.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (!contextsByServer.containsKey(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+
+            final Iterator<Map.Entry<String, List<ServerContext>>> servers = contextsByServer.entrySet().iterator();
+            while (servers.hasNext()) {
+                if (!schedules.get(servers.next().getKey()).isDue()) {
+                    servers.remove();
+                }
+            }
+        }
+        changeDetector.retain(contexts);
+
+        for (final Map.Entry<String, List<ServerContext>> server : contextsByServer.entrySet()) {
+            logger.info("poll: checking {} repositories on {}", server.getValue().size(), server.getKey());
+            final Map<ServerEvent, Set<String>> changes = changeDetector.detectChanges(server.getValue());
+            final boolean failed = changeDetector.getLastFailureCount() > 0;
+            synchronized (this) {
+                final PollingSchedule schedule = schedules.get(server.getKey());
+                if (schedule != null) {
+                    if (failed) {
+                        schedule.pollFailed();
+                    } else {
+                        schedule.pollSucceeded();
+                    }
+                }
+            }
+
+            for (final Map.Entry<ServerEvent, Set<String>> change : changes.entrySet()) {
+                for (final String contextKey : change.getValue()) {
+                    final Map<String, Object> eventContext = new HashMap<String, Object>();
+                    eventContext.put(CONTEXT_SENDER, SENDER_POLLING_MANAGER);
+                    eventContext.put(CONTEXT_SERVER_CONTEXT_KEY, contextKey);
+                    eventManager.triggerEvent(change.getKey(), eventContext);
+                }
+            }
         }
     }
 
-    private void timerFired() {
-        logger.info("Timer fired");
-        timer.stop();
+    private void tick() {
         if (!polling) {
             return;
         }
 
-        // TODO: Ideally we would contact the server and see what actually changed, but there isn't any call for that, yet
-        // Fire all changed events
-        final Map<String,Object> eventContext = new HashMap<String,Object>();
-        eventContext.put("sender", "pollingManager");
-        eventManager.triggerAllEvents(eventContext);
-        timer.restart();
+        try {
+            poll();
+        } catch (Throwable t) {
+            logger.warn("tick: failed to poll", t);
+        }
+
+        synchronized (this) {
+            nextTick = null;
+            nextTickTime = -1;
+            long tickTime = clock.currentTimeMillis() + MAX_TICK_DELAY;
+            for (final PollingSchedule schedule : schedules.values()) {
+                tickTime = Math.min(tickTime, schedule.getNextPollTime());
+            }
+            scheduleTick(tickTime);
+        }
+    }
+
+    /**
+     * Makes sure polling runs at the given time, unless it already runs earlier. Must be called while synchronized.
+     */
+    private void scheduleTick(final long tickTime) {
+        if (!polling || executor == null || (nextTick != null && nextTickTime <= tickTime)) {
+            return;
+        }
+
+        if (nextTick != null) {
+            nextTick.cancel(false);
+        }
+        nextTickTime = tickTime;
+        nextTick = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, Math.max(0, tickTime - clock.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private long getBaseInterval(final String serverKey) {
+        final Long interval = serverIntervals.get(serverKey);
+        return interval != null ? interval : defaultInterval;
+    }
+
+    private PollingSchedule getSchedule(final String serverUrl) {
+        ArgumentHelper.checkNotEmptyString(serverUrl);
+        return schedules.get(getServerKey(UrlHelper.createUri(serverUrl)));
+    }
+
+    private static String getServerKey(final URI uri) {
+        return uri != null ? StringUtils.lowerCase(uri.getAuthority()) : StringUtils.EMPTY;
     }
 }
@@ -0,0 +1,183 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last build found for each repository and branch along with a watermark (the newest build seen
+ * by the query that found it). BuildStatusLookupOperation only has to ask the server whether anything finished
+ * after the watermark instead of looking the build up again.
+ * <p/>
+ * The two ways of looking builds up have watermarks that mean different things, so each entry records which kind
+ * it has and a lookup only uses the entries of its own kind.
+ * <p/>
+ * It also remembers the collections that are too old to filter builds by repository and branch.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class BuildStatusCache {
+    static final int MAX_ENTRIES = 500;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Set<String> unfilteredCollections = Collections.synchronizedSet(new HashSet<String>());
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private static class Holder {
+        private static final BuildStatusCache INSTANCE = new BuildStatusCache();
+    }
+
+    public static BuildStatusCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected BuildStatusCache() {
+    }
+
+    public enum WatermarkKind {
+        // the newest completed build of the whole team project when its builds were scanned
+        PROJECT_SCAN,
+        // the newest completed build of the branch, or when the branch was looked up if it had none
+        BRANCH
+    }
+
+    public static class Entry {
+        private final WatermarkKind kind;
+        private final BuildStatusLookupOperation.BuildStatusRecord record;
+        private final int watermarkBuildId;
+        private final Date watermarkFinishTime;
+
+        public Entry(final WatermarkKind kind, final BuildStatusLookupOperation.BuildStatusRecord record,
+                     final int watermarkBuildId, final Date watermarkFinishTime) {
+            ArgumentHelper.checkNotNull(kind, "kind");
+            this.kind = kind;
+            this.record = record;
+            this.watermarkBuildId = watermarkBuildId;
+            this.watermarkFinishTime = watermarkFinishTime;
+        }
+
+        public WatermarkKind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the build found for the branch or null if the branch has no completed builds
+         */
+        public BuildStatusLookupOperation.BuildStatusRecord getRecord() {
+            return record;
+        }
+
+        public int getWatermarkBuildId() {
+            return watermarkBuildId;
+        }
+
+        public Date getWatermarkFinishTime() {
+            return watermarkFinishTime;
+        }
+
+        public boolean hasWatermark() {
+            return watermarkFinishTime != null;
+        }
+
+        /**
+         * Returns true if the newest build the server knows of now is still the one this entry was based on
+         */
+        public boolean isCurrent(final int newestBuildId) {
+            return hasWatermark() && watermarkBuildId == newestBuildId;
+        }
+    }
+
+    /**
+     * Returns the entry of the branch if it has the given kind of watermark, an entry of the other kind is a miss
+     */
+    public Entry get(final String repositoryId, final String branch, final WatermarkKind kind) {
+        ArgumentHelper.checkNotNull(kind, "kind");
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(getKey(repositoryId, branch));
+        }
+        if (entry != null && entry.getKind() != kind) {
+            entry = null;
+        }
+        if (entry != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void put(final String repositoryId, final String branch, final Entry entry) {
+        ArgumentHelper.checkNotNull(entry, "entry");
+        synchronized (entries) {
+            entries.put(getKey(repositoryId, branch), entry);
+        }
+    }
+
+    public void remove(final String repositoryId, final String branch) {
+        synchronized (entries) {
+            entries.remove(getKey(repositoryId, branch));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        unfilteredCollections.clear();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns false if the collection has already refused to filter builds by repository and branch
+     */
+    public boolean isFilteringSupported(final String collectionUrl) {
+        ArgumentHelper.checkNotEmptyString(collectionUrl);
+        return !unfilteredCollections.contains(StringUtils.lowerCase(collectionUrl));
+    }
+
+    public void setFilteringUnsupported(final String collectionUrl) {
+        ArgumentHelper.checkNotEmptyString(collectionUrl);
+        unfilteredCollections.add(StringUtils.lowerCase(collectionUrl));
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static String getKey(final String repositoryId, final String branch) {
+        ArgumentHelper.checkNotEmptyString(repositoryId);
+        ArgumentHelper.checkNotEmptyString(branch);
+        // repository ids are guids but branch names are case sensitive
+        return StringUtils.lowerCase(repositoryId) + "|" + branch;
+    }
+}
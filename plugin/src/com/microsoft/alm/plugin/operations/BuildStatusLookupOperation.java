@@ -10,20 +10,37 @@ import com.microsoft.alm.build.webapi.model.BuildRepository;
 import com.microsoft.alm.build.webapi.model.BuildResult;
 import com.microsoft.alm.build.webapi.model.BuildStatus;
 import com.microsoft.alm.client.utils.StringUtil;
+import com.microsoft.alm.common.utils.UrlHelper;
 import com.microsoft.alm.plugin.context.ServerContext;
 import com.microsoft.alm.plugin.context.ServerContextManager;
+import com.microsoft.alm.plugin.context.rest.BuildList;
+import com.microsoft.alm.plugin.context.rest.VstsHttpClient;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
 
 public class BuildStatusLookupOperation extends Operation {
     private static final Logger logger = LoggerFactory.getLogger(BuildStatusLookupOperation.class);
 
+    // TODO: Get the constant refs/heads/master from someplace common or query for the default branch from the server
+    private static final String MASTER_BRANCH = "refs/heads/master";
+    // The version of the REST API that can filter builds by repo and branch isn't in the Java SDK yet
+    private static final String FILTERED_BUILDS_REST_API_PATH = "/_apis/build/builds?repositoryId=%s&repositoryType=TfsGit&branchName=%s&statusFilter=completed&queryOrder=finishTimeDescending&$top=1&api-version=3.0";
+    private static final String MIN_FINISH_TIME_PARAMETER = "&minFinishTime=";
+    private static final String ISO_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+    // a branch without builds is watermarked with the lookup time, moved back in case our clock is ahead of the server's
+    private static final long CLOCK_SKEW_MILLISECONDS = 5L * 60L * 1000L;
+
+    private final BuildStatusCache cache = BuildStatusCache.getInstance();
     private final String gitRemoteUrl;
     private final String branch;
     private final boolean forcePrompt;
@@ -37,12 +54,18 @@ public class BuildStatusLookupOperation extends Operation {
         private final Date finishTime;
 
         public BuildStatusRecord(final Build build) {
-            this.branch = build.getSourceBranch();
-            this.successful = build.getResult() == BuildResult.SUCCEEDED;
-            this.buildId = build.getId();
-            this.definitionId = build.getDefinition().getId();
-            this.buildName = build.getBuildNumber();
-            this.finishTime = build.getFinishTime();
+            this(build.getSourceBranch(), build.getResult() == BuildResult.SUCCEEDED, build.getId(),
+                    build.getDefinition().getId(), build.getBuildNumber(), build.getFinishTime());
+        }
+
+        public BuildStatusRecord(final String branch, final boolean successful, final int buildId,
+                                 final int definitionId, final String buildName, final Date finishTime) {
+            this.branch = branch;
+            this.successful = successful;
+            this.buildId = buildId;
+            this.definitionId = definitionId;
+            this.buildName = buildName;
+            this.finishTime = finishTime;
         }
 
         public String getBranch() {
@@ -132,11 +155,7 @@ public class BuildStatusLookupOperation extends Operation {
         logger.info("BuildStatusLookupOperation.doWork()");
         onLookupStarted();
 
-        // Create a default result to return if something goes wrong
-        final List<BuildStatusRecord> buildStatusRecords = new ArrayList<BuildStatusRecord>(2);
         final BuildStatusResults results;
-        Build latestBuildForRepository = null;
-        Build matchingBuild = null;
 
         // Check to see if we should remove the context from the manager
         if (ServerContextManager.getInstance().get(gitRemoteUrl) != null && forcePrompt) {
@@ -146,56 +165,30 @@ public class BuildStatusLookupOperation extends Operation {
 
         // Lookup the context that goes with this remoteUrl
         // If no match exists simply return the default results
-        final ServerContext context = ServerContextManager.getInstance().createContextFromRemoteUrl(gitRemoteUrl, forcePrompt);
+        final ServerContext context = createContextFromRemoteUrl(gitRemoteUrl, forcePrompt);
         if (context != null && context.getGitRepository() != null) {
-            // Using the build REST client we will get the last 100 builds for this team project.
-            // We will go through those builds and try to find one that matches our repo and branch.
-            // If we can't find a perfect match, we will keep the first one that matches our repo.
-            // TODO: The latest REST API allows you to filter the builds based on repo and branch, but the Java SDK
-            // TODO: is not up to date with that version yet. We should change this code to use that method as soon
-            // TODO: as we can.
-            final BuildHttpClient buildClient = context.getBuildHttpClient();
-            final List<Build> builds = buildClient.getBuilds(context.getTeamProjectReference().getId(), null, null, null, null, null, null, null, BuildStatus.COMPLETED, null, null, null, null, 100, null, null, null, BuildQueryOrder.FINISH_TIME_DESCENDING);
-            if (builds.size() > 0) {
-                for (final Build b : builds) {
-                    // Get the repo and branch for the build and compare them to ours
-                    final BuildRepository repo = b.getRepository();
-                    if (repo != null && StringUtils.equalsIgnoreCase(context.getGitRepository().getId().toString(), repo.getId())) {
-                        // TODO: Get the constant refs/heads/master from someplace common or query for the default branch from the server
-                        // Branch names are case sensitive
-                        if (StringUtils.equals(b.getSourceBranch(), "refs/heads/master")) {
-                            if (latestBuildForRepository == null) {
-                                // Found the master branch for the repo, so save that off
-                                logger.info("Latest build found for repo for the master branch.");
-                                latestBuildForRepository = b;
-                            }
-                        } else if (StringUtils.equals(b.getSourceBranch(), branch)) {
-                            if (matchingBuild == null) {
-                                // The repo and branch match the build exactly, so save that off
-                                logger.info("Matching build found for repo and branch.");
-                                matchingBuild = b;
-                            }
-                        }
-
-                        if (latestBuildForRepository != null && matchingBuild != null) {
-                            // We found both builds
-                            break;
-                        }
+            List<BuildStatusRecord> buildStatusRecords = null;
+            final String collectionUrl = context.getCollectionURI() != null ? context.getCollectionURI().toString() : null;
+            if (collectionUrl != null && cache.isFilteringSupported(collectionUrl)) {
+                try {
+                    buildStatusRecords = getBuildsFromFilteredQuery(context, collectionUrl);
+                } catch (VstsHttpClient.VstsHttpClientException e) {
+                    if (e.getStatusCode() != HttpStatus.SC_BAD_REQUEST && e.getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+                        throw e;
                     }
+                    // Older servers don't know the api version that filters by repo and branch
+                    logger.info("Server doesn't support filtering builds by repository, falling back to scanning the project builds", e);
+                    cache.setFilteringUnsupported(collectionUrl);
                 }
+            }
+            if (buildStatusRecords == null) {
+                buildStatusRecords = getBuildsFromProjectScan(context);
+            }
 
-                // Create the results
-                if (latestBuildForRepository != null) {
-                    // Add the repository build to the status records list first
-                    buildStatusRecords.add(new BuildStatusRecord(latestBuildForRepository));
-                }
-                if (matchingBuild != null) {
-                    // Add the matching build to the status records list last
-                    buildStatusRecords.add(new BuildStatusRecord(matchingBuild));
-                }
+            if (buildStatusRecords.size() > 0) {
                 results = new BuildStatusResults(context, buildStatusRecords);
             } else {
-                // No builds were found for this project
+                // No builds were found for this repo
                 results = new BuildStatusResults(context, null);
             }
         } else {
@@ -207,6 +200,185 @@ public class BuildStatusLookupOperation extends Operation {
         onLookupCompleted();
     }
 
+    /**
+     * Asks the server for the newest completed build of the master branch and of our branch.
+     * Each request only returns builds that finished after the cached one so it is usually empty.
+     */
+    private List<BuildStatusRecord> getBuildsFromFilteredQuery(final ServerContext context, final String collectionUrl) {
+        final List<BuildStatusRecord> buildStatusRecords = new ArrayList<BuildStatusRecord>(2);
+        final String repositoryId = context.getGitRepository().getId().toString();
+
+        // Add the repository build to the status records list first
+        final BuildStatusRecord latestBuildForRepository = getLatestBuildForBranch(context, collectionUrl, repositoryId, MASTER_BRANCH);
+        if (latestBuildForRepository != null) {
+            buildStatusRecords.add(latestBuildForRepository);
+        }
+
+        // Add the matching build to the status records list last
+        if (!StringUtils.equals(branch, MASTER_BRANCH)) {
+            final BuildStatusRecord matchingBuild = getLatestBuildForBranch(context, collectionUrl, repositoryId, branch);
+            if (matchingBuild != null) {
+                buildStatusRecords.add(matchingBuild);
+            }
+        }
+
+        return buildStatusRecords;
+    }
+
+    private BuildStatusRecord getLatestBuildForBranch(final ServerContext context, final String collectionUrl,
+                                                      final String repositoryId, final String branchName) {
+        final BuildStatusCache.Entry cached = cache.get(repositoryId, branchName, BuildStatusCache.WatermarkKind.BRANCH);
+        final Date since = cached != null ? cached.getWatermarkFinishTime() : null;
+        final Date lookupTime = new Date(System.currentTimeMillis() - CLOCK_SKEW_MILLISECONDS);
+
+        final StringBuilder uri = new StringBuilder(collectionUrl)
+                .append(UrlHelper.URL_SEPARATOR).append(context.getTeamProjectReference().getId())
+                .append(String.format(FILTERED_BUILDS_REST_API_PATH, repositoryId, UrlHelper.encode(branchName)));
+        if (since != null) {
+            uri.append(MIN_FINISH_TIME_PARAMETER).append(UrlHelper.encode(formatDate(since)));
+        }
+
+        final BuildList buildList = SingleFlight.getInstance().execute(
+                SingleFlight.key("getBranchBuilds", repositoryId, branchName, since != null ? since.getTime() : null, context.getUserId()),
+                new Callable<BuildList>() {
+                    @Override
+                    public BuildList call() {
+                        return VstsHttpClient.sendRequest(context.getClient(), uri.toString(), BuildList.class);
+                    }
+                });
+
+        final List<Build> builds = buildList != null ? buildList.getValue() : null;
+        if (builds == null || builds.isEmpty()) {
+            if (cached != null) {
+                logger.info("No newer build found for the branch, using the cached one.");
+                return cached.getRecord();
+            }
+            // next time only ask for builds that finished since this lookup
+            cache.put(repositoryId, branchName, new BuildStatusCache.Entry(BuildStatusCache.WatermarkKind.BRANCH, null, 0, lookupTime));
+            return null;
+        }
+
+        final Build newest = builds.get(0);
+        if (cached != null && cached.isCurrent(newest.getId())) {
+            return cached.getRecord();
+        }
+
+        logger.info("Latest build found for repo and branch.");
+        final BuildStatusRecord record = new BuildStatusRecord(newest);
+        cache.put(repositoryId, branchName, new BuildStatusCache.Entry(BuildStatusCache.WatermarkKind.BRANCH, record, newest.getId(), newest.getFinishTime()));
+        return record;
+    }
+
+    /**
+     * Scans the last 100 builds of the team project for our repo and branch. This is what servers that can't filter
+     * builds by repository get. If the newest build of the project is the same as last time the cached builds are used.
+     */
+    private List<BuildStatusRecord> getBuildsFromProjectScan(final ServerContext context) {
+        final String repositoryId = context.getGitRepository().getId().toString();
+        final boolean isMasterBranch = StringUtils.equals(branch, MASTER_BRANCH);
+        final BuildStatusCache.Entry cachedRepositoryBuild = cache.get(repositoryId, MASTER_BRANCH, BuildStatusCache.WatermarkKind.PROJECT_SCAN);
+        final BuildStatusCache.Entry cachedMatchingBuild = isMasterBranch ? null : cache.get(repositoryId, branch, BuildStatusCache.WatermarkKind.PROJECT_SCAN);
+
+        if (cachedRepositoryBuild != null && cachedRepositoryBuild.hasWatermark()
+                && (isMasterBranch || (cachedMatchingBuild != null
+                && cachedMatchingBuild.isCurrent(cachedRepositoryBuild.getWatermarkBuildId())))) {
+            // Both answers came from the same scan, so they are still good if no build finished since then
+            final Date since = cachedRepositoryBuild.getWatermarkFinishTime();
+            final List<Build> newerBuilds = SingleFlight.getInstance().execute(
+                    SingleFlight.key("getNewestBuild", context.getTeamProjectReference().getId(), since.getTime(), context.getUserId()),
+                    new Callable<List<Build>>() {
+                        @Override
+                        public List<Build> call() {
+                            final BuildHttpClient buildClient = context.getBuildHttpClient();
+                            return buildClient.getBuilds(context.getTeamProjectReference().getId(), null, null, null, since, null, null, null, BuildStatus.COMPLETED, null, null, null, null, 1, null, null, null, BuildQueryOrder.FINISH_TIME_DESCENDING);
+                        }
+                    });
+            if (newerBuilds == null || newerBuilds.isEmpty() || cachedRepositoryBuild.isCurrent(newerBuilds.get(0).getId())) {
+                logger.info("No build finished since the last scan, using the cached builds.");
+                final List<BuildStatusRecord> buildStatusRecords = new ArrayList<BuildStatusRecord>(2);
+                if (cachedRepositoryBuild.getRecord() != null) {
+                    buildStatusRecords.add(cachedRepositoryBuild.getRecord());
+                }
+                if (cachedMatchingBuild != null && cachedMatchingBuild.getRecord() != null) {
+                    buildStatusRecords.add(cachedMatchingBuild.getRecord());
+                }
+                return buildStatusRecords;
+            }
+        }
+
+        // Using the build REST client we will get the last 100 builds for this team project.
+        // We will go through those builds and try to find one that matches our repo and branch.
+        // If we can't find a perfect match, we will keep the first one that matches our repo.
+        // Every branch of every repo in the project asks the same question, so share the answer between them
+        final List<Build> builds = SingleFlight.getInstance().execute(
+                SingleFlight.key("getBuilds", context.getTeamProjectReference().getId(), context.getUserId()),
+                new Callable<List<Build>>() {
+                    @Override
+                    public List<Build> call() {
+                        final BuildHttpClient buildClient = context.getBuildHttpClient();
+                        return buildClient.getBuilds(context.getTeamProjectReference().getId(), null, null, null, null, null, null, null, BuildStatus.COMPLETED, null, null, null, null, 100, null, null, null, BuildQueryOrder.FINISH_TIME_DESCENDING);
+                    }
+                });
+
+        final List<BuildStatusRecord> buildStatusRecords = new ArrayList<BuildStatusRecord>(2);
+        if (builds == null || builds.isEmpty()) {
+            // No builds were found for this project
+            return buildStatusRecords;
+        }
+
+        Build latestBuildForRepository = null;
+        Build matchingBuild = null;
+        for (final Build b : builds) {
+            // Get the repo and branch for the build and compare them to ours
+            final BuildRepository repo = b.getRepository();
+            if (repo != null && StringUtils.equalsIgnoreCase(repositoryId, repo.getId())) {
+                // Branch names are case sensitive
+                if (StringUtils.equals(b.getSourceBranch(), MASTER_BRANCH)) {
+                    if (latestBuildForRepository == null) {
+                        // Found the master branch for the repo, so save that off
+                        logger.info("Latest build found for repo for the master branch.");
+                        latestBuildForRepository = b;
+                    }
+                } else if (StringUtils.equals(b.getSourceBranch(), branch)) {
+                    if (matchingBuild == null) {
+                        // The repo and branch match the build exactly, so save that off
+                        logger.info("Matching build found for repo and branch.");
+                        matchingBuild = b;
+                    }
+                }
+
+                if (latestBuildForRepository != null && matchingBuild != null) {
+                    // We found both builds
+                    break;
+                }
+            }
+        }
+
+        // Remember what the scan found, using the newest build of the project as the watermark
+        final Build newest = builds.get(0);
+        final BuildStatusRecord repositoryRecord = latestBuildForRepository != null ? new BuildStatusRecord(latestBuildForRepository) : null;
+        cache.put(repositoryId, MASTER_BRANCH, new BuildStatusCache.Entry(BuildStatusCache.WatermarkKind.PROJECT_SCAN, repositoryRecord, newest.getId(), newest.getFinishTime()));
+        if (repositoryRecord != null) {
+            // Add the repository build to the status records list first
+            buildStatusRecords.add(repositoryRecord);
+        }
+        if (!isMasterBranch) {
+            final BuildStatusRecord matchingRecord = matchingBuild != null ? new BuildStatusRecord(matchingBuild) : null;
+            cache.put(repositoryId, branch, new BuildStatusCache.Entry(BuildStatusCache.WatermarkKind.PROJECT_SCAN, matchingRecord, newest.getId(), newest.getFinishTime()));
+            if (matchingRecord != null) {
+                // Add the matching build to the status records list last
+                buildStatusRecords.add(matchingRecord);
+            }
+        }
+        return buildStatusRecords;
+    }
+
+    private static String formatDate(final Date date) {
+        final SimpleDateFormat format = new SimpleDateFormat(ISO_DATE_FORMAT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date);
+    }
+
     @Override
     protected void terminate(final Throwable t) {
         super.terminate(t);
@@ -3,8 +3,12 @@
 
 package com.microsoft.alm.plugin.operations;
 
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextManager;
+
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -102,6 +106,34 @@ public abstract class Operation {
         state = State.COMPLETED;
     }
 
+    /**
+     * Gets the authenticated context for the remote url (see ServerContextManager.getUpdatedContext).
+     * Operations started at the same time for the same url share a single lookup.
+     */
+    protected ServerContext getUpdatedContext(final String gitRemoteUrl, final boolean setAsActiveContext) {
+        return SingleFlight.getInstance().execute(SingleFlight.key("getUpdatedContext", gitRemoteUrl, setAsActiveContext),
+                new Callable<ServerContext>() {
+                    @Override
+                    public ServerContext call() {
+                        return ServerContextManager.getInstance().getUpdatedContext(gitRemoteUrl, setAsActiveContext);
+                    }
+                });
+    }
+
+    /**
+     * Creates a context from the remote url (see ServerContextManager.createContextFromRemoteUrl).
+     * Operations started at the same time for the same url share a single lookup.
+     */
+    protected ServerContext createContextFromRemoteUrl(final String gitRemoteUrl, final boolean prompt) {
+        return SingleFlight.getInstance().execute(SingleFlight.key("createContextFromRemoteUrl", gitRemoteUrl, prompt),
+                new Callable<ServerContext>() {
+                    @Override
+                    public ServerContext call() {
+                        return ServerContextManager.getInstance().createContextFromRemoteUrl(gitRemoteUrl, prompt);
+                    }
+                });
+    }
+
     protected void onLookupStarted() {
         state = State.STARTED;
         for (final Listener listener : listeners) {
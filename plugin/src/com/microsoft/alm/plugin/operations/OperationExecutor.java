@@ -3,53 +3,158 @@
 
 package com.microsoft.alm.plugin.operations;
 
+import com.microsoft.alm.common.utils.ArgumentHelper;
 import com.microsoft.alm.plugin.exceptions.TeamServicesException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Runs operations and the I/O tasks they fan out on two separate thread pools.
+ * <p/>
+ * Operations (the "drivers" that call doWork and usually wait on their tasks) run on the operation pool.
+ * The tasks they submit run on the task pool. Keeping the tiers apart means waiting drivers can never occupy
+ * all the threads their own tasks need. Within the task tier, a thread that waits on a task that hasn't started
+ * yet pulls it off the queue and runs it itself, so nested fan-out can't starve the pool either.
+ * When the task queue is full, the submitting thread runs the task itself instead of getting a RejectedExecutionException.
+ * <p/>
+ * The pool sizes can be configured with the system properties below.
+ * <p/>
+ * THREAD-SAFE
+ */
 public class OperationExecutor {
     private static final Logger logger = LoggerFactory.getLogger(OperationExecutor.class);
+
+    public static final String PROP_OPERATION_THREADS = "com.microsoft.alm.plugin.operations.operationThreads";
+    public static final String PROP_TASK_THREADS = "com.microsoft.alm.plugin.operations.taskThreads";
+    public static final String PROP_TASK_QUEUE_SIZE = "com.microsoft.alm.plugin.operations.taskQueueSize";
+
+    static final int DEFAULT_OPERATION_THREADS = 5;
+    static final int DEFAULT_TASK_THREADS = 10;
+    // The number of items that can be in the task queue needs to be bigger than the number of threads (10x is somewhat arbitrary)
+    static final int DEFAULT_TASK_QUEUE_SIZE = DEFAULT_TASK_THREADS * 10;
+
     final int THREAD_RECOVERY_TIMEOUT_SECONDS = 5;
-    // For now we are limiting ourselves to 5 threads (single threaded is way too slow)
-    final int MAX_THREADS = 5;
-    // No need for Core threads and Max threads to be different
-    final int CORE_THREADS = MAX_THREADS;
     //timeout for each task
     final long TASK_TIMEOUT_SECONDS = 120L;
+    // how often waitAll checks futures that don't notify us when they complete
+    static final long WAIT_POLL_INTERVAL_MILLISECONDS = 100L;
 
-    // The number of items that can be in the Queue needs to be bigger than the number of threads (10x is somewhat arbitrary)
-    final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(MAX_THREADS * 10);
-    final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(CORE_THREADS, MAX_THREADS, THREAD_RECOVERY_TIMEOUT_SECONDS, TimeUnit.SECONDS, queue);
+    private final ThreadPoolExecutor operationExecutor;
+    private final ThreadPoolExecutor taskExecutor;
+    private final AtomicLong callerRunsCount = new AtomicLong();
+    private final AtomicLong helpedCount = new AtomicLong();
+    private final Object completionLock = new Object();
 
     private static class Holder {
-        public final static OperationExecutor INSTANCE = new OperationExecutor();
+        public final static OperationExecutor INSTANCE = new OperationExecutor(
+                Integer.getInteger(PROP_OPERATION_THREADS, DEFAULT_OPERATION_THREADS),
+                Integer.getInteger(PROP_TASK_THREADS, DEFAULT_TASK_THREADS),
+                Integer.getInteger(PROP_TASK_QUEUE_SIZE, DEFAULT_TASK_QUEUE_SIZE));
     }
 
     public static OperationExecutor getInstance() {
         return Holder.INSTANCE;
     }
 
+    /**
+     * The constructor is protected for tests.
+     */
+    protected OperationExecutor(final int operationThreads, final int taskThreads, final int taskQueueSize) {
+        if (operationThreads < 1) throw new IllegalArgumentException("operationThreads");
+        if (taskThreads < 1) throw new IllegalArgumentException("taskThreads");
+        if (taskQueueSize < 1) throw new IllegalArgumentException("taskQueueSize");
+
+        logger.info("OperationExecutor created with {} operation threads, {} task threads", operationThreads, taskThreads);
+
+        // Operations are never rejected, they simply wait for a free driver thread
+        operationExecutor = new ThreadPoolExecutor(operationThreads, operationThreads, THREAD_RECOVERY_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("Operation"));
+        operationExecutor.allowCoreThreadTimeOut(true);
+
+        final BlockingQueue<Runnable> taskQueue = new ArrayBlockingQueue<Runnable>(taskQueueSize);
+        taskExecutor = new ThreadPoolExecutor(taskThreads, taskThreads, THREAD_RECOVERY_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS, taskQueue, new NamedThreadFactory("OperationTask"), new CallerRunsWhenSaturated());
+        taskExecutor.allowCoreThreadTimeOut(true);
+    }
+
     public UUID executeAsync(final Operation operation, final Operation.Inputs inputs) {
         execute(operation, inputs);
         return operation.getId();
     }
 
+    /**
+     * Returns the number of operations and tasks waiting to run
+     */
     public int getQueueSize() {
-        return queue.size();
+        return getOperationQueueSize() + getTaskQueueSize();
+    }
+
+    public int getOperationQueueSize() {
+        return operationExecutor.getQueue().size();
+    }
+
+    public int getTaskQueueSize() {
+        return taskExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of threads currently running operations or tasks
+     */
+    public int getActiveCount() {
+        return getActiveOperationCount() + getActiveTaskCount();
+    }
+
+    public int getActiveOperationCount() {
+        return operationExecutor.getActiveCount();
     }
 
-    private synchronized void execute(final Operation operation, final Operation.Inputs inputs) {
-        threadPoolExecutor.execute(new Runnable() {
+    public int getActiveTaskCount() {
+        return taskExecutor.getActiveCount();
+    }
+
+    public long getCompletedOperationCount() {
+        return operationExecutor.getCompletedTaskCount();
+    }
+
+    public long getCompletedTaskCount() {
+        return taskExecutor.getCompletedTaskCount();
+    }
+
+    /**
+     * Returns how many tasks were run by the submitting thread because the task queue was full
+     */
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+    /**
+     * Returns how many queued tasks were run by a thread waiting on them instead of a pool thread
+     */
+    public long getHelpedCount() {
+        return helpedCount.get();
+    }
+
+    private void execute(final Operation operation, final Operation.Inputs inputs) {
+        operationExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -64,30 +169,312 @@ public class OperationExecutor {
         });
     }
 
-    public Future submitOperationTask(Runnable task) {
-        return threadPoolExecutor.submit(task);
+    public Future submitOperationTask(final Runnable task) {
+        final FutureTask<Void> futureTask = new OperationTask(task);
+        taskExecutor.execute(futureTask);
+        return futureTask;
     }
 
-    public void wait(List<Future> futures) {
-        //TODO: can we call get on the futures in parallel. If there are multiple ones that timeout, overall timeout might be long
-        Throwable t = null;
-        for (Future f : futures) {
+    /**
+     * Waits for all the futures using the default task timeout as the overall deadline.
+     * Throws a TeamServicesException if any of the futures failed or did not finish in time.
+     */
+    public void wait(final List<Future> futures) {
+        final WaitResults results = waitAll(futures, TASK_TIMEOUT_SECONDS, TimeUnit.SECONDS, WaitMode.COLLECT_ALL);
+        if (results.hasErrors()) {
+            throw new TeamServicesException(TeamServicesException.KEY_OPERATION_ERRORS, results.getFirstError());
+        }
+    }
+
+    /**
+     * Waits for all the futures in parallel against a single overall deadline (rather than one timeout per future).
+     * In FAIL_FAST mode the first failure cancels all of the remaining futures. In COLLECT_ALL mode every future
+     * is waited on until it completes or the deadline passes. Futures that have not finished by the deadline
+     * are left running and reported as TIMED_OUT; use WaitResults.cancelUnfinished to stop them.
+     * This method never throws for task failures, the outcome of each future is returned instead.
+     */
+    public WaitResults waitAll(final List<? extends Future> futures, final long timeout, final TimeUnit unit, final WaitMode mode) {
+        ArgumentHelper.checkNotNull(futures, "futures");
+        ArgumentHelper.checkNotNull(unit, "unit");
+        ArgumentHelper.checkNotNull(mode, "mode");
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean interrupted = false;
+        boolean failed = false;
+
+        while (true) {
+            boolean allDone = true;
+            Future queued = null;
+            for (final Future f : futures) {
+                if (!f.isDone()) {
+                    allDone = false;
+                    if (queued == null && isQueued(f)) {
+                        queued = f;
+                    }
+                } else if (mode == WaitMode.FAIL_FAST && !failed && isFailed(f)) {
+                    failed = true;
+                }
+            }
+
+            if (failed) {
+                logger.info("waitAll: a task failed, cancelling the remaining tasks");
+                cancelAll(futures);
+                break;
+            }
+            if (allDone || System.nanoTime() - deadline >= 0) {
+                break;
+            }
+
+            if (queued != null) {
+                // Help with a task that hasn't started yet instead of blocking
+                runIfQueued(queued);
+                continue;
+            }
+
             try {
-                f.get(TASK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                final long remainingMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                synchronized (completionLock) {
+                    // Our own tasks notify on completion, the poll interval covers futures from elsewhere
+                    completionLock.wait(Math.min(remainingMillis, WAIT_POLL_INTERVAL_MILLISECONDS));
+                }
             } catch (InterruptedException e) {
-                t = e;
-                logger.warn("wait: InterruptedException", e);
-            } catch (TimeoutException te) {
-                t = te;
-                logger.warn("wait: TimeoutException", te);
-            } catch (ExecutionException ee) {
-                logger.warn("wait: ExecutionException", ee);
-                t = ee;
+                logger.warn("waitAll: InterruptedException", e);
+                interrupted = true;
+                break;
+            }
+        }
+
+        final WaitResults results = new WaitResults(futures, interrupted);
+        if (interrupted) {
+            // restore the interrupt for the caller
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    private boolean isQueued(final Future future) {
+        return future instanceof FutureTask && taskExecutor.getQueue().contains(future);
+    }
+
+    private static boolean isFailed(final Future future) {
+        if (future.isCancelled()) {
+            return true;
+        }
+        try {
+            future.get(0, TimeUnit.MILLISECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static void cancelAll(final List<? extends Future> futures) {
+        for (final Future f : futures) {
+            if (!f.isDone()) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * If the future is a task that is still sitting in the task queue, run it on the calling thread.
+     * This lets a waiting parent help with its own children instead of blocking a thread they might need.
+     */
+    private void runIfQueued(final Future future) {
+        if (future instanceof FutureTask && !future.isDone() && taskExecutor.remove((FutureTask) future)) {
+            helpedCount.incrementAndGet();
+            ((FutureTask) future).run();
+        }
+    }
+
+    /**
+     * Saturation policy for the task pool: run the task on the submitting thread rather than rejecting it
+     */
+    private class CallerRunsWhenSaturated implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                logger.warn("rejectedExecution: task submitted after shutdown");
+                if (r instanceof Future) {
+                    ((Future) r).cancel(false);
+                }
+                return;
+            }
+
+            callerRunsCount.incrementAndGet();
+            logger.info("rejectedExecution: task queue is full, running task on the calling thread");
+            r.run();
+        }
+    }
+
+    /**
+     * Task wrapper that wakes up anyone in waitAll when it completes
+     */
+    private class OperationTask extends FutureTask<Void> {
+        OperationTask(final Runnable task) {
+            super(task, null);
+        }
+
+        @Override
+        protected void done() {
+            synchronized (completionLock) {
+                completionLock.notifyAll();
+            }
+        }
+    }
+
+    public enum WaitMode {
+        // cancel the remaining futures as soon as one fails
+        FAIL_FAST,
+        // wait for every future until the deadline regardless of failures
+        COLLECT_ALL
+    }
+
+    /**
+     * The outcome of a single future passed to waitAll
+     */
+    public static class TaskOutcome {
+        public enum Status {SUCCEEDED, FAILED, CANCELLED, TIMED_OUT}
+
+        private final Future future;
+        private final Status status;
+        private final Object result;
+        private final Throwable error;
+
+        private TaskOutcome(final Future future, final Status status, final Object result, final Throwable error) {
+            this.future = future;
+            this.status = status;
+            this.result = result;
+            this.error = error;
+        }
+
+        public Future getFuture() {
+            return future;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Object getResult() {
+            return result;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return status == Status.SUCCEEDED;
+        }
+    }
+
+    /**
+     * The outcome of all the futures passed to waitAll, in the same order as they were passed in
+     */
+    public static class WaitResults {
+        private final List<TaskOutcome> outcomes;
+        private final boolean interrupted;
+
+        private WaitResults(final List<? extends Future> futures, final boolean interrupted) {
+            this.interrupted = interrupted;
+            this.outcomes = new ArrayList<TaskOutcome>(futures.size());
+            for (final Future f : futures) {
+                outcomes.add(getOutcome(f));
+            }
+        }
+
+        private static TaskOutcome getOutcome(final Future f) {
+            if (f.isCancelled()) {
+                return new TaskOutcome(f, TaskOutcome.Status.CANCELLED, null, new CancellationException());
             }
+            if (!f.isDone()) {
+                return new TaskOutcome(f, TaskOutcome.Status.TIMED_OUT, null, new TimeoutException());
+            }
+            try {
+                return new TaskOutcome(f, TaskOutcome.Status.SUCCEEDED, f.get(0, TimeUnit.MILLISECONDS), null);
+            } catch (ExecutionException e) {
+                return new TaskOutcome(f, TaskOutcome.Status.FAILED, null, e.getCause() != null ? e.getCause() : e);
+            } catch (Throwable t) {
+                return new TaskOutcome(f, TaskOutcome.Status.FAILED, null, t);
+            }
+        }
+
+        public List<TaskOutcome> getOutcomes() {
+            return Collections.unmodifiableList(outcomes);
+        }
+
+        public boolean isInterrupted() {
+            return interrupted;
+        }
+
+        public boolean hasErrors() {
+            return interrupted || getFirstError() != null;
+        }
+
+        public boolean isTimedOut() {
+            return getCount(TaskOutcome.Status.TIMED_OUT) > 0;
+        }
+
+        public int getCount(final TaskOutcome.Status status) {
+            int count = 0;
+            for (final TaskOutcome outcome : outcomes) {
+                if (outcome.getStatus() == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public Throwable getFirstError() {
+            for (final TaskOutcome outcome : outcomes) {
+                if (outcome.getError() != null) {
+                    return outcome.getError();
+                }
+            }
+            return interrupted ? new InterruptedException() : null;
+        }
+
+        /**
+         * Returns the results of the futures that succeeded
+         */
+        public List<Object> getPartialResults() {
+            final List<Object> results = new ArrayList<Object>(outcomes.size());
+            for (final TaskOutcome outcome : outcomes) {
+                if (outcome.isSuccessful()) {
+                    results.add(outcome.getResult());
+                }
+            }
+            return results;
+        }
+
+        /**
+         * Cancels (and interrupts) the futures that were still running at the deadline
+         */
+        public void cancelUnfinished() {
+            for (final TaskOutcome outcome : outcomes) {
+                if (outcome.getStatus() == TaskOutcome.Status.TIMED_OUT) {
+                    outcome.getFuture().cancel(true);
+                }
+            }
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(final String prefix) {
+            this.prefix = prefix;
         }
 
-        if (t != null) {
-            throw new TeamServicesException(TeamServicesException.KEY_OPERATION_ERRORS, t);
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, prefix + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
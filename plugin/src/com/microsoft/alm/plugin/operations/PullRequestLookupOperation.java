@@ -4,10 +4,11 @@
 package com.microsoft.alm.plugin.operations;
 
 import com.microsoft.alm.plugin.context.ServerContext;
-import com.microsoft.alm.plugin.context.ServerContextManager;
+import com.microsoft.alm.plugin.exceptions.TeamServicesException;
 import com.microsoft.alm.sourcecontrol.webapi.GitHttpClient;
 import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequest;
 import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequestSearchCriteria;
+import com.microsoft.alm.sourcecontrol.webapi.model.IdentityRefWithVote;
 import com.microsoft.alm.sourcecontrol.webapi.model.PullRequestStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,12 +16,31 @@ import org.slf4j.LoggerFactory;
 import javax.ws.rs.NotAuthorizedException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Looks up the active pull requests created by the user and the ones the user is a reviewer on. All the pages of
+ * each scope are read, several at a time.
+ * <p/>
+ * Given a Baseline the lookup reports only what changed since the results last committed to the baseline: the
+ * results of a scope are a delta holding the added and updated pull requests, the ids of the removed ones and the
+ * ids of all of them in order.
+ */
 public class PullRequestLookupOperation extends Operation {
     private static final Logger logger = LoggerFactory.getLogger(PullRequestLookupOperation.class);
 
+    public static final int PAGE_SIZE = 100;
+    public static final int PARALLEL_PAGE_COUNT = 4;
+    public static final int MAX_PULL_REQUEST_COUNT = 2000;
+    private static final int MAX_COMMENT_LENGTH = 256;
+
     public enum PullRequestScope {
         REQUESTED_BY_ME,
         ASSIGNED_TO_ME,
@@ -28,17 +48,27 @@ public class PullRequestLookupOperation extends Operation {
     }
 
     private final String gitRemoteUrl;
-    private final PullRequestLookupResults requestedByMeResults = new PullRequestLookupResults(PullRequestScope.REQUESTED_BY_ME);
-    private final PullRequestLookupResults assignedToMeResults = new PullRequestLookupResults(PullRequestScope.ASSIGNED_TO_ME);
+    private final Baseline baseline;
 
     public class PullRequestLookupResults extends ResultsImpl {
         private final List<GitPullRequest> pullRequests = new ArrayList<GitPullRequest>();
+        private final List<Integer> removedPullRequestIds = new ArrayList<Integer>();
+        private final List<Integer> pullRequestIds;
         private final PullRequestScope scope;
+        private BaselineUpdate baselineUpdate;
 
         public PullRequestLookupResults(final PullRequestScope scope) {
+            this(scope, null);
+        }
+
+        private PullRequestLookupResults(final PullRequestScope scope, final List<Integer> pullRequestIds) {
             this.scope = scope;
+            this.pullRequestIds = pullRequestIds;
         }
 
+        /**
+         * Returns all the pull requests of the scope, or just the added and updated ones if this is a delta
+         */
         public List<GitPullRequest> getPullRequests() {
             return Collections.unmodifiableList(pullRequests);
         }
@@ -46,11 +76,108 @@ public class PullRequestLookupOperation extends Operation {
         public PullRequestScope getScope() {
             return scope;
         }
+
+        /**
+         * Returns true if the results only hold what changed since the previous lookup
+         */
+        public boolean isDelta() {
+            return pullRequestIds != null;
+        }
+
+        /**
+         * Returns the ids of all the pull requests of the scope in order, including the ones that didn't change
+         */
+        public List<Integer> getPullRequestIds() {
+            if (pullRequestIds != null) {
+                return Collections.unmodifiableList(pullRequestIds);
+            }
+
+            final List<Integer> ids = new ArrayList<Integer>(pullRequests.size());
+            for (final GitPullRequest pullRequest : pullRequests) {
+                ids.add(pullRequest.getPullRequestId());
+            }
+            return ids;
+        }
+
+        /**
+         * Returns the ids of the pull requests that are gone since the previous lookup
+         */
+        public List<Integer> getRemovedPullRequestIds() {
+            return Collections.unmodifiableList(removedPullRequestIds);
+        }
+
+        /**
+         * Records these results in the baseline they were computed against. Call it once they are shown, so the
+         * next lookup only sends what changed since then. Results that are never shown must not be committed.
+         */
+        public void commitBaseline() {
+            if (baseline != null && baselineUpdate != null) {
+                baseline.commit(baselineUpdate);
+            }
+        }
+    }
+
+    /**
+     * What the results of a scope add to the baseline once they are committed
+     */
+    private static class BaselineUpdate {
+        private final String key;
+        private final PullRequestScope scope;
+        private final Map<Integer, String> previousFingerprints;
+        private final Map<Integer, String> fingerprints;
+
+        private BaselineUpdate(final String key, final PullRequestScope scope,
+                               final Map<Integer, String> previousFingerprints, final Map<Integer, String> fingerprints) {
+            this.key = key;
+            this.scope = scope;
+            this.previousFingerprints = previousFingerprints;
+            this.fingerprints = fingerprints;
+        }
+    }
+
+    /**
+     * Remembers what the view shows for each scope, as of the last results committed to it. Keep one for each view
+     * of the results and clear it when the view is cleared or misses some results, so the next lookup sends
+     * everything again.
+     * <p/>
+     * THREAD-SAFE
+     */
+    public static class Baseline {
+        private String key;
+        private final Map<PullRequestScope, Map<Integer, String>> fingerprints = new HashMap<PullRequestScope, Map<Integer, String>>();
+
+        public synchronized void clear() {
+            key = null;
+            fingerprints.clear();
+        }
+
+        private synchronized Map<Integer, String> get(final String key, final PullRequestScope scope) {
+            return key.equals(this.key) ? fingerprints.get(scope) : null;
+        }
+
+        private synchronized void commit(final BaselineUpdate update) {
+            if (get(update.key, update.scope) != update.previousFingerprints) {
+                // other results were committed since these were computed, so the view may not match either of them
+                clear();
+                return;
+            }
+            if (!update.key.equals(this.key)) {
+                // a different repository or user, nothing we know applies anymore
+                fingerprints.clear();
+                this.key = update.key;
+            }
+            fingerprints.put(update.scope, update.fingerprints);
+        }
     }
 
     public PullRequestLookupOperation(final String gitRemoteUrl) {
+        this(gitRemoteUrl, null);
+    }
+
+    public PullRequestLookupOperation(final String gitRemoteUrl, final Baseline baseline) {
         assert gitRemoteUrl != null;
         this.gitRemoteUrl = gitRemoteUrl;
+        this.baseline = baseline;
     }
 
     public void doWork(final Inputs inputs) {
@@ -65,7 +192,7 @@ public class PullRequestLookupOperation extends Operation {
                     // Get the authenticated context for the gitRemoteUrl
                     // This should be done on a background thread so as not to block UI or hang the IDE
                     // Get the context before doing the server calls to reduce possibility of using an outdated context with expired credentials
-                    final ServerContext context = ServerContextManager.getInstance().getUpdatedContext(gitRemoteUrl, false);
+                    final ServerContext context = getUpdatedContext(gitRemoteUrl, false);
                     if (context != null) {
                         authenticatedContexts.add(context);
                     }
@@ -108,9 +235,6 @@ public class PullRequestLookupOperation extends Operation {
 
     protected void doLookup(final ServerContext context, final PullRequestScope scope) {
         try {
-            final GitHttpClient gitHttpClient = context.getGitHttpClient();
-            final PullRequestLookupResults results = scope == PullRequestScope.REQUESTED_BY_ME ? requestedByMeResults : assignedToMeResults;
-
             //setup criteria for the query
             final GitPullRequestSearchCriteria criteria = new GitPullRequestSearchCriteria();
             criteria.setRepositoryId(context.getGitRepository().getId());
@@ -123,10 +247,17 @@ public class PullRequestLookupOperation extends Operation {
             }
 
             //query server and add results
-            final List<GitPullRequest> pullRequests = gitHttpClient.getPullRequests(context.getGitRepository().getId(), criteria, 256, 0, 101);
+            // the same query may already be running for another project with this repository open
+            final List<GitPullRequest> pullRequests = SingleFlight.getInstance().execute(
+                    SingleFlight.key("getPullRequests", context.getGitRepository().getId(), context.getUserId(), scope),
+                    new Callable<List<GitPullRequest>>() {
+                        @Override
+                        public List<GitPullRequest> call() {
+                            return getAllPullRequests(context.getGitHttpClient(), context.getGitRepository().getId(), criteria);
+                        }
+                    });
             logger.debug("doLookup: Found {} pull requests {} on repo {}", pullRequests.size(), scope.toString(), context.getGitRepository().getRemoteUrl());
-            results.pullRequests.addAll(pullRequests);
-            super.onLookupResults(results);
+            super.onLookupResults(createResults(context, scope, pullRequests));
 
         } catch (Throwable t) {
             logger.warn("doLookup: failed with an exception", t);
@@ -134,6 +265,140 @@ public class PullRequestLookupOperation extends Operation {
         }
     }
 
+    /**
+     * Reads the pull requests a page at a time. After the first page the next PARALLEL_PAGE_COUNT pages are
+     * requested together until a page comes back short.
+     */
+    protected List<GitPullRequest> getAllPullRequests(final GitHttpClient gitHttpClient, final UUID repositoryId,
+                                                      final GitPullRequestSearchCriteria criteria) {
+        return getAllPullRequests(gitHttpClient, repositoryId, criteria, MAX_COMMENT_LENGTH);
+    }
+
+    /**
+     * Reads the pull requests the same way the lookup does, up to MAX_PULL_REQUEST_COUNT, so others that look at
+     * the pull requests of a repository see the same ones
+     */
+    static List<GitPullRequest> getAllPullRequests(final GitHttpClient gitHttpClient, final UUID repositoryId,
+                                                   final GitPullRequestSearchCriteria criteria, final int maxCommentLength) {
+        // pull requests can move between pages while we read them, so keep each one once
+        final Map<Integer, GitPullRequest> pullRequests = new LinkedHashMap<Integer, GitPullRequest>();
+        final List<GitPullRequest> firstPage = gitHttpClient.getPullRequests(repositoryId, criteria, maxCommentLength, 0, PAGE_SIZE);
+        boolean morePages = addPage(pullRequests, firstPage);
+
+        int skip = PAGE_SIZE;
+        while (morePages && skip < MAX_PULL_REQUEST_COUNT) {
+            final int pageCount = Math.min(PARALLEL_PAGE_COUNT, (MAX_PULL_REQUEST_COUNT - skip + PAGE_SIZE - 1) / PAGE_SIZE);
+            final AtomicReferenceArray<List<GitPullRequest>> pages = new AtomicReferenceArray<List<GitPullRequest>>(pageCount);
+            final List<Future> pageTasks = new ArrayList<Future>(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                final int pageIndex = i;
+                final int pageSkip = skip + i * PAGE_SIZE;
+                pageTasks.add(OperationExecutor.getInstance().submitOperationTask(new Runnable() {
+                    @Override
+                    public void run() {
+                        pages.set(pageIndex, gitHttpClient.getPullRequests(repositoryId, criteria, maxCommentLength, pageSkip, PAGE_SIZE));
+                    }
+                }));
+            }
+            try {
+                OperationExecutor.getInstance().wait(pageTasks);
+            } catch (TeamServicesException e) {
+                // report the error of the page that failed so auth errors are still recognized
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+
+            for (int i = 0; i < pageCount && morePages; i++) {
+                morePages = addPage(pullRequests, pages.get(i));
+            }
+            skip += pageCount * PAGE_SIZE;
+        }
+
+        if (morePages && skip >= MAX_PULL_REQUEST_COUNT) {
+            logger.info("getAllPullRequests: stopped after {} pull requests", pullRequests.size());
+        }
+        return new ArrayList<GitPullRequest>(pullRequests.values());
+    }
+
+    /**
+     * Returns true if the page is full, so there may be another one
+     */
+    private static boolean addPage(final Map<Integer, GitPullRequest> pullRequests, final List<GitPullRequest> page) {
+        if (page == null) {
+            return false;
+        }
+        for (final GitPullRequest pullRequest : page) {
+            if (!pullRequests.containsKey(pullRequest.getPullRequestId())) {
+                pullRequests.put(pullRequest.getPullRequestId(), pullRequest);
+            }
+        }
+        return page.size() >= PAGE_SIZE;
+    }
+
+    private PullRequestLookupResults createResults(final ServerContext context, final PullRequestScope scope,
+                                                   final List<GitPullRequest> pullRequests) {
+        if (baseline == null) {
+            final PullRequestLookupResults results = new PullRequestLookupResults(scope);
+            results.pullRequests.addAll(pullRequests);
+            return results;
+        }
+
+        final List<Integer> ids = new ArrayList<Integer>(pullRequests.size());
+        final Map<Integer, String> fingerprints = new HashMap<Integer, String>(pullRequests.size());
+        for (final GitPullRequest pullRequest : pullRequests) {
+            ids.add(pullRequest.getPullRequestId());
+            fingerprints.put(pullRequest.getPullRequestId(), getFingerprint(pullRequest));
+        }
+
+        final String baselineKey = context.getGitRepository().getId() + "|" + context.getUserId();
+        // the baseline only moves when the view commits the results, an operation that is terminated before its
+        // results are shown leaves it alone
+        final Map<Integer, String> previousFingerprints = baseline.get(baselineKey, scope);
+        final BaselineUpdate baselineUpdate = new BaselineUpdate(baselineKey, scope, previousFingerprints, fingerprints);
+
+        if (previousFingerprints == null) {
+            final PullRequestLookupResults results = new PullRequestLookupResults(scope);
+            results.pullRequests.addAll(pullRequests);
+            results.baselineUpdate = baselineUpdate;
+            return results;
+        }
+
+        final PullRequestLookupResults results = new PullRequestLookupResults(scope, ids);
+        results.baselineUpdate = baselineUpdate;
+        for (final GitPullRequest pullRequest : pullRequests) {
+            final String previous = previousFingerprints.get(pullRequest.getPullRequestId());
+            if (previous == null || !previous.equals(fingerprints.get(pullRequest.getPullRequestId()))) {
+                results.pullRequests.add(pullRequest);
+            }
+        }
+        for (final Integer id : previousFingerprints.keySet()) {
+            if (!fingerprints.containsKey(id)) {
+                results.removedPullRequestIds.add(id);
+            }
+        }
+        logger.debug("createResults: {} pull requests {} changed and {} removed", results.pullRequests.size(), scope, results.removedPullRequestIds.size());
+        return results;
+    }
+
+    /**
+     * Captures what is shown for a pull request: a new push changes the commit and reviews change the votes
+     */
+    protected static String getFingerprint(final GitPullRequest pullRequest) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(pullRequest.getStatus()).append('|')
+                .append(pullRequest.getMergeStatus()).append('|')
+                .append(pullRequest.getTitle()).append('|')
+                .append(pullRequest.getSourceRefName()).append('|')
+                .append(pullRequest.getTargetRefName()).append('|')
+                .append(pullRequest.getLastMergeSourceCommit() != null ? pullRequest.getLastMergeSourceCommit().getCommitId() : "")
+                .append('|');
+        if (pullRequest.getReviewers() != null) {
+            for (final IdentityRefWithVote reviewer : pullRequest.getReviewers()) {
+                sb.append(reviewer.getId()).append(':').append(reviewer.getVote()).append(',');
+            }
+        }
+        return sb.toString();
+    }
+
     @Override
     protected void terminate(final Throwable t) {
         super.terminate(t);
@@ -0,0 +1,479 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.core.webapi.model.TeamProjectCollectionReference;
+import com.microsoft.alm.core.webapi.model.TeamProjectReference;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextBuilder;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers the repositories and team projects found on each account so the checkout and import dialogs can show
+ * them immediately while ServerContextLookupOperation revalidates them against the server.
+ * <p/>
+ * Each account is stored in its own file using a tab separated line format, one line per repository or project.
+ * The cache is disabled until a directory is set.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class ServerContextCatalogCache {
+    private static final Logger logger = LoggerFactory.getLogger(ServerContextCatalogCache.class);
+
+    public static final long DEFAULT_TIME_TO_LIVE_MILLISECONDS = 24L * 60L * 60L * 1000L;
+    static final int MAX_ENTRIES_PER_ACCOUNT = 20000;
+    static final int MAX_ACCOUNTS = 50;
+
+    static final String CATALOG_DIRECTORY = "catalog";
+    static final String FILE_EXTENSION = ".cache";
+    static final String HEADER = "#vsts-catalog";
+    static final String FORMAT_VERSION = "1";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char SEPARATOR = '\t';
+
+    private File directory;
+    private final Map<String, Long> timeToLive = new HashMap<String, Long>();
+
+    private static class Holder {
+        private static final ServerContextCatalogCache INSTANCE = new ServerContextCatalogCache();
+    }
+
+    public static ServerContextCatalogCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected ServerContextCatalogCache() {
+    }
+
+    /**
+     * Enables the cache and stores its files under the given directory
+     */
+    public synchronized void setDirectory(final File parentDirectory) {
+        ArgumentHelper.checkNotNull(parentDirectory, "parentDirectory");
+        final File catalogDirectory = new File(parentDirectory, CATALOG_DIRECTORY);
+        if (!catalogDirectory.exists() && !catalogDirectory.mkdirs()) {
+            logger.warn("setDirectory: unable to create the catalog cache directory {}", catalogDirectory.getPath());
+            return;
+        }
+        directory = catalogDirectory;
+    }
+
+    public synchronized boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Sets how long the cached catalog of an account is considered up to date. An expired catalog is still shown
+     * while it is looked up again, but it is not kept when that lookup fails.
+     */
+    public synchronized void setTimeToLive(final URI accountUri, final long milliseconds) {
+        ArgumentHelper.checkNotNull(accountUri, "accountUri");
+        timeToLive.put(getAccountKey(accountUri), milliseconds);
+    }
+
+    public synchronized long getTimeToLive(final URI accountUri) {
+        final Long milliseconds = timeToLive.get(getAccountKey(accountUri));
+        return milliseconds != null ? milliseconds : DEFAULT_TIME_TO_LIVE_MILLISECONDS;
+    }
+
+    /**
+     * Returns the cached entries of the account, or an empty list if there are none.
+     * Expired entries are returned too, the caller revalidates them anyway.
+     */
+    public synchronized List<CatalogEntry> load(final ServerContext account, final ServerContextLookupOperation.ContextScope scope) {
+        final File file = getFile(account, scope);
+        if (file == null || !file.exists()) {
+            return Collections.emptyList();
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            final long savedAt = readSavedAt(reader, getKey(account, scope));
+            if (savedAt < 0) {
+                logger.info("load: discarding catalog cache file {} with an unknown header", file.getName());
+                reader.close();
+                reader = null;
+                delete(file);
+                return Collections.emptyList();
+            }
+
+            if (System.currentTimeMillis() - savedAt > getTimeToLive(account.getUri())) {
+                logger.info("load: the cached catalog for {} has expired, showing it while it is looked up again", account.getUri());
+            }
+
+            final List<CatalogEntry> entries = new ArrayList<CatalogEntry>();
+            String line;
+            while ((line = reader.readLine()) != null && entries.size() < MAX_ENTRIES_PER_ACCOUNT) {
+                final CatalogEntry entry = CatalogEntry.fromLine(line);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        } catch (Throwable t) {
+            logger.warn("load: unable to read the catalog cache file " + file.getName(), t);
+            return Collections.emptyList();
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Returns true if there is a cached catalog for the account and it is older than its time to live
+     */
+    public synchronized boolean isExpired(final ServerContext account, final ServerContextLookupOperation.ContextScope scope) {
+        final File file = getFile(account, scope);
+        if (file == null || !file.exists()) {
+            return false;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            final long savedAt = readSavedAt(reader, getKey(account, scope));
+            return savedAt >= 0 && System.currentTimeMillis() - savedAt > getTimeToLive(account.getUri());
+        } catch (Throwable t) {
+            logger.warn("isExpired: unable to read the catalog cache file " + file.getName(), t);
+            return false;
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Reads the header line and returns when the catalog was saved, or -1 if the header isn't one this cache wrote
+     */
+    private static long readSavedAt(final BufferedReader reader, final String key) throws IOException {
+        final String[] header = split(reader.readLine());
+        if (header.length != 4 || !HEADER.equals(header[0]) || !FORMAT_VERSION.equals(header[1]) || !key.equals(header[3])) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header[2]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Replaces the cached entries of the account
+     */
+    public synchronized void save(final ServerContext account, final ServerContextLookupOperation.ContextScope scope, final List<CatalogEntry> entries) {
+        final File file = getFile(account, scope);
+        if (file == null) {
+            return;
+        }
+
+        final File tempFile = new File(file.getPath() + ".tmp");
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), UTF8));
+            writer.write(join(HEADER, FORMAT_VERSION, Long.toString(System.currentTimeMillis()), getKey(account, scope)));
+            writer.newLine();
+
+            final int count = Math.min(entries.size(), MAX_ENTRIES_PER_ACCOUNT);
+            for (int i = 0; i < count; i++) {
+                writer.write(entries.get(i).toLine());
+                writer.newLine();
+            }
+            writer.close();
+            writer = null;
+
+            // renameTo won't replace an existing file on every platform
+            delete(file);
+            if (!tempFile.renameTo(file)) {
+                logger.warn("save: unable to replace the catalog cache file {}", file.getName());
+                delete(tempFile);
+            }
+        } catch (Throwable t) {
+            logger.warn("save: unable to write the catalog cache file " + file.getName(), t);
+            close(writer);
+            writer = null;
+            delete(tempFile);
+        } finally {
+            close(writer);
+        }
+
+        trim();
+    }
+
+    /**
+     * Forgets the cached entries of the account
+     */
+    public synchronized void remove(final ServerContext account, final ServerContextLookupOperation.ContextScope scope) {
+        final File file = getFile(account, scope);
+        if (file != null) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Deletes the least recently saved files once there are too many accounts
+     */
+    private void trim() {
+        final File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().endsWith(FILE_EXTENSION);
+            }
+        });
+        if (files == null || files.length <= MAX_ACCOUNTS) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File f1, final File f2) {
+                final long diff = f1.lastModified() - f2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_ACCOUNTS; i++) {
+            delete(files[i]);
+        }
+    }
+
+    private File getFile(final ServerContext account, final ServerContextLookupOperation.ContextScope scope) {
+        if (directory == null) {
+            return null;
+        }
+        return new File(directory, hash(getKey(account, scope)) + FILE_EXTENSION);
+    }
+
+    /**
+     * The catalog depends on the account, the user looking at it and the kind of entries
+     */
+    static String getKey(final ServerContext account, final ServerContextLookupOperation.ContextScope scope) {
+        ArgumentHelper.checkNotNull(account, "account");
+        ArgumentHelper.checkNotNull(scope, "scope");
+        final String userName = account.getAuthenticationInfo() != null ? account.getAuthenticationInfo().getUserName() : null;
+        return getAccountKey(account.getUri()) + "|" + StringUtils.defaultString(userName) + "|" + scope.name();
+    }
+
+    private static String getAccountKey(final URI accountUri) {
+        return StringUtils.lowerCase(accountUri.toString());
+    }
+
+    private static String hash(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF8));
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE has SHA-1, but fall back to something stable anyway
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void delete(final File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("delete: unable to delete {}", file.getPath());
+        }
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // eat it
+            }
+        }
+    }
+
+    static String join(final String... values) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(SEPARATOR);
+            }
+            escape(sb, values[i]);
+        }
+        return sb.toString();
+    }
+
+    static String[] split(final String line) {
+        if (line == null) {
+            return new String[0];
+        }
+
+        final List<String> values = new ArrayList<String>(10);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == SEPARATOR) {
+                values.add(sb.toString());
+                sb.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                final char next = line.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        values.add(sb.toString());
+        return values.toArray(new String[values.size()]);
+    }
+
+    private static void escape(final StringBuilder sb, final String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * One cached repository or team project. Entries are equal when everything shown about them is equal.
+     */
+    public static class CatalogEntry {
+        private static final String REPOSITORY = "R";
+        private static final String PROJECT = "P";
+
+        private final String line;
+        private final String[] values;
+
+        private CatalogEntry(final String line, final String[] values) {
+            this.line = line;
+            this.values = values;
+        }
+
+        public static CatalogEntry fromContext(final ServerContext context) {
+            ArgumentHelper.checkNotNull(context, "context");
+            final TeamProjectCollectionReference collection = context.getTeamProjectCollectionReference();
+            final TeamProjectReference project = context.getTeamProjectReference();
+            final GitRepository repository = context.getGitRepository();
+
+            final String[] values;
+            if (repository != null) {
+                values = new String[]{REPOSITORY,
+                        collection != null ? toString(collection.getId()) : null, collection != null ? collection.getName() : null,
+                        project != null ? toString(project.getId()) : null, project != null ? project.getName() : null,
+                        toString(repository.getId()), repository.getName(), repository.getRemoteUrl(), repository.getUrl()};
+            } else {
+                values = new String[]{PROJECT,
+                        collection != null ? toString(collection.getId()) : null, collection != null ? collection.getName() : null,
+                        project != null ? toString(project.getId()) : null, project != null ? project.getName() : null,
+                        project != null ? project.getUrl() : null};
+            }
+            return new CatalogEntry(join(values), values);
+        }
+
+        public static CatalogEntry fromLine(final String line) {
+            final String[] values = split(line);
+            if ((REPOSITORY.equals(values[0]) && values.length == 9) || (PROJECT.equals(values[0]) && values.length == 6)) {
+                return new CatalogEntry(line, values);
+            }
+            return null;
+        }
+
+        public String toLine() {
+            return line;
+        }
+
+        /**
+         * Builds the context this entry stands for on the given account. The context only has the fields the cache
+         * keeps, the lookup replaces it with the context from the server once that arrives.
+         */
+        public ServerContext toContext(final ServerContext account) {
+            // nulls are written as empty strings, so read them back as null. The remote url is never empty,
+            // the lookup only finds repositories that have one
+            final TeamProjectCollectionReference collection = new TeamProjectCollectionReference();
+            collection.setId(toUUID(values[1]));
+            collection.setName(StringUtils.defaultIfEmpty(values[2], null));
+
+            final TeamProjectReference project = new TeamProjectReference();
+            project.setId(toUUID(values[3]));
+            project.setName(StringUtils.defaultIfEmpty(values[4], null));
+
+            if (PROJECT.equals(values[0])) {
+                project.setUrl(StringUtils.defaultIfEmpty(values[5], null));
+                return new ServerContextBuilder(account).teamProject(project).collection(collection).build();
+            }
+
+            final GitRepository repository = new GitRepository();
+            repository.setId(toUUID(values[5]));
+            repository.setName(StringUtils.defaultIfEmpty(values[6], null));
+            repository.setRemoteUrl(values[7]);
+            repository.setUrl(StringUtils.defaultIfEmpty(values[8], null));
+            repository.setProjectReference(project);
+            return new ServerContextBuilder(account)
+                    .uri(repository.getRemoteUrl())
+                    .repository(repository)
+                    .teamProject(project)
+                    .collection(collection)
+                    .build();
+        }
+
+        private static String toString(final UUID id) {
+            return id != null ? id.toString() : null;
+        }
+
+        private static UUID toUUID(final String id) {
+            return StringUtils.isEmpty(id) ? null : UUID.fromString(id);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof CatalogEntry && line.equals(((CatalogEntry) obj).line);
+        }
+
+        @Override
+        public int hashCode() {
+            return line.hashCode();
+        }
+    }
+}
@@ -22,25 +22,112 @@ import org.slf4j.LoggerFactory;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServerContextLookupOperation extends Operation {
     private static final Logger logger = LoggerFactory.getLogger(ServerContextLookupOperation.class);
 
     public enum ContextScope {REPOSITORY, PROJECT}
 
+    // overall time allowed for all accounts to answer
+    private static final long LOOKUP_TIMEOUT_SECONDS = 120L;
+    // number of collections of one account that are looked up at the same time
+    protected static final int MAX_PARALLEL_COLLECTION_LOOKUPS = 4;
+    // results are handed to listeners in batches of this size so the first rows show up quickly
+    protected static final int RESULT_BATCH_SIZE = 50;
+
     private final List<ServerContext> contextList;
     private final ContextScope resultScope;
+    private final ConcurrentMap<URI, AccountProgress> progress = new ConcurrentHashMap<URI, AccountProgress>();
+    private final ConcurrentMap<URI, AccountCatalog> catalogs = new ConcurrentHashMap<URI, AccountCatalog>();
 
     public class ServerContextLookupResults extends ResultsImpl {
         private final List<ServerContext> serverContexts = new ArrayList<ServerContext>();
+        private final List<ServerContext> removedServerContexts = new ArrayList<ServerContext>();
+        private final Map<ServerContext, ServerContext> replacedServerContexts = new LinkedHashMap<ServerContext, ServerContext>();
+        private AccountProgress accountProgress;
 
         public List<ServerContext> getServerContexts() {
             return Collections.unmodifiableList(serverContexts);
         }
 
+        /**
+         * Returns the contexts that were sent earlier from the catalog cache but no longer exist on the server
+         */
+        public List<ServerContext> getRemovedServerContexts() {
+            return Collections.unmodifiableList(removedServerContexts);
+        }
+
+        /**
+         * Returns the contexts that were sent earlier from the catalog cache, mapped to the context the server
+         * returned for them. The cached contexts only have the fields the cache keeps, so listeners should swap them.
+         */
+        public Map<ServerContext, ServerContext> getReplacedServerContexts() {
+            return Collections.unmodifiableMap(replacedServerContexts);
+        }
+
+        /**
+         * Returns the progress of the account these results came from, or null if unknown
+         */
+        public AccountProgress getAccountProgress() {
+            return accountProgress;
+        }
+    }
+
+    /**
+     * Tracks how far the lookup of one account has gotten
+     */
+    public static class AccountProgress {
+        private final URI accountUri;
+        private final AtomicInteger totalCollections = new AtomicInteger();
+        private final AtomicInteger completedCollections = new AtomicInteger();
+        private final AtomicInteger contextsFound = new AtomicInteger();
+
+        public AccountProgress(final URI accountUri) {
+            this.accountUri = accountUri;
+        }
+
+        public URI getAccountUri() {
+            return accountUri;
+        }
+
+        public int getTotalCollections() {
+            return totalCollections.get();
+        }
+
+        public int getCompletedCollections() {
+            return completedCollections.get();
+        }
+
+        public int getContextsFound() {
+            return contextsFound.get();
+        }
+    }
+
+    /**
+     * The cached catalog of one account and what the live lookup has found so far
+     */
+    private static class AccountCatalog {
+        private final Map<ServerContextCatalogCache.CatalogEntry, ServerContext> cached;
+        private final Set<ServerContextCatalogCache.CatalogEntry> found =
+                Collections.synchronizedSet(new LinkedHashSet<ServerContextCatalogCache.CatalogEntry>());
+
+        private AccountCatalog(final Map<ServerContextCatalogCache.CatalogEntry, ServerContext> cached) {
+            this.cached = cached;
+        }
     }
 
     public ServerContextLookupOperation(final List<ServerContext> contextList, final ContextScope resultScope) {
@@ -70,12 +157,18 @@ public class ServerContextLookupOperation extends Operation {
                         }
 
                         try {
+                            // register the account so progress is reported even before its collections are known
+                            getAccountProgress(context);
+                            // show what we found last time while the server is asked again
+                            sendCachedResults(context);
                             if (context.getType() == ServerContext.Type.TFS) {
                                 doSoapCollectionLookup(context);
                             } else { // VSO_DEPLOYMENT || VSO
                                 doRestCollectionLookup(context);
                             }
+                            updateCatalog(context);
                         } catch (Throwable t) {
+                            forgetExpiredCatalog(context);
                             operationExceptions.add(t);
                             logger.error("doWork: Unable to do lookup on context: " + context.getUri().toString());
                             logger.warn("doWork: Exception", t);
@@ -93,8 +186,14 @@ public class ServerContextLookupOperation extends Operation {
                 }));
             }
 
-            // wait for all tasks to complete
-            OperationExecutor.getInstance().wait(tasks);
+            // wait for all tasks to complete against one overall deadline, so a dead server doesn't hold up the rest
+            final OperationExecutor.WaitResults waitResults = OperationExecutor.getInstance().waitAll(tasks,
+                    LOOKUP_TIMEOUT_SECONDS, TimeUnit.SECONDS, OperationExecutor.WaitMode.COLLECT_ALL);
+            if (waitResults.isTimedOut() || waitResults.isInterrupted()) {
+                logger.warn("doWork: {} of {} lookups did not finish in time", waitResults.getCount(OperationExecutor.TaskOutcome.Status.TIMED_OUT), tasks.size());
+                waitResults.cancelUnfinished();
+                operationExceptions.add(waitResults.getFirstError());
+            }
 
             if (operationExceptions.size() > 0) {
                 terminate(new TeamServicesException(TeamServicesException.KEY_OPERATION_ERRORS));
@@ -117,6 +216,99 @@ public class ServerContextLookupOperation extends Operation {
         onLookupCompleted();
     }
 
+    /**
+     * Returns the progress of each account being looked up
+     */
+    public List<AccountProgress> getProgress() {
+        return new ArrayList<AccountProgress>(progress.values());
+    }
+
+    /**
+     * The catalog cache is a singleton, this method allows tests to provide their own
+     */
+    protected ServerContextCatalogCache getCatalogCache() {
+        return ServerContextCatalogCache.getInstance();
+    }
+
+    private void sendCachedResults(final ServerContext context) {
+        final ServerContextCatalogCache cache = getCatalogCache();
+        if (!cache.isEnabled()) {
+            return;
+        }
+
+        final List<ServerContextCatalogCache.CatalogEntry> entries = cache.load(context, resultScope);
+        final Map<ServerContextCatalogCache.CatalogEntry, ServerContext> cached = new HashMap<ServerContextCatalogCache.CatalogEntry, ServerContext>(entries.size() * 2);
+        final List<ServerContext> cachedContexts = new ArrayList<ServerContext>(entries.size());
+        for (final ServerContextCatalogCache.CatalogEntry entry : entries) {
+            if (!cached.containsKey(entry)) {
+                final ServerContext cachedContext = entry.toContext(context);
+                cached.put(entry, cachedContext);
+                cachedContexts.add(cachedContext);
+            }
+        }
+        logger.debug("sendCachedResults: {} cached contexts found for {}", cachedContexts.size(), context.getUri());
+
+        catalogs.put(context.getUri(), new AccountCatalog(cached));
+        for (int start = 0; start < cachedContexts.size(); start += RESULT_BATCH_SIZE) {
+            final ServerContextLookupResults results = new ServerContextLookupResults();
+            results.serverContexts.addAll(cachedContexts.subList(start, Math.min(start + RESULT_BATCH_SIZE, cachedContexts.size())));
+            results.accountProgress = getAccountProgress(context);
+            super.onLookupResults(results);
+        }
+    }
+
+    /**
+     * Removes the cached contexts the server no longer knows about and saves what was found for next time
+     */
+    private void updateCatalog(final ServerContext context) {
+        final AccountCatalog catalog = catalogs.remove(context.getUri());
+        if (catalog == null || isCancelled()) {
+            return;
+        }
+
+        final List<ServerContextCatalogCache.CatalogEntry> found;
+        synchronized (catalog.found) {
+            found = new ArrayList<ServerContextCatalogCache.CatalogEntry>(catalog.found);
+        }
+
+        final ServerContextLookupResults results = new ServerContextLookupResults();
+        for (final Map.Entry<ServerContextCatalogCache.CatalogEntry, ServerContext> entry : catalog.cached.entrySet()) {
+            if (!catalog.found.contains(entry.getKey())) {
+                results.removedServerContexts.add(entry.getValue());
+            }
+        }
+        if (!results.removedServerContexts.isEmpty()) {
+            results.accountProgress = getAccountProgress(context);
+            super.onLookupResults(results);
+        }
+
+        getCatalogCache().save(context, resultScope, found);
+    }
+
+    /**
+     * An expired catalog is only shown while it is looked up again, so it isn't kept when that lookup fails
+     */
+    private void forgetExpiredCatalog(final ServerContext context) {
+        catalogs.remove(context.getUri());
+        final ServerContextCatalogCache cache = getCatalogCache();
+        if (cache.isEnabled() && cache.isExpired(context, resultScope)) {
+            logger.info("forgetExpiredCatalog: removing the expired catalog of {}", context.getUri());
+            cache.remove(context, resultScope);
+        }
+    }
+
+    private AccountProgress getAccountProgress(final ServerContext context) {
+        final URI accountUri = context.getUri();
+        final AccountProgress accountProgress = progress.get(accountUri);
+        if (accountProgress != null) {
+            return accountProgress;
+        }
+
+        final AccountProgress newProgress = new AccountProgress(accountUri);
+        final AccountProgress existingProgress = progress.putIfAbsent(accountUri, newProgress);
+        return existingProgress != null ? existingProgress : newProgress;
+    }
+
     @Override
     protected void terminate(final Throwable throwable) {
         super.terminate(throwable);
@@ -143,27 +335,71 @@ public class ServerContextLookupOperation extends Operation {
     }
 
     protected void doLookup(final ServerContext context, final List<TeamProjectCollectionReference> collections) {
-        for (final TeamProjectCollectionReference teamProjectCollectionReference : collections) {
-            if (isCancelled()) {
-                logger.debug("doLookup: Lookup on collection {} on server {} was cancelled.", teamProjectCollectionReference.getName(), context.getUri().toString());
-                return;
+        getAccountProgress(context).totalCollections.addAndGet(collections.size());
+
+        // look up the collections of this account in parallel, but only a few at a time so one account doesn't hog the pool
+        final Queue<TeamProjectCollectionReference> pending = new ConcurrentLinkedQueue<TeamProjectCollectionReference>(collections);
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                TeamProjectCollectionReference collection;
+                while (!isCancelled() && (collection = pending.poll()) != null) {
+                    doCollectionLookup(context, collection);
+                }
             }
+        };
 
-            final URI collectionURI = UrlHelper.getCollectionURI(context.getUri(), teamProjectCollectionReference.getName());
-
-            if (resultScope == ContextScope.PROJECT) {
-                final CoreHttpClient client = new CoreHttpClient(context.getClient(), collectionURI);
-                final List<TeamProjectReference> projects = client.getProjects();
+        final int workerCount = Math.min(collections.size(), MAX_PARALLEL_COLLECTION_LOOKUPS) - 1;
+        final List<Future> workers = new ArrayList<Future>(Math.max(workerCount, 0));
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(OperationExecutor.getInstance().submitOperationTask(worker));
+        }
 
-                addTeamProjectResults(projects, context, teamProjectCollectionReference);
-            } else {
-                final GitHttpClient gitClient = new GitHttpClient(context.getClient(), collectionURI);
-                final List<GitRepository> gitRepositories = gitClient.getRepositories();
+        // the current thread takes its share of the collections too
+        boolean ranOwnShare = false;
+        try {
+            worker.run();
+            ranOwnShare = true;
+        } finally {
+            if (!ranOwnShare && !workers.isEmpty()) {
+                // this lookup is failing, so don't leave the other workers looking up collections nobody waits for
+                pending.clear();
+                OperationExecutor.getInstance().waitAll(workers, 0L, TimeUnit.MILLISECONDS,
+                        OperationExecutor.WaitMode.COLLECT_ALL).cancelUnfinished();
+            }
+        }
 
-                logger.debug("doLookup: found {} Git repositories in collection: {} on server: {}.", gitRepositories.size(), teamProjectCollectionReference.getName(), context.getUri().toString());
-                addRepositoryResults(gitRepositories, context, teamProjectCollectionReference);
+        if (!workers.isEmpty()) {
+            final OperationExecutor.WaitResults waitResults = OperationExecutor.getInstance().waitAll(workers,
+                    LOOKUP_TIMEOUT_SECONDS, TimeUnit.SECONDS, OperationExecutor.WaitMode.FAIL_FAST);
+            if (waitResults.hasErrors()) {
+                waitResults.cancelUnfinished();
+                throw new TeamServicesException(TeamServicesException.KEY_OPERATION_ERRORS, waitResults.getFirstError());
             }
         }
+
+        if (isCancelled()) {
+            logger.debug("doLookup: Lookup on server {} was cancelled.", context.getUri().toString());
+        }
+    }
+
+    protected void doCollectionLookup(final ServerContext context, final TeamProjectCollectionReference teamProjectCollectionReference) {
+        final URI collectionURI = UrlHelper.getCollectionURI(context.getUri(), teamProjectCollectionReference.getName());
+
+        if (resultScope == ContextScope.PROJECT) {
+            final CoreHttpClient client = new CoreHttpClient(context.getClient(), collectionURI);
+            final List<TeamProjectReference> projects = client.getProjects();
+
+            addTeamProjectResults(projects, context, teamProjectCollectionReference);
+        } else {
+            final GitHttpClient gitClient = new GitHttpClient(context.getClient(), collectionURI);
+            final List<GitRepository> gitRepositories = gitClient.getRepositories();
+
+            logger.debug("doCollectionLookup: found {} Git repositories in collection: {} on server: {}.", gitRepositories.size(), teamProjectCollectionReference.getName(), context.getUri().toString());
+            addRepositoryResults(gitRepositories, context, teamProjectCollectionReference);
+        }
+
+        getAccountProgress(context).completedCollections.incrementAndGet();
     }
 
     protected void addTeamProjectResults(final List<TeamProjectReference> projects, final ServerContext context, final TeamProjectCollectionReference teamProjectCollectionReference) {
@@ -175,9 +411,7 @@ public class ServerContextLookupOperation extends Operation {
             serverContexts.add(projectServerContext);
         }
 
-        final ServerContextLookupResults results = new ServerContextLookupResults();
-        results.serverContexts.addAll(serverContexts);
-        super.onLookupResults(results);
+        sendResults(context, serverContexts);
     }
 
     protected void addRepositoryResults(final List<GitRepository> gitRepositories, final ServerContext context, final TeamProjectCollectionReference teamProjectCollectionReference) {
@@ -192,11 +426,68 @@ public class ServerContextLookupOperation extends Operation {
             serverContexts.add(gitServerContext);
         }
 
-        final ServerContextLookupResults results = new ServerContextLookupResults();
-        results.serverContexts.addAll(serverContexts);
-
         logger.debug("addRepositoryResults: {} contexts were added to lookup results for {} Git repositories found on the server: {} with resultScope = {}.",
                 serverContexts.size(), gitRepositories.size(), context.getUri().toString(), resultScope.toString());
-        super.onLookupResults(results);
+        sendResults(context, serverContexts);
+    }
+
+    private void sendResults(final ServerContext context, final List<ServerContext> foundContexts) {
+        final AccountProgress accountProgress = getAccountProgress(context);
+        final Map<ServerContext, ServerContext> replacedContexts = new LinkedHashMap<ServerContext, ServerContext>();
+        final List<ServerContext> serverContexts = filterCachedContexts(context, foundContexts, replacedContexts);
+        accountProgress.contextsFound.addAndGet(replacedContexts.size());
+
+        for (int start = 0; start < serverContexts.size(); start += RESULT_BATCH_SIZE) {
+            if (isCancelled()) {
+                return;
+            }
+
+            final List<ServerContext> batch = serverContexts.subList(start, Math.min(start + RESULT_BATCH_SIZE, serverContexts.size()));
+            accountProgress.contextsFound.addAndGet(batch.size());
+
+            final ServerContextLookupResults results = new ServerContextLookupResults();
+            results.serverContexts.addAll(batch);
+            results.accountProgress = accountProgress;
+            super.onLookupResults(results);
+        }
+
+        final List<Map.Entry<ServerContext, ServerContext>> replacements = new ArrayList<Map.Entry<ServerContext, ServerContext>>(replacedContexts.entrySet());
+        for (int start = 0; start < replacements.size(); start += RESULT_BATCH_SIZE) {
+            if (isCancelled()) {
+                return;
+            }
+
+            final ServerContextLookupResults results = new ServerContextLookupResults();
+            for (final Map.Entry<ServerContext, ServerContext> replacement : replacements.subList(start, Math.min(start + RESULT_BATCH_SIZE, replacements.size()))) {
+                results.replacedServerContexts.put(replacement.getKey(), replacement.getValue());
+            }
+            results.accountProgress = accountProgress;
+            super.onLookupResults(results);
+        }
+    }
+
+    /**
+     * Records the contexts in the account's catalog and returns the ones the listeners haven't seen yet.
+     * The ones that were sent from the cache are added to replacedContexts, mapped from the cached context.
+     */
+    private List<ServerContext> filterCachedContexts(final ServerContext context, final List<ServerContext> serverContexts,
+                                                     final Map<ServerContext, ServerContext> replacedContexts) {
+        final AccountCatalog catalog = catalogs.get(context.getUri());
+        if (catalog == null) {
+            return serverContexts;
+        }
+
+        final List<ServerContext> newContexts = new ArrayList<ServerContext>(serverContexts.size());
+        for (final ServerContext serverContext : serverContexts) {
+            final ServerContextCatalogCache.CatalogEntry entry = ServerContextCatalogCache.CatalogEntry.fromContext(serverContext);
+            final boolean firstFound = catalog.found.add(entry);
+            final ServerContext cachedContext = catalog.cached.get(entry);
+            if (cachedContext == null) {
+                newContexts.add(serverContext);
+            } else if (firstFound) {
+                replacedContexts.put(cachedContext, serverContext);
+            }
+        }
+        return newContexts;
     }
 }
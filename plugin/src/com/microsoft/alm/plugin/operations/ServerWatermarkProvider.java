@@ -0,0 +1,207 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.build.webapi.model.Build;
+import com.microsoft.alm.build.webapi.model.BuildQueryOrder;
+import com.microsoft.alm.build.webapi.model.BuildStatus;
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.events.ServerChangeDetector;
+import com.microsoft.alm.plugin.events.ServerEvent;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequest;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequestSearchCriteria;
+import com.microsoft.alm.sourcecontrol.webapi.model.IdentityRefWithVote;
+import com.microsoft.alm.sourcecontrol.webapi.model.PullRequestStatus;
+import com.microsoft.alm.workitemtracking.webapi.models.Wiql;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItemQueryResult;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItemReference;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the watermarks used to detect server changes. Each one is a small query:
+ * the latest completed build of the team project, the active pull requests of the repository (read in the same
+ * pages and up to the same count as the pull request lookup),
+ * and the order of the work items of the query shown for the repository (the work items assigned to the user
+ * unless another query was set) along with the revision of the most recently changed one.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class ServerWatermarkProvider implements ServerChangeDetector.WatermarkProvider {
+    private static final String WORK_ITEM_WATERMARK_QUERY = "select system.id from workitems " +
+            "where system.assignedto = @me and system.teamproject = @project";
+    private static final String WORK_ITEM_WATERMARK_ORDER = " order by system.changeddate desc, system.id desc";
+    // saved queries may break the line or use tabs anywhere in the ORDER BY clause
+    private static final Pattern ORDER_BY = Pattern.compile("\\s+order\\s+by\\s+", Pattern.CASE_INSENSITIVE);
+    private static final String FIELD_ID = "System.Id";
+
+    // the work item queries shown by repository, by the key of the repository's git remote url
+    private final ConcurrentMap<String, String> workItemQueries = new ConcurrentHashMap<String, String>();
+
+    private static class Holder {
+        private static final ServerWatermarkProvider INSTANCE = new ServerWatermarkProvider();
+    }
+
+    public static ServerWatermarkProvider getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected ServerWatermarkProvider() {
+    }
+
+    /**
+     * Sets the work item query shown for the repository, so polling looks for changes to its results.
+     * A null query goes back to the work items assigned to the user.
+     */
+    public void setWorkItemQuery(final String gitRemoteUrl, final String query) {
+        ArgumentHelper.checkNotEmptyString(gitRemoteUrl);
+        final String key = ServerContext.getKey(gitRemoteUrl);
+        if (StringUtils.isEmpty(query)) {
+            workItemQueries.remove(key);
+        } else {
+            workItemQueries.put(key, getWorkItemWatermarkQuery(query));
+        }
+    }
+
+    @Override
+    public String getScope(final ServerEvent event, final ServerContext context) {
+        if (context == null || context.getGitRepository() == null || context.getGitRepository().getId() == null ||
+                context.getTeamProjectReference() == null || context.getTeamProjectReference().getId() == null ||
+                context.getUserId() == null) {
+            // we only check repositories we already have a complete context for
+            return null;
+        }
+
+        switch (event) {
+            case BUILDS_CHANGED:
+                // builds can only be queried for the whole team project
+                return context.getTeamProjectReference().getId().toString();
+            case PULL_REQUESTS_CHANGED:
+                return context.getGitRepository().getId().toString();
+            case WORK_ITEMS_CHANGED:
+                // repositories showing the same query in the same team project share the watermark
+                return context.getTeamProjectReference().getId() + "|" + context.getUserId() + "|" + getWorkItemQuery(context);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String getWatermark(final ServerEvent event, final ServerContext context) {
+        switch (event) {
+            case BUILDS_CHANGED:
+                return getBuildWatermark(context);
+            case PULL_REQUESTS_CHANGED:
+                return getPullRequestWatermark(context);
+            case WORK_ITEMS_CHANGED:
+                return getWorkItemWatermark(context);
+            default:
+                return null;
+        }
+    }
+
+    private String getBuildWatermark(final ServerContext context) {
+        final List<Build> builds = context.getBuildHttpClient().getBuilds(context.getTeamProjectReference().getId(),
+                null, null, null, null, null, null, null, BuildStatus.COMPLETED, null, null, null, null, 1, null, null, null,
+                BuildQueryOrder.FINISH_TIME_DESCENDING);
+        if (builds == null || builds.isEmpty()) {
+            return "";
+        }
+
+        final Build build = builds.get(0);
+        return build.getId() + ":" + (build.getFinishTime() != null ? build.getFinishTime().getTime() : 0);
+    }
+
+    private String getPullRequestWatermark(final ServerContext context) {
+        final GitPullRequestSearchCriteria criteria = new GitPullRequestSearchCriteria();
+        criteria.setRepositoryId(context.getGitRepository().getId());
+        criteria.setStatus(PullRequestStatus.ACTIVE);
+        criteria.setIncludeLinks(false);
+        // read the same pages the lookup does, so a change to any pull request it shows moves the watermark
+        final List<GitPullRequest> pullRequests = PullRequestLookupOperation.getAllPullRequests(
+                context.getGitHttpClient(), context.getGitRepository().getId(), criteria, 0);
+        if (pullRequests.isEmpty()) {
+            return "";
+        }
+
+        // new and closed pull requests change the ids, new pushes change the commit and reviews change the votes
+        Collections.sort(pullRequests, new Comparator<GitPullRequest>() {
+            @Override
+            public int compare(final GitPullRequest pr1, final GitPullRequest pr2) {
+                final int id1 = pr1.getPullRequestId();
+                final int id2 = pr2.getPullRequestId();
+                return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+        });
+        final StringBuilder sb = new StringBuilder();
+        for (final GitPullRequest pullRequest : pullRequests) {
+            int votes = 0;
+            if (pullRequest.getReviewers() != null) {
+                for (final IdentityRefWithVote reviewer : pullRequest.getReviewers()) {
+                    votes = votes * 31 + reviewer.getVote();
+                }
+            }
+            sb.append(pullRequest.getPullRequestId()).append(':')
+                    .append(pullRequest.getLastMergeSourceCommit() != null ? pullRequest.getLastMergeSourceCommit().getCommitId() : "")
+                    .append(':').append(votes).append(';');
+        }
+        return sb.toString();
+    }
+
+    private String getWorkItemWatermark(final ServerContext context) {
+        final Wiql wiql = new Wiql();
+        wiql.setQuery(getWorkItemQuery(context));
+        final WorkItemQueryResult result = context.getWitHttpClient().queryByWiql(wiql, context.getTeamProjectReference().getId());
+        final List<WorkItemReference> itemRefs = result != null ? result.getWorkItems() : null;
+        if (itemRefs == null || itemRefs.isEmpty()) {
+            return "";
+        }
+
+        // Changing a work item moves it to the top, so the order tells us about everything but edits to the top item
+        final StringBuilder sb = new StringBuilder();
+        final int count = Math.min(itemRefs.size(), WorkItemLookupOperation.MAX_WORK_ITEM_COUNT);
+        for (int i = 0; i < count; i++) {
+            sb.append(itemRefs.get(i).getId()).append(',');
+        }
+
+        final WorkItemLookupOperation.IDList ids = new WorkItemLookupOperation.IDList(1);
+        ids.add(itemRefs.get(0).getId());
+        final WorkItemLookupOperation.FieldList fields = new WorkItemLookupOperation.FieldList();
+        fields.add(FIELD_ID);
+        final List<WorkItem> items = context.getWitHttpClient().getWorkItems(ids, fields, null, null);
+        if (items != null && !items.isEmpty()) {
+            sb.append(':').append(items.get(0).getRev());
+        }
+        return count + ":" + sb.toString().hashCode();
+    }
+
+    private String getWorkItemQuery(final ServerContext context) {
+        final String query = context.getUri() != null ? workItemQueries.get(context.getKey()) : null;
+        return query != null ? query : WORK_ITEM_WATERMARK_QUERY + WORK_ITEM_WATERMARK_ORDER;
+    }
+
+    /**
+     * Orders the results of the query by change date, so that changing any of its work items changes the watermark
+     */
+    static String getWorkItemWatermarkQuery(final String query) {
+        int orderIndex = -1;
+        final Matcher matcher = ORDER_BY.matcher(query);
+        while (matcher.find()) {
+            orderIndex = matcher.start();
+        }
+        return (orderIndex >= 0 ? query.substring(0, orderIndex) : query) + WORK_ITEM_WATERMARK_ORDER;
+    }
+}
@@ -0,0 +1,143 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.exceptions.TeamServicesException;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes sure that identical requests that are in flight at the same time only go to the server once.
+ * The first caller for a key does the work on its own thread; anyone asking for the same key before it finishes
+ * waits for and shares that result (or exception). Nothing is cached once the call completes.
+ * <p/>
+ * Results are shared between callers, so they must not be modified.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class SingleFlight {
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<String, Flight>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private static class Holder {
+        private static final SingleFlight INSTANCE = new SingleFlight();
+    }
+
+    public static SingleFlight getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected SingleFlight() {
+    }
+
+    /**
+     * Builds a key from the resource being requested and every parameter that affects its result.
+     * Keys are not case sensitive since urls and names on the server aren't either.
+     */
+    public static String key(final String resource, final Object... parameters) {
+        ArgumentHelper.checkNotEmptyString(resource);
+        final StringBuilder sb = new StringBuilder(resource);
+        for (final Object parameter : parameters) {
+            sb.append('|').append(parameter);
+        }
+        return StringUtils.lowerCase(sb.toString());
+    }
+
+    /**
+     * Runs the callable unless a call with the same key is already running, in which case its result is returned
+     */
+    public <T> T execute(final String key, final Callable<T> callable) {
+        ArgumentHelper.checkNotEmptyString(key);
+        ArgumentHelper.checkNotNull(callable, "callable");
+        callCount.incrementAndGet();
+
+        final Flight flight = new Flight(callable);
+        final Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            if (existing.owner == Thread.currentThread()) {
+                // The same request was made while computing it; waiting on ourselves would hang
+                logger.warn("execute: recursive call for {}", key);
+                return call(callable);
+            }
+
+            hitCount.incrementAndGet();
+            logger.debug("execute: joining the call in flight for {}", key);
+            return existing.<T>getResult();
+        }
+
+        try {
+            flight.run();
+        } finally {
+            inFlight.remove(key, flight);
+        }
+        return flight.<T>getResult();
+    }
+
+    /**
+     * Returns the number of calls that were answered by a call already in flight
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static <T> T call(final Callable<T> callable) {
+        try {
+            return callable.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TeamServicesException(TeamServicesException.KEY_OPERATION_ERRORS, e);
+        }
+    }
+
+    private static class Flight extends FutureTask<Object> {
+        private final Thread owner = Thread.currentThread();
+
+        @SuppressWarnings("unchecked")
+        private Flight(final Callable<?> callable) {
+            super((Callable<Object>) callable);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T getResult() {
+            try {
+                return (T) get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TeamServicesException(TeamServicesException.KEY_OPERATION_ERRORS, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new TeamServicesException(TeamServicesException.KEY_OPERATION_ERRORS, cause);
+            }
+        }
+    }
+}
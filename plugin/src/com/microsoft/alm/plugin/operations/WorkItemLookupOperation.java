@@ -4,7 +4,7 @@
 package com.microsoft.alm.plugin.operations;
 
 import com.microsoft.alm.plugin.context.ServerContext;
-import com.microsoft.alm.plugin.context.ServerContextManager;
+import com.microsoft.alm.plugin.exceptions.TeamServicesException;
 import com.microsoft.alm.workitemtracking.webapi.WorkItemTrackingHttpClient;
 import com.microsoft.alm.workitemtracking.webapi.models.Wiql;
 import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
@@ -17,10 +17,7 @@ import org.slf4j.LoggerFactory;
 import javax.ws.rs.NotAuthorizedException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Future;
 
 public class WorkItemLookupOperation extends Operation {
@@ -28,6 +25,10 @@ public class WorkItemLookupOperation extends Operation {
 
     // The WIT REST API restricts us to getting 200 work items at a time.
     public static final int MAX_WORK_ITEM_COUNT = 200;
+    // WIQL queries don't return more ids than this
+    public static final int MAX_QUERY_RESULT_COUNT = 20000;
+    // The number of pages loaded before the lookup completes, the rest are loaded as they are needed
+    public static final int INITIAL_PAGE_COUNT = 2;
 
     private final String gitRemoteUrl;
 
@@ -71,15 +72,32 @@ public class WorkItemLookupOperation extends Operation {
     public class WitResults extends ResultsImpl {
         private final List<WorkItem> workItems;
         private final ServerContext context;
+        private final WorkItemPageLoader pageLoader;
+        private final int startIndex;
 
         public WitResults(final ServerContext context, final List<WorkItem> workItems) {
+            this(context, workItems, null, 0);
+        }
+
+        /**
+         * Results holding one page of the query result
+         *
+         * @param pageLoader loads the other pages of the query result
+         * @param startIndex the index of the first work item in the query result
+         */
+        public WitResults(final ServerContext context, final List<WorkItem> workItems, final WorkItemPageLoader pageLoader, final int startIndex) {
             assert workItems != null;
             this.workItems = workItems;
             // The context could be null if an error occurred
             this.context = context;
+            this.pageLoader = pageLoader;
+            this.startIndex = startIndex;
         }
 
         public boolean maxItemsReached() {
+            if (pageLoader != null) {
+                return pageLoader.getCount() >= MAX_QUERY_RESULT_COUNT;
+            }
             return workItems.size() >= MAX_WORK_ITEM_COUNT;
         }
 
@@ -87,6 +105,17 @@ public class WorkItemLookupOperation extends Operation {
             return Collections.unmodifiableList(workItems);
         }
 
+        /**
+         * Returns the loader of the other pages or null if the work items aren't a page of a larger result
+         */
+        public WorkItemPageLoader getPageLoader() {
+            return pageLoader;
+        }
+
+        public int getStartIndex() {
+            return startIndex;
+        }
+
         public ServerContext getContext() {
             return context;
         }
@@ -109,7 +138,7 @@ public class WorkItemLookupOperation extends Operation {
                     // Get the authenticated context for the gitRemoteUrl
                     // This should be done on a background thread so as not to block UI or hang the IDE
                     // Get the context before doing the server calls to reduce possibility of using an outdated context with expired credentials
-                    final ServerContext context = ServerContextManager.getInstance().getUpdatedContext(gitRemoteUrl, false);
+                    final ServerContext context = getUpdatedContext(gitRemoteUrl, false);
                     if (context != null) {
                         authenticatedContexts.add(context);
                     }
@@ -158,48 +187,38 @@ public class WorkItemLookupOperation extends Operation {
             wiql.setQuery(witInputs.query);
             WorkItemQueryResult result = witHttpClient.queryByWiql(wiql, context.getTeamProjectReference().getId());
 
-            int count = 0;
             final List<WorkItemReference> itemRefs = result.getWorkItems();
-            final int maxCount = Math.min(itemRefs.size(), MAX_WORK_ITEM_COUNT);
-            if (maxCount == 0) {
+            if (itemRefs.size() == 0) {
                 return; //no workitem ids matched the wiql
             }
 
-            final List<Integer> ids = new IDList(maxCount);
-            final Map<Integer, Integer> workItemOrderMap = new HashMap<Integer, Integer>(maxCount);
+            final List<Integer> ids = new ArrayList<Integer>(itemRefs.size());
             for (WorkItemReference itemRef : itemRefs) {
                 ids.add(itemRef.getId());
-                workItemOrderMap.put(itemRef.getId(), count);
-                count++;
-                if (count >= MAX_WORK_ITEM_COUNT) {
-                    break;
-                }
             }
-
-            final List<WorkItem> items = witHttpClient.getWorkItems(ids, witInputs.fields, null, witInputs.expand);
-            logger.debug("doLookup: Found {} work items on repo {}", items.size(), context.getGitRepository().getRemoteUrl());
-
-            // Correct the order of the work items. The second call here to get the work items,
-            // always returns them in id order. We need to use the map we created above to put
-            // them back into the correct order based on the query.
-            Collections.sort(items, new Comparator<WorkItem>() {
-                @Override
-                public int compare(final WorkItem wi1, final WorkItem wi2) {
-                    Integer index1 = workItemOrderMap.get(wi1.getId());
-                    Integer index2 = workItemOrderMap.get(wi2.getId());
-                    if (index1 != null && index2 != null) {
-                        return index1 - index2;
-                    } else if (index1 != null) {
-                        return -1;
-                    } else if (index2 != null) {
-                        return 1;
+            logger.debug("doLookup: Found {} work items on repo {}", ids.size(), context.getGitRepository().getRemoteUrl());
+
+            // Get the first pages of work items in parallel and send each one as soon as we have it
+            final WorkItemPageLoader pageLoader = new WorkItemPageLoader(context, ids, witInputs.fields, witInputs.expand);
+            final int pageCount = Math.min(pageLoader.getPageCount(), INITIAL_PAGE_COUNT);
+            final List<Future> pageTasks = new ArrayList<Future>(pageCount);
+            for (int page = 0; page < pageCount; page++) {
+                final int pageIndex = page;
+                pageTasks.add(OperationExecutor.getInstance().submitOperationTask(new Runnable() {
+                    @Override
+                    public void run() {
+                        final List<WorkItem> items = pageLoader.loadPage(pageIndex);
+                        onLookupResults(new WitResults(context, items, pageLoader,
+                                WorkItemPageLoader.getPageStart(pageIndex)));
                     }
-
-                    return 0;
-                }
-            });
-
-            super.onLookupResults(new WitResults(context, items));
+                }));
+            }
+            try {
+                OperationExecutor.getInstance().wait(pageTasks);
+            } catch (TeamServicesException e) {
+                // report the error of the page that failed so auth errors are still recognized
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
         } catch (Throwable t) {
             logger.warn("doLookup: failed with an exception", t);
             terminate(t);
@@ -216,7 +235,7 @@ public class WorkItemLookupOperation extends Operation {
         onLookupCompleted();
     }
 
-    private static class IDList extends ArrayList<Integer> {
+    static class IDList extends ArrayList<Integer> {
         public IDList(int initialCapacity) {
             super(initialCapacity);
         }
@@ -233,7 +252,7 @@ public class WorkItemLookupOperation extends Operation {
         }
     }
 
-    private static class FieldList extends ArrayList<String> {
+    static class FieldList extends ArrayList<String> {
         public String toString() {
             StringBuilder sb = new StringBuilder();
             for (int i = 0; i < size(); i++) {
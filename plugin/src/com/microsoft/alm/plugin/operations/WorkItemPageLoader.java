@@ -0,0 +1,238 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItemExpand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads the work items of a query result a page at a time. The query returns the ids of all the matching work items
+ * in order, but the WIT REST API only returns the fields of 200 work items per call. The first pages are loaded by
+ * WorkItemLookupOperation and the rest are requested here as they are scrolled into view.
+ * <p/>
+ * Requested pages are loaded in the background, at most MAX_PARALLEL_REQUESTS at a time, and the most recently
+ * requested page goes first since that's the one the user is looking at.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class WorkItemPageLoader {
+    private static final Logger logger = LoggerFactory.getLogger(WorkItemPageLoader.class);
+
+    public static final int PAGE_SIZE = WorkItemLookupOperation.MAX_WORK_ITEM_COUNT;
+    public static final int MAX_PARALLEL_REQUESTS = 4;
+
+    public interface Listener {
+        /**
+         * Called on a background thread with the work items of the page in query order
+         */
+        void pageLoaded(final WorkItemPageLoader loader, final int startIndex, final List<WorkItem> workItems);
+
+        void pageFailed(final WorkItemPageLoader loader, final int startIndex, final Throwable t);
+    }
+
+    private final ServerContext context;
+    private final List<Integer> ids;
+    private final WorkItemLookupOperation.FieldList fields;
+    private final WorkItemExpand expand;
+
+    // pages that are loaded or on their way
+    private final Set<Integer> requestedPages = new HashSet<Integer>();
+    private final LinkedList<PageRequest> queue = new LinkedList<PageRequest>();
+    private int runningRequests = 0;
+    private boolean cancelled = false;
+
+    public WorkItemPageLoader(final ServerContext context, final List<Integer> ids,
+                              final WorkItemLookupOperation.FieldList fields, final WorkItemExpand expand) {
+        ArgumentHelper.checkNotNull(context, "context");
+        ArgumentHelper.checkNotNull(ids, "ids");
+        this.context = context;
+        this.ids = Collections.unmodifiableList(new ArrayList<Integer>(ids));
+        this.fields = fields;
+        this.expand = expand;
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the number of work items in the query result
+     */
+    public int getCount() {
+        return ids.size();
+    }
+
+    public int getId(final int index) {
+        return ids.get(index);
+    }
+
+    public int getPageCount() {
+        return (ids.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    public static int getPageIndex(final int index) {
+        return index / PAGE_SIZE;
+    }
+
+    public static int getPageStart(final int pageIndex) {
+        return pageIndex * PAGE_SIZE;
+    }
+
+    public synchronized boolean isPageRequested(final int pageIndex) {
+        return requestedPages.contains(pageIndex);
+    }
+
+    /**
+     * Loads the page on the calling thread
+     */
+    public List<WorkItem> loadPage(final int pageIndex) {
+        checkPageIndex(pageIndex);
+        synchronized (this) {
+            requestedPages.add(pageIndex);
+        }
+
+        final int start = getPageStart(pageIndex);
+        final int end = Math.min(start + PAGE_SIZE, ids.size());
+        final WorkItemLookupOperation.IDList pageIds = new WorkItemLookupOperation.IDList(end - start);
+        final Map<Integer, Integer> workItemOrderMap = new HashMap<Integer, Integer>(end - start);
+        for (int i = start; i < end; i++) {
+            pageIds.add(ids.get(i));
+            workItemOrderMap.put(ids.get(i), i);
+        }
+
+        final List<WorkItem> items;
+        try {
+            items = context.getWitHttpClient().getWorkItems(pageIds, fields, null, expand);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                // let it be requested again
+                requestedPages.remove(pageIndex);
+            }
+            throw e;
+        }
+        logger.debug("loadPage: loaded {} work items for page {}", items.size(), pageIndex);
+
+        // Correct the order of the work items. The call to get the work items
+        // always returns them in id order. We need to use the map we created above to put
+        // them back into the correct order based on the query.
+        Collections.sort(items, new Comparator<WorkItem>() {
+            @Override
+            public int compare(final WorkItem wi1, final WorkItem wi2) {
+                Integer index1 = workItemOrderMap.get(wi1.getId());
+                Integer index2 = workItemOrderMap.get(wi2.getId());
+                if (index1 != null && index2 != null) {
+                    return index1 - index2;
+                } else if (index1 != null) {
+                    return -1;
+                } else if (index2 != null) {
+                    return 1;
+                }
+
+                return 0;
+            }
+        });
+        return items;
+    }
+
+    /**
+     * Loads the page in the background unless it was already requested
+     */
+    public void requestPage(final int pageIndex, final Listener listener) {
+        checkPageIndex(pageIndex);
+        ArgumentHelper.checkNotNull(listener, "listener");
+        synchronized (this) {
+            if (cancelled || !requestedPages.add(pageIndex)) {
+                return;
+            }
+            queue.addFirst(new PageRequest(pageIndex, listener));
+        }
+        startRequests();
+    }
+
+    /**
+     * Drops the requests that haven't started yet. Pages that are being loaded won't be reported.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void startRequests() {
+        while (true) {
+            final PageRequest request;
+            synchronized (this) {
+                if (cancelled || queue.isEmpty() || runningRequests >= MAX_PARALLEL_REQUESTS) {
+                    return;
+                }
+                request = queue.removeFirst();
+                runningRequests++;
+            }
+
+            try {
+                OperationExecutor.getInstance().submitOperationTask(request);
+            } catch (RuntimeException e) {
+                logger.warn("startRequests: failed to submit the page request", e);
+                synchronized (this) {
+                    runningRequests--;
+                    requestedPages.remove(request.pageIndex);
+                }
+                return;
+            }
+        }
+    }
+
+    private void checkPageIndex(final int pageIndex) {
+        if (pageIndex < 0 || pageIndex >= getPageCount()) {
+            throw new IllegalArgumentException("pageIndex");
+        }
+    }
+
+    private class PageRequest implements Runnable {
+        private final int pageIndex;
+        private final Listener listener;
+
+        private PageRequest(final int pageIndex, final Listener listener) {
+            this.pageIndex = pageIndex;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final List<WorkItem> items = loadPage(pageIndex);
+                if (!isCancelled()) {
+                    listener.pageLoaded(WorkItemPageLoader.this, getPageStart(pageIndex), items);
+                }
+            } catch (Throwable t) {
+                logger.warn("run: failed to load page " + pageIndex, t);
+                if (!isCancelled()) {
+                    listener.pageFailed(WorkItemPageLoader.this, getPageStart(pageIndex), t);
+                }
+            } finally {
+                synchronized (WorkItemPageLoader.this) {
+                    runningRequests--;
+                }
+                startRequests();
+            }
+        }
+    }
+}
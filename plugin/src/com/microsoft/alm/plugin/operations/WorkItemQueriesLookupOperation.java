@@ -5,7 +5,6 @@ package com.microsoft.alm.plugin.operations;
 
 import com.microsoft.alm.common.utils.ArgumentHelper;
 import com.microsoft.alm.plugin.context.ServerContext;
-import com.microsoft.alm.plugin.context.ServerContextManager;
 import com.microsoft.alm.workitemtracking.webapi.WorkItemTrackingHttpClient;
 import com.microsoft.alm.workitemtracking.webapi.models.QueryExpand;
 import com.microsoft.alm.workitemtracking.webapi.models.QueryHierarchyItem;
@@ -84,7 +83,7 @@ public class WorkItemQueriesLookupOperation extends Operation {
                     // Get the authenticated context for the gitRemoteUrl
                     // This should be done on a background thread so as not to block UI or hang the IDE
                     // Get the context before doing the server calls to reduce possibility of using an outdated context with expired credentials
-                    final ServerContext context = ServerContextManager.getInstance().getUpdatedContext(gitRemoteUrl, false);
+                    final ServerContext context = getUpdatedContext(gitRemoteUrl, false);
                     if (context != null) {
                         authenticatedContexts.add(context);
                     }
@@ -0,0 +1,259 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.services;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.operations.BuildStatusLookupOperation;
+import com.microsoft.alm.plugin.operations.Operation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one build status per remote url and branch that any number of subscribers (like the status bar widget
+ * of every open project) share. Each status is looked up once per refresh no matter how many subscribers it has,
+ * and a refresh that comes in while the lookup is running is folded into one more lookup when it finishes.
+ * Statuses without subscribers are forgotten.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class BuildStatusService {
+    private static final Logger logger = LoggerFactory.getLogger(BuildStatusService.class);
+
+    public interface Subscriber {
+        /**
+         * Called on a background thread with the latest build status of the remote url and branch subscribed to
+         */
+        void buildStatusChanged(final BuildStatusLookupOperation.BuildStatusResults results);
+    }
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<Subscriber, Entry> subscriptions = new HashMap<Subscriber, Entry>();
+    private final AtomicLong lookupCount = new AtomicLong();
+
+    private static class Holder {
+        private static final BuildStatusService INSTANCE = new BuildStatusService();
+    }
+
+    public static BuildStatusService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * The constructor is protected for tests.
+     */
+    protected BuildStatusService() {
+    }
+
+    /**
+     * Subscribes to the build status of the remote url and branch, replacing any earlier subscription of the subscriber.
+     * If the status is already known it is passed to the subscriber right away.
+     */
+    public void subscribe(final Subscriber subscriber, final String remoteUrl, final String branch) {
+        ArgumentHelper.checkNotNull(subscriber, "subscriber");
+        ArgumentHelper.checkNotEmptyString(remoteUrl);
+        ArgumentHelper.checkNotEmptyString(branch);
+
+        final BuildStatusLookupOperation.BuildStatusResults results;
+        synchronized (this) {
+            final String key = getKey(remoteUrl, branch);
+            final Entry current = subscriptions.get(subscriber);
+            if (current != null && current.key.equals(key)) {
+                return;
+            }
+            unsubscribeInternal(subscriber);
+
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, remoteUrl, branch);
+                entries.put(key, entry);
+            }
+            entry.subscribers.add(subscriber);
+            subscriptions.put(subscriber, entry);
+            results = entry.results;
+        }
+
+        if (results != null) {
+            notify(subscriber, results);
+        }
+    }
+
+    public void unsubscribe(final Subscriber subscriber) {
+        ArgumentHelper.checkNotNull(subscriber, "subscriber");
+        synchronized (this) {
+            unsubscribeInternal(subscriber);
+        }
+    }
+
+    /**
+     * Looks up the build status of the remote url and branch again if anyone is subscribed to it
+     */
+    public void refresh(final String remoteUrl, final String branch, final boolean allowPrompt) {
+        ArgumentHelper.checkNotEmptyString(remoteUrl);
+        ArgumentHelper.checkNotEmptyString(branch);
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(getKey(remoteUrl, branch));
+        }
+        if (entry != null) {
+            refresh(entry, allowPrompt);
+        }
+    }
+
+    /**
+     * Looks up the build status of every branch of the remote url that anyone is subscribed to
+     */
+    public void refresh(final String remoteUrl, final boolean allowPrompt) {
+        ArgumentHelper.checkNotEmptyString(remoteUrl);
+        final String serverKey = ServerContext.getKey(remoteUrl);
+        for (final Entry entry : getEntries()) {
+            if (entry.serverKey.equals(serverKey)) {
+                refresh(entry, allowPrompt);
+            }
+        }
+    }
+
+    /**
+     * Returns the remote urls that anyone is subscribed to
+     */
+    public Set<String> getRemoteUrls() {
+        final Set<String> remoteUrls = new LinkedHashSet<String>();
+        for (final Entry entry : getEntries()) {
+            remoteUrls.add(entry.remoteUrl);
+        }
+        return remoteUrls;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups started
+     */
+    public long getLookupCount() {
+        return lookupCount.get();
+    }
+
+    /**
+     * Starts the lookup of the build status in the background. This method is protected for tests.
+     */
+    protected void startLookup(final String remoteUrl, final String branch, final boolean allowPrompt, final Operation.Listener listener) {
+        final BuildStatusLookupOperation op = new BuildStatusLookupOperation(remoteUrl, branch, allowPrompt);
+        op.addListener(listener);
+        op.doWorkAsync(null);
+    }
+
+    private synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    private void refresh(final Entry entry, final boolean allowPrompt) {
+        synchronized (this) {
+            if (entry.lookupRunning) {
+                // the running lookup may have started before the change we are being told about, so look again after it
+                entry.refreshPending = true;
+                entry.refreshPendingAllowPrompt |= allowPrompt;
+                return;
+            }
+            entry.lookupRunning = true;
+        }
+
+        lookupCount.incrementAndGet();
+        logger.info("refresh: looking up the build status of {}", entry.branch);
+        try {
+            startLookup(entry.remoteUrl, entry.branch, allowPrompt, new Operation.Listener() {
+                @Override
+                public void notifyLookupStarted() { /* do nothing */ }
+
+                @Override
+                public void notifyLookupCompleted() { /* do nothing */ }
+
+                @Override
+                public void notifyLookupResults(final Operation.Results results) {
+                    lookupFinished(entry, (BuildStatusLookupOperation.BuildStatusResults) results);
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                entry.lookupRunning = false;
+            }
+            throw e;
+        }
+    }
+
+    private void lookupFinished(final Entry entry, final BuildStatusLookupOperation.BuildStatusResults results) {
+        final List<Subscriber> subscribers;
+        final boolean refreshAgain;
+        final boolean allowPrompt;
+        synchronized (this) {
+            entry.results = results;
+            entry.lookupRunning = false;
+            refreshAgain = entry.refreshPending && entries.get(entry.key) == entry;
+            allowPrompt = entry.refreshPendingAllowPrompt;
+            entry.refreshPending = false;
+            entry.refreshPendingAllowPrompt = false;
+            subscribers = new ArrayList<Subscriber>(entry.subscribers);
+        }
+
+        for (final Subscriber subscriber : subscribers) {
+            notify(subscriber, results);
+        }
+
+        if (refreshAgain) {
+            refresh(entry, allowPrompt);
+        }
+    }
+
+    private void notify(final Subscriber subscriber, final BuildStatusLookupOperation.BuildStatusResults results) {
+        try {
+            subscriber.buildStatusChanged(results);
+        } catch (Throwable t) {
+            logger.warn("notify: subscriber failed", t);
+        }
+    }
+
+    private void unsubscribeInternal(final Subscriber subscriber) {
+        final Entry entry = subscriptions.remove(subscriber);
+        if (entry != null) {
+            entry.subscribers.remove(subscriber);
+            if (entry.subscribers.isEmpty()) {
+                // nobody is showing this status anymore
+                entries.remove(entry.key);
+            }
+        }
+    }
+
+    private static String getKey(final String remoteUrl, final String branch) {
+        // Branch names are case sensitive
+        return ServerContext.getKey(remoteUrl) + "|" + branch;
+    }
+
+    private static class Entry {
+        private final String key;
+        private final String serverKey;
+        private final String remoteUrl;
+        private final String branch;
+        private final Set<Subscriber> subscribers = new LinkedHashSet<Subscriber>();
+        private BuildStatusLookupOperation.BuildStatusResults results;
+        private boolean lookupRunning = false;
+        private boolean refreshPending = false;
+        private boolean refreshPendingAllowPrompt = false;
+
+        private Entry(final String key, final String remoteUrl, final String branch) {
+            this.key = key;
+            this.serverKey = ServerContext.getKey(remoteUrl);
+            this.remoteUrl = remoteUrl;
+            this.branch = branch;
+        }
+    }
+}
@@ -10,4 +10,6 @@ public interface PropertyService {
     String getProperty(String propertyName);
 
     void setProperty(String propertyName, String value);
+
+    void removeProperty(String propertyName);
 }
@@ -0,0 +1,257 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.services;
+
+import com.microsoft.alm.common.utils.ArgumentHelper;
+import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import com.microsoft.alm.plugin.context.ServerContext;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This ServerContextStore hands saves and forgets to another store on a background thread so callers never wait
+ * on a slow password store. Changes to the same key made before the next flush are coalesced into one write,
+ * and saves whose authentication info hasn't changed since it was last written are skipped.
+ * <p/>
+ * Call shutdown to write any pending changes before the application exits.
+ * <p/>
+ * THREAD-SAFE
+ */
+public class WriteBehindServerContextStore implements ServerContextStore {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindServerContextStore.class);
+
+    public static final long DEFAULT_FLUSH_DELAY_MILLISECONDS = 500;
+
+    private final ServerContextStore store;
+    private final long flushDelayMilliseconds;
+
+    // pending changes in the order they were made; a null context means forget the key
+    private final Map<String, ServerContext> pending = new LinkedHashMap<String, ServerContext>();
+    // the authentication info last written for each key
+    private final Map<String, String> written = new HashMap<String, String>();
+    // the authentication info each key was restored with; it may load its values lazily so it is compared by identity
+    private final Map<String, AuthenticationInfo> restored = new HashMap<String, AuthenticationInfo>();
+    // only one flush at a time so changes reach the store in order
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService executor;
+    private boolean flushScheduled = false;
+    private boolean isShutdown = false;
+
+    private long writeCount = 0;
+    private long skippedCount = 0;
+    private long coalescedCount = 0;
+
+    public WriteBehindServerContextStore(final ServerContextStore store) {
+        this(store, DEFAULT_FLUSH_DELAY_MILLISECONDS);
+    }
+
+    public WriteBehindServerContextStore(final ServerContextStore store, final long flushDelayMilliseconds) {
+        ArgumentHelper.checkNotNull(store, "store");
+        if (flushDelayMilliseconds < 0) {
+            throw new IllegalArgumentException("flushDelayMilliseconds");
+        }
+        this.store = store;
+        this.flushDelayMilliseconds = flushDelayMilliseconds;
+    }
+
+    @Override
+    public void forgetServerContext(final String key) {
+        enqueue(key, null);
+    }
+
+    @Override
+    public List<ServerContext> restoreServerContexts() {
+        // make sure we read back anything still waiting to be written
+        flush();
+
+        final List<ServerContext> contexts = store.restoreServerContexts();
+        synchronized (this) {
+            // these are already in the store, so saving them again would be a waste
+            for (final ServerContext context : contexts) {
+                if (context != null && context.getAuthenticationInfo() != null) {
+                    restored.put(context.getKey(), context.getAuthenticationInfo());
+                }
+            }
+        }
+        return contexts;
+    }
+
+    @Override
+    public void saveServerContext(final ServerContext context) {
+        if (context == null) {
+            return;
+        }
+        enqueue(context.getKey(), context);
+    }
+
+    /**
+     * Writes all pending changes to the store on the calling thread
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final Map<String, ServerContext> batch;
+            synchronized (this) {
+                batch = new LinkedHashMap<String, ServerContext>(pending);
+                pending.clear();
+                flushScheduled = false;
+            }
+
+            for (final Map.Entry<String, ServerContext> entry : batch.entrySet()) {
+                try {
+                    write(entry.getKey(), entry.getValue());
+                } catch (Throwable t) {
+                    logger.warn("flush: failed to write " + entry.getKey(), t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes any pending changes and stops the background thread. Later changes are written immediately.
+     */
+    public void shutdown() {
+        final ScheduledExecutorService executorToStop;
+        synchronized (this) {
+            isShutdown = true;
+            executorToStop = executor;
+            executor = null;
+        }
+
+        if (executorToStop != null) {
+            executorToStop.shutdownNow();
+        }
+        flush();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Returns the number of saves that were skipped because nothing had changed
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Returns the number of changes that replaced a pending change to the same key
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Returns the part of the context that the store persists. Saves with the same value as the last write are skipped.
+     */
+    protected String serialize(final ServerContext context) {
+        final AuthenticationInfo info = context.getAuthenticationInfo();
+        if (info == null) {
+            return StringUtils.EMPTY;
+        }
+        return StringUtils.defaultString(info.getUserName()) + '\n' +
+                StringUtils.defaultString(info.getPassword()) + '\n' +
+                StringUtils.defaultString(info.getServerUri()) + '\n' +
+                StringUtils.defaultString(info.getUserNameForDisplay());
+    }
+
+    private void enqueue(final String key, final ServerContext context) {
+        final boolean writeNow;
+        synchronized (this) {
+            writeNow = isShutdown;
+            if (!writeNow) {
+                if (pending.containsKey(key)) {
+                    // move the key to the end so changes to different keys stay in order
+                    pending.remove(key);
+                    coalescedCount++;
+                }
+                pending.put(key, context);
+                scheduleFlush();
+            }
+        }
+
+        if (writeNow) {
+            synchronized (flushLock) {
+                write(key, context);
+            }
+        }
+    }
+
+    private void write(final String key, final ServerContext context) {
+        if (context == null) {
+            synchronized (this) {
+                written.remove(key);
+                restored.remove(key);
+                writeCount++;
+            }
+            store.forgetServerContext(key);
+            return;
+        }
+
+        synchronized (this) {
+            if (context.getAuthenticationInfo() != null && restored.get(key) == context.getAuthenticationInfo()) {
+                skippedCount++;
+                return;
+            }
+        }
+
+        final String serialized = serialize(context);
+        synchronized (this) {
+            if (StringUtils.equals(serialized, written.get(key))) {
+                skippedCount++;
+                return;
+            }
+        }
+
+        store.saveServerContext(context);
+        synchronized (this) {
+            written.put(key, serialized);
+            restored.remove(key);
+            writeCount++;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "ServerContextStore write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        flushScheduled = true;
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    logger.warn("flush failed", t);
+                }
+            }
+        }, flushDelayMilliseconds, TimeUnit.MILLISECONDS);
+    }
+}
@@ -5,6 +5,7 @@ package com.microsoft.alm.plugin.authentication;
 
 import com.microsoft.alm.common.utils.SystemHelper;
 import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.exceptions.TeamServicesException;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.NTCredentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -34,6 +35,14 @@ public class AuthHelperTest {
         createAndVerifyNTCredentials("domain", "name", "name@domain", "pass");
     }
 
+    @Test(expected = TeamServicesException.class)
+    @SuppressWarnings("deprecation")
+    public void getCredentialsWithoutSecrets() {
+        Assert.assertFalse(AuthHelper.hasCredentials(new AuthenticationInfo()));
+        Assert.assertFalse(AuthHelper.hasCredentials(null));
+        AuthHelper.getCredentials(ServerContext.Type.TFS, new AuthenticationInfo());
+    }
+
     private void createAndVerifyNTCredentials(final String domain, final String name, final String domainName, final String pass) {
         final AuthenticationInfo info = new AuthenticationInfo(domainName, pass, "server", "display");
         final Credentials credentials = AuthHelper.getCredentials(ServerContext.Type.TFS, info);
@@ -0,0 +1,110 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.context;
+
+import com.microsoft.alm.plugin.AbstractTest;
+import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import org.apache.http.client.HttpClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import java.util.concurrent.TimeUnit;
+
+public class HttpTransportManagerTest extends AbstractTest {
+    @Test
+    public void testSameServerAndCredentialsShareClient() {
+        final HttpTransportManager manager = new HttpTransportManager();
+        final AuthenticationInfo info = new AuthenticationInfo("user1", "pass", "http://server:8080/tfs", "user1");
+        final AuthenticationInfo sameInfo = new AuthenticationInfo("user1", "pass", "HTTP://SERVER:8080/tfs/collection", "user1");
+
+        final Client client = manager.getClient(ServerContext.Type.TFS, info);
+        Assert.assertNotNull(client);
+        Assert.assertSame(client, manager.getClient(ServerContext.Type.TFS, info));
+        Assert.assertSame(client, manager.getClient(ServerContext.Type.TFS, sameInfo));
+        Assert.assertEquals(1, manager.getTransportCount());
+
+        // The SOAP client uses the same transport
+        final HttpClient httpClient = manager.getHttpClient(ServerContext.Type.TFS, info);
+        Assert.assertNotNull(httpClient);
+        Assert.assertSame(httpClient, manager.getHttpClient(ServerContext.Type.TFS, sameInfo));
+        Assert.assertEquals(1, manager.getTransportCount());
+        Assert.assertTrue(manager.isShared(client));
+        Assert.assertTrue(manager.isShared(httpClient));
+
+        manager.shutdown();
+        Assert.assertEquals(0, manager.getTransportCount());
+        Assert.assertFalse(manager.isShared(client));
+    }
+
+    @Test
+    public void testDifferentUserOrServerDoNotShare() {
+        final HttpTransportManager manager = new HttpTransportManager();
+        final AuthenticationInfo info = new AuthenticationInfo("user1", "pass", "http://server:8080/tfs", "user1");
+        final AuthenticationInfo otherUser = new AuthenticationInfo("user2", "pass", "http://server:8080/tfs", "user2");
+        final AuthenticationInfo otherServer = new AuthenticationInfo("user1", "pass", "http://server2:8080/tfs", "user1");
+
+        final Client client = manager.getClient(ServerContext.Type.TFS, info);
+        Assert.assertNotSame(client, manager.getClient(ServerContext.Type.TFS, otherUser));
+        Assert.assertNotSame(client, manager.getClient(ServerContext.Type.TFS, otherServer));
+        Assert.assertNotSame(client, manager.getClient(ServerContext.Type.VSO, info));
+        Assert.assertEquals(4, manager.getTransportCount());
+
+        manager.evictIdleConnections();
+        manager.shutdown();
+    }
+
+    @Test
+    public void testChangedPasswordRetiresTransport() {
+        final HttpTransportManager manager = new HttpTransportManager();
+        final AuthenticationInfo info = new AuthenticationInfo("user1", "pass", "http://server:8080/tfs", "user1");
+        final AuthenticationInfo newPassword = new AuthenticationInfo("user1", "pass2", "http://server:8080/tfs", "user1");
+
+        final Client client = manager.getClient(ServerContext.Type.TFS, info);
+        final HttpClient httpClient = manager.getHttpClient(ServerContext.Type.TFS, info);
+        final Client newClient = manager.getClient(ServerContext.Type.TFS, newPassword);
+        Assert.assertNotSame(client, newClient);
+        Assert.assertSame(newClient, manager.getClient(ServerContext.Type.TFS, newPassword));
+        Assert.assertNotSame(httpClient, manager.getHttpClient(ServerContext.Type.TFS, newPassword));
+
+        // contexts with the old password keep their client, asking for it doesn't close the new one either
+        Assert.assertSame(client, manager.getClient(ServerContext.Type.TFS, info));
+        Assert.assertSame(newClient, manager.getClient(ServerContext.Type.TFS, newPassword));
+        Assert.assertEquals(2, manager.getTransportCount());
+        Assert.assertTrue(manager.isShared(client));
+        Assert.assertTrue(manager.isShared(httpClient));
+
+        // the old transport is closed once it is idle, the current one stays
+        manager.closeRetiredTransports(System.currentTimeMillis());
+        Assert.assertEquals(2, manager.getTransportCount());
+        manager.closeRetiredTransports(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(HttpTransportManager.RETIRED_TRANSPORT_IDLE_SECONDS));
+        Assert.assertEquals(1, manager.getTransportCount());
+        Assert.assertFalse(manager.isShared(client));
+        Assert.assertFalse(manager.isShared(httpClient));
+        Assert.assertTrue(manager.isShared(newClient));
+        manager.shutdown();
+    }
+
+    @Test
+    public void testDisposeDoesNotCloseSharedClient() {
+        final AuthenticationInfo info = new AuthenticationInfo("user1", "pass", "http://server:8080/tfs", "user1");
+        final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server:8080/tfs").authentication(info).build();
+        final ServerContext copy = new ServerContextBuilder(context).build();
+
+        final Client client = context.getClient();
+        Assert.assertSame(client, copy.getClient());
+        Assert.assertTrue(HttpTransportManager.getInstance().isShared(client));
+
+        context.dispose();
+        Assert.assertTrue(context.isDisposed());
+        Assert.assertTrue(HttpTransportManager.getInstance().isShared(client));
+        Assert.assertSame(client, copy.getClient());
+        copy.dispose();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullAuthenticationInfo() {
+        new HttpTransportManager().getClient(ServerContext.Type.TFS, null);
+    }
+}
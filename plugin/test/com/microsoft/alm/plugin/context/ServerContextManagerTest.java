@@ -5,6 +5,8 @@ package com.microsoft.alm.plugin.context;
 
 import com.microsoft.alm.plugin.AbstractTest;
 import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import com.microsoft.alm.plugin.authentication.AuthenticationListener;
+import com.microsoft.alm.plugin.authentication.AuthenticationProvider;
 import com.microsoft.alm.core.webapi.model.TeamProjectCollectionReference;
 import com.microsoft.alm.core.webapi.model.TeamProjectReference;
 import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
@@ -12,8 +14,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ServerContextManagerTest extends AbstractTest {
     @Test
@@ -189,6 +195,53 @@ public class ServerContextManagerTest extends AbstractTest {
         Assert.assertNull(testContext);
     }
 
+    @Test
+    public void bulkAddAndRemoveByAuthority() {
+        ServerContextManager manager = new ServerContextManager();
+        ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server/path").build();
+        ServerContext context2 = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://SERVER/path2").build();
+        ServerContext context3 = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server:8080/path3").build();
+        manager.addAll(Arrays.asList(context, context2, context3));
+        Assert.assertEquals(3, manager.getAllServerContexts().size());
+        // bulk adds don't change the last used context
+        Assert.assertNull(manager.getLastUsedContext());
+
+        // the authority includes the port but not the case
+        List<ServerContext> sameAuthority = manager.getServerContextsWithSameAuthority(URI.create("http://Server/other"));
+        Assert.assertEquals(2, sameAuthority.size());
+        Assert.assertTrue(sameAuthority.contains(context));
+        Assert.assertTrue(sameAuthority.contains(context2));
+        Assert.assertEquals(1, manager.getServerContextsWithSameAuthority(URI.create("http://server:8080")).size());
+        Assert.assertEquals(0, manager.getServerContextsWithSameAuthority(URI.create("http://server3")).size());
+
+        // snapshots handed out earlier are not changed by later updates
+        Collection<ServerContext> before = manager.getAllServerContexts();
+        manager.removeAll(Arrays.asList(context.getUri().toString(), context3.getUri().toString()));
+        Assert.assertEquals(3, before.size());
+        Assert.assertEquals(1, manager.getAllServerContexts().size());
+        Assert.assertEquals(context2, manager.getServerContextsWithSameAuthority(URI.create("http://server")).get(0));
+        Assert.assertEquals(0, manager.getServerContextsWithSameAuthority(URI.create("http://server:8080")).size());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void authenticationInfoSkipsContextsWithoutCredentials() {
+        ServerContextManager manager = new ServerContextManager();
+        // a saved context whose secrets couldn't be read
+        ServerContext noSecrets = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server/path")
+                .authentication(new AuthenticationInfo()).build();
+        manager.add(noSecrets);
+        Assert.assertNull(manager.getAuthenticationInfo("http://server/_git/repo", false));
+        Assert.assertNull(manager.getBestAuthenticationInfo("http://server/path", false));
+
+        AuthenticationInfo info = new AuthenticationInfo("name", "pass", "http://server", "name");
+        ServerContext withSecrets = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server/path2")
+                .authentication(info).build();
+        manager.add(withSecrets);
+        Assert.assertEquals(info, manager.getAuthenticationInfo("http://server/_git/repo", false));
+        Assert.assertEquals(info, manager.getBestAuthenticationInfo("http://server/path", false));
+    }
+
     /**
      * This test avoids the problems with authenticating by asking for the context
      * that is already the active context.
@@ -211,4 +264,78 @@ public class ServerContextManagerTest extends AbstractTest {
         Assert.assertNotNull(testContext);
         Assert.assertEquals(gitUri, testContext.getUri());
     }
+
+    /**
+     * A provider that counts the prompts and answers with new credentials each time
+     */
+    private static class CountingAuthenticationProvider implements AuthenticationProvider {
+        private final AtomicInteger prompts = new AtomicInteger();
+        private Runnable whilePrompting;
+
+        public AuthenticationInfo getAuthenticationInfo() {
+            return null;
+        }
+
+        public void authenticateAsync(final String serverUri, final AuthenticationListener listener) {
+            final int prompt = prompts.incrementAndGet();
+            if (whilePrompting != null) {
+                whilePrompting.run();
+            }
+            listener.authenticated(new AuthenticationInfo("user", "token" + prompt, serverUri, "user"), null);
+        }
+
+        public void clearAuthenticationDetails() {
+        }
+
+        public boolean isAuthenticated() {
+            return false;
+        }
+    }
+
+    @Test
+    public void updateAuthenticationInfo_concurrentCallersPromptOnce() throws Exception {
+        final String url = "http://server:8080/tfs";
+        final CountingAuthenticationProvider provider = new CountingAuthenticationProvider();
+        final ServerContextManager manager = new ServerContextManager() {
+            @Override
+            public AuthenticationProvider getAuthenticationProvider(final String url) {
+                return provider;
+            }
+        };
+        manager.add(new ServerContextBuilder().type(ServerContext.Type.TFS).uri(url)
+                .authentication(new AuthenticationInfo("user", "expired", url, "user")).build());
+
+        // a second caller fails with the same credentials while the user is being prompted
+        final AtomicReference<ServerContext> secondResult = new AtomicReference<ServerContext>();
+        final Thread second = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                secondResult.set(manager.updateAuthenticationInfo(url));
+            }
+        });
+        provider.whilePrompting = new Runnable() {
+            @Override
+            public void run() {
+                provider.whilePrompting = null;
+                second.start();
+                // wait for the second caller to block on the lock
+                final long deadline = System.currentTimeMillis() + 5000;
+                while (second.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+                    Thread.yield();
+                }
+            }
+        };
+
+        final ServerContext first = manager.updateAuthenticationInfo(url);
+        second.join(5000);
+
+        Assert.assertEquals(1, provider.prompts.get());
+        Assert.assertEquals("token1", first.getAuthenticationInfo().getPassword());
+        Assert.assertNotNull(secondResult.get());
+        Assert.assertEquals("token1", secondResult.get().getAuthenticationInfo().getPassword());
+
+        // credentials that fail again after the update are prompted for again
+        Assert.assertEquals("token2", manager.updateAuthenticationInfo(url).getAuthenticationInfo().getPassword());
+        Assert.assertEquals(2, provider.prompts.get());
+    }
 }
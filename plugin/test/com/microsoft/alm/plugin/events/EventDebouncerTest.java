@@ -0,0 +1,87 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.events;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class EventDebouncerTest {
+    private static class RecordingListener implements EventDebouncer.Listener<String> {
+        private final List<String> settled = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void changesSettled(final String key, final int changeCount) {
+            settled.add(key + ":" + changeCount);
+        }
+    }
+
+    private void waitFor(final List<String> list, final int size) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testBurstIsReportedOnce() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener();
+        final EventDebouncer<String> debouncer = new EventDebouncer<String>(listener, 200);
+        for (int i = 0; i < 5; i++) {
+            debouncer.changed("repo1");
+        }
+        debouncer.changed("repo2");
+        Assert.assertEquals(2, debouncer.getPendingCount());
+        Assert.assertEquals(0, listener.settled.size());
+
+        waitFor(listener.settled, 2);
+        Assert.assertEquals(2, listener.settled.size());
+        Assert.assertTrue(listener.settled.contains("repo1:5"));
+        Assert.assertTrue(listener.settled.contains("repo2:1"));
+        Assert.assertEquals(6, debouncer.getChangeCount());
+        Assert.assertEquals(2, debouncer.getSettledCount());
+        Assert.assertEquals(4, debouncer.getCoalescedCount());
+        Assert.assertEquals(0, debouncer.getPendingCount());
+        debouncer.shutdown();
+    }
+
+    @Test
+    public void testFlush() {
+        final RecordingListener listener = new RecordingListener();
+        final EventDebouncer<String> debouncer = new EventDebouncer<String>(listener, 60000);
+        debouncer.changed("repo");
+        debouncer.changed("repo");
+        debouncer.flush();
+        Assert.assertEquals(Collections.singletonList("repo:2"), listener.settled);
+
+        // changes after the flush start a new burst
+        debouncer.changed("repo");
+        debouncer.flush();
+        Assert.assertEquals(2, listener.settled.size());
+        Assert.assertEquals("repo:1", listener.settled.get(1));
+        debouncer.shutdown();
+    }
+
+    @Test
+    public void testLongBurstIsNotHeldBackForever() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener();
+        final EventDebouncer<String> debouncer = new EventDebouncer<String>(listener, 50);
+        // keep changing more often than the quiet period for longer than the max delay
+        final long end = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < end && listener.settled.isEmpty()) {
+            debouncer.changed("repo");
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(listener.settled.isEmpty());
+        debouncer.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadQuietPeriod() {
+        new EventDebouncer<String>(new RecordingListener(), -1);
+    }
+}
@@ -0,0 +1,113 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.events;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PollingScheduleTest {
+    public static class VirtualClock implements PollingSchedule.Clock {
+        private long now = 1000000;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        public void advance(final long milliseconds) {
+            now += milliseconds;
+        }
+    }
+
+    private static final long BASE_INTERVAL = 60000;
+
+    private void assertPollTime(final PollingSchedule schedule, final VirtualClock clock, final long interval) {
+        Assert.assertEquals(interval, schedule.getCurrentInterval());
+        final long delay = schedule.getNextPollTime() - clock.currentTimeMillis();
+        Assert.assertTrue("delay " + delay, delay >= interval * (1 - PollingSchedule.JITTER) - 1);
+        Assert.assertTrue("delay " + delay, delay <= interval * (1 + PollingSchedule.JITTER) + 1);
+    }
+
+    @Test
+    public void testFirstPollWaitsOneInterval() {
+        final VirtualClock clock = new VirtualClock();
+        final PollingSchedule schedule = new PollingSchedule(clock, new Random(1), BASE_INTERVAL);
+        Assert.assertFalse(schedule.isDue());
+        assertPollTime(schedule, clock, BASE_INTERVAL);
+        clock.advance(schedule.getNextPollTime() - clock.currentTimeMillis());
+        Assert.assertTrue(schedule.isDue());
+
+        schedule.pollSucceeded();
+        Assert.assertFalse(schedule.isDue());
+        assertPollTime(schedule, clock, BASE_INTERVAL);
+        clock.advance(BASE_INTERVAL * 2);
+        Assert.assertTrue(schedule.isDue());
+    }
+
+    @Test
+    public void testBackoffOnFailures() {
+        final VirtualClock clock = new VirtualClock();
+        final PollingSchedule schedule = new PollingSchedule(clock, new Random(2), BASE_INTERVAL);
+        schedule.pollFailed();
+        assertPollTime(schedule, clock, BASE_INTERVAL * 2);
+        schedule.pollFailed();
+        assertPollTime(schedule, clock, BASE_INTERVAL * 4);
+        for (int i = 0; i < 20; i++) {
+            schedule.pollFailed();
+        }
+        assertPollTime(schedule, clock, PollingSchedule.MAX_INTERVAL);
+
+        // one success is enough to go back to normal
+        schedule.pollSucceeded();
+        Assert.assertEquals(0, schedule.getFailureCount());
+        assertPollTime(schedule, clock, BASE_INTERVAL);
+    }
+
+    @Test
+    public void testActivityAndFocus() {
+        final VirtualClock clock = new VirtualClock();
+        final PollingSchedule schedule = new PollingSchedule(clock, new Random(3), PollingSchedule.DEFAULT_INTERVAL);
+        schedule.pollSucceeded();
+
+        // after the user changes something we poll quickly for a while
+        schedule.activity();
+        assertPollTime(schedule, clock, PollingSchedule.ACTIVE_INTERVAL);
+        clock.advance(PollingSchedule.ACTIVITY_PERIOD);
+        schedule.pollSucceeded();
+        assertPollTime(schedule, clock, PollingSchedule.DEFAULT_INTERVAL);
+
+        // every poll without focus doubles the interval
+        schedule.setFocused(false);
+        schedule.pollSucceeded();
+        assertPollTime(schedule, clock, PollingSchedule.DEFAULT_INTERVAL * 2);
+        schedule.pollSucceeded();
+        assertPollTime(schedule, clock, PollingSchedule.DEFAULT_INTERVAL * 4);
+
+        // getting the focus back brings the next poll closer
+        schedule.setFocused(true);
+        assertPollTime(schedule, clock, PollingSchedule.DEFAULT_INTERVAL);
+    }
+
+    @Test
+    public void testJitterSpreadsPolls() {
+        final VirtualClock clock = new VirtualClock();
+        final Random random = new Random(4);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 100; i++) {
+            final PollingSchedule schedule = new PollingSchedule(clock, random, BASE_INTERVAL);
+            schedule.pollSucceeded();
+            min = Math.min(min, schedule.getNextPollTime());
+            max = Math.max(max, schedule.getNextPollTime());
+        }
+        Assert.assertTrue(max - min > BASE_INTERVAL * PollingSchedule.JITTER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadInterval() {
+        new PollingSchedule(new VirtualClock(), new Random(), 0);
+    }
+}
@@ -0,0 +1,107 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.events;
+
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ServerChangeDetectorTest {
+    private static class TestProvider implements ServerChangeDetector.WatermarkProvider {
+        private final Map<String, String> watermarks = new HashMap<String, String>();
+        private final List<String> calls = new ArrayList<String>();
+
+        @Override
+        public String getScope(final ServerEvent event, final ServerContext context) {
+            // both repos are in the same project, so they share builds
+            return event == ServerEvent.BUILDS_CHANGED ? "project" : context.getKey();
+        }
+
+        @Override
+        public String getWatermark(final ServerEvent event, final ServerContext context) {
+            final String scope = event.name() + "|" + getScope(event, context);
+            calls.add(scope);
+            if (!watermarks.containsKey(scope)) {
+                throw new IllegalStateException("server not available");
+            }
+            return watermarks.get(scope);
+        }
+
+        private void set(final ServerEvent event, final String scope, final String watermark) {
+            watermarks.put(event.name() + "|" + scope, watermark);
+        }
+    }
+
+    private ServerContext createContext(final String uri) {
+        return new ServerContextBuilder().type(ServerContext.Type.TFS).uri(uri).build();
+    }
+
+    @Test
+    public void testOnlyChangesAreReported() {
+        final TestProvider provider = new TestProvider();
+        final ServerChangeDetector detector = new ServerChangeDetector(provider);
+        final ServerContext repo1 = createContext("http://server/_git/repo1");
+        final ServerContext repo2 = createContext("http://server/_git/repo2");
+        for (final ServerContext context : Arrays.asList(repo1, repo2)) {
+            provider.set(ServerEvent.PULL_REQUESTS_CHANGED, context.getKey(), "1");
+            provider.set(ServerEvent.WORK_ITEMS_CHANGED, context.getKey(), "1");
+        }
+        provider.set(ServerEvent.BUILDS_CHANGED, "project", "1");
+
+        // the first check only remembers the watermarks
+        Assert.assertTrue(detector.detectChanges(Arrays.asList(repo1, repo2)).isEmpty());
+        // the shared build watermark was only read once
+        Assert.assertEquals(5, provider.calls.size());
+        Assert.assertTrue(detector.detectChanges(Arrays.asList(repo1, repo2)).isEmpty());
+
+        // a pull request change only affects its repository
+        provider.set(ServerEvent.PULL_REQUESTS_CHANGED, repo2.getKey(), "2");
+        Map<ServerEvent, Set<String>> changes = detector.detectChanges(Arrays.asList(repo1, repo2));
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(Collections.singleton(repo2.getKey()), changes.get(ServerEvent.PULL_REQUESTS_CHANGED));
+
+        // a build change affects every repository of the project
+        provider.set(ServerEvent.BUILDS_CHANGED, "project", "2");
+        changes = detector.detectChanges(Arrays.asList(repo1, repo2));
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(2, changes.get(ServerEvent.BUILDS_CHANGED).size());
+    }
+
+    @Test
+    public void testErrorsAndClosedRepositories() {
+        final TestProvider provider = new TestProvider();
+        final ServerChangeDetector detector = new ServerChangeDetector(provider);
+        final ServerContext repo = createContext("http://server/_git/repo");
+
+        // nothing can be read, so nothing changed
+        Assert.assertTrue(detector.detectChanges(Collections.singletonList(repo)).isEmpty());
+        Assert.assertEquals(0, detector.getWatermarkCount());
+        Assert.assertEquals(3, detector.getLastFailureCount());
+
+        provider.set(ServerEvent.BUILDS_CHANGED, "project", "1");
+        provider.set(ServerEvent.PULL_REQUESTS_CHANGED, repo.getKey(), "1");
+        provider.set(ServerEvent.WORK_ITEMS_CHANGED, repo.getKey(), "1");
+        Assert.assertTrue(detector.detectChanges(Collections.singletonList(repo)).isEmpty());
+        Assert.assertEquals(3, detector.getWatermarkCount());
+        Assert.assertEquals(0, detector.getLastFailureCount());
+
+        // checking other repositories keeps the watermarks
+        Assert.assertTrue(detector.detectChanges(Collections.<ServerContext>emptyList()).isEmpty());
+        Assert.assertEquals(3, detector.getWatermarkCount());
+
+        // but those of repositories that are gone are dropped
+        detector.retain(Collections.<ServerContext>emptyList());
+        Assert.assertEquals(0, detector.getWatermarkCount());
+        Assert.assertTrue(detector.detectChanges(null).isEmpty());
+    }
+}
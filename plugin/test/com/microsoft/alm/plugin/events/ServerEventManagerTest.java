@@ -6,7 +6,16 @@ package com.microsoft.alm.plugin.events;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServerEventManagerTest {
     private static class EventCounter {
@@ -120,4 +129,240 @@ public class ServerEventManagerTest {
         Assert.assertEquals(1, counterPullRequest.getEventCount());
         Assert.assertEquals(1, counterWit.getEventCount());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testContextIsShared() {
+        final ServerEventManager manager = new ServerEventManager();
+        final Map<?, ?>[] received = new Map<?, ?>[2];
+        for (int i = 0; i < received.length; i++) {
+            final int index = i;
+            manager.addListener(new ServerEventListener() {
+                @Override
+                public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                    received[index] = contextMap;
+                    try {
+                        contextMap.put("key", "changed");
+                        Assert.fail("listeners should not be able to change the context");
+                    } catch (UnsupportedOperationException e) {
+                        // This is expected
+                    }
+                }
+            });
+        }
+
+        manager.triggerEvent(ServerEvent.BUILDS_CHANGED, Collections.<String, Object>singletonMap("key", "value"));
+        Assert.assertSame(received[0], received[1]);
+        Assert.assertEquals("value", received[0].get("key"));
+        Assert.assertEquals(2, manager.getDispatchedCount());
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockOthers() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ServerEventManager manager = new ServerEventManager(executor);
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EventCounter slowCounter = new EventCounter();
+        final EventCounter fastCounter = new EventCounter();
+        manager.addListener(new ServerEventListener() {
+            @Override
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                slowCounter.increment();
+                slowStarted.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        manager.addListener(new ServerEventListener() {
+            @Override
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                fastCounter.increment();
+            }
+        });
+
+        final Map<String, Object> context = Collections.<String, Object>singletonMap("project", "project1");
+        manager.triggerEvent(ServerEvent.BUILDS_CHANGED, context);
+        Assert.assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+
+        // while the slow listener is busy the same event is only queued once for it
+        manager.triggerEvent(ServerEvent.BUILDS_CHANGED, context);
+        manager.triggerEvent(ServerEvent.BUILDS_CHANGED, context);
+        Assert.assertTrue(manager.getCoalescedCount() >= 1);
+
+        // the fast listener isn't held up
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fastCounter.getEventCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(fastCounter.getEventCount() >= 2);
+        Assert.assertEquals(1, slowCounter.getEventCount());
+
+        release.countDown();
+        deadline = System.currentTimeMillis() + 5000;
+        while ((manager.getPendingCount() > 0 || slowCounter.getEventCount() < 2) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, slowCounter.getEventCount());
+        Assert.assertEquals(3, manager.getTriggeredCount());
+        Assert.assertTrue(manager.getMaxDispatchLatency() >= manager.getAverageDispatchLatency());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLifecycleEventsAreDeliveredRightAway() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ServerEventManager manager = new ServerEventManager(executor);
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        manager.addListener(new ServerEventListener() {
+            @Override
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                received.add(contextMap.get("sender") + ":" + event);
+                if ("poll".equals(contextMap.get("sender")) && busy.getCount() > 0) {
+                    busy.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+
+        // the listener is busy with a refresh on the pool and another one is waiting
+        manager.triggerEvent(ServerEvent.BUILDS_CHANGED, Collections.<String, Object>singletonMap("sender", "poll"));
+        Assert.assertTrue(busy.await(5, TimeUnit.SECONDS));
+        manager.triggerEvent(ServerEvent.WORK_ITEMS_CHANGED, Collections.<String, Object>singletonMap("sender", "repo"));
+
+        // the project closing doesn't wait for the pool, the waiting refresh goes first and nothing is coalesced
+        final Map<String, Object> closing = Collections.<String, Object>singletonMap("sender", "closing");
+        manager.triggerLifecycleEvents(closing);
+        manager.triggerLifecycleEvents(closing);
+        Assert.assertEquals(Arrays.asList("poll:BUILDS_CHANGED", "repo:WORK_ITEMS_CHANGED",
+                "closing:BUILDS_CHANGED", "closing:PULL_REQUESTS_CHANGED", "closing:WORK_ITEMS_CHANGED",
+                "closing:BUILDS_CHANGED", "closing:PULL_REQUESTS_CHANGED", "closing:WORK_ITEMS_CHANGED"),
+                new ArrayList<String>(received));
+        Assert.assertEquals(0, manager.getPendingCount());
+        Assert.assertEquals(0, manager.getCoalescedCount());
+        Assert.assertEquals(0, manager.getDroppedCount());
+
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRefreshEventsAreDroppedWhenFarBehind() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ServerEventManager manager = new ServerEventManager(executor);
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EventCounter counter = new EventCounter();
+        manager.addListener(new ServerEventListener() {
+            @Override
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                counter.increment();
+                busy.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        manager.triggerEvent(ServerEvent.BUILDS_CHANGED, null);
+        Assert.assertTrue(busy.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < ServerEventManager.MAX_QUEUED_EVENTS + 10; i++) {
+            manager.triggerEvent(ServerEvent.BUILDS_CHANGED, Collections.<String, Object>singletonMap("index", i));
+        }
+        Assert.assertEquals(ServerEventManager.MAX_QUEUED_EVENTS, manager.getPendingCount());
+        Assert.assertEquals(10, manager.getDroppedCount());
+
+        release.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (counter.getEventCount() < ServerEventManager.MAX_QUEUED_EVENTS + 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(ServerEventManager.MAX_QUEUED_EVENTS + 1, counter.getEventCount());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLifecycleEventsWaitForRunningDelivery() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ServerEventManager manager = new ServerEventManager(executor);
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final List<ServerEvent> received = Collections.synchronizedList(new ArrayList<ServerEvent>());
+        manager.addListener(new ServerEventListener() {
+            @Override
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                final int running = active.incrementAndGet();
+                if (running > maxActive.get()) {
+                    maxActive.set(running);
+                }
+                received.add(event);
+                busy.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+            }
+        });
+
+        // keep the dispatch thread busy delivering a refresh event
+        manager.triggerEvent(ServerEvent.WORK_ITEMS_CHANGED, null);
+        Assert.assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+        final Thread lifecycleThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                manager.triggerLifecycleEvents(null);
+            }
+        });
+        lifecycleThread.start();
+        // the lifecycle events wait for the refresh event instead of reaching the listener at the same time
+        lifecycleThread.join(200);
+        Assert.assertTrue(lifecycleThread.isAlive());
+        Assert.assertEquals(1, received.size());
+
+        release.countDown();
+        lifecycleThread.join(5000);
+        Assert.assertFalse(lifecycleThread.isAlive());
+        Assert.assertEquals(1, maxActive.get());
+        Assert.assertEquals(Arrays.asList(ServerEvent.WORK_ITEMS_CHANGED, ServerEvent.BUILDS_CHANGED,
+                ServerEvent.PULL_REQUESTS_CHANGED, ServerEvent.WORK_ITEMS_CHANGED), received);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testShutdown() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ServerEventManager manager = new ServerEventManager(executor);
+        final EventCounter counter = new EventCounter();
+        manager.addListener(new ServerEventListener() {
+            @Override
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                counter.increment();
+            }
+        });
+
+        manager.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        // refresh events are no longer delivered, lifecycle events still are
+        manager.triggerEvent(ServerEvent.BUILDS_CHANGED, null);
+        Assert.assertEquals(0, counter.getEventCount());
+        Assert.assertEquals(0, manager.getPendingCount());
+        manager.triggerLifecycleEvents(null);
+        Assert.assertEquals(3, counter.getEventCount());
+    }
+}
@@ -3,10 +3,15 @@
 
 package com.microsoft.alm.plugin.events;
 
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextBuilder;
 import jersey.repackaged.com.google.common.util.concurrent.SettableFuture;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -28,10 +33,51 @@ public class ServerPollingManagerTest {
         }
     }
 
+    @Test
+    public void testWatchedContextProvider() {
+        final ServerPollingManager manager = new ServerPollingManager(new ServerEventManager());
+        final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server/_git/repo").build();
+
+        // nothing is watched until we are told which repositories are open
+        Assert.assertTrue(manager.getWatchedContexts().isEmpty());
+
+        manager.setWatchedContextProvider(new ServerPollingManager.WatchedContextProvider() {
+            @Override
+            public Collection<ServerContext> getWatchedContexts() {
+                return Collections.singletonList(context);
+            }
+        });
+        Assert.assertEquals(1, manager.getWatchedContexts().size());
+        Assert.assertSame(context, manager.getWatchedContexts().iterator().next());
+
+        manager.setWatchedContextProvider(null);
+        Assert.assertTrue(manager.getWatchedContexts().isEmpty());
+    }
+
     @Test
     public void testPolling() throws InterruptedException, ExecutionException, TimeoutException {
         final ServerEventManager eventManager = new ServerEventManager();
-        final ServerPollingManager manager = new ServerPollingManager(eventManager);
+        final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server/_git/repo").build();
+        // every check sees a new watermark, so after the first check every event changes
+        final ServerChangeDetector detector = new ServerChangeDetector(new ServerChangeDetector.WatermarkProvider() {
+            private int count = 0;
+
+            @Override
+            public String getScope(final ServerEvent event, final ServerContext context) {
+                return context.getKey();
+            }
+
+            @Override
+            public synchronized String getWatermark(final ServerEvent event, final ServerContext context) {
+                return Integer.toString(count++);
+            }
+        });
+        final ServerPollingManager manager = new ServerPollingManager(eventManager, detector) {
+            @Override
+            protected Collection<ServerContext> getWatchedContexts() {
+                return Collections.singletonList(context);
+            }
+        };
 
         final SettableFuture<Boolean> buildChangedCalled = SettableFuture.create();
         final SettableFuture<Boolean> witChangedCalled = SettableFuture.create();
@@ -39,6 +85,8 @@ public class ServerPollingManagerTest {
         eventManager.addListener(new ServerEventListener() {
             @Override
             public void serverChanged(final ServerEvent event, final Map<String,Object> contextMap) {
+                // events are raised for the repository that changed
+                Assert.assertEquals(context.getKey(), contextMap.get(ServerPollingManager.CONTEXT_SERVER_CONTEXT_KEY));
                 if (event == ServerEvent.BUILDS_CHANGED) {
                     buildChangedCalled.set(true);
                 }
@@ -64,4 +112,79 @@ public class ServerPollingManagerTest {
         Assert.assertEquals(true, witChangedCalled.get(1, TimeUnit.SECONDS));
         manager.stopPolling();
     }
+
+    @Test
+    public void testAdaptivePolling() {
+        final PollingScheduleTest.VirtualClock clock = new PollingScheduleTest.VirtualClock();
+        final ServerEventManager eventManager = new ServerEventManager();
+        final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).uri("http://server/_git/repo").build();
+        final int[] version = new int[]{0};
+        final int[] reads = new int[]{0};
+        final ServerChangeDetector detector = new ServerChangeDetector(new ServerChangeDetector.WatermarkProvider() {
+            @Override
+            public String getScope(final ServerEvent event, final ServerContext context) {
+                return event == ServerEvent.BUILDS_CHANGED ? context.getKey() : null;
+            }
+
+            @Override
+            public String getWatermark(final ServerEvent event, final ServerContext context) {
+                reads[0]++;
+                return Integer.toString(version[0]);
+            }
+        });
+        final ServerPollingManager manager = new ServerPollingManager(eventManager, detector, clock) {
+            @Override
+            protected Collection<ServerContext> getWatchedContexts() {
+                return Collections.singletonList(context);
+            }
+        };
+        final int[] events = new int[]{0};
+        eventManager.addListener(new ServerEventListener() {
+            @Override
+            public void serverChanged(final ServerEvent event, final Map<String, Object> contextMap) {
+                if (contextMap != null && ServerPollingManager.SENDER_POLLING_MANAGER.equals(contextMap.get(ServerPollingManager.CONTEXT_SENDER))) {
+                    events[0]++;
+                }
+            }
+        });
+
+        // new servers are first polled one interval later to get the starting point
+        Assert.assertEquals(-1, manager.getPollingInterval("http://server"));
+        manager.poll();
+        Assert.assertEquals(0, reads[0]);
+        Assert.assertEquals(PollingSchedule.DEFAULT_INTERVAL, manager.getPollingInterval("http://server"));
+        Assert.assertTrue(manager.getNextPollTime("http://server") > clock.currentTimeMillis());
+        clock.advance(manager.getNextPollTime("http://server") - clock.currentTimeMillis());
+        manager.poll();
+        Assert.assertEquals(1, reads[0]);
+
+        // nothing happens until the server is due
+        version[0]++;
+        manager.poll();
+        Assert.assertEquals(1, reads[0]);
+        clock.advance(manager.getNextPollTime("http://server") - clock.currentTimeMillis());
+        manager.poll();
+        Assert.assertEquals(2, reads[0]);
+        Assert.assertEquals(1, events[0]);
+
+        // events that don't say which server changed, or name another server, don't change the schedule
+        eventManager.triggerEvent(ServerEvent.PULL_REQUESTS_CHANGED, null);
+        eventManager.triggerEvent(ServerEvent.PULL_REQUESTS_CHANGED, new HashMap<String, Object>());
+        final Map<String, Object> otherServer = new HashMap<String, Object>();
+        otherServer.put(ServerPollingManager.CONTEXT_SERVER_URL, "http://other/_git/repo");
+        eventManager.triggerEvent(ServerEvent.PULL_REQUESTS_CHANGED, otherServer);
+        Assert.assertEquals(PollingSchedule.DEFAULT_INTERVAL, manager.getPollingInterval("http://server"));
+
+        // changes made by the user make us poll the server sooner
+        final Map<String, Object> server = new HashMap<String, Object>();
+        server.put(ServerPollingManager.CONTEXT_SERVER_URL, "http://server/_git/repo");
+        eventManager.triggerEvent(ServerEvent.PULL_REQUESTS_CHANGED, server);
+        Assert.assertEquals(PollingSchedule.ACTIVE_INTERVAL, manager.getPollingInterval("http://server"));
+
+        // the interval can be changed for each server
+        manager.setPollingInterval("http://SERVER/tfs", 10 * 60 * 1000L);
+        clock.advance(PollingSchedule.ACTIVITY_PERIOD);
+        manager.poll();
+        Assert.assertEquals(10 * 60 * 1000L, manager.getPollingInterval("http://server"));
+    }
 }
@@ -20,4 +20,9 @@ public class MockPropertyService implements PropertyService {
     public void setProperty(String propertyName, String value) {
         map.put(propertyName, value);
     }
+
+    @Override
+    public void removeProperty(String propertyName) {
+        map.remove(propertyName);
+    }
 }
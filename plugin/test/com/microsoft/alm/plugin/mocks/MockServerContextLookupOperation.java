@@ -4,6 +4,7 @@
 package com.microsoft.alm.plugin.mocks;
 
 import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.operations.ServerContextCatalogCache;
 import com.microsoft.alm.plugin.operations.ServerContextLookupOperation;
 import com.microsoft.alm.core.webapi.model.TeamProjectCollectionReference;
 import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
@@ -15,6 +16,7 @@ public class MockServerContextLookupOperation extends ServerContextLookupOperati
     final List<TeamProjectCollectionReference> collections = new ArrayList<TeamProjectCollectionReference>();
     final List<GitRepository> gitRepositories = new ArrayList<GitRepository>();
     boolean cancelWhenStarted = false;
+    ServerContextCatalogCache catalogCache;
 
     public MockServerContextLookupOperation(List<ServerContext> contextList, ContextScope resultScope) {
         super(contextList, resultScope);
@@ -31,6 +33,15 @@ public class MockServerContextLookupOperation extends ServerContextLookupOperati
         cancelWhenStarted = true;
     }
 
+    public void setCatalogCache(ServerContextCatalogCache catalogCache) {
+        this.catalogCache = catalogCache;
+    }
+
+    @Override
+    protected ServerContextCatalogCache getCatalogCache() {
+        return catalogCache != null ? catalogCache : super.getCatalogCache();
+    }
+
     @Override
     protected void doLookup(final ServerContext context, final List<TeamProjectCollectionReference> collections) {
         for (final TeamProjectCollectionReference teamProjectCollectionReference : collections) {
@@ -0,0 +1,86 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+public class BuildStatusCacheTest {
+    private static final String REPO_ID = "5BFCD2A3-B1A6-4D28-9A59-1A3D9A6E2C11";
+    private static final String MASTER = "refs/heads/master";
+
+    private BuildStatusCache.Entry createEntry(final int buildId, final String branch) {
+        final Date finishTime = new Date(1000L * buildId);
+        final BuildStatusLookupOperation.BuildStatusRecord record =
+                new BuildStatusLookupOperation.BuildStatusRecord(branch, true, buildId, 1, "build" + buildId, finishTime);
+        return new BuildStatusCache.Entry(BuildStatusCache.WatermarkKind.BRANCH, record, buildId, finishTime);
+    }
+
+    @Test
+    public void testGetAndPut() {
+        final BuildStatusCache cache = new BuildStatusCache();
+        Assert.assertNull(cache.get(REPO_ID, MASTER, BuildStatusCache.WatermarkKind.BRANCH));
+        Assert.assertEquals(1, cache.getMissCount());
+
+        cache.put(REPO_ID, MASTER, createEntry(10, MASTER));
+        // repository ids are not case sensitive
+        final BuildStatusCache.Entry entry = cache.get(REPO_ID.toLowerCase(), MASTER, BuildStatusCache.WatermarkKind.BRANCH);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(10, entry.getRecord().getBuildId());
+        Assert.assertTrue(entry.isCurrent(10));
+        Assert.assertFalse(entry.isCurrent(11));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        // branch names are
+        Assert.assertNull(cache.get(REPO_ID, "refs/heads/Master", BuildStatusCache.WatermarkKind.BRANCH));
+
+        cache.remove(REPO_ID, MASTER);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEntryWithoutBuilds() {
+        final BuildStatusCache.Entry entry = new BuildStatusCache.Entry(BuildStatusCache.WatermarkKind.PROJECT_SCAN, null, 0, null);
+        Assert.assertNull(entry.getRecord());
+        Assert.assertFalse(entry.hasWatermark());
+        Assert.assertFalse(entry.isCurrent(0));
+    }
+
+    @Test
+    public void testWatermarkKinds() {
+        final BuildStatusCache cache = new BuildStatusCache();
+        cache.put(REPO_ID, MASTER, createEntry(10, MASTER));
+        // an entry with the other kind of watermark is a miss
+        Assert.assertNull(cache.get(REPO_ID, MASTER, BuildStatusCache.WatermarkKind.PROJECT_SCAN));
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertNotNull(cache.get(REPO_ID, MASTER, BuildStatusCache.WatermarkKind.BRANCH));
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        final BuildStatusCache cache = new BuildStatusCache();
+        for (int i = 0; i <= BuildStatusCache.MAX_ENTRIES; i++) {
+            cache.put(REPO_ID, "refs/heads/branch" + i, createEntry(i + 1, "refs/heads/branch" + i));
+        }
+        Assert.assertEquals(BuildStatusCache.MAX_ENTRIES, cache.size());
+        // the least recently used entry goes first
+        Assert.assertNull(cache.get(REPO_ID, "refs/heads/branch0", BuildStatusCache.WatermarkKind.BRANCH));
+        Assert.assertNotNull(cache.get(REPO_ID, "refs/heads/branch1", BuildStatusCache.WatermarkKind.BRANCH));
+    }
+
+    @Test
+    public void testFilteringSupport() {
+        final BuildStatusCache cache = new BuildStatusCache();
+        Assert.assertTrue(cache.isFilteringSupported("http://server:8080/tfs/DefaultCollection"));
+        cache.setFilteringUnsupported("http://server:8080/tfs/DefaultCollection");
+        Assert.assertFalse(cache.isFilteringSupported("http://SERVER:8080/tfs/defaultcollection"));
+        Assert.assertTrue(cache.isFilteringSupported("https://account.visualstudio.com"));
+
+        cache.clear();
+        Assert.assertTrue(cache.isFilteringSupported("http://server:8080/tfs/DefaultCollection"));
+    }
+}
@@ -0,0 +1,228 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.plugin.exceptions.TeamServicesException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OperationExecutorTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_BadSize() {
+        new OperationExecutor(0, 1, 1);
+    }
+
+    @Test
+    public void testNestedTasksDoNotStarvePool() {
+        // A single task thread: the parent occupies it while waiting on its children
+        final OperationExecutor executor = new OperationExecutor(1, 1, 10);
+        final AtomicInteger childrenRun = new AtomicInteger();
+
+        final List<Future> parents = new ArrayList<Future>();
+        parents.add(executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+                final List<Future> children = new ArrayList<Future>();
+                for (int i = 0; i < 3; i++) {
+                    children.add(executor.submitOperationTask(new Runnable() {
+                        @Override
+                        public void run() {
+                            childrenRun.incrementAndGet();
+                        }
+                    }));
+                }
+                executor.wait(children);
+            }
+        }));
+        executor.wait(parents);
+
+        Assert.assertEquals(3, childrenRun.get());
+        Assert.assertTrue(executor.getHelpedCount() >= 3);
+    }
+
+    @Test
+    public void testSaturatedQueueRunsOnCaller() throws InterruptedException {
+        final OperationExecutor executor = new OperationExecutor(1, 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+
+        // Block the only task thread
+        final Future blocker = executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Fill the queue
+        final Future queued = executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        Assert.assertEquals(1, executor.getTaskQueueSize());
+        Assert.assertEquals(1, executor.getQueueSize());
+        Assert.assertEquals(1, executor.getActiveTaskCount());
+
+        // The next one has nowhere to go and runs right here
+        final Thread caller = Thread.currentThread();
+        final List<Thread> ranOn = new ArrayList<Thread>();
+        final Future saturated = executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+                ranOn.add(Thread.currentThread());
+            }
+        });
+        Assert.assertTrue(saturated.isDone());
+        Assert.assertEquals(caller, ranOn.get(0));
+        Assert.assertEquals(1, executor.getCallerRunsCount());
+
+        release.countDown();
+        final List<Future> futures = new ArrayList<Future>();
+        futures.add(blocker);
+        futures.add(queued);
+        executor.wait(futures);
+    }
+
+    @Test
+    public void testOperationsRunOnSeparatePool() throws InterruptedException {
+        final OperationExecutor executor = new OperationExecutor(1, 1, 10);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger taskRun = new AtomicInteger();
+
+        final Operation operation = new Operation() {
+            @Override
+            public void doWork(final Inputs inputs) {
+                final List<Future> tasks = new ArrayList<Future>();
+                tasks.add(executor.submitOperationTask(new Runnable() {
+                    @Override
+                    public void run() {
+                        taskRun.incrementAndGet();
+                    }
+                }));
+                executor.wait(tasks);
+                done.countDown();
+            }
+        };
+        executor.executeAsync(operation, Operation.EMPTY_INPUTS);
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, taskRun.get());
+    }
+
+    @Test
+    public void testWaitAll_SingleDeadline() {
+        final OperationExecutor executor = new OperationExecutor(1, 5, 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Future> futures = new ArrayList<Future>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(executor.submitOperationTask(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // cancelled
+                    }
+                }
+            }));
+        }
+
+        // Three slow tasks should cost one timeout, not three
+        final long start = System.currentTimeMillis();
+        final OperationExecutor.WaitResults results = executor.waitAll(futures, 300, TimeUnit.MILLISECONDS, OperationExecutor.WaitMode.COLLECT_ALL);
+        final long elapsed = System.currentTimeMillis() - start;
+        Assert.assertTrue("waited " + elapsed + "ms", elapsed < 800);
+        Assert.assertTrue(results.isTimedOut());
+        Assert.assertTrue(results.hasErrors());
+        Assert.assertEquals(3, results.getCount(OperationExecutor.TaskOutcome.Status.TIMED_OUT));
+
+        results.cancelUnfinished();
+        for (final Future f : futures) {
+            Assert.assertTrue(f.isCancelled());
+        }
+        release.countDown();
+    }
+
+    @Test
+    public void testWaitAll_CollectAll() {
+        final OperationExecutor executor = new OperationExecutor(1, 2, 10);
+        final List<Future> futures = new ArrayList<Future>();
+        futures.add(executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        }));
+        futures.add(executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+
+        final OperationExecutor.WaitResults results = executor.waitAll(futures, 5, TimeUnit.SECONDS, OperationExecutor.WaitMode.COLLECT_ALL);
+        Assert.assertFalse(results.isTimedOut());
+        Assert.assertTrue(results.hasErrors());
+        Assert.assertEquals(OperationExecutor.TaskOutcome.Status.FAILED, results.getOutcomes().get(0).getStatus());
+        Assert.assertTrue(results.getOutcomes().get(0).getError() instanceof IllegalStateException);
+        Assert.assertEquals(OperationExecutor.TaskOutcome.Status.SUCCEEDED, results.getOutcomes().get(1).getStatus());
+        Assert.assertEquals(1, results.getPartialResults().size());
+    }
+
+    @Test
+    public void testWaitAll_FailFast() {
+        final OperationExecutor executor = new OperationExecutor(1, 2, 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Future> futures = new ArrayList<Future>();
+        futures.add(executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // cancelled
+                }
+            }
+        }));
+        futures.add(executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        }));
+
+        final long start = System.currentTimeMillis();
+        final OperationExecutor.WaitResults results = executor.waitAll(futures, 10, TimeUnit.SECONDS, OperationExecutor.WaitMode.FAIL_FAST);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(OperationExecutor.TaskOutcome.Status.CANCELLED, results.getOutcomes().get(0).getStatus());
+        Assert.assertEquals(OperationExecutor.TaskOutcome.Status.FAILED, results.getOutcomes().get(1).getStatus());
+        release.countDown();
+    }
+
+    @Test(expected = TeamServicesException.class)
+    public void testWait_ThrowsOnError() {
+        final OperationExecutor executor = new OperationExecutor(1, 1, 10);
+        final List<Future> futures = new ArrayList<Future>();
+        futures.add(executor.submitOperationTask(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        }));
+        executor.wait(futures);
+    }
+}
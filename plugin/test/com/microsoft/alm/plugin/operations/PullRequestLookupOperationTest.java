@@ -4,8 +4,24 @@
 package com.microsoft.alm.plugin.operations;
 
 import com.microsoft.alm.plugin.AbstractTest;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.sourcecontrol.webapi.GitHttpClient;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequest;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequestSearchCriteria;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
 
 public class PullRequestLookupOperationTest extends AbstractTest {
 
@@ -23,4 +39,131 @@ public class PullRequestLookupOperationTest extends AbstractTest {
         //construct correctly
         underTest = new PullRequestLookupOperation("gitRemoteUrl");
     }
+
+    private static GitPullRequest createPullRequest(final int id, final String title) {
+        final GitPullRequest pullRequest = new GitPullRequest();
+        pullRequest.setPullRequestId(id);
+        pullRequest.setTitle(title);
+        return pullRequest;
+    }
+
+    private static List<GitPullRequest> createPullRequests(final int firstId, final int count) {
+        final List<GitPullRequest> pullRequests = new ArrayList<GitPullRequest>(count);
+        for (int i = 0; i < count; i++) {
+            pullRequests.add(createPullRequest(firstId + i, "title"));
+        }
+        return pullRequests;
+    }
+
+    private static List<Integer> getIds(final List<GitPullRequest> pullRequests) {
+        final List<Integer> ids = new ArrayList<Integer>(pullRequests.size());
+        for (final GitPullRequest pullRequest : pullRequests) {
+            ids.add(pullRequest.getPullRequestId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testGetAllPullRequests() {
+        final GitHttpClient client = Mockito.mock(GitHttpClient.class);
+        final int pageSize = PullRequestLookupOperation.PAGE_SIZE;
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), anyInt(), eq(pageSize)))
+                .thenReturn(new ArrayList<GitPullRequest>());
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(0), eq(pageSize)))
+                .thenReturn(createPullRequests(1, pageSize));
+        // the last pull request of the first page moved to the second page while reading
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(pageSize), eq(pageSize)))
+                .thenReturn(createPullRequests(pageSize, pageSize));
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(2 * pageSize), eq(pageSize)))
+                .thenReturn(createPullRequests(2 * pageSize + 1, 30));
+
+        underTest = new PullRequestLookupOperation("gitRemoteUrl");
+        final List<GitPullRequest> pullRequests = underTest.getAllPullRequests(client, UUID.randomUUID(), new GitPullRequestSearchCriteria());
+        Assert.assertEquals(2 * pageSize - 1 + 30, pullRequests.size());
+        Assert.assertEquals(1, pullRequests.get(0).getPullRequestId());
+        Assert.assertEquals(2 * pageSize + 30, pullRequests.get(pullRequests.size() - 1).getPullRequestId());
+    }
+
+    @Test
+    public void testDeltaResults() {
+        final GitHttpClient client = Mockito.mock(GitHttpClient.class);
+        final ServerContext context = Mockito.mock(ServerContext.class);
+        final GitRepository repository = new GitRepository();
+        repository.setId(UUID.randomUUID());
+        when(context.getGitRepository()).thenReturn(repository);
+        when(context.getUserId()).thenReturn(UUID.randomUUID());
+        when(context.getGitHttpClient()).thenReturn(client);
+
+        final List<PullRequestLookupOperation.PullRequestLookupResults> results = new ArrayList<PullRequestLookupOperation.PullRequestLookupResults>();
+        final Operation.Listener listener = new Operation.Listener() {
+            @Override
+            public void notifyLookupStarted() {
+            }
+
+            @Override
+            public void notifyLookupCompleted() {
+            }
+
+            @Override
+            public void notifyLookupResults(final Operation.Results lookupResults) {
+                results.add((PullRequestLookupOperation.PullRequestLookupResults) lookupResults);
+            }
+        };
+        final PullRequestLookupOperation.Baseline baseline = new PullRequestLookupOperation.Baseline();
+
+        // results that are never shown leave the baseline alone
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(0), anyInt()))
+                .thenReturn(Arrays.asList(createPullRequest(5, "five")));
+        underTest = new PullRequestLookupOperation("gitRemoteUrl", baseline);
+        underTest.addListener(listener);
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        Assert.assertEquals(1, results.size());
+        results.clear();
+
+        // the first lookup sends everything
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(0), anyInt()))
+                .thenReturn(Arrays.asList(createPullRequest(1, "one"), createPullRequest(2, "two"), createPullRequest(3, "three")));
+        underTest = new PullRequestLookupOperation("gitRemoteUrl", baseline);
+        underTest.addListener(listener);
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        Assert.assertEquals(1, results.size());
+        Assert.assertFalse(results.get(0).isDelta());
+        Assert.assertEquals(Arrays.asList(1, 2, 3), getIds(results.get(0).getPullRequests()));
+        results.get(0).commitBaseline();
+
+        // the next one only sends what changed
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(0), anyInt()))
+                .thenReturn(Arrays.asList(createPullRequest(4, "four"), createPullRequest(1, "one"), createPullRequest(2, "two changed")));
+        underTest = new PullRequestLookupOperation("gitRemoteUrl", baseline);
+        underTest.addListener(listener);
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        Assert.assertEquals(2, results.size());
+        final PullRequestLookupOperation.PullRequestLookupResults delta = results.get(1);
+        Assert.assertTrue(delta.isDelta());
+        Assert.assertEquals(Arrays.asList(4, 2), getIds(delta.getPullRequests()));
+        Assert.assertEquals(Arrays.asList(3), delta.getRemovedPullRequestIds());
+        Assert.assertEquals(Arrays.asList(4, 1, 2), delta.getPullRequestIds());
+        delta.commitBaseline();
+
+        // results computed against a baseline that has moved on since can't be committed on top of it
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        final PullRequestLookupOperation.PullRequestLookupResults first = results.get(results.size() - 1);
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        final PullRequestLookupOperation.PullRequestLookupResults second = results.get(results.size() - 1);
+        first.commitBaseline();
+        second.commitBaseline();
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        Assert.assertFalse(results.get(results.size() - 1).isDelta());
+        results.subList(2, results.size()).clear();
+
+        // the other scope starts with everything
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.ASSIGNED_TO_ME);
+        Assert.assertFalse(results.get(2).isDelta());
+
+        // and so does the first lookup after clearing
+        baseline.clear();
+        underTest.doLookup(context, PullRequestLookupOperation.PullRequestScope.REQUESTED_BY_ME);
+        Assert.assertFalse(results.get(3).isDelta());
+        Assert.assertEquals(3, results.get(3).getPullRequests().size());
+    }
 }
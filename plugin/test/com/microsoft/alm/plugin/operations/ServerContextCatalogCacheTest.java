@@ -0,0 +1,157 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.core.webapi.model.TeamProjectCollectionReference;
+import com.microsoft.alm.core.webapi.model.TeamProjectReference;
+import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextBuilder;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class ServerContextCatalogCacheTest {
+    private File parentDirectory;
+    private ServerContextCatalogCache cache;
+    private ServerContext account;
+
+    @Before
+    public void setup() {
+        parentDirectory = new File(System.getProperty("java.io.tmpdir"), "catalogCacheTest-" + UUID.randomUUID());
+        Assert.assertTrue(parentDirectory.mkdirs());
+        cache = new ServerContextCatalogCache();
+        cache.setDirectory(parentDirectory);
+        account = new ServerContextBuilder().type(ServerContext.Type.VSO)
+                .uri(URI.create("https://account.visualstudio.com"))
+                .authentication(new AuthenticationInfo("user", "pass", "https://account.visualstudio.com", "user"))
+                .build();
+    }
+
+    @After
+    public void cleanup() {
+        final File catalogDirectory = new File(parentDirectory, ServerContextCatalogCache.CATALOG_DIRECTORY);
+        final File[] files = catalogDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        catalogDirectory.delete();
+        parentDirectory.delete();
+    }
+
+    @Test
+    public void testSplitAndJoin() {
+        final String line = ServerContextCatalogCache.join("a\tb", "c\\d", "", "e\nf");
+        Assert.assertEquals(-1, line.indexOf('\n'));
+        final String[] values = ServerContextCatalogCache.split(line);
+        Assert.assertEquals(4, values.length);
+        Assert.assertEquals("a\tb", values[0]);
+        Assert.assertEquals("c\\d", values[1]);
+        Assert.assertEquals("", values[2]);
+        Assert.assertEquals("e\nf", values[3]);
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        final ServerContext repoContext = createRepositoryContext("repo\t1");
+        final List<ServerContextCatalogCache.CatalogEntry> entries = new ArrayList<ServerContextCatalogCache.CatalogEntry>();
+        entries.add(ServerContextCatalogCache.CatalogEntry.fromContext(repoContext));
+        cache.save(account, ServerContextLookupOperation.ContextScope.REPOSITORY, entries);
+
+        final List<ServerContextCatalogCache.CatalogEntry> loaded = cache.load(account, ServerContextLookupOperation.ContextScope.REPOSITORY);
+        Assert.assertEquals(entries, loaded);
+
+        final ServerContext loadedContext = loaded.get(0).toContext(account);
+        Assert.assertEquals("repo\t1", loadedContext.getGitRepository().getName());
+        Assert.assertEquals(repoContext.getGitRepository().getId(), loadedContext.getGitRepository().getId());
+        Assert.assertEquals("project", loadedContext.getTeamProjectReference().getName());
+        Assert.assertEquals("collection", loadedContext.getTeamProjectCollectionReference().getName());
+        Assert.assertEquals(URI.create("https://account.visualstudio.com/_git/repo"), loadedContext.getUri());
+
+        // the other scope and other users have their own catalogs
+        Assert.assertTrue(cache.load(account, ServerContextLookupOperation.ContextScope.PROJECT).isEmpty());
+        final ServerContext otherUser = new ServerContextBuilder(account)
+                .authentication(new AuthenticationInfo("other", "pass", "https://account.visualstudio.com", "other"))
+                .build();
+        Assert.assertTrue(cache.load(otherUser, ServerContextLookupOperation.ContextScope.REPOSITORY).isEmpty());
+    }
+
+    @Test
+    public void testExpired() {
+        final List<ServerContextCatalogCache.CatalogEntry> entries = new ArrayList<ServerContextCatalogCache.CatalogEntry>();
+        entries.add(ServerContextCatalogCache.CatalogEntry.fromContext(createRepositoryContext("repo")));
+        cache.save(account, ServerContextLookupOperation.ContextScope.REPOSITORY, entries);
+        Assert.assertFalse(cache.isExpired(account, ServerContextLookupOperation.ContextScope.REPOSITORY));
+
+        // expired catalogs are still shown while they are looked up again
+        cache.setTimeToLive(account.getUri(), -1);
+        Assert.assertTrue(cache.isExpired(account, ServerContextLookupOperation.ContextScope.REPOSITORY));
+        Assert.assertEquals(entries, cache.load(account, ServerContextLookupOperation.ContextScope.REPOSITORY));
+        Assert.assertEquals(entries, cache.load(account, ServerContextLookupOperation.ContextScope.REPOSITORY));
+
+        cache.remove(account, ServerContextLookupOperation.ContextScope.REPOSITORY);
+        Assert.assertFalse(cache.isExpired(account, ServerContextLookupOperation.ContextScope.REPOSITORY));
+        Assert.assertTrue(cache.load(account, ServerContextLookupOperation.ContextScope.REPOSITORY).isEmpty());
+    }
+
+    @Test
+    public void testMissingValuesLoadAsNull() {
+        final TeamProjectReference project = new TeamProjectReference();
+        project.setId(UUID.randomUUID());
+        final ServerContext projectContext = new ServerContextBuilder(account)
+                .teamProject(project)
+                .collection(new TeamProjectCollectionReference())
+                .build();
+        final List<ServerContextCatalogCache.CatalogEntry> entries = new ArrayList<ServerContextCatalogCache.CatalogEntry>();
+        entries.add(ServerContextCatalogCache.CatalogEntry.fromContext(projectContext));
+        cache.save(account, ServerContextLookupOperation.ContextScope.PROJECT, entries);
+
+        final ServerContext loadedContext = cache.load(account, ServerContextLookupOperation.ContextScope.PROJECT).get(0).toContext(account);
+        Assert.assertEquals(project.getId(), loadedContext.getTeamProjectReference().getId());
+        Assert.assertNull(loadedContext.getTeamProjectReference().getName());
+        Assert.assertNull(loadedContext.getTeamProjectReference().getUrl());
+        Assert.assertNull(loadedContext.getTeamProjectCollectionReference().getId());
+        Assert.assertNull(loadedContext.getTeamProjectCollectionReference().getName());
+    }
+
+    @Test
+    public void testDisabled() {
+        final ServerContextCatalogCache disabledCache = new ServerContextCatalogCache();
+        Assert.assertFalse(disabledCache.isEnabled());
+        disabledCache.save(account, ServerContextLookupOperation.ContextScope.REPOSITORY,
+                new ArrayList<ServerContextCatalogCache.CatalogEntry>());
+        Assert.assertTrue(disabledCache.load(account, ServerContextLookupOperation.ContextScope.REPOSITORY).isEmpty());
+    }
+
+    private ServerContext createRepositoryContext(final String repoName) {
+        final TeamProjectCollectionReference collection = new TeamProjectCollectionReference();
+        collection.setId(UUID.randomUUID());
+        collection.setName("collection");
+        final TeamProjectReference project = new TeamProjectReference();
+        project.setId(UUID.randomUUID());
+        project.setName("project");
+        final GitRepository repository = new GitRepository();
+        repository.setId(UUID.randomUUID());
+        repository.setName(repoName);
+        repository.setRemoteUrl("https://account.visualstudio.com/_git/repo");
+        repository.setProjectReference(project);
+
+        return new ServerContextBuilder(account)
+                .uri(repository.getRemoteUrl())
+                .repository(repository)
+                .teamProject(project)
+                .collection(collection)
+                .build();
+    }
+}
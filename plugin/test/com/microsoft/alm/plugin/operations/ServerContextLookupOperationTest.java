@@ -15,10 +15,18 @@ import jersey.repackaged.com.google.common.util.concurrent.SettableFuture;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServerContextLookupOperationTest {
     private final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).build();
@@ -100,6 +108,11 @@ public class ServerContextLookupOperationTest {
         Assert.assertTrue(completedCalled.get());
         Assert.assertFalse(canceledCalled.isDone());
 
+        // the account's progress counts the contexts that were streamed to the listener
+        Assert.assertEquals(1, operation.getProgress().size());
+        Assert.assertEquals(serverUri, operation.getProgress().get(0).getAccountUri());
+        Assert.assertEquals(3, operation.getProgress().get(0).getContextsFound());
+
         // cancel remaining futures
         canceledCalled.cancel(true);
     }
@@ -195,6 +208,124 @@ public class ServerContextLookupOperationTest {
         results.cancel(true);
     }
 
+    @Test
+    public void getRepositoriesReplacesCachedContexts() {
+        final URI serverUri = URI.create("http://server");
+        final AuthenticationInfo info = new AuthenticationInfo("", "", "", "");
+        final TeamProjectCollectionReference collection = new TeamProjectCollectionReference();
+        collection.setName("collection");
+        final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).authentication(info).uri(serverUri).collection(collection).build();
+        final MockServerContextLookupOperation operation = new MockServerContextLookupOperation(Collections.singletonList(context), ServerContextLookupOperation.ContextScope.REPOSITORY);
+
+        final TeamProjectReference project = new TeamProjectReference();
+        project.setName("project");
+        final GitRepository repo1 = new GitRepository();
+        repo1.setName("repo1");
+        repo1.setProjectReference(project);
+        repo1.setRemoteUrl("http://server/_git/repo1");
+        final GitRepository repo2 = new GitRepository();
+        repo2.setName("repo2");
+        repo2.setProjectReference(project);
+        repo2.setRemoteUrl("http://server/_git/repo2");
+        operation.addRepository(repo1);
+        operation.addRepository(repo2);
+
+        // the last lookup found repo1, and that catalog has expired since
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "lookupOperationTest-" + UUID.randomUUID());
+        final ServerContextCatalogCache cache = new ServerContextCatalogCache();
+        cache.setDirectory(directory);
+        cache.setTimeToLive(serverUri, -1);
+        final ServerContext cachedContext = new ServerContextBuilder(context)
+                .uri(repo1.getRemoteUrl()).repository(repo1).teamProject(project).collection(collection).build();
+        cache.save(context, ServerContextLookupOperation.ContextScope.REPOSITORY,
+                Collections.singletonList(ServerContextCatalogCache.CatalogEntry.fromContext(cachedContext)));
+        operation.setCatalogCache(cache);
+
+        final List<ServerContext> contexts = new ArrayList<ServerContext>();
+        final Map<ServerContext, ServerContext> replaced = new HashMap<ServerContext, ServerContext>();
+        operation.addListener(new Operation.Listener() {
+            public void notifyLookupStarted() {
+            }
+
+            public void notifyLookupCompleted() {
+            }
+
+            @Override
+            public void notifyLookupResults(Operation.Results lookupResults) {
+                final ServerContextLookupOperation.ServerContextLookupResults results = (ServerContextLookupOperation.ServerContextLookupResults) lookupResults;
+                contexts.addAll(results.getServerContexts());
+                replaced.putAll(results.getReplacedServerContexts());
+            }
+        });
+
+        try {
+            operation.doWork(Operation.EMPTY_INPUTS);
+
+            // the expired cached context is shown first, then replaced by the live one instead of being added again
+            Assert.assertEquals(2, contexts.size());
+            Assert.assertNotSame(repo1, contexts.get(0).getGitRepository());
+            Assert.assertEquals("repo1", contexts.get(0).getGitRepository().getName());
+            Assert.assertSame(repo2, contexts.get(1).getGitRepository());
+            Assert.assertEquals(1, replaced.size());
+            Assert.assertSame(repo1, replaced.get(contexts.get(0)).getGitRepository());
+            Assert.assertEquals(2, operation.getProgress().get(0).getContextsFound());
+        } finally {
+            cache.remove(context, ServerContextLookupOperation.ContextScope.REPOSITORY);
+            new File(directory, ServerContextCatalogCache.CATALOG_DIRECTORY).delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void doLookupCancelsWorkersWhenCallingThreadFails() throws InterruptedException {
+        final ServerContext account = new ServerContextBuilder().type(ServerContext.Type.TFS).uri(URI.create("http://server")).build();
+        final List<TeamProjectCollectionReference> collections = new ArrayList<TeamProjectCollectionReference>();
+        for (int i = 0; i < 10; i++) {
+            final TeamProjectCollectionReference collection = new TeamProjectCollectionReference();
+            collection.setName("collection" + i);
+            collections.add(collection);
+        }
+
+        final Thread callingThread = Thread.currentThread();
+        final AtomicInteger lookedUp = new AtomicInteger();
+        final AtomicInteger workersStarted = new AtomicInteger();
+        final AtomicInteger workersInterrupted = new AtomicInteger();
+        final CountDownLatch neverOpens = new CountDownLatch(1);
+        final ServerContextLookupOperation operation = new ServerContextLookupOperation(Collections.singletonList(account), ServerContextLookupOperation.ContextScope.REPOSITORY) {
+            @Override
+            protected void doCollectionLookup(final ServerContext context, final TeamProjectCollectionReference collection) {
+                lookedUp.incrementAndGet();
+                if (Thread.currentThread() == callingThread) {
+                    throw new RuntimeException("lookup failed");
+                }
+
+                // the other workers hang until they are cancelled
+                workersStarted.incrementAndGet();
+                try {
+                    neverOpens.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    workersInterrupted.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        try {
+            operation.doLookup(account, collections);
+            Assert.fail("the calling thread's error was expected");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("lookup failed", e.getMessage());
+        }
+
+        // the workers that had started are interrupted and the remaining collections are not looked up
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (workersInterrupted.get() < workersStarted.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(workersStarted.get(), workersInterrupted.get());
+        Assert.assertTrue(lookedUp.get() <= ServerContextLookupOperation.MAX_PARALLEL_COLLECTION_LOOKUPS);
+    }
+
     private void setupListener(MockServerContextLookupOperation operation, final SettableFuture<Boolean> startedCalled, final SettableFuture<Boolean> completedCalled, final SettableFuture<Boolean> canceledCalled, final SettableFuture<List<ServerContext>> results) {
         operation.addListener(new Operation.Listener() {
             public void notifyLookupStarted() {
@@ -0,0 +1,114 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.core.webapi.model.TeamProjectReference;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextBuilder;
+import com.microsoft.alm.plugin.events.ServerEvent;
+import com.microsoft.alm.sourcecontrol.webapi.GitHttpClient;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitCommitRef;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequest;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitPullRequestSearchCriteria;
+import com.microsoft.alm.sourcecontrol.webapi.model.GitRepository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+public class ServerWatermarkProviderTest {
+    private static final String REPO_URL = "http://server/_git/repo";
+
+    @Test
+    public void workItemWatermarkQuery() {
+        // the order of the shown query is replaced, so any change to its work items changes the watermark
+        Assert.assertEquals("select system.id from workitems where system.state = 'Active'" +
+                        " order by system.changeddate desc, system.id desc",
+                ServerWatermarkProvider.getWorkItemWatermarkQuery(
+                        "select system.id from workitems where system.state = 'Active' ORDER BY system.title"));
+        Assert.assertEquals("select system.id from workitems order by system.changeddate desc, system.id desc",
+                ServerWatermarkProvider.getWorkItemWatermarkQuery("select system.id from workitems"));
+    }
+
+    @Test
+    public void workItemWatermarkQueryWithLineBreaks() {
+        // saved queries often have the ORDER BY on its own line, it must still be replaced and not appended to
+        Assert.assertEquals("select system.id from workitems\nwhere system.state = 'Active'" +
+                        " order by system.changeddate desc, system.id desc",
+                ServerWatermarkProvider.getWorkItemWatermarkQuery(
+                        "select system.id from workitems\nwhere system.state = 'Active'\nORDER BY\tsystem.title"));
+        Assert.assertEquals("select system.id from workitems where system.title = 'recorder'" +
+                        " order by system.changeddate desc, system.id desc",
+                ServerWatermarkProvider.getWorkItemWatermarkQuery(
+                        "select system.id from workitems where system.title = 'recorder'\r\n  order  by system.id"));
+    }
+
+    @Test
+    public void pullRequestWatermarkCoversEveryPage() {
+        final GitHttpClient client = Mockito.mock(GitHttpClient.class);
+        final ServerContext context = Mockito.mock(ServerContext.class);
+        final GitRepository repository = new GitRepository();
+        repository.setId(UUID.randomUUID());
+        when(context.getGitRepository()).thenReturn(repository);
+        when(context.getGitHttpClient()).thenReturn(client);
+
+        final int pageSize = PullRequestLookupOperation.PAGE_SIZE;
+        final List<GitPullRequest> secondPage = createPullRequests(pageSize + 1, pageSize / 2);
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), anyInt(), eq(pageSize)))
+                .thenReturn(new ArrayList<GitPullRequest>());
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(0), eq(pageSize)))
+                .thenReturn(createPullRequests(1, pageSize));
+        when(client.getPullRequests(any(UUID.class), any(GitPullRequestSearchCriteria.class), anyInt(), eq(pageSize), eq(pageSize)))
+                .thenReturn(secondPage);
+
+        final ServerWatermarkProvider provider = new ServerWatermarkProvider();
+        final String watermark = provider.getWatermark(ServerEvent.PULL_REQUESTS_CHANGED, context);
+        Assert.assertEquals(watermark, provider.getWatermark(ServerEvent.PULL_REQUESTS_CHANGED, context));
+
+        // a new push to a pull request on the second page moves the watermark
+        final GitCommitRef commit = new GitCommitRef();
+        commit.setCommitId("abc");
+        secondPage.get(secondPage.size() - 1).setLastMergeSourceCommit(commit);
+        Assert.assertNotEquals(watermark, provider.getWatermark(ServerEvent.PULL_REQUESTS_CHANGED, context));
+    }
+
+    private static List<GitPullRequest> createPullRequests(final int firstId, final int count) {
+        final List<GitPullRequest> pullRequests = new ArrayList<GitPullRequest>(count);
+        for (int i = 0; i < count; i++) {
+            final GitPullRequest pullRequest = new GitPullRequest();
+            pullRequest.setPullRequestId(firstId + i);
+            pullRequests.add(pullRequest);
+        }
+        return pullRequests;
+    }
+
+    @Test
+    public void workItemScopeFollowsShownQuery() {
+        final ServerWatermarkProvider provider = new ServerWatermarkProvider();
+        final TeamProjectReference project = new TeamProjectReference();
+        project.setId(UUID.randomUUID());
+        final GitRepository repository = new GitRepository();
+        repository.setId(UUID.randomUUID());
+        final ServerContext context = new ServerContextBuilder().type(ServerContext.Type.TFS).uri(REPO_URL)
+                .teamProject(project).repository(repository).userId(UUID.randomUUID()).build();
+
+        final String assignedToMe = provider.getScope(ServerEvent.WORK_ITEMS_CHANGED, context);
+        provider.setWorkItemQuery(REPO_URL, "select system.id from workitems where system.state = 'Active'");
+        final String active = provider.getScope(ServerEvent.WORK_ITEMS_CHANGED, context);
+        Assert.assertNotEquals(assignedToMe, active);
+        Assert.assertTrue(active.contains("system.state = 'Active'"));
+
+        // without a query we go back to the work items assigned to the user
+        provider.setWorkItemQuery(REPO_URL, null);
+        Assert.assertEquals(assignedToMe, provider.getScope(ServerEvent.WORK_ITEMS_CHANGED, context));
+    }
+}
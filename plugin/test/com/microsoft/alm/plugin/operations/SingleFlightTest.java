@@ -0,0 +1,120 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+    @Test
+    public void testKey() {
+        Assert.assertEquals("resource|http://server/_git/repo|true", SingleFlight.key("Resource", "http://SERVER/_git/repo", true));
+        Assert.assertFalse(SingleFlight.key("resource", "a", false).equals(SingleFlight.key("resource", "a", true)));
+    }
+
+    @Test
+    public void testConcurrentCallsShareResult() throws InterruptedException {
+        final SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> callable = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return "result";
+            }
+        };
+
+        final List<String> results = new ArrayList<String>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final String result = singleFlight.execute("key", callable);
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+            // make sure the first thread owns the call before the others join it
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+
+        // wait until the other two have joined
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (singleFlight.getHitCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(3, results.size());
+        for (final String result : results) {
+            Assert.assertEquals("result", result);
+        }
+        Assert.assertEquals(2, singleFlight.getHitCount());
+        Assert.assertEquals(3, singleFlight.getCallCount());
+        Assert.assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testSequentialCallsAreNotCached() {
+        final SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<Integer> callable = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+
+        Assert.assertEquals(Integer.valueOf(1), singleFlight.execute("key", callable));
+        Assert.assertEquals(Integer.valueOf(2), singleFlight.execute("key", callable));
+        Assert.assertEquals(0, singleFlight.getHitCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionIsRethrown() {
+        final SingleFlight singleFlight = new SingleFlight();
+        singleFlight.execute("key", new Callable<Object>() {
+            @Override
+            public Object call() {
+                throw new IllegalStateException("failed");
+            }
+        });
+    }
+
+    @Test
+    public void testRecursiveCallDoesNotHang() {
+        final SingleFlight singleFlight = new SingleFlight();
+        final String result = singleFlight.execute("key", new Callable<String>() {
+            @Override
+            public String call() {
+                return "outer-" + singleFlight.execute("key", new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return "inner";
+                    }
+                });
+            }
+        });
+        Assert.assertEquals("outer-inner", result);
+    }
+}
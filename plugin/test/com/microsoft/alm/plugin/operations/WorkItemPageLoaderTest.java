@@ -0,0 +1,98 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.operations;
+
+import com.microsoft.alm.plugin.AbstractTest;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.workitemtracking.webapi.WorkItemTrackingHttpClient;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItem;
+import com.microsoft.alm.workitemtracking.webapi.models.WorkItemExpand;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.when;
+
+public class WorkItemPageLoaderTest extends AbstractTest {
+
+    private static WorkItem createWorkItem(final int id) {
+        final WorkItem item = new WorkItem();
+        item.setId(id);
+        return item;
+    }
+
+    private static List<Integer> createIds(final int count) {
+        final List<Integer> ids = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(count - i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testPages() {
+        final ServerContext context = Mockito.mock(ServerContext.class);
+        final WorkItemPageLoader loader = new WorkItemPageLoader(context, createIds(450), null, WorkItemExpand.ALL);
+        Assert.assertEquals(450, loader.getCount());
+        Assert.assertEquals(3, loader.getPageCount());
+        Assert.assertEquals(0, WorkItemPageLoader.getPageIndex(199));
+        Assert.assertEquals(1, WorkItemPageLoader.getPageIndex(200));
+        Assert.assertEquals(400, WorkItemPageLoader.getPageStart(2));
+        Assert.assertEquals(450, loader.getId(0));
+
+        final WorkItemPageLoader emptyLoader = new WorkItemPageLoader(context, new ArrayList<Integer>(), null, WorkItemExpand.ALL);
+        Assert.assertEquals(0, emptyLoader.getPageCount());
+    }
+
+    @Test
+    public void testLoadPageKeepsQueryOrder() {
+        final ServerContext context = Mockito.mock(ServerContext.class);
+        final WorkItemTrackingHttpClient client = Mockito.mock(WorkItemTrackingHttpClient.class);
+        when(context.getWitHttpClient()).thenReturn(client);
+        // the server returns the work items in id order
+        when(client.getWorkItems(anyListOf(Integer.class), anyListOf(String.class), any(java.util.Date.class), any(WorkItemExpand.class)))
+                .thenReturn(new ArrayList<WorkItem>(Arrays.asList(createWorkItem(3), createWorkItem(5), createWorkItem(9))));
+
+        final WorkItemPageLoader loader = new WorkItemPageLoader(context, Arrays.asList(5, 9, 3), null, WorkItemExpand.ALL);
+        Assert.assertFalse(loader.isPageRequested(0));
+        final List<WorkItem> items = loader.loadPage(0);
+        Assert.assertTrue(loader.isPageRequested(0));
+        Assert.assertEquals(3, items.size());
+        Assert.assertEquals(5, items.get(0).getId().intValue());
+        Assert.assertEquals(9, items.get(1).getId().intValue());
+        Assert.assertEquals(3, items.get(2).getId().intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadPageIndex() {
+        final WorkItemPageLoader loader = new WorkItemPageLoader(Mockito.mock(ServerContext.class), createIds(10), null, WorkItemExpand.ALL);
+        loader.loadPage(1);
+    }
+
+    @Test
+    public void testCancel() {
+        final WorkItemPageLoader loader = new WorkItemPageLoader(Mockito.mock(ServerContext.class), createIds(10), null, WorkItemExpand.ALL);
+        loader.cancel();
+        Assert.assertTrue(loader.isCancelled());
+        // requests after cancelling are ignored
+        loader.requestPage(0, new WorkItemPageLoader.Listener() {
+            @Override
+            public void pageLoaded(final WorkItemPageLoader loader, final int startIndex, final List<WorkItem> workItems) {
+                Assert.fail();
+            }
+
+            @Override
+            public void pageFailed(final WorkItemPageLoader loader, final int startIndex, final Throwable t) {
+                Assert.fail();
+            }
+        });
+        Assert.assertFalse(loader.isPageRequested(0));
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.services;
+
+import com.microsoft.alm.plugin.operations.BuildStatusLookupOperation;
+import com.microsoft.alm.plugin.operations.Operation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BuildStatusServiceTest {
+    private static final String REPO_URL = "https://account.visualstudio.com/DefaultCollection/_git/repo";
+    private static final String MASTER = "refs/heads/master";
+    private static final String FEATURE = "refs/heads/feature";
+
+    /**
+     * Holds on to the lookups so the test decides when they finish
+     */
+    private static class TestBuildStatusService extends BuildStatusService {
+        private final List<Operation.Listener> lookups = new ArrayList<Operation.Listener>();
+        private final List<String> branches = new ArrayList<String>();
+
+        @Override
+        protected void startLookup(final String remoteUrl, final String branch, final boolean allowPrompt, final Operation.Listener listener) {
+            lookups.add(listener);
+            branches.add(branch);
+        }
+
+        private void finishLookup(final int index) {
+            lookups.get(index).notifyLookupResults(new BuildStatusLookupOperation.BuildStatusResults(null, null));
+        }
+    }
+
+    private static class TestSubscriber implements BuildStatusService.Subscriber {
+        private int callCount = 0;
+
+        @Override
+        public void buildStatusChanged(final BuildStatusLookupOperation.BuildStatusResults results) {
+            callCount++;
+        }
+    }
+
+    @Test
+    public void testSubscribersShareLookups() {
+        final TestBuildStatusService service = new TestBuildStatusService();
+        final TestSubscriber subscriber1 = new TestSubscriber();
+        final TestSubscriber subscriber2 = new TestSubscriber();
+        service.subscribe(subscriber1, REPO_URL, MASTER);
+        service.subscribe(subscriber2, REPO_URL.toUpperCase(), MASTER);
+        Assert.assertEquals(1, service.getEntryCount());
+
+        service.refresh(REPO_URL, MASTER, false);
+        service.refresh(REPO_URL, MASTER, false);
+        Assert.assertEquals(1, service.getLookupCount());
+        service.finishLookup(0);
+        Assert.assertEquals(1, subscriber1.callCount);
+        Assert.assertEquals(1, subscriber2.callCount);
+
+        // the refresh that came in while looking up runs once more
+        Assert.assertEquals(2, service.getLookupCount());
+        service.finishLookup(1);
+        Assert.assertEquals(2, subscriber1.callCount);
+        Assert.assertEquals(2, service.getLookupCount());
+
+        // a new subscriber gets the known status right away
+        final TestSubscriber subscriber3 = new TestSubscriber();
+        service.subscribe(subscriber3, REPO_URL, MASTER);
+        Assert.assertEquals(1, subscriber3.callCount);
+    }
+
+    @Test
+    public void testRefreshAllBranchesOfRepo() {
+        final TestBuildStatusService service = new TestBuildStatusService();
+        service.subscribe(new TestSubscriber(), REPO_URL, MASTER);
+        service.subscribe(new TestSubscriber(), REPO_URL, FEATURE);
+        service.subscribe(new TestSubscriber(), "https://account.visualstudio.com/DefaultCollection/_git/other", MASTER);
+        Assert.assertEquals(3, service.getEntryCount());
+        Assert.assertEquals(2, service.getRemoteUrls().size());
+
+        service.refresh(REPO_URL, false);
+        Assert.assertEquals(2, service.getLookupCount());
+        Assert.assertTrue(service.branches.contains(MASTER));
+        Assert.assertTrue(service.branches.contains(FEATURE));
+    }
+
+    @Test
+    public void testUnusedEntriesAreEvicted() {
+        final TestBuildStatusService service = new TestBuildStatusService();
+        final TestSubscriber subscriber = new TestSubscriber();
+        service.subscribe(subscriber, REPO_URL, MASTER);
+
+        // switching branches moves the subscription
+        service.subscribe(subscriber, REPO_URL, FEATURE);
+        Assert.assertEquals(1, service.getEntryCount());
+
+        service.unsubscribe(subscriber);
+        Assert.assertEquals(0, service.getEntryCount());
+        service.refresh(REPO_URL, FEATURE, false);
+        Assert.assertEquals(0, service.getLookupCount());
+    }
+}
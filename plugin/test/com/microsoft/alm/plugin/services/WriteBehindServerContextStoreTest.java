@@ -0,0 +1,116 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.plugin.services;
+
+import com.microsoft.alm.plugin.authentication.AuthenticationInfo;
+import com.microsoft.alm.plugin.context.ServerContext;
+import com.microsoft.alm.plugin.context.ServerContextBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class WriteBehindServerContextStoreTest {
+    private static class RecordingStore implements ServerContextStore {
+        private final List<String> writes = Collections.synchronizedList(new ArrayList<String>());
+        private final List<ServerContext> saved = new ArrayList<ServerContext>();
+
+        @Override
+        public void forgetServerContext(final String key) {
+            writes.add("forget " + key);
+        }
+
+        @Override
+        public List<ServerContext> restoreServerContexts() {
+            return saved;
+        }
+
+        @Override
+        public void saveServerContext(final ServerContext context) {
+            writes.add("save " + context.getKey());
+        }
+    }
+
+    private ServerContext createContext(final String uri, final String password) {
+        return new ServerContextBuilder().type(ServerContext.Type.TFS).uri(uri)
+                .authentication(new AuthenticationInfo("user", password, uri, "user")).build();
+    }
+
+    @Test
+    public void testWritesAreDeferredAndCoalesced() {
+        final RecordingStore recordingStore = new RecordingStore();
+        // a long delay so only the explicit flush writes
+        final WriteBehindServerContextStore store = new WriteBehindServerContextStore(recordingStore, 60000);
+
+        final ServerContext context = createContext("http://server/path", "pass1");
+        store.saveServerContext(context);
+        store.saveServerContext(createContext("http://server/path", "pass2"));
+        store.forgetServerContext(createContext("http://server/other", "pass").getKey());
+        Assert.assertEquals(0, recordingStore.writes.size());
+        Assert.assertEquals(2, store.getPendingCount());
+        Assert.assertEquals(1, store.getCoalescedCount());
+
+        store.flush();
+        Assert.assertEquals(2, recordingStore.writes.size());
+        Assert.assertEquals("save " + context.getKey(), recordingStore.writes.get(0));
+        Assert.assertEquals(0, store.getPendingCount());
+        store.shutdown();
+    }
+
+    @Test
+    public void testUnchangedSavesAreSkipped() {
+        final RecordingStore recordingStore = new RecordingStore();
+        final ServerContext restored = createContext("http://server/path", "pass");
+        recordingStore.saved.add(restored);
+        final WriteBehindServerContextStore store = new WriteBehindServerContextStore(recordingStore, 60000);
+
+        // contexts that were just restored don't need to be saved again
+        Assert.assertEquals(1, store.restoreServerContexts().size());
+        store.saveServerContext(restored);
+        store.flush();
+        Assert.assertEquals(0, recordingStore.writes.size());
+        Assert.assertEquals(1, store.getSkippedCount());
+
+        // but new credentials are
+        store.saveServerContext(createContext("http://server/path", "newPass"));
+        store.flush();
+        Assert.assertEquals(1, recordingStore.writes.size());
+
+        // and saving the same credentials again is skipped
+        store.saveServerContext(createContext("http://server/path", "newPass"));
+        store.flush();
+        Assert.assertEquals(1, recordingStore.writes.size());
+        Assert.assertEquals(2, store.getSkippedCount());
+        store.shutdown();
+    }
+
+    @Test
+    public void testShutdownFlushes() {
+        final RecordingStore recordingStore = new RecordingStore();
+        final WriteBehindServerContextStore store = new WriteBehindServerContextStore(recordingStore, 60000);
+        store.saveServerContext(createContext("http://server/path", "pass"));
+        store.shutdown();
+        Assert.assertEquals(1, recordingStore.writes.size());
+
+        // after shutdown writes go straight through
+        store.forgetServerContext("key");
+        Assert.assertEquals(2, recordingStore.writes.size());
+    }
+
+    @Test
+    public void testBackgroundFlush() throws InterruptedException {
+        final RecordingStore recordingStore = new RecordingStore();
+        final WriteBehindServerContextStore store = new WriteBehindServerContextStore(recordingStore, 10);
+        store.saveServerContext(createContext("http://server/path", "pass"));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (recordingStore.writes.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, recordingStore.writes.size());
+        store.shutdown();
+    }
+}